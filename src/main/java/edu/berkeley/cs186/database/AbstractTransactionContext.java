@@ -13,6 +13,10 @@ import java.util.concurrent.locks.ReentrantLock;
 public abstract class AbstractTransactionContext implements TransactionContext {
     private boolean blocked = false;
     private boolean startBlock = false;
+    // thrown by block() once the transaction is unblocked, if set by abortBlock
+    private RuntimeException blockError = null;
+    // total time spent in block()
+    private volatile long blockedNanos = 0;
     private final ReentrantLock transactionLock = new ReentrantLock();
     private final Condition unblocked = transactionLock.newCondition();
 
@@ -32,21 +36,30 @@ public abstract class AbstractTransactionContext implements TransactionContext {
 
     /**
      * Blocks the transaction (and thread). prepareBlock() must be called first.
+     * Throws the error passed to abortBlock() if that is what unblocked it.
      */
     @Override
     public void block() {
         if (!this.startBlock) {
             throw new IllegalStateException("prepareBlock() must be called before block()");
         }
+        RuntimeException error;
+        long start = System.nanoTime();
         try {
             this.blocked = true;
             while (this.blocked) {
                 this.unblocked.awaitUninterruptibly();
             }
+            error = this.blockError;
+            this.blockError = null;
         } finally {
+            this.blockedNanos += System.nanoTime() - start;
             this.startBlock = false;
             this.transactionLock.unlock();
         }
+        if (error != null) {
+            throw error;
+        }
     }
 
     /**
@@ -63,11 +76,44 @@ public abstract class AbstractTransactionContext implements TransactionContext {
         }
     }
 
+    /**
+     * Unblocks the transaction, making its block() call throw `error`.
+     */
+    @Override
+    public void abortBlock(RuntimeException error) {
+        this.transactionLock.lock();
+        try {
+            this.blockError = error;
+            this.blocked = false;
+            this.unblocked.signal();
+        } finally {
+            this.transactionLock.unlock();
+        }
+    }
+
     @Override
     public boolean getBlocked() {
         return this.blocked;
     }
 
+    @Override
+    public long getBlockedNanos() {
+        return this.blockedNanos;
+    }
+
+    /**
+     * Transactions are read-write unless stated otherwise.
+     */
+    @Override
+    public boolean isReadOnly() {
+        return false;
+    }
+
+    @Override
+    public long getSnapshot() {
+        throw new IllegalStateException("transaction " + getTransNum() + " does not read a snapshot");
+    }
+
     @SuppressWarnings({"unchecked", "unused"})
     private static <T extends Throwable> void rethrow(Throwable t) throws T {
         // rethrows checked exceptions as unchecked
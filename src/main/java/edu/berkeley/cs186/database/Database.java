@@ -7,6 +7,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
 import edu.berkeley.cs186.database.common.ByteBuffer;
@@ -17,6 +19,8 @@ import edu.berkeley.cs186.database.concurrency.*;
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.index.BPlusTree;
 import edu.berkeley.cs186.database.index.BPlusTreeMetadata;
+import edu.berkeley.cs186.database.index.HashIndex;
+import edu.berkeley.cs186.database.index.HashIndexMetadata;
 import edu.berkeley.cs186.database.io.*;
 import edu.berkeley.cs186.database.memory.*;
 import edu.berkeley.cs186.database.query.QueryPlan;
@@ -57,6 +61,27 @@ public class Database implements AutoCloseable {
     private static final String INDEX_INFO_TABLE_NAME = METADATA_TABLE_PREFIX + "indices";
     private static final int DEFAULT_BUFFER_SIZE = 262144; // default of 1G
     private static final int MAX_SCHEMA_SIZE = 4005; // a wonderful number pulled out of nowhere
+    // number of buckets in histograms built by the background ANALYZE job
+    private static final int ANALYZE_BUCKETS = 10;
+    // maximum number of data pages the background ANALYZE job reads from a table
+    private static final int ANALYZE_SAMPLE_PAGES = 64;
+    // fraction of a table's records that must have changed before it is re-analyzed
+    private static final double ANALYZE_THRESHOLD = 0.1;
+    // number of threads that scan the table and write leaves when bulk loading an index
+    private static final int INDEX_BUILD_THREADS = Runtime.getRuntime().availableProcessors();
+    // fill factor of the leaves of bulk loaded indices, leaving room for later inserts
+    private static final float INDEX_FILL_FACTOR = 0.75f;
+    // the order of a hash index in information_schema.indices, which tells hash
+    // indices apart from B+ trees (whose order is never negative)
+    private static final int HASH_INDEX_ORDER = -1;
+    // number of times an optimistic transaction is run before giving up
+    private static final int DEFAULT_OPTIMISTIC_ATTEMPTS = 10;
+    // default time between two runs of the lock manager's deadlock detector
+    private static final long DEFAULT_DEADLOCK_DETECTION_PERIOD_MILLIS = 100;
+    // time between two checks of the log volume by the background checkpointer
+    private static final long CHECKPOINT_PERIOD_MILLIS = 1000;
+    // number of log pages written since the last checkpoint that triggers the next
+    private static final long LOG_PAGES_PER_CHECKPOINT = 16;
 
     // information_schema.tables, manages all tables in the database
     private Table tableInfo;
@@ -66,6 +91,8 @@ public class Database implements AutoCloseable {
     private final ConcurrentMap<String, Table> tableLookup;
     // index name to bplustree object mapping (index name is: "table,col")
     private final ConcurrentMap<String, BPlusTree> indexLookup;
+    // index name to hash index object mapping, for the indices that are hash indices
+    private final ConcurrentMap<String, HashIndex> hashIndexLookup;
     // table name to record id of entry in tableInfo
     private final ConcurrentMap<String, RecordId> tableInfoLookup;
     // index name to record id of entry in indexInfo
@@ -91,6 +118,10 @@ public class Database implements AutoCloseable {
     private final Transaction secondaryInitTransaction;
     // thread pool for background tasks
     private final ExecutorService executor;
+    // runs the background ANALYZE job, if started
+    private ScheduledExecutorService analyzer;
+    // validates optimistic transactions
+    private final OptimisticValidator optimisticValidator = new OptimisticValidator();
 
     // number of pages of memory to use for joins, etc.
     private int workMem = 1024; // default of 4M
@@ -156,7 +187,7 @@ public class Database implements AutoCloseable {
     }
 
     /**
-     * Creates a new database.
+     * Creates a new database, with the log kept in the buffer cache.
      *
      * @param fileDir the directory to put the table files in
      * @param numMemoryPages the number of pages of memory in the buffer cache
@@ -166,6 +197,31 @@ public class Database implements AutoCloseable {
      */
     public Database(String fileDir, int numMemoryPages, LockManager lockManager,
                     EvictionPolicy policy, boolean useRecoveryManager) {
+        this(fileDir, numMemoryPages, lockManager, policy, useRecoveryManager, 0);
+    }
+
+    /**
+     * Creates a new database. The lock manager's deadlock detector runs until
+     * the database is closed, and so does the recovery manager's background
+     * checkpointer, from the end of restart recovery.
+     *
+     * @param fileDir the directory to put the table files in
+     * @param numMemoryPages the number of pages of memory in the buffer cache
+     * @param lockManager the lock manager
+     * @param policy eviction policy for buffer cache
+     * @param useRecoveryManager flag to enable or disable the recovery manager (ARIES)
+     * @param logTailPages number of log pages the recovery manager keeps in a
+     * log tail buffer of its own, outside the buffer cache (see
+     * ARIESRecoveryManager#setLogTailPages), or 0 to keep the log in the buffer cache
+     */
+    public Database(String fileDir, int numMemoryPages, LockManager lockManager,
+                    EvictionPolicy policy, boolean useRecoveryManager, int logTailPages) {
+        if (logTailPages < 0) {
+            throw new IllegalArgumentException("logTailPages must not be negative");
+        }
+        if (logTailPages > 0 && !useRecoveryManager) {
+            throw new IllegalArgumentException("a log tail buffer needs the recovery manager");
+        }
         boolean initialized = setupDirectory(fileDir);
 
         numTransactions = 0;
@@ -173,14 +229,21 @@ public class Database implements AutoCloseable {
         this.lockManager = lockManager;
         tableLookup = new ConcurrentHashMap<>();
         indexLookup = new ConcurrentHashMap<>();
+        hashIndexLookup = new ConcurrentHashMap<>();
         tableIndices = new ConcurrentHashMap<>();
         tableInfoLookup = new ConcurrentHashMap<>();
         indexInfoLookup = new ConcurrentHashMap<>();
         this.executor = new ThreadPool();
 
         if (useRecoveryManager) {
-            recoveryManager = new ARIESRecoveryManager(lockManager.databaseContext(),
+            ARIESRecoveryManager ariesRecoveryManager = new ARIESRecoveryManager(lockManager.databaseContext(),
                     this::beginRecoveryTransaction, this::setTransactionCounter, this::getTransactionCounter);
+            // pages are redone in parallel during restart recovery
+            ariesRecoveryManager.setNumRedoThreads(Runtime.getRuntime().availableProcessors());
+            if (logTailPages > 0) {
+                ariesRecoveryManager.setLogTailPages(logTailPages);
+            }
+            recoveryManager = ariesRecoveryManager;
         } else {
             recoveryManager = new DummyRecoveryManager();
         }
@@ -201,7 +264,10 @@ public class Database implements AutoCloseable {
         }
 
         Runnable r = recoveryManager.restart();
-        executor.submit(r);
+        executor.submit(() -> {
+            r.run();
+            startCheckpointing();
+        });
 
         primaryInitTransaction = beginTransaction();
         secondaryInitTransaction = beginTransaction();
@@ -226,6 +292,9 @@ public class Database implements AutoCloseable {
             this.loadMetadataTables();
             this.loadTablesAndIndices();
         }
+
+        // transactions blocked on each other are aborted instead of waiting forever
+        lockManager.startDeadlockDetection(DEFAULT_DEADLOCK_DETECTION_PERIOD_MILLIS);
     }
 
     private boolean setupDirectory(String fileDir) {
@@ -422,11 +491,13 @@ public class Database implements AutoCloseable {
             // fetch index object before it has been constructed
             indexMetadataContext.acquire(secondaryTC, LockType.X);
 
-            BPlusTreeMetadata metadata = parseIndexMetadata(indexInfo.getRecord(recordId));
+            Record indexRecord = indexInfo.getRecord(recordId);
+            BPlusTreeMetadata metadata = parseIndexMetadata(indexRecord);
             if (metadata == null) {
                 indexInfo.deleteRecord(recordId);
                 return;
             }
+            boolean isHashIndex = isHashIndexRecord(indexRecord);
 
             loadingProgress.register();
             executor.execute(() -> {
@@ -437,14 +508,18 @@ public class Database implements AutoCloseable {
                 indexContext.acquire(secondaryTC, LockType.X);
 
                 try {
-                    BPlusTree tree = new BPlusTree(bufferManager, metadata, indexContext);
-                    if (!tableIndices.containsKey(metadata.getTableName())) {
-                        // the list only needs to be synchronized while indices are being loaded, as multiple
-                        // indices may attempt to add themselves to the list at the same time
-                        tableIndices.put(metadata.getTableName(), Collections.synchronizedList(new ArrayList<>()));
+                    if (isHashIndex) {
+                        hashIndexLookup.put(indexName, new HashIndex(bufferManager, toHashIndexMetadata(metadata),
+                                                                     indexContext));
+                    } else {
+                        indexLookup.put(indexName, new BPlusTree(bufferManager, metadata, indexContext));
                     }
-                    tableIndices.get(metadata.getTableName()).add(indexName);
-                    indexLookup.put(indexName, tree);
+                    // tableIndices is keyed by the prefixed table name, like tableLookup. The
+                    // list only needs to be synchronized while indices are being loaded, as multiple
+                    // indices may attempt to add themselves to the list at the same time
+                    tableIndices.computeIfAbsent(prefixUserTableName(metadata.getTableName()),
+                                                 name -> Collections.synchronizedList(new ArrayList<>()))
+                                .add(indexName);
                     indexInfoLookup.put(indexName, recordId);
 
                     synchronized (lockManager) {
@@ -458,6 +533,15 @@ public class Database implements AutoCloseable {
         loadingProgress.arriveAndAwaitAdvance(); // start index loading
     }
 
+    // Takes checkpoints in the background once restart recovery is done, unless
+    // the database was closed in the meantime.
+    private synchronized void startCheckpointing() {
+        if (this.recoveryManager instanceof ARIESRecoveryManager && !this.executor.isShutdown()) {
+            ((ARIESRecoveryManager) this.recoveryManager).startCheckpointing(CHECKPOINT_PERIOD_MILLIS,
+                    LOG_PAGES_PER_CHECKPOINT);
+        }
+    }
+
     // wait until setup has finished
     public void waitSetupFinished() {
         while (!loadingProgress.isTerminated()) {
@@ -486,6 +570,11 @@ public class Database implements AutoCloseable {
 
         // finish executor tasks
         this.executor.shutdown();
+        this.stopBackgroundAnalyze();
+        this.lockManager.stopDeadlockDetection();
+        if (this.recoveryManager instanceof ARIESRecoveryManager) {
+            ((ARIESRecoveryManager) this.recoveryManager).stopCheckpointing();
+        }
 
         this.bufferManager.evictAll();
 
@@ -496,6 +585,7 @@ public class Database implements AutoCloseable {
 
         this.tableLookup.clear();
         this.indexLookup.clear();
+        this.hashIndexLookup.clear();
         this.tableInfoLookup.clear();
         this.indexInfoLookup.clear();
         this.tableIndices.clear();
@@ -508,6 +598,62 @@ public class Database implements AutoCloseable {
         return executor;
     }
 
+    /**
+     * Starts a background job that refreshes table statistics every periodMillis
+     * milliseconds. A table is re-analyzed once more than ANALYZE_THRESHOLD of its
+     * records have been added or removed since its histograms were last built, by
+     * sampling at most ANALYZE_SAMPLE_PAGES of its data pages (see
+     * Table#sampleStatistics). The job reads pages without taking any locks and
+     * only swaps in the new histograms at the end, so writers are never blocked.
+     *
+     * The job is not started by default, since it changes the statistics (and so
+     * the query plans) of tables at times that depend on the thread schedule. The
+     * command line interface starts it (see ExampleLoader).
+     *
+     * @param periodMillis time between two runs of the job
+     */
+    public synchronized void startBackgroundAnalyze(long periodMillis) {
+        if (this.analyzer != null) {
+            return;
+        }
+        this.analyzer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "analyze");
+            t.setDaemon(true);
+            return t;
+        });
+        this.analyzer.scheduleWithFixedDelay(this::analyzeStaleTables, periodMillis, periodMillis,
+                                             TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background ANALYZE job, waiting for a run in progress to finish.
+     */
+    public synchronized void stopBackgroundAnalyze() {
+        if (this.analyzer == null) {
+            return;
+        }
+        this.analyzer.shutdown();
+        try {
+            this.analyzer.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.analyzer = null;
+    }
+
+    private void analyzeStaleTables() {
+        for (Map.Entry<String, Table> entry : this.tableLookup.entrySet()) {
+            if (!entry.getKey().startsWith(USER_TABLE_PREFIX)) {
+                continue;
+            }
+            Table table = entry.getValue();
+            TableStats stats = table.getStats();
+            if (stats.getNumModifications() > ANALYZE_THRESHOLD * Math.max(stats.getNumRecords(), 1)) {
+                table.sampleStatistics(ANALYZE_BUCKETS, ANALYZE_SAMPLE_PAGES);
+            }
+        }
+    }
+
     public LockManager getLockManager() {
         return lockManager;
     }
@@ -525,6 +671,21 @@ public class Database implements AutoCloseable {
         return tableLookup.get(prefixUserTableName(tableName));
     }
 
+    /**
+     * Sets the time between two runs of the deadlock detector (100ms by default).
+     * A shorter period aborts deadlocked transactions sooner, at the cost of more
+     * frequent passes over the lock table.
+     *
+     * @param periodMillis time between two runs of the detector
+     */
+    public synchronized void setDeadlockDetectionPeriod(long periodMillis) {
+        if (periodMillis <= 0) {
+            throw new IllegalArgumentException("deadlock detection period must be positive");
+        }
+        lockManager.stopDeadlockDetection();
+        lockManager.startDeadlockDetection(periodMillis);
+    }
+
     public int getWorkMem() {
         // cap work memory at number of memory pages -- this is likely to cause out of memory
         // errors if actually set this high
@@ -565,6 +726,11 @@ public class Database implements AutoCloseable {
      * 5 | key_schema_typeid   | int
      * 6 | key_schema_typesize | int
      * 7 | height              | int
+     *
+     * The order of a hash index is HASH_INDEX_ORDER, its root_page_num is its
+     * header page, and its height is unused. Marking hash indices this way
+     * rather than with a column of their own keeps the schema of databases
+     * created before hash indices, which can be opened as they are.
      */
     private Schema getIndexInfoSchema() {
         return new Schema(
@@ -615,6 +781,79 @@ public class Database implements AutoCloseable {
         }
     }
 
+    /**
+     * Returns the elements of `first` followed by the elements of `second`.
+     */
+    private static <T> Iterator<T> concat(Iterator<T> first, Iterator<T> second) {
+        return new Iterator<T>() {
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || second.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return first.hasNext() ? first.next() : second.next();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the records of `records` until the first record whose
+     * values in `columns` are not `prefix`. Used to find the records with a
+     * prefix of a composite key in a scan of the index from that prefix.
+     */
+    private static class KeyPrefixIterator implements Iterator<Record> {
+        private Iterator<Record> records;
+        private int[] columns;
+        private List<DataBox> prefix;
+        private Record nextRecord;
+
+        KeyPrefixIterator(Iterator<Record> records, int[] columns, List<DataBox> prefix) {
+            this.records = records;
+            this.columns = columns;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextRecord == null && records.hasNext()) {
+                Record record = records.next();
+                for (int i = 0; i < columns.length; ++i) {
+                    if (!record.getValues().get(columns[i]).equals(prefix.get(i))) {
+                        records = Collections.emptyIterator();
+                        return false;
+                    }
+                }
+                nextRecord = record;
+            }
+            return nextRecord != null;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record record = nextRecord;
+            nextRecord = null;
+            return record;
+        }
+    }
+
+    // the key of the record with the given values in index indexName
+    private static DataBox indexKey(String indexName, List<String> colNames, List<DataBox> values) {
+        String[] columns = indexName.split(",");
+        if (columns.length == 2) {
+            return values.get(colNames.indexOf(columns[1]));
+        }
+        List<DataBox> key = new ArrayList<>();
+        for (int i = 1; i < columns.length; ++i) {
+            key.add(values.get(colNames.indexOf(columns[i])));
+        }
+        return new CompositeDataBox(key);
+    }
+
     // row of information_schema.indices --> BPlusTreeMetadata
     private BPlusTreeMetadata parseIndexMetadata(Record record) {
         List<DataBox> values = record.getValues();
@@ -630,9 +869,35 @@ public class Database implements AutoCloseable {
         }
 
         Type keySchema = new Type(TypeId.values()[values.get(5).getInt()], values.get(6).getInt());
+        if (keySchema.getTypeId() == TypeId.COMPOSITE) {
+            keySchema = compositeKeySchema(tableName, colName);
+        }
         return new BPlusTreeMetadata(tableName, colName, keySchema, order, partNum, rootPageNum, height);
     }
 
+    // the components of a composite key are not stored in information_schema.indices,
+    // since they are the types of the indexed columns (colNames, separated by commas)
+    private Type compositeKeySchema(String tableName, String colNames) {
+        RecordId rid = tableInfoLookup.get(prefixUserTableName(tableName));
+        Schema schema = new TableInfoRecord(tableInfo.getRecord(rid)).schema;
+        List<Type> components = new ArrayList<>();
+        for (String colName : colNames.split(",")) {
+            components.add(schema.getFieldTypes().get(schema.getFieldNames().indexOf(colName)));
+        }
+        return Type.compositeType(components);
+    }
+
+    // whether a row of information_schema.indices describes a hash index
+    private boolean isHashIndexRecord(Record record) {
+        return record.getValues().get(2).getInt() == HASH_INDEX_ORDER;
+    }
+
+    // metadata parsed from a hash index row --> HashIndexMetadata
+    private HashIndexMetadata toHashIndexMetadata(BPlusTreeMetadata metadata) {
+        return new HashIndexMetadata(metadata.getTableName(), metadata.getColName(), metadata.getKeySchema(),
+                                     metadata.getPartNum(), metadata.getRootPageNum());
+    }
+
     // get the lock context for information_schema.tables
     private LockContext getTableInfoContext() {
         return lockManager.databaseContext().childContext(TABLE_INFO_TABLE_NAME, 1L);
@@ -653,6 +918,11 @@ public class Database implements AutoCloseable {
         return getTableContext(table, tableLookup.get(prefixUserTableName(table)).getPartNum());
     }
 
+    // get the lock context for the page of a table holding record RID
+    LockContext getRecordContext(String table, RecordId rid) {
+        return getTableContext(table).childContext(rid.getPageNum());
+    }
+
     // get the lock context for an index
     private LockContext getIndexContext(String index, int partNum) {
         return lockManager.databaseContext().childContext("indices." + index, partNum);
@@ -660,6 +930,9 @@ public class Database implements AutoCloseable {
 
     // get the lock context for an index
     LockContext getIndexContext(String index) {
+        if (hashIndexLookup.containsKey(index)) {
+            return getIndexContext(index, hashIndexLookup.get(index).getPartNum());
+        }
         return getIndexContext(index, indexLookup.get(index).getPartNum());
     }
 
@@ -755,6 +1028,79 @@ public class Database implements AutoCloseable {
         return t;
     }
 
+    /**
+     * Start a new read-only transaction. The transaction reads a snapshot of the
+     * database as of its start, without acquiring any locks: it never waits for
+     * (or blocks) other transactions, and sees none of the changes made by
+     * transactions that hadn't committed when it started. Index scans are not
+     * available to it, so queries are answered from the tables themselves, and
+     * any attempt to modify the database throws a DatabaseException.
+     *
+     * Starting one waits for the running transactions that modified the
+     * database while no read-only transaction was open (see PageVersionStore),
+     * so a thread must not start one while it has such a transaction open.
+     *
+     * @return the new Transaction
+     */
+    public Transaction beginReadOnlyTransaction() {
+        // taken before locking the database, since it may wait for transactions to end
+        long snapshot = bufferManager.getVersionStore().beginSnapshot();
+        synchronized (this) {
+            TransactionImpl t = new TransactionImpl(this.numTransactions, false, snapshot);
+            activeTransactions.register();
+            if (activeTransactions.isTerminated()) {
+                activeTransactions = new Phaser(1);
+            }
+
+            this.recoveryManager.startTransaction(t);
+            ++this.numTransactions;
+            return t;
+        }
+    }
+
+    /**
+     * Runs BODY as an optimistic transaction (see OptimisticTransaction),
+     * which acquires no locks until it commits. If validation fails at
+     * commit, BODY is run again in a new transaction, up to MAXATTEMPTS times.
+     *
+     * @return the result of the run of BODY that committed
+     * @throws ValidationException if the last attempt failed validation
+     */
+    public <T> T runOptimistic(Function<OptimisticTransaction, T> body, int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("maxAttempts must be at least 1");
+        }
+        for (int attempt = 1; ; ++attempt) {
+            OptimisticTransaction t = new OptimisticTransaction(this, optimisticValidator);
+            try {
+                T result = body.apply(t);
+                t.commit();
+                return result;
+            } catch (ValidationException e) {
+                if (attempt == maxAttempts) {
+                    throw e;
+                }
+            } finally {
+                t.end();
+            }
+        }
+    }
+
+    /**
+     * Runs BODY as an optimistic transaction, retrying it up to
+     * DEFAULT_OPTIMISTIC_ATTEMPTS times. See runOptimistic(Function, int).
+     */
+    public void runOptimistic(Consumer<OptimisticTransaction> body) {
+        runOptimistic(t -> {
+            body.accept(t);
+            return null;
+        }, DEFAULT_OPTIMISTIC_ATTEMPTS);
+    }
+
+    public OptimisticValidator getOptimisticValidator() {
+        return optimisticValidator;
+    }
+
     /**
      * Start a transaction for recovery.
      *
@@ -794,12 +1140,17 @@ public class Database implements AutoCloseable {
         Map<String, String> aliases;
         Map<String, Table> tempTables;
         long tempTableCounter;
+        boolean readOnly;
+        // snapshot read by a read-only transaction, until it is closed
+        Long snapshot;
 
-        private TransactionContextImpl(long tNum) {
+        private TransactionContextImpl(long tNum, Long snapshot) {
             this.transNum = tNum;
             this.aliases = new HashMap<>();
             this.tempTables = new HashMap<>();
             this.tempTableCounter = 0;
+            this.readOnly = snapshot != null;
+            this.snapshot = snapshot;
         }
 
         @Override
@@ -807,6 +1158,19 @@ public class Database implements AutoCloseable {
             return transNum;
         }
 
+        @Override
+        public boolean isReadOnly() {
+            return readOnly;
+        }
+
+        @Override
+        public long getSnapshot() {
+            if (snapshot == null) {
+                return super.getSnapshot();
+            }
+            return snapshot;
+        }
+
         @Override
         public int getWorkMemSize() {
             return Database.this.getWorkMem();
@@ -873,14 +1237,25 @@ public class Database implements AutoCloseable {
 
         @Override
         public boolean indexExists(String tableName, String columnName) {
+            if (readOnly) {
+                // B+ trees keep their root and cached inner nodes outside of their pages,
+                // so they cannot be read as of a snapshot
+                return false;
+            }
             try {
-                resolveIndexFromName(tableName, columnName);
+                resolveIndexMetadataFromName(tableName, columnName);
             } catch (DatabaseException e) {
                 return false;
             }
             return true;
         }
 
+        @Override
+        public boolean isHashIndex(String tableName, String columnName) {
+            String indexName = resolveIndexMetadataFromName(tableName, columnName).getFirst();
+            return hashIndexLookup.containsKey(indexName);
+        }
+
         @Override
         public void updateIndexMetadata(BPlusTreeMetadata metadata) {
             indexInfo.updateRecord(Arrays.asList(
@@ -920,14 +1295,85 @@ public class Database implements AutoCloseable {
 
             Table tab = getTable(tableName);
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
+            Type keySchema = resolveIndexMetadataFromName(tableName, columnName).getSecond().getKeySchema();
+            if (keySchema.getTypeId() == TypeId.COMPOSITE && !(startValue instanceof CompositeDataBox)) {
+                // scanning from a value of the first column of a composite key
+                startValue = CompositeDataBox.lowerBound(keySchema, Collections.singletonList(startValue));
+            }
             return new RecordIterator(tab, index.getSecond().scanGreaterEqual(startValue));
         }
 
         @Override
-        public Iterator<Record> lookupKey(String tableName, String columnName, DataBox key) {
+        public Iterator<Record> sortedScanTo(String tableName, String columnName, DataBox endValue,
+                                             boolean inclusive) {
+            return scanTo(tableName, columnName, endValue, inclusive, false);
+        }
+
+        @Override
+        public Iterator<Record> reverseSortedScanTo(String tableName, String columnName, DataBox endValue,
+                boolean inclusive) {
+            return scanTo(tableName, columnName, endValue, inclusive, true);
+        }
+
+        @Override
+        public Iterator<Record> reverseSortedScanFrom(String tableName, String columnName, DataBox startValue) {
+            // TODO(proj4_part3): scan locking
+
             Table tab = getTable(tableName);
             Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
-            return new RecordIterator(tab, index.getSecond().scanEqual(key));
+            Type keySchema = resolveIndexMetadataFromName(tableName, columnName).getSecond().getKeySchema();
+            if (keySchema.getTypeId() == TypeId.COMPOSITE && !(startValue instanceof CompositeDataBox)) {
+                startValue = CompositeDataBox.lowerBound(keySchema, Collections.singletonList(startValue));
+            }
+            return new RecordIterator(tab, index.getSecond().scanGreaterEqualReverse(startValue));
+        }
+
+        /**
+         * Returns the records of tableName whose value of columnName is less
+         * than endValue (or equal to it, if inclusive), in ascending or
+         * descending order of the index on columnName. The scan stops at
+         * endValue rather than filtering a scan of the whole index.
+         */
+        private Iterator<Record> scanTo(String tableName, String columnName, DataBox endValue,
+                                        boolean inclusive, boolean descending) {
+            // TODO(proj4_part3): scan locking
+
+            Table tab = getTable(tableName);
+            Pair<String, BPlusTreeMetadata> metadata = resolveIndexMetadataFromName(tableName, columnName);
+            BPlusTree tree = resolveIndexFromName(tableName, columnName).getSecond();
+            Type keySchema = metadata.getSecond().getKeySchema();
+            if (keySchema.getTypeId() != TypeId.COMPOSITE || endValue instanceof CompositeDataBox) {
+                if (descending) {
+                    return new RecordIterator(tab, inclusive ? tree.scanLessEqualReverse(endValue)
+                                              : tree.scanLessThanReverse(endValue));
+                }
+                return new RecordIterator(tab, inclusive ? tree.scanLessEqual(endValue)
+                                          : tree.scanLessThan(endValue));
+            }
+
+            // a bound on the first column of a composite key: the keys less than
+            // the smallest key starting with endValue, and then (if inclusive)
+            // the keys starting with endValue
+            CompositeDataBox bound = CompositeDataBox.lowerBound(keySchema, Collections.singletonList(endValue));
+            Iterator<Record> less = new RecordIterator(tab, descending ? tree.scanLessThanReverse(bound)
+                    : tree.scanLessThan(bound));
+            if (!inclusive) {
+                return less;
+            }
+            Iterator<Record> equal = scanEqual(tab, metadata, endValue);
+            if (!descending) {
+                return concat(less, equal);
+            }
+            List<Record> reversed = new ArrayList<>();
+            equal.forEachRemaining(reversed::add);
+            Collections.reverse(reversed);
+            return concat(reversed.iterator(), less);
+        }
+
+        @Override
+        public Iterator<Record> lookupKey(String tableName, String columnName, DataBox key) {
+            Table tab = getTable(tableName);
+            return scanEqual(tab, resolveIndexMetadataFromName(tableName, columnName), key);
         }
 
         @Override
@@ -948,20 +1394,20 @@ public class Database implements AutoCloseable {
 
         @Override
         public boolean contains(String tableName, String columnName, DataBox key) {
-            Pair<String, BPlusTree> index = resolveIndexFromName(tableName, columnName);
-            return index.getSecond().get(key).isPresent();
+            Table tab = getTable(tableName);
+            return scanEqual(tab, resolveIndexMetadataFromName(tableName, columnName), key).hasNext();
         }
 
         @Override
         public RecordId addRecord(String tableName, List<DataBox> values) {
             Table tab = getTable(tableName);
             RecordId rid = tab.addRecord(values);
+            optimisticValidator.recordWrite(transNum, tab.getName(), rid);
             Schema s = tab.getSchema();
             List<String> colNames = s.getFieldNames();
 
             for (String indexName : tableIndices.get(tab.getName())) {
-                String column = indexName.split(",")[1];
-                resolveIndexFromName(tableName, column).getSecond().put(values.get(colNames.indexOf(column)), rid);
+                putIndexEntry(indexName, indexKey(indexName, colNames, values), rid);
             }
             return rid;
         }
@@ -972,12 +1418,12 @@ public class Database implements AutoCloseable {
             Schema s = tab.getSchema();
 
             Record rec = tab.deleteRecord(rid);
+            optimisticValidator.recordWrite(transNum, tab.getName(), rid);
             List<DataBox> values = rec.getValues();
             List<String> colNames = s.getFieldNames();
 
             for (String indexName : tableIndices.get(tab.getName())) {
-                String column = indexName.split(",")[1];
-                resolveIndexFromName(tableName, column).getSecond().remove(values.get(colNames.indexOf(column)));
+                removeIndexEntry(indexName, indexKey(indexName, colNames, values));
             }
             return rid;
         }
@@ -993,16 +1439,14 @@ public class Database implements AutoCloseable {
             Schema s = tab.getSchema();
 
             Record rec = tab.updateRecord(values, rid);
+            optimisticValidator.recordWrite(transNum, tab.getName(), rid);
 
             List<DataBox> oldValues = rec.getValues();
             List<String> colNames = s.getFieldNames();
 
             for (String indexName : tableIndices.get(tab.getName())) {
-                String column = indexName.split(",")[1];
-                int i = colNames.indexOf(column);
-                BPlusTree tree = resolveIndexFromName(tableName, column).getSecond();
-                tree.remove(oldValues.get(i));
-                tree.put(values.get(i), rid);
+                removeIndexEntry(indexName, indexKey(indexName, colNames, oldValues));
+                putIndexEntry(indexName, indexKey(indexName, colNames, values), rid);
             }
             return rid;
         }
@@ -1103,6 +1547,18 @@ public class Database implements AutoCloseable {
 
         @Override
         public void close() {
+            if (readOnly) {
+                if (snapshot != null) {
+                    bufferManager.getVersionStore().endSnapshot(snapshot);
+                    snapshot = null;
+                }
+            } else {
+                // drops the old versions of the pages written by the transaction, if it
+                // didn't commit
+                bufferManager.getVersionStore().abort(transNum);
+                optimisticValidator.abortWrites(transNum);
+            }
+
             // TODO(proj4_part3): release locks held by the transaction
             return;
         }
@@ -1133,16 +1589,80 @@ public class Database implements AutoCloseable {
             // TODO(proj4_part3): add locking
 
             BPlusTreeMetadata metadata = getIndexMetadata(tableName, columnName);
+            if (metadata == null) {
+                // an index on columns (columnName, ...) can also serve lookups and
+                // scans on columnName; pick the one with the fewest columns
+                List<String> indices = tableIndices.getOrDefault(prefixUserTableName(tableName),
+                                       Collections.emptyList());
+                for (String name : new ArrayList<>(indices)) {
+                    if (name.startsWith(indexName + ",") && (metadata == null
+                            || name.length() < metadata.getName().length())) {
+                        metadata = getIndexMetadata(tableName, name.substring(tableName.length() + 1));
+                    }
+                }
+            }
             if (metadata == null) {
                 throw new DatabaseException("no index with name " + indexName);
             }
-            return new Pair<>(indexName, metadata);
+            return new Pair<>(metadata.getName(), metadata);
+        }
+
+        /**
+         * Returns the records of tableName in index `index` whose key is `key`. If
+         * `key` is for a prefix of the columns of the index, the index is scanned
+         * from the smallest key with that prefix, until the first record with
+         * different values in those columns.
+         */
+        private Iterator<Record> scanEqual(Table tab, Pair<String, BPlusTreeMetadata> index, DataBox key) {
+            String indexName = index.getFirst();
+            HashIndex hashIndex = hashIndexLookup.get(indexName);
+            if (hashIndex != null) {
+                return new RecordIterator(tab, hashIndex.scanEqual(key));
+            }
+            BPlusTree tree = indexLookup.get(indexName);
+            Type keySchema = index.getSecond().getKeySchema();
+            if (key.type().equals(keySchema) || keySchema.getTypeId() != TypeId.COMPOSITE) {
+                return new RecordIterator(tab, tree.scanEqual(key));
+            }
+            List<DataBox> prefix = key instanceof CompositeDataBox ? ((CompositeDataBox) key).getValues()
+                                   : Collections.singletonList(key);
+            List<String> colNames = tab.getSchema().getFieldNames();
+            int[] columns = new int[prefix.size()];
+            for (int i = 0; i < columns.length; ++i) {
+                columns[i] = colNames.indexOf(index.getSecond().getColNames().get(i));
+            }
+            Iterator<Record> records = new RecordIterator(tab,
+                    tree.scanGreaterEqual(CompositeDataBox.lowerBound(keySchema, prefix)));
+            return new KeyPrefixIterator(records, columns, prefix);
         }
 
+        // throws DatabaseException if the index on tableName.columnName is not a B+ tree
         private Pair<String, BPlusTree> resolveIndexFromName(String tableName,
                 String columnName) {
             String indexName = resolveIndexMetadataFromName(tableName, columnName).getFirst();
-            return new Pair<>(indexName, Database.this.indexLookup.get(indexName));
+            BPlusTree tree = Database.this.indexLookup.get(indexName);
+            if (tree == null) {
+                throw new DatabaseException("index " + indexName + " is not a B+ tree");
+            }
+            return new Pair<>(indexName, tree);
+        }
+
+        private void putIndexEntry(String indexName, DataBox key, RecordId rid) {
+            HashIndex hashIndex = hashIndexLookup.get(indexName);
+            if (hashIndex != null) {
+                hashIndex.put(key, rid);
+            } else {
+                indexLookup.get(indexName).put(key, rid);
+            }
+        }
+
+        private void removeIndexEntry(String indexName, DataBox key) {
+            HashIndex hashIndex = hashIndexLookup.get(indexName);
+            if (hashIndex != null) {
+                hashIndex.remove(key);
+            } else {
+                indexLookup.get(indexName).remove(key);
+            }
         }
 
         @Override
@@ -1184,9 +1704,14 @@ public class Database implements AutoCloseable {
         private TransactionContext transactionContext;
 
         private TransactionImpl(long transNum, boolean recovery) {
+            this(transNum, recovery, null);
+        }
+
+        // SNAPSHOT is the snapshot read by a read-only transaction, or null
+        private TransactionImpl(long transNum, boolean recovery, Long snapshot) {
             this.transNum = transNum;
             this.recoveryTransaction = recovery;
-            this.transactionContext = new TransactionContextImpl(transNum);
+            this.transactionContext = new TransactionContextImpl(transNum, snapshot);
         }
 
         @Override
@@ -1196,6 +1721,10 @@ public class Database implements AutoCloseable {
             transactionContext.deleteAllTempTables();
 
             recoveryManager.commit(transNum);
+            if (!transactionContext.isReadOnly()) {
+                bufferManager.getVersionStore().commit(transNum);
+                optimisticValidator.commitWrites(transNum);
+            }
 
             this.cleanup();
             /*
@@ -1230,8 +1759,16 @@ public class Database implements AutoCloseable {
             return transNum;
         }
 
+        // throws if the transaction may not modify the database
+        private void checkWritable() {
+            if (transactionContext.isReadOnly()) {
+                throw new DatabaseException("transaction " + transNum + " is read-only");
+            }
+        }
+
         @Override
         public void createTable(Schema s, String tableName) {
+            checkWritable();
             if (tableName.contains(".") && !tableName.startsWith(USER_TABLE_PREFIX)) {
                 throw new IllegalArgumentException("name of new table may not contain '.'");
             }
@@ -1267,6 +1804,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void dropTable(String tableName) {
+            checkWritable();
             if (tableName.contains(".") && !tableName.startsWith(USER_TABLE_PREFIX)) {
                 throw new IllegalArgumentException("name of table may not contain '.': " + tableName);
             }
@@ -1284,7 +1822,7 @@ public class Database implements AutoCloseable {
                 }
 
                 for (String indexName : new ArrayList<>(tableIndices.get(prefixedTableName))) {
-                    String[] parts = indexName.split(",");
+                    String[] parts = indexName.split(",", 2);
                     dropIndex(parts[0], parts[1]);
                 }
 
@@ -1301,6 +1839,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void dropAllTables() {
+            checkWritable();
             TransactionContext.setTransaction(transactionContext);
             try {
                 // TODO(proj4_part3): add locking
@@ -1319,6 +1858,12 @@ public class Database implements AutoCloseable {
 
         @Override
         public void createIndex(String tableName, String columnName, boolean bulkLoad) {
+            createIndex(tableName, Collections.singletonList(columnName), bulkLoad);
+        }
+
+        @Override
+        public void createIndex(String tableName, List<String> columnNames, boolean bulkLoad) {
+            checkWritable();
             if (tableName.contains(".") && !tableName.startsWith(USER_TABLE_PREFIX)) {
                 throw new IllegalArgumentException("name of table may not contain '.'");
             }
@@ -1337,12 +1882,28 @@ public class Database implements AutoCloseable {
                 Schema s = tableMetadata.schema;
                 List<String> schemaColNames = s.getFieldNames();
                 List<Type> schemaColType = s.getFieldTypes();
-                if (!schemaColNames.contains(columnName)) {
-                    throw new DatabaseException("table " + tableName + " does not have a column " + columnName);
+                if (columnNames.isEmpty() || new HashSet<>(columnNames).size() != columnNames.size()) {
+                    throw new DatabaseException("invalid index columns " + columnNames);
+                }
+                int[] columnIndices = new int[columnNames.size()];
+                List<Type> colTypes = new ArrayList<>();
+                for (int i = 0; i < columnIndices.length; ++i) {
+                    if (!schemaColNames.contains(columnNames.get(i))) {
+                        throw new DatabaseException("table " + tableName + " does not have a column " +
+                                                    columnNames.get(i));
+                    }
+                    columnIndices[i] = schemaColNames.indexOf(columnNames.get(i));
+                    colTypes.add(schemaColType.get(columnIndices[i]));
                 }
 
-                int columnIndex = schemaColNames.indexOf(columnName);
-                Type colType = schemaColType.get(columnIndex);
+                // an index on several columns is named after all of them, and its key is a
+                // CompositeDataBox of their values
+                String columnName = String.join(",", columnNames);
+                if (columnName.length() > 32) {
+                    throw new DatabaseException("column names of index on " + tableName + "(" + columnName +
+                                                ") are too long");
+                }
+                Type colType = colTypes.size() == 1 ? colTypes.get(0) : Type.compositeType(colTypes);
                 String indexName = tableName + "," + columnName;
 
                 lockIndexMetadata(indexName, LockType.NL);
@@ -1375,11 +1936,12 @@ public class Database implements AutoCloseable {
                 Table table = tableLookup.get(prefixedTableName);
                 BPlusTree tree = indexLookup.get(indexName);
                 if (bulkLoad) {
-                    throw new UnsupportedOperationException("not implemented");
+                    tree.bulkLoad(sortedColumnEntries(table, columnIndices), INDEX_FILL_FACTOR, executor,
+                                  INDEX_BUILD_THREADS);
                 } else {
                     for (RecordId rid : (Iterable<RecordId>) table::ridIterator) {
                         Record record = table.getRecord(rid);
-                        tree.put(record.getValues().get(columnIndex), rid);
+                        tree.put(indexKey(indexName, schemaColNames, record.getValues()), rid);
                     }
                 }
             } finally {
@@ -1387,8 +1949,169 @@ public class Database implements AutoCloseable {
             }
         }
 
+        @Override
+        public void createHashIndex(String tableName, String columnName) {
+            checkWritable();
+            if (tableName.contains(".") && !tableName.startsWith(USER_TABLE_PREFIX)) {
+                throw new IllegalArgumentException("name of table may not contain '.'");
+            }
+            String prefixedTableName = prefixUserTableName(tableName);
+            TransactionContext.setTransaction(transactionContext);
+            try {
+                // TODO(proj4_part3): add locking
+
+                lockTableMetadata(prefixedTableName, LockType.NL);
+
+                TableInfoRecord tableMetadata = getTableMetadata(prefixedTableName);
+                if (!tableMetadata.isAllocated()) {
+                    throw new DatabaseException("table " + tableName + " does not exist");
+                }
+
+                Schema s = tableMetadata.schema;
+                List<String> schemaColNames = s.getFieldNames();
+                if (!schemaColNames.contains(columnName)) {
+                    throw new DatabaseException("table " + tableName + " does not have a column " + columnName);
+                }
+
+                int columnIndex = schemaColNames.indexOf(columnName);
+                Type colType = s.getFieldTypes().get(columnIndex);
+                String indexName = tableName + "," + columnName;
+
+                lockIndexMetadata(indexName, LockType.NL);
+
+                if (getIndexMetadata(tableName, columnName) != null) {
+                    throw new DatabaseException("index already exists on " + tableName + "(" + columnName + ")");
+                }
+
+                int partNum = diskSpaceManager.allocPart();
+                HashIndexMetadata metadata = new HashIndexMetadata(tableName, columnName, colType, partNum,
+                        DiskSpaceManager.INVALID_PAGE_NUM);
+                LockContext indexContext = getIndexContext(indexName, partNum);
+                HashIndex index = new HashIndex(bufferManager, metadata, indexContext);
+
+                // the root_page_num column of a hash index holds its header page
+                indexInfo.updateRecord(Arrays.asList(
+                                           new StringDataBox(tableName, 32),
+                                           new StringDataBox(columnName, 32),
+                                           new IntDataBox(HASH_INDEX_ORDER),
+                                           new IntDataBox(partNum),
+                                           new LongDataBox(metadata.getHeaderPageNum()),
+                                           new IntDataBox(colType.getTypeId().ordinal()),
+                                           new IntDataBox(colType.getSizeInBytes()),
+                                           new IntDataBox(0)
+                                       ), indexInfoLookup.get(indexName));
+                hashIndexLookup.put(indexName, index);
+                tableIndices.get(prefixedTableName).add(indexName);
+
+                // load data into index
+                Table table = tableLookup.get(prefixedTableName);
+                for (RecordId rid : (Iterable<RecordId>) table::ridIterator) {
+                    Record record = table.getRecord(rid);
+                    index.put(record.getValues().get(columnIndex), rid);
+                }
+            } finally {
+                TransactionContext.unsetTransaction();
+            }
+        }
+
+        /**
+         * Returns the (key, record id) pairs of every record of `table`, where the
+         * key is the value of the column at columnIndices, or a CompositeDataBox
+         * of the values of several columns, sorted by key. INDEX_BUILD_THREADS threads each
+         * scan every INDEX_BUILD_THREADS-th data page, appending the pairs to a
+         * temporary table (the key columns, then the page and entry number of the
+         * record), which is then sorted with an external merge sort (see
+         * SortOperator), so that the pairs are never all sorted in memory.
+         *
+         * The scanning threads all act for this transaction, so the table is
+         * S locked on the calling thread first: the pages they read are then
+         * covered by the table lock, and no thread requests locks for the
+         * transaction while another one does.
+         */
+        private List<Pair<DataBox, RecordId>> sortedColumnEntries(Table table, int[] columnIndices) {
+            LockUtil.ensureSufficientLockHeld(getTableContext(table.getName(), table.getPartNum()), LockType.S);
+
+            List<String> fieldNames = new ArrayList<>();
+            List<Type> fieldTypes = new ArrayList<>();
+            for (int columnIndex : columnIndices) {
+                fieldNames.add(table.getSchema().getFieldNames().get(columnIndex));
+                fieldTypes.add(table.getSchema().getFieldTypes().get(columnIndex));
+            }
+            fieldNames.add("page_num");
+            fieldTypes.add(Type.longType());
+            fieldNames.add("entry_num");
+            fieldTypes.add(Type.intType());
+            String entriesTable = transactionContext.createTempTable(new Schema(fieldNames, fieldTypes));
+            Table entries = transactionContext.getTable(entriesTable);
+
+            List<Future<?>> scans = new ArrayList<>();
+            for (int i = 0; i < INDEX_BUILD_THREADS; ++i) {
+                int worker = i;
+                scans.add(executor.submit(() -> {
+                    TransactionContext.setTransaction(transactionContext);
+                    try {
+                        table.forEachColumnEntry(columnIndices,
+                                                 pageNum -> Math.floorMod(pageNum, INDEX_BUILD_THREADS) == worker,
+                                                 entry -> entries.addRecord(entryValues(entry)));
+                    } finally {
+                        TransactionContext.unsetTransaction();
+                    }
+                }));
+            }
+            for (Future<?> scan : scans) {
+                try {
+                    scan.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DatabaseException("interrupted while scanning " + table.getName());
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw new DatabaseException(e.getCause().toString());
+                }
+            }
+
+            int numKeyColumns = columnIndices.length;
+            Comparator<Record> byKey = (r1, r2) -> {
+                for (int i = 0; i < numKeyColumns; ++i) {
+                    int cmp = r1.getValues().get(i).compareTo(r2.getValues().get(i));
+                    if (cmp != 0) {
+                        return cmp;
+                    }
+                }
+                return 0;
+            };
+            List<Pair<DataBox, RecordId>> sorted = new ArrayList<>();
+            Iterator<Record> records = new SortOperator(transactionContext, entriesTable, byKey).iterator();
+            while (records.hasNext()) {
+                List<DataBox> values = records.next().getValues();
+                List<DataBox> key = values.subList(0, numKeyColumns);
+                RecordId rid = new RecordId(values.get(numKeyColumns).getLong(),
+                                            (short) values.get(numKeyColumns + 1).getInt());
+                sorted.add(new Pair<>(numKeyColumns == 1 ? key.get(0) : new CompositeDataBox(key), rid));
+            }
+            return sorted;
+        }
+
+        // The values of the row of the temporary table of sortedColumnEntries
+        // holding ENTRY.
+        private List<DataBox> entryValues(Pair<DataBox, RecordId> entry) {
+            DataBox key = entry.getFirst();
+            List<DataBox> values = new ArrayList<>();
+            if (key instanceof CompositeDataBox) {
+                values.addAll(((CompositeDataBox) key).getValues());
+            } else {
+                values.add(key);
+            }
+            values.add(new LongDataBox(entry.getSecond().getPageNum()));
+            values.add(new IntDataBox(entry.getSecond().getEntryNum()));
+            return values;
+        }
+
         @Override
         public void dropIndex(String tableName, String columnName) {
+            checkWritable();
             String prefixedTableName = prefixUserTableName(tableName);
             String indexName = tableName + "," + columnName;
             TransactionContext.setTransaction(transactionContext);
@@ -1414,6 +2137,8 @@ public class Database implements AutoCloseable {
 
                 bufferManager.freePart(metadata.getPartNum());
                 indexLookup.remove(indexName);
+                hashIndexLookup.remove(indexName);
+                tableIndices.get(prefixedTableName).remove(indexName);
             } finally {
                 TransactionContext.unsetTransaction();
             }
@@ -1441,6 +2166,7 @@ public class Database implements AutoCloseable {
 
         @Override
         public void insert(String tableName, List<DataBox> values) {
+            checkWritable();
             TransactionContext.setTransaction(transactionContext);
             try {
                 transactionContext.addRecord(tableName, values);
@@ -1457,6 +2183,7 @@ public class Database implements AutoCloseable {
         @Override
         public void update(String tableName, String targetColumnName, UnaryOperator<DataBox> targetValue,
                            String predColumnName, PredicateOperator predOperator, DataBox predValue) {
+            checkWritable();
             TransactionContext.setTransaction(transactionContext);
             try {
                 transactionContext.runUpdateRecordWhere(tableName, targetColumnName, targetValue, predColumnName,
@@ -1469,6 +2196,7 @@ public class Database implements AutoCloseable {
         @Override
         public void delete(String tableName, String predColumnName, PredicateOperator predOperator,
                            DataBox predValue) {
+            checkWritable();
             TransactionContext.setTransaction(transactionContext);
             try {
                 transactionContext.runDeleteRecordWhere(tableName, predColumnName, predOperator, predValue);
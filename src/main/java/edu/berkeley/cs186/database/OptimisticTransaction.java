@@ -0,0 +1,165 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.LockType;
+import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.concurrency.OptimisticValidator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordId;
+
+import java.util.*;
+
+/**
+ * A transaction run optimistically (see Database#runOptimistic), for short
+ * transactions that read and write a few records by RecordId.
+ *
+ * The transaction reads a snapshot of the database as of its start, without
+ * acquiring any locks, and buffers its writes. At commit, it is validated
+ * against the transactions that committed since it started or are still
+ * running (see OptimisticValidator): if none of them wrote a record it read
+ * or wrote, its writes are applied by a short regular transaction, which
+ * locks the records it writes and checks them again first; otherwise, it
+ * throws a ValidationException and none of its writes are applied.
+ *
+ * Only accesses by RecordId are validated, so the transaction offers no scans.
+ */
+public class OptimisticTransaction {
+    private final Database database;
+    private final OptimisticValidator validator;
+    private final Transaction reader;
+    private final long start;
+    private boolean ended = false;
+
+    // records read, by full table name
+    private final Set<Pair<String, RecordId>> readSet = new HashSet<>();
+    // buffered updates (null for deletes), by full table name, in order
+    private final Map<Pair<String, RecordId>, List<DataBox>> writeSet = new LinkedHashMap<>();
+    // buffered inserts, in order
+    private final List<Pair<String, List<DataBox>>> inserts = new ArrayList<>();
+
+    OptimisticTransaction(Database database, OptimisticValidator validator) {
+        this.database = database;
+        this.validator = validator;
+        this.start = validator.begin();
+        this.reader = database.beginReadOnlyTransaction();
+    }
+
+    // the record RID of table TABLENAME, as identified by the validator
+    private Pair<String, RecordId> recordKey(String tableName, RecordId rid) {
+        return new Pair<>(reader.getTransactionContext().getTable(tableName).getName(), rid);
+    }
+
+    /**
+     * Reads a record, as of the start of the transaction (or as last written by it).
+     */
+    public Record getRecord(String tableName, RecordId rid) {
+        Pair<String, RecordId> key = recordKey(tableName, rid);
+        if (writeSet.containsKey(key)) {
+            List<DataBox> values = writeSet.get(key);
+            if (values == null) {
+                throw new DatabaseException("record " + rid + " of " + tableName + " was deleted");
+            }
+            return new Record(values);
+        }
+        readSet.add(key);
+        TransactionContext.setTransaction(reader.getTransactionContext());
+        try {
+            return reader.getTransactionContext().getRecord(tableName, rid);
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
+    /**
+     * Updates a record when the transaction commits.
+     */
+    public void updateRecord(String tableName, RecordId rid, List<DataBox> values) {
+        Pair<String, RecordId> key = recordKey(tableName, rid);
+        if (writeSet.containsKey(key) && writeSet.get(key) == null) {
+            throw new DatabaseException("record " + rid + " of " + tableName + " was deleted");
+        }
+        writeSet.put(key, new ArrayList<>(values));
+    }
+
+    /**
+     * Deletes a record when the transaction commits.
+     */
+    public void deleteRecord(String tableName, RecordId rid) {
+        writeSet.put(recordKey(tableName, rid), null);
+    }
+
+    /**
+     * Inserts a record when the transaction commits.
+     */
+    public void insert(String tableName, List<DataBox> values) {
+        inserts.add(new Pair<>(tableName, new ArrayList<>(values)));
+    }
+
+    /**
+     * Validates the transaction, and applies its writes.
+     *
+     * @throws edu.berkeley.cs186.database.concurrency.ValidationException if
+     * validation fails
+     */
+    void commit() {
+        Set<Pair<String, RecordId>> records = new HashSet<>(readSet);
+        records.addAll(writeSet.keySet());
+        validator.commit(start, records, () -> {
+            if (writeSet.isEmpty() && inserts.isEmpty()) {
+                return;
+            }
+            Transaction t = database.beginTransaction();
+            try {
+                applyWrites(t, records);
+            } catch (RuntimeException e) {
+                // none of the writes may be committed
+                t.rollback();
+                throw e;
+            }
+            t.commit();
+        });
+    }
+
+    // Applies the buffered writes in T, once no transaction other than T can
+    // write the records (with RECORDS, the records accessed) either.
+    private void applyWrites(Transaction t, Collection<Pair<String, RecordId>> records) {
+        TransactionContext transaction = t.getTransactionContext();
+        TransactionContext.setTransaction(transaction);
+        try {
+            for (Pair<String, RecordId> key : writeSet.keySet()) {
+                LockUtil.ensureSufficientLockHeld(database.getRecordContext(key.getFirst(), key.getSecond()),
+                                                  LockType.X);
+            }
+            // a regular transaction may have written the records since validation
+            validator.validate(start, records, t.getTransNum());
+
+            for (Map.Entry<Pair<String, RecordId>, List<DataBox>> e : writeSet.entrySet()) {
+                String tableName = e.getKey().getFirst();
+                RecordId rid = e.getKey().getSecond();
+                if (e.getValue() == null) {
+                    transaction.deleteRecord(tableName, rid);
+                } else {
+                    transaction.updateRecord(tableName, e.getValue(), rid);
+                }
+            }
+            for (Pair<String, List<DataBox>> insert : inserts) {
+                transaction.addRecord(insert.getFirst(), insert.getSecond());
+            }
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
+    /**
+     * Ends the transaction, committed or not.
+     */
+    void end() {
+        if (ended) {
+            return;
+        }
+        ended = true;
+        reader.commit();
+        validator.end(start);
+    }
+}
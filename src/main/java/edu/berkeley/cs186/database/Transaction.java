@@ -124,6 +124,34 @@ public interface Transaction extends AutoCloseable {
      */
     void createIndex(String tableName, String columnName, boolean bulkLoad);
 
+    /**
+     * Creates an index on several columns. Equivalent to
+     *      CREATE INDEX ON tableName (columnNames[0], columnNames[1], ...)
+     * in postgres.
+     *
+     * The keys of the index are CompositeDataBoxes of the values of the columns,
+     * ordered by the first column, then the second, and so on. The index also
+     * serves lookups and scans on any prefix of columnNames, e.g. on
+     * columnNames[0] alone, or on "columnNames[0],columnNames[1]" with a
+     * CompositeDataBox key.
+     *
+     * @param tableName name of table to create index for
+     * @param columnNames names of columns to create index on, in order
+     * @param bulkLoad whether to bulk load data
+     */
+    void createIndex(String tableName, List<String> columnNames, boolean bulkLoad);
+
+    /**
+     * Creates an extendible hash index. A hash index only supports equality
+     * lookups, so the query optimizer only uses it for equality predicates
+     * and index nested loop joins; sorted scans of the column fall back to
+     * sorting the table.
+     *
+     * @param tableName name of table to create index for
+     * @param columnName name of column to create index on
+     */
+    void createHashIndex(String tableName, String columnName);
+
     /**
      * Drops an index. Equivalent to
      *      DROP INDEX tableName_columnName
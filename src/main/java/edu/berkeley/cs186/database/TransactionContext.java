@@ -72,6 +72,18 @@ public interface TransactionContext extends AutoCloseable {
 
     int getWorkMemSize();
 
+    /**
+     * @return whether the transaction is read-only: it reads a snapshot of the
+     * database (see getSnapshot), without acquiring any locks
+     */
+    boolean isReadOnly();
+
+    /**
+     * @return the snapshot that the transaction reads, if it is read-only (see
+     * PageVersionStore#beginSnapshot)
+     */
+    long getSnapshot();
+
     @Override
     void close();
 
@@ -113,6 +125,14 @@ public interface TransactionContext extends AutoCloseable {
      */
     boolean indexExists(String tableName, String columnName);
 
+    /**
+     * @param tableName  the name of the table
+     * @param columnName the name of the column
+     * @return whether the index on this (table,column) is a hash index, which
+     * only supports equality lookups
+     */
+    boolean isHashIndex(String tableName, String columnName);
+
     void updateIndexMetadata(BPlusTreeMetadata metadata);
 
     // Scans ///////////////////////////////////////////////////////////////////
@@ -121,6 +141,26 @@ public interface TransactionContext extends AutoCloseable {
 
     Iterator<Record> sortedScanFrom(String tableName, String columnName, DataBox startValue);
 
+    /**
+     * @return the records whose value of columnName is less than endValue (or
+     * equal to it, if inclusive), in ascending order; the index scan stops at
+     * endValue
+     */
+    Iterator<Record> sortedScanTo(String tableName, String columnName, DataBox endValue, boolean inclusive);
+
+    /**
+     * @return the records whose value of columnName is less than endValue (or
+     * equal to it, if inclusive), in descending order
+     */
+    Iterator<Record> reverseSortedScanTo(String tableName, String columnName, DataBox endValue,
+                                         boolean inclusive);
+
+    /**
+     * @return the records whose value of columnName is at least startValue, in
+     * descending order
+     */
+    Iterator<Record> reverseSortedScanFrom(String tableName, String columnName, DataBox startValue);
+
     Iterator<Record> lookupKey(String tableName, String columnName, DataBox key);
 
     BacktrackingIterator<Record> getRecordIterator(String tableName);
@@ -231,8 +271,20 @@ public interface TransactionContext extends AutoCloseable {
      */
     void unblock();
 
+    /**
+     * Unblocks the transaction like unblock(), except that the block() call it
+     * is waiting in throws `error` instead of returning. Used to abort the
+     * victim of a deadlock.
+     */
+    void abortBlock(RuntimeException error);
+
     /**
      * @return if the transaction is blocked
      */
     boolean getBlocked();
+
+    /**
+     * @return the total time the transaction has spent blocked in block(), in nanoseconds
+     */
+    long getBlockedNanos();
 }
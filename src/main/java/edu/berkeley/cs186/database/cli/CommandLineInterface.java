@@ -172,6 +172,12 @@ public class CommandLineInterface {
             Transaction t = db.beginTransaction();
             PrettyPrinter.printTable(t.getIndexInfo());
             t.close();
+        } else if (cmd.equals("locks")) {
+            // SHOW LOCKS: the holders and waiting requests of every locked resource
+            PrettyPrinter.printLocks(db.getLockManager().snapshot());
+        } else if (cmd.equals("lockstats")) {
+            int limit = tokens.length > 1 ? Integer.parseInt(tokens[1]) : 10;
+            PrettyPrinter.printLockStatistics(db.getLockManager().getStatistics(), limit);
         } else {
             throw new IllegalArgumentException(String.format(
                 "`%s` is not a valid metacommand",
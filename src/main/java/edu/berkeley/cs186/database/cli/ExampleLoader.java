@@ -20,6 +20,9 @@ import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.table.Schema;
 
 public class ExampleLoader {
+    // time between two runs of the background ANALYZE job
+    private static final long ANALYZE_PERIOD_MILLIS = 1000;
+
     public static Database setupDatabase() throws IOException {
         // Basic database for project 1 through 3
         Database database = new Database("demo", 25);
@@ -30,6 +33,8 @@ public class ExampleLoader {
         // Use the following after completing project 5 (recovery)
         // Database database = new Database("demo", 25, new LockManager(), new ClockEvictionPolicy(), true);
         database.setWorkMem(5); // B=5
+        // keep table statistics fresh as the tables are modified
+        database.startBackgroundAnalyze(ANALYZE_PERIOD_MILLIS);
 
         //Create schemas
 
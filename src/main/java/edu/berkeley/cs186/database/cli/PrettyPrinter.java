@@ -4,7 +4,13 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+import edu.berkeley.cs186.database.concurrency.Lock;
+import edu.berkeley.cs186.database.concurrency.LockManager;
+import edu.berkeley.cs186.database.concurrency.LockStatistics;
+import edu.berkeley.cs186.database.concurrency.LockType;
+import edu.berkeley.cs186.database.concurrency.ResourceName;
 import edu.berkeley.cs186.database.databox.*;
 import edu.berkeley.cs186.database.table.Record;
 import edu.berkeley.cs186.database.table.Schema;
@@ -29,6 +35,98 @@ public class PrettyPrinter {
         printRecords(Arrays.asList("column_name", "type"), records.iterator());
     }
 
+    /**
+     * Prints the locks and waiting requests of every resource of the lock table
+     * (see LockManager#snapshot).
+     */
+    public static void printLocks(List<LockManager.ResourceState> states) {
+        List<Record> records = new ArrayList<>();
+        for (LockManager.ResourceState state : states) {
+            records.add(new Record(Arrays.asList(
+                stringBox(state.getName().toString()),
+                stringBox(describeLocks(state.getLocks())),
+                stringBox(describeLocks(state.getWaiting()))
+            )));
+        }
+        printRecords(Arrays.asList("resource", "locks", "waiting"), records.iterator());
+    }
+
+    /**
+     * Prints the lock statistics per lock type, the hottest LIMIT resources, and the
+     * histogram of all wait times.
+     */
+    public static void printLockStatistics(LockStatistics statistics, int limit) {
+        List<String> columnNames = Arrays.asList("", "acquires", "waits", "wait_ms", "promotions",
+                                                 "escalations");
+        List<Record> records = new ArrayList<>();
+        long[] histogram = new long[LockStatistics.NUM_HISTOGRAM_BUCKETS];
+        for (LockType lockType : LockType.values()) {
+            LockStatistics.Counters counters = statistics.getCounters(lockType);
+            records.add(countersRecord(lockType.toString(), counters));
+            long[] h = counters.getWaitHistogram();
+            for (int i = 0; i < h.length; ++i) {
+                histogram[i] += h[i];
+            }
+        }
+        printRecords(replaceFirst(columnNames, "lock_type"), records.iterator());
+
+        records.clear();
+        for (Map.Entry<ResourceName, LockStatistics.Counters> e : statistics.getHotResources(limit)) {
+            records.add(countersRecord(e.getKey().toString(), e.getValue()));
+        }
+        records.add(countersRecord("(untracked)", statistics.getUntrackedCounters()));
+        printRecords(replaceFirst(columnNames, "resource"), records.iterator());
+
+        records.clear();
+        for (int i = 0; i < histogram.length; ++i) {
+            if (histogram[i] == 0) {
+                continue;
+            }
+            String range;
+            if (i == 0) {
+                range = "< 1us";
+            } else if (i == histogram.length - 1) {
+                range = String.format(">= %dus", 1L << (i - 1));
+            } else {
+                range = String.format("%dus - %dus", 1L << (i - 1), 1L << i);
+            }
+            records.add(new Record(Arrays.asList(stringBox(range), new LongDataBox(histogram[i]))));
+        }
+        printRecords(Arrays.asList("wait_time", "waits"), records.iterator());
+    }
+
+    private static Record countersRecord(String name, LockStatistics.Counters counters) {
+        return new Record(Arrays.asList(
+            stringBox(name),
+            new LongDataBox(counters.getAcquires()),
+            new LongDataBox(counters.getWaits()),
+            new FloatDataBox(counters.getWaitNanos() / 1e6f),
+            new LongDataBox(counters.getPromotions()),
+            new LongDataBox(counters.getEscalations())
+        ));
+    }
+
+    private static List<String> replaceFirst(List<String> columnNames, String first) {
+        List<String> names = new ArrayList<>(columnNames);
+        names.set(0, first);
+        return names;
+    }
+
+    private static String describeLocks(List<Lock> locks) {
+        StringBuilder b = new StringBuilder();
+        for (Lock lock : locks) {
+            if (b.length() > 0) {
+                b.append(", ");
+            }
+            b.append('T').append(lock.transactionNum).append(':').append(lock.lockType);
+        }
+        return b.toString();
+    }
+
+    private static StringDataBox stringBox(String s) {
+        return new StringDataBox(s, Math.max(1, s.length()));
+    }
+
     public static void printRecords(List<String> columnNames, Iterator<Record> records) {
         printRecords(columnNames, records, -1);
     }
@@ -10,7 +10,7 @@ public class CreateIndexStatementVisitor extends StatementVisitor {
 
     @Override
     public void execute(Transaction transaction) {
-        transaction.createIndex(tableName, columnName, false);
+        transaction.createIndex(tableName, columnName, true);
         System.out.printf("CREATE INDEX ON %s (%s)\n", tableName, columnName);
     }
 
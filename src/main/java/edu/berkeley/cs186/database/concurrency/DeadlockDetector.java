@@ -0,0 +1,253 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Finds deadlocks between the transactions waiting in a LockManager's queues.
+ *
+ * Every run builds the waits-for graph from the queues (see
+ * LockManager#waitsFor): an edge T1 -> T2 means a request of T1 waits for T2.
+ * For every cycle of the graph, the youngest transaction of the cycle (the
+ * one with the largest transaction number, which has done the least work) is
+ * the victim: its request is removed from its queue, and the block() call it
+ * is waiting in throws a DeadlockException. The victim is then dropped from
+ * the graph, which breaks every other cycle it was part of, before looking
+ * for the next cycle.
+ *
+ * The graph is built one partition of the lock table at a time, so a cycle
+ * may be made of edges seen at different times that never existed together.
+ * A transaction in a deadlock can never be granted its lock, so the edges of
+ * a deadlock cannot change: before its victim is cancelled, every edge of a
+ * cycle is checked again (under the latch of its own partition only), and a
+ * cycle with an edge that is gone is ignored. A transaction that stopped
+ * waiting in between is not cancelled.
+ *
+ * Runs can be triggered by hand with run(), or periodically on a background
+ * thread with start(). Each run also updates statistics on lock waits. A
+ * request counts as waiting from the time it was made until the first run
+ * that no longer sees it in a queue, so wait times are rounded up to the
+ * period of the detector.
+ */
+public class DeadlockDetector {
+    private final LockManager lockManager;
+    // runs the detector periodically, if started
+    private ScheduledExecutorService executor;
+
+    // Statistics, guarded by this.
+    private long numDeadlocks = 0;
+    private long numWaits = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+    private long longestCurrentWaitNanos = 0;
+    // the requests that were waiting during the last run
+    private Set<LockRequest> waiting = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    DeadlockDetector(LockManager lockManager) {
+        this.lockManager = lockManager;
+    }
+
+    /**
+     * Starts running the detector every periodMillis milliseconds on a
+     * background (daemon) thread.
+     */
+    public synchronized void start(long periodMillis) {
+        if (this.executor != null) {
+            return;
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "deadlock-detector");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::run, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background detector, waiting for a run in progress to finish.
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Looks for deadlocks once, and aborts a victim in each.
+     *
+     * @return the transaction numbers of the victims
+     */
+    public synchronized List<Long> run() {
+        Map<LockRequest, Set<Long>> waitsFor = lockManager.waitsFor();
+        long now = System.nanoTime();
+
+        Map<Long, Set<Long>> graph = new TreeMap<>();
+        // the waiting requests of each transaction
+        Map<Long, List<LockRequest>> requests = new HashMap<>();
+        for (Map.Entry<LockRequest, Set<Long>> e : waitsFor.entrySet()) {
+            long transNum = e.getKey().transaction.getTransNum();
+            graph.computeIfAbsent(transNum, t -> new HashSet<>()).addAll(e.getValue());
+            requests.computeIfAbsent(transNum, t -> new ArrayList<>()).add(e.getKey());
+        }
+        List<Long> victims = new ArrayList<>();
+        for (List<Long> cycle = findCycle(graph); cycle != null; cycle = findCycle(graph)) {
+            long victim = Collections.max(cycle);
+            graph.remove(victim);
+            if (isDeadlock(cycle, requests)) {
+                victims.add(victim);
+            }
+        }
+
+        Set<LockRequest> cancelled = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (long victim : victims) {
+            List<LockRequest> victimRequests = new ArrayList<>();
+            for (LockRequest request : requests.get(victim)) {
+                if (lockManager.cancelRequest(request)) {
+                    victimRequests.add(request);
+                }
+            }
+            if (victimRequests.isEmpty()) {
+                continue;
+            }
+            cancelled.addAll(victimRequests);
+            ++numDeadlocks;
+            victimRequests.get(0).transaction.abortBlock(new DeadlockException(
+                    "transaction " + victim + " was aborted to break a deadlock"));
+        }
+
+        updateWaitStatistics(waitsFor.keySet(), cancelled, now);
+        return victims;
+    }
+
+    /**
+     * Returns whether every transaction of `cycle` still waits for the next
+     * one (and the last for the first), according to the lock manager's queues.
+     */
+    private boolean isDeadlock(List<Long> cycle, Map<Long, List<LockRequest>> requests) {
+        for (int i = 0; i < cycle.size(); ++i) {
+            long next = cycle.get((i + 1) % cycle.size());
+            boolean waiting = false;
+            for (LockRequest request : requests.get(cycle.get(i))) {
+                if (lockManager.isWaitingFor(request, next)) {
+                    waiting = true;
+                    break;
+                }
+            }
+            if (!waiting) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the transactions of a cycle in `graph`, or null if it has none.
+     * Edges to transactions that are not in the graph (because they aren't
+     * waiting) are ignored.
+     */
+    private static List<Long> findCycle(Map<Long, Set<Long>> graph) {
+        Set<Long> done = new HashSet<>();
+        for (long start : graph.keySet()) {
+            if (done.contains(start)) {
+                continue;
+            }
+            // iterative depth-first search; path holds the transactions on the
+            // current path, and iters their unexplored edges
+            List<Long> path = new ArrayList<>();
+            Set<Long> onPath = new HashSet<>();
+            Deque<Iterator<Long>> iters = new ArrayDeque<>();
+            path.add(start);
+            onPath.add(start);
+            iters.push(graph.get(start).iterator());
+            while (!iters.isEmpty()) {
+                Iterator<Long> iter = iters.peek();
+                if (!iter.hasNext()) {
+                    iters.pop();
+                    long t = path.remove(path.size() - 1);
+                    onPath.remove(t);
+                    done.add(t);
+                    continue;
+                }
+                long next = iter.next();
+                if (onPath.contains(next)) {
+                    return new ArrayList<>(path.subList(path.indexOf(next), path.size()));
+                }
+                if (done.contains(next) || !graph.containsKey(next)) {
+                    continue;
+                }
+                path.add(next);
+                onPath.add(next);
+                iters.push(graph.get(next).iterator());
+            }
+        }
+        return null;
+    }
+
+    private void updateWaitStatistics(Set<LockRequest> nowWaiting, Set<LockRequest> cancelled, long now) {
+        for (LockRequest request : waiting) {
+            if (!nowWaiting.contains(request)) {
+                recordWait(now - request.requestTime);
+            }
+        }
+        Set<LockRequest> stillWaiting = Collections.newSetFromMap(new IdentityHashMap<>());
+        longestCurrentWaitNanos = 0;
+        for (LockRequest request : nowWaiting) {
+            if (cancelled.contains(request)) {
+                recordWait(now - request.requestTime);
+            } else {
+                stillWaiting.add(request);
+                longestCurrentWaitNanos = Math.max(longestCurrentWaitNanos, now - request.requestTime);
+            }
+        }
+        waiting = stillWaiting;
+    }
+
+    private void recordWait(long nanos) {
+        ++numWaits;
+        totalWaitNanos += nanos;
+        maxWaitNanos = Math.max(maxWaitNanos, nanos);
+    }
+
+    /** @return the number of deadlocks broken so far */
+    public synchronized long getNumDeadlocks() {
+        return numDeadlocks;
+    }
+
+    /** @return the number of lock waits that ended (by a grant or an abort) */
+    public synchronized long getNumWaits() {
+        return numWaits;
+    }
+
+    /** @return the average duration of the lock waits that ended, in milliseconds */
+    public synchronized double getAverageWaitMillis() {
+        return numWaits == 0 ? 0 : totalWaitNanos / 1e6 / numWaits;
+    }
+
+    /** @return the longest lock wait that ended, in milliseconds */
+    public synchronized double getMaxWaitMillis() {
+        return maxWaitNanos / 1e6;
+    }
+
+    /** @return the number of requests waiting in a queue during the last run */
+    public synchronized int getNumWaiting() {
+        return waiting.size();
+    }
+
+    /** @return how long the oldest request waiting during the last run had waited, in milliseconds */
+    public synchronized double getLongestCurrentWaitMillis() {
+        return longestCurrentWaitNanos / 1e6;
+    }
+}
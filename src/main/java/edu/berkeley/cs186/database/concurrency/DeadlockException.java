@@ -0,0 +1,13 @@
+package edu.berkeley.cs186.database.concurrency;
+
+/**
+ * Thrown to a transaction that was waiting for a lock when the deadlock
+ * detector picked it as the victim of a deadlock. The lock was not granted;
+ * the transaction should be rolled back (and may be retried).
+ */
+@SuppressWarnings("serial")
+public class DeadlockException extends RuntimeException {
+    DeadlockException(String message) {
+        super(message);
+    }
+}
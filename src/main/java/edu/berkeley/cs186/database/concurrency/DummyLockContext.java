@@ -3,6 +3,8 @@ package edu.berkeley.cs186.database.concurrency;
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Pair;
 
+import java.util.List;
+
 /**
  * A lock context that doesn't do anything at all. Used where a lock context
  * is expected, but no locking should be done.
@@ -27,6 +29,11 @@ public class DummyLockContext extends LockContext {
     @Override
     public void acquire(TransactionContext transaction, LockType lockType) { }
 
+    @Override
+    public int acquireChildren(TransactionContext transaction, List<Long> names, LockType lockType) {
+        return 0;
+    }
+
     @Override
     public void release(TransactionContext transaction) { }
 
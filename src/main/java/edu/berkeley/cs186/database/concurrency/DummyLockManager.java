@@ -33,6 +33,12 @@ public class DummyLockManager extends LockManager {
     public void acquire(TransactionContext transaction, ResourceName name,
                         LockType lockType) throws DuplicateLockRequestException { }
 
+    @Override
+    public List<ResourceName> acquireAll(TransactionContext transaction, List<ResourceName> names,
+                                         LockType lockType) {
+        return Collections.emptyList();
+    }
+
     @Override
     public void release(TransactionContext transaction, ResourceName name)
     throws NoLockHeldException { }
@@ -56,5 +62,8 @@ public class DummyLockManager extends LockManager {
     public List<Lock> getLocks(TransactionContext transaction) {
         return Collections.emptyList();
     }
+
+    @Override
+    public void startDeadlockDetection(long periodMillis) { }
 }
 
@@ -40,6 +40,13 @@ public class LockContext {
     // Whether or not any new child LockContexts should be marked readonly.
     protected boolean childLocksDisabled;
 
+    // The auto-escalation policy (see LockContext#autoEscalate): a transaction's locks on
+    // descendants are escalated once its saturation reaches escalationThreshold, if this
+    // context has a capacity of at least escalationMinCapacity. Disabled if the threshold
+    // is negative.
+    protected double escalationThreshold;
+    protected int escalationMinCapacity;
+
     public LockContext(LockManager lockman, LockContext parent, Pair<String, Long> name) {
         this(lockman, parent, name, false);
     }
@@ -58,6 +65,8 @@ public class LockContext {
         this.capacity = -1;
         this.children = new ConcurrentHashMap<>();
         this.childLocksDisabled = readonly;
+        this.escalationThreshold = -1;
+        this.escalationMinCapacity = 0;
     }
 
     /**
@@ -99,6 +108,39 @@ public class LockContext {
         return;
     }
 
+    /**
+     * Acquire LOCKTYPE locks for TRANSACTION on the children of this context named NAMES
+     * (e.g. a run of pages of a table), with a single call to the lock manager (see
+     * LockManager#acquireAll). Children on which TRANSACTION already holds a lock are skipped.
+     * TRANSACTION's lock on this context must allow LOCKTYPE locks on children.
+     *
+     * @return the number of locks acquired
+     * @throws InvalidLockException if the request is invalid
+     * @throws UnsupportedOperationException if this context or its children are readonly
+     */
+    public int acquireChildren(TransactionContext transaction, List<Long> names, LockType lockType)
+    throws InvalidLockException {
+        if (readonly || childLocksDisabled) {
+            throw new UnsupportedOperationException("context is readonly");
+        }
+        if (lockType == LockType.NL) {
+            throw new InvalidLockException("cannot acquire NL locks");
+        }
+        LockType parentType = getExplicitLockType(transaction);
+        if (!LockType.canBeParentLock(parentType, lockType)) {
+            throw new InvalidLockException(parentType + " on " + name + " cannot be the parent of " + lockType);
+        }
+        List<ResourceName> resources = new ArrayList<>(names.size());
+        for (long childName : names) {
+            resources.add(childContext(childName).getResourceName());
+        }
+        int numAcquired = lockman.acquireAll(transaction, resources, lockType).size();
+        if (numAcquired > 0) {
+            numChildLocks.merge(transaction.getTransNum(), numAcquired, Integer::sum);
+        }
+        return numAcquired;
+    }
+
     /**
      * Release TRANSACTION's lock on NAME.
      *
@@ -161,9 +203,15 @@ public class LockContext {
      * @throws UnsupportedOperationException if context is readonly
      */
     public void escalate(TransactionContext transaction) throws NoLockHeldException {
+        // an escalation always changes the lock at this level (e.g. IS to S, or IX to X)
+        LockType before = getExplicitLockType(transaction);
+
         // TODO(proj4_part2): implement
 
-        return;
+        LockType after = getExplicitLockType(transaction);
+        if (after != before) {
+            lockman.getStatistics().recordEscalation(name, after);
+        }
     }
 
     /**
@@ -256,6 +304,65 @@ public class LockContext {
         return ((double) numChildLocks.getOrDefault(transaction.getTransNum(), 0)) / capacity();
     }
 
+    /**
+     * Enables auto-escalation: from now on, autoEscalate escalates a transaction's locks
+     * on descendants once its saturation is at least THRESHOLD, if the capacity of this
+     * context is at least MINCAPACITY.
+     */
+    public synchronized void enableAutoEscalate(double threshold, int minCapacity) {
+        if (threshold < 0 || threshold > 1) {
+            throw new IllegalArgumentException("escalation threshold must be between 0 and 1");
+        }
+        this.escalationThreshold = threshold;
+        this.escalationMinCapacity = minCapacity;
+    }
+
+    /**
+     * Disables auto-escalation: autoEscalate never escalates.
+     */
+    public synchronized void disableAutoEscalate() {
+        this.escalationThreshold = -1;
+    }
+
+    /**
+     * Whether auto-escalation would escalate TRANSACTION's locks on descendants of this
+     * context now, according to the policy set by enableAutoEscalate. A transaction with
+     * no locks on descendants has nothing to escalate, even with a threshold of 0.
+     */
+    public boolean shouldEscalate(TransactionContext transaction) {
+        double threshold;
+        int minCapacity;
+        synchronized (this) {
+            threshold = this.escalationThreshold;
+            minCapacity = this.escalationMinCapacity;
+        }
+        if (transaction == null || threshold < 0 || capacity() < minCapacity) {
+            return false;
+        }
+        return numChildLocks.getOrDefault(transaction.getTransNum(), 0) > 0
+               && saturation(transaction) >= threshold;
+    }
+
+    /**
+     * Escalates TRANSACTION's locks on descendants of this context to a single S or X
+     * lock at this level (see escalate), if shouldEscalate(TRANSACTION). This should be
+     * called before a lock on a descendant is requested, so that a transaction touching
+     * a large part of a table (a big scan or bulk update) stops taking page locks.
+     *
+     * @return whether the locks were escalated, i.e. whether the transaction's lock at this
+     * level or its number of locks on descendants changed
+     */
+    public boolean autoEscalate(TransactionContext transaction) {
+        if (!shouldEscalate(transaction)) {
+            return false;
+        }
+        LockType before = getExplicitLockType(transaction);
+        int childLocksBefore = numChildLocks.getOrDefault(transaction.getTransNum(), 0);
+        escalate(transaction);
+        return getExplicitLockType(transaction) != before
+               || numChildLocks.getOrDefault(transaction.getTransNum(), 0) != childLocksBefore;
+    }
+
     @Override
     public String toString() {
         return "LockContext(" + name.toString() + ")";
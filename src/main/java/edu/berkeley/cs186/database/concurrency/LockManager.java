@@ -4,6 +4,8 @@ import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Pair;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * LockManager maintains the bookkeeping for what transactions have
@@ -39,18 +41,38 @@ import java.util.*;
  * This does mean that in the case of:
  *    queue: S(A) X(A) S(A)
  * only the first request should be removed from the queue when the queue is processed.
+ *
+ * The lock table is hash-partitioned by resource name, and each partition has
+ * its own latch. A latch only protects the bookkeeping of its resources while
+ * it is held; never block a transaction while holding one. An operation that
+ * touches several resources at once (acquireAndRelease) latches all of their
+ * partitions up front, in partition order (see latch). Processing a queue may
+ * release locks on resources of other partitions: do so after unlatching, or
+ * by latching all the partitions involved at once, never by latching one more
+ * partition while holding another. The "synchronized block" of the comments
+ * in the methods below is the latched section of the partitions involved.
  */
 public class LockManager {
+    // The number of partitions of the lock table. A power of two, so that a
+    // resource's partition is a mask of its hash.
+    static final int NUM_PARTITIONS = 64;
+
     // transactionLocks is a mapping from transaction number to a list of lock
-    // objects held by that transaction.
-    private Map<Long, List<Lock>> transactionLocks = new HashMap<>();
-    // resourceEntries is a mapping from resource names to a ResourceEntry
+    // objects held by that transaction. The lists are synchronized, since a
+    // transaction's list also changes when another transaction's release
+    // grants it a queued lock.
+    private Map<Long, List<Lock>> transactionLocks = new ConcurrentHashMap<>();
+    // The lock table: a mapping from resource names to a ResourceEntry
     // object, which contains a list of Locks on the object, as well as a
-    // queue for requests on that resource.
-    private Map<ResourceName, ResourceEntry> resourceEntries = new HashMap<>();
+    // queue for requests on that resource. The table is split into
+    // partitions by the hash of the resource name, each guarded by its own
+    // latch, so that requests on different resources (say, IS locks on two
+    // tables) don't all serialize on one monitor.
+    private final Partition[] partitions = new Partition[NUM_PARTITIONS];
 
     // A ResourceEntry contains the list of locks on a resource, as well as
-    // the queue for requests for locks on the resource.
+    // the queue for requests for locks on the resource. It must only be used
+    // while holding the latch of its partition.
     private class ResourceEntry {
         // List of currently granted locks on the resource.
         List<Lock> locks = new ArrayList<>();
@@ -66,16 +88,95 @@ public class LockManager {
         }
     }
 
+    // A partition of the lock table, and the latch that guards it.
+    private class Partition {
+        final int index;
+        final ReentrantLock latch = new ReentrantLock();
+        final Map<ResourceName, ResourceEntry> resourceEntries = new HashMap<>();
+
+        Partition(int index) {
+            this.index = index;
+        }
+    }
+
+    // Counters on lock requests, waits, promotions and escalations, see getStatistics.
+    private final LockStatistics statistics = new LockStatistics();
+
+    // Finds and breaks deadlocks between waiting requests, see startDeadlockDetection.
+    private final DeadlockDetector deadlockDetector = new DeadlockDetector(this);
+
     // You should not modify or use this directly.
-    private Map<Long, LockContext> contexts = new HashMap<>();
+    private Map<Long, LockContext> contexts = new ConcurrentHashMap<>();
+
+    public LockManager() {
+        for (int i = 0; i < NUM_PARTITIONS; ++i) {
+            partitions[i] = new Partition(i);
+        }
+    }
+
+    /**
+     * Returns the partition of the lock table that holds NAME.
+     */
+    private Partition partition(ResourceName name) {
+        int h = name.hashCode();
+        // spread the high bits, like HashMap does
+        return partitions[(h ^ (h >>> 16)) & (NUM_PARTITIONS - 1)];
+    }
+
+    /**
+     * Latches the partitions holding NAMES, in partition order so that two
+     * threads latching overlapping sets of partitions cannot deadlock, and
+     * returns them. Release them with unlatch.
+     */
+    private List<Partition> latch(Collection<ResourceName> names) {
+        SortedMap<Integer, Partition> latched = new TreeMap<>();
+        for (ResourceName name : names) {
+            Partition p = partition(name);
+            latched.put(p.index, p);
+        }
+        for (Partition p : latched.values()) {
+            p.latch.lock();
+        }
+        return new ArrayList<>(latched.values());
+    }
+
+    private List<Partition> latch(ResourceName name) {
+        return latch(Collections.singletonList(name));
+    }
+
+    private void unlatch(List<Partition> latched) {
+        for (int i = latched.size() - 1; i >= 0; --i) {
+            latched.get(i).latch.unlock();
+        }
+    }
 
     /**
      * Helper method to fetch the resourceEntry corresponding to NAME.
      * Inserts a new (empty) resourceEntry into the map if no entry exists yet.
+     * The caller must hold the latch of NAME's partition.
      */
     private ResourceEntry getResourceEntry(ResourceName name) {
-        resourceEntries.putIfAbsent(name, new ResourceEntry());
-        return resourceEntries.get(name);
+        return partition(name).resourceEntries.computeIfAbsent(name, n -> new ResourceEntry());
+    }
+
+    /**
+     * Helper method to fetch the (synchronized) list of locks held by the
+     * transaction with number TRANSNUM, creating it if needed.
+     */
+    private List<Lock> getTransactionLocks(long transNum) {
+        return transactionLocks.computeIfAbsent(transNum, t -> Collections.synchronizedList(new ArrayList<>()));
+    }
+
+    /**
+     * Records a wait on NAME for a LOCKTYPE lock, if TRANSACTION has been blocked since
+     * its total blocked time was BLOCKEDNANOS.
+     */
+    private void recordWait(TransactionContext transaction, ResourceName name, LockType lockType,
+                            long blockedNanos) {
+        long waited = transaction.getBlockedNanos() - blockedNanos;
+        if (waited > 0) {
+            statistics.recordWait(name, lockType, waited);
+        }
     }
 
     // TODO(proj4_part1): You may add helper methods here if you wish
@@ -109,8 +210,19 @@ public class LockManager {
         // you will have to write some code outside the synchronized block to avoid locking up
         // the entire lock manager when a transaction is blocked. You are also allowed to
         // move the synchronized block elsewhere if you wish.
-        synchronized (this) {
-            return;
+        statistics.recordAcquire(name, lockType);
+        long blockedNanos = transaction.getBlockedNanos();
+        try {
+            List<ResourceName> names = new ArrayList<>(releaseLocks);
+            names.add(name);
+            List<Partition> latched = latch(names);
+            try {
+                return;
+            } finally {
+                unlatch(latched);
+            }
+        } finally {
+            recordWait(transaction, name, lockType, blockedNanos);
         }
     }
 
@@ -133,11 +245,72 @@ public class LockManager {
         // you will have to write some code outside the synchronized block to avoid locking up
         // the entire lock manager when a transaction is blocked. You are also allowed to
         // move the synchronized block elsewhere if you wish.
-        synchronized (this) {
-            return;
+        statistics.recordAcquire(name, lockType);
+        long blockedNanos = transaction.getBlockedNanos();
+        try {
+            List<Partition> latched = latch(name);
+            try {
+                return;
+            } finally {
+                unlatch(latched);
+            }
+        } finally {
+            recordWait(transaction, name, lockType, blockedNanos);
         }
     }
 
+    /**
+     * Acquire LOCKTYPE locks on every resource in NAMES that TRANSACTION holds no lock on yet,
+     * and returns those resources. This is a batched version of acquire, for scans that lock
+     * a run of pages: the partitions of all of NAMES are latched once, and every lock on a
+     * resource that no other transaction holds or waits for is granted in that one latched
+     * section. The remaining resources go through acquire, one at a time and in order,
+     * which decides whether the lock is compatible with the others and blocks as needed
+     * (so that this method does not depend on LockType.compatible itself).
+     */
+    public List<ResourceName> acquireAll(TransactionContext transaction, List<ResourceName> names,
+                                         LockType lockType) {
+        long transNum = transaction.getTransNum();
+        List<ResourceName> acquired = new ArrayList<>();
+        List<ResourceName> contended = new ArrayList<>();
+        Set<ResourceName> seen = new HashSet<>();
+        List<Partition> latched = latch(names);
+        try {
+            List<Lock> transLocks = getTransactionLocks(transNum);
+            for (ResourceName name : names) {
+                ResourceEntry entry = getResourceEntry(name);
+                boolean held = false;
+                boolean grantable = entry.waitingQueue.isEmpty();
+                for (Lock lock : entry.locks) {
+                    if (lock.transactionNum == transNum) {
+                        held = true;
+                    } else {
+                        grantable = false;
+                    }
+                }
+                if (held || !seen.add(name)) {
+                    continue;
+                }
+                if (grantable) {
+                    Lock lock = new Lock(name, lockType, transNum);
+                    entry.locks.add(lock);
+                    transLocks.add(lock);
+                    acquired.add(name);
+                    statistics.recordAcquire(name, lockType);
+                } else {
+                    contended.add(name);
+                }
+            }
+        } finally {
+            unlatch(latched);
+        }
+        for (ResourceName name : contended) {
+            acquire(transaction, name, lockType);
+            acquired.add(name);
+        }
+        return acquired;
+    }
+
     /**
      * Release TRANSACTION's lock on NAME.
      *
@@ -153,8 +326,11 @@ public class LockManager {
     throws NoLockHeldException {
         // TODO(proj4_part1): implement
         // You may modify any part of this method.
-        synchronized (this) {
+        List<Partition> latched = latch(name);
+        try {
             return;
+        } finally {
+            unlatch(latched);
         }
     }
 
@@ -183,18 +359,31 @@ public class LockManager {
     throws DuplicateLockRequestException, NoLockHeldException, InvalidLockException {
         // TODO(proj4_part1): implement
         // You may modify any part of this method.
-        synchronized (this) {
-            return;
+        statistics.recordPromotion(name, newLockType);
+        long blockedNanos = transaction.getBlockedNanos();
+        try {
+            List<Partition> latched = latch(name);
+            try {
+                return;
+            } finally {
+                unlatch(latched);
+            }
+        } finally {
+            recordWait(transaction, name, newLockType, blockedNanos);
         }
     }
 
     /**
      * Return the type of lock TRANSACTION has on NAME (return NL if no lock is held).
      */
-    public synchronized LockType getLockType(TransactionContext transaction, ResourceName name) {
+    public LockType getLockType(TransactionContext transaction, ResourceName name) {
         // TODO(proj4_part1): implement
-
-        return LockType.NL;
+        List<Partition> latched = latch(name);
+        try {
+            return LockType.NL;
+        } finally {
+            unlatch(latched);
+        }
     }
 
     /**
@@ -202,8 +391,14 @@ public class LockManager {
      * A promotion or acquire-and-release should count as acquired
      * at the original time.
      */
-    public synchronized List<Lock> getLocks(ResourceName name) {
-        return new ArrayList<>(resourceEntries.getOrDefault(name, new ResourceEntry()).locks);
+    public List<Lock> getLocks(ResourceName name) {
+        List<Partition> latched = latch(name);
+        try {
+            ResourceEntry entry = partition(name).resourceEntries.get(name);
+            return entry == null ? new ArrayList<>() : new ArrayList<>(entry.locks);
+        } finally {
+            unlatch(latched);
+        }
     }
 
     /**
@@ -211,7 +406,7 @@ public class LockManager {
      * TRANSACTION, in order of acquisition. A promotion or
      * acquire-and-release should count as acquired at the original time.
      */
-    public synchronized List<Lock> getLocks(TransactionContext transaction) {
+    public List<Lock> getLocks(TransactionContext transaction) {
         return new ArrayList<>(transactionLocks.getOrDefault(transaction.getTransNum(),
                                Collections.emptyList()));
     }
@@ -220,18 +415,222 @@ public class LockManager {
      * Creates a lock context. See comments at
      * he top of this file and the top of LockContext.java for more information.
      */
-    public synchronized LockContext context(String readable, long name) {
-        if (!contexts.containsKey(name)) {
-            contexts.put(name, new LockContext(this, null, new Pair<>(readable, name)));
-        }
-        return contexts.get(name);
+    public LockContext context(String readable, long name) {
+        return contexts.computeIfAbsent(name, n -> new LockContext(this, null, new Pair<>(readable, n)));
     }
 
     /**
      * Create a lock context for the database. See comments at
      * the top of this file and the top of LockContext.java for more information.
      */
-    public synchronized LockContext databaseContext() {
+    public LockContext databaseContext() {
         return context("database", 0L);
     }
+
+    // Instrumentation /////////////////////////////////////////////////////////
+
+    /**
+     * Returns the counters of this lock manager's lock requests, waits, promotions and
+     * escalations, per resource and per lock type.
+     */
+    public LockStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * The state of a resource in the lock table: its granted locks, in order of
+     * acquisition, and the locks requested by its queue, in queue order.
+     */
+    public static class ResourceState {
+        private final ResourceName name;
+        private final List<Lock> locks;
+        private final List<Lock> waiting;
+
+        private ResourceState(ResourceName name, List<Lock> locks, List<Lock> waiting) {
+            this.name = name;
+            this.locks = locks;
+            this.waiting = waiting;
+        }
+
+        public ResourceName getName() {
+            return name;
+        }
+
+        public List<Lock> getLocks() {
+            return locks;
+        }
+
+        public List<Lock> getWaiting() {
+            return waiting;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": locks " + locks + ", waiting " + waiting;
+        }
+    }
+
+    /**
+     * Returns the state of every resource that has granted locks or waiting requests,
+     * sorted by resource name (for SHOW LOCKS). The partitions of the lock table are
+     * latched one at a time, just long enough to copy their entries, so this can run
+     * under load: every resource's state is consistent, but different partitions may
+     * be copied at slightly different times.
+     */
+    public List<ResourceState> snapshot() {
+        List<ResourceState> states = new ArrayList<>();
+        for (Partition p : partitions) {
+            p.latch.lock();
+            try {
+                for (Map.Entry<ResourceName, ResourceEntry> e : p.resourceEntries.entrySet()) {
+                    ResourceEntry entry = e.getValue();
+                    if (entry.locks.isEmpty() && entry.waitingQueue.isEmpty()) {
+                        continue;
+                    }
+                    List<Lock> waiting = new ArrayList<>();
+                    for (LockRequest request : entry.waitingQueue) {
+                        waiting.add(request.lock);
+                    }
+                    states.add(new ResourceState(e.getKey(), new ArrayList<>(entry.locks), waiting));
+                }
+            } finally {
+                p.latch.unlock();
+            }
+        }
+        states.sort(Comparator.comparing(state -> state.getName().toString()));
+        return states;
+    }
+
+    // Deadlock detection //////////////////////////////////////////////////////
+
+    /**
+     * Starts a background thread that looks for deadlocks every periodMillis
+     * milliseconds (see DeadlockDetector). In every cycle of transactions
+     * waiting for each other, the youngest transaction's lock request is
+     * cancelled and throws a DeadlockException.
+     */
+    public void startDeadlockDetection(long periodMillis) {
+        deadlockDetector.start(periodMillis);
+    }
+
+    /**
+     * Stops the background deadlock detector, if it is running.
+     */
+    public void stopDeadlockDetection() {
+        deadlockDetector.stop();
+    }
+
+    /**
+     * Returns the deadlock detector of this lock manager, which also keeps
+     * statistics on deadlocks and lock waits.
+     */
+    public DeadlockDetector getDeadlockDetector() {
+        return deadlockDetector;
+    }
+
+    /**
+     * Returns the waits-for graph: every request waiting in a queue, mapped to
+     * the numbers of the transactions it waits for. A request waits for the
+     * other transactions that hold an incompatible lock on its resource, and
+     * for those with an incompatible request ahead of it in the queue.
+     *
+     * The partitions are read one at a time, so that requests on the other
+     * partitions go on meanwhile, and the graph is not a consistent snapshot:
+     * its edges may have been seen at different times. The edges of a
+     * deadlock cannot change, but a cycle of the graph may not be one (see
+     * isWaitingFor).
+     *
+     * Compatibility is decided by LockType.compatible, so the graph is only
+     * exact once that is implemented: until then every pair of locks counts
+     * as incompatible, and a request would wait for every other transaction
+     * on its resource. (Nothing is ever queued before acquire is implemented
+     * either, so the graph is empty in the meantime.)
+     */
+    Map<LockRequest, Set<Long>> waitsFor() {
+        Map<LockRequest, Set<Long>> graph = new IdentityHashMap<>();
+        for (Partition p : partitions) {
+            p.latch.lock();
+            try {
+                for (ResourceEntry entry : p.resourceEntries.values()) {
+                    graph.putAll(waitsFor(entry));
+                }
+            } finally {
+                p.latch.unlock();
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the waits-for graph of the requests in the queue of ENTRY (see
+     * waitsFor()). The caller must hold the latch of the entry's partition.
+     */
+    private Map<LockRequest, Set<Long>> waitsFor(ResourceEntry entry) {
+        Map<LockRequest, Set<Long>> graph = new IdentityHashMap<>();
+        List<LockRequest> ahead = new ArrayList<>();
+        for (LockRequest request : entry.waitingQueue) {
+            long waiter = request.transaction.getTransNum();
+            Set<Long> blockers = new HashSet<>();
+            for (Lock lock : entry.locks) {
+                if (lock.transactionNum != waiter && !LockType.compatible(lock.lockType, request.lock.lockType)) {
+                    blockers.add(lock.transactionNum);
+                }
+            }
+            for (LockRequest other : ahead) {
+                long otherNum = other.transaction.getTransNum();
+                if (otherNum != waiter && !LockType.compatible(other.lock.lockType, request.lock.lockType)) {
+                    blockers.add(otherNum);
+                }
+            }
+            ahead.add(request);
+            graph.put(request, blockers);
+        }
+        return graph;
+    }
+
+    /**
+     * Returns whether REQUEST, an edge of the waits-for graph, is still waiting
+     * in its queue for transaction TRANSNUM. Only latches the partition of the
+     * request's resource.
+     */
+    boolean isWaitingFor(LockRequest request, long transNum) {
+        List<Partition> latched = latch(request.lock.name);
+        try {
+            ResourceEntry entry = partition(request.lock.name).resourceEntries.get(request.lock.name);
+            if (entry == null) {
+                return false;
+            }
+            Set<Long> blockers = waitsFor(entry).get(request);
+            return blockers != null && blockers.contains(transNum);
+        } finally {
+            unlatch(latched);
+        }
+    }
+
+    /**
+     * Removes REQUEST from its queue, if it is still waiting there. Only
+     * latches the partition of the request's resource. The caller is
+     * responsible for unblocking the transaction.
+     *
+     * @return whether the request was removed
+     */
+    boolean cancelRequest(LockRequest request) {
+        List<Partition> latched = latch(request.lock.name);
+        try {
+            ResourceEntry entry = partition(request.lock.name).resourceEntries.get(request.lock.name);
+            if (entry == null) {
+                return false;
+            }
+            Iterator<LockRequest> iter = entry.waitingQueue.iterator();
+            while (iter.hasNext()) {
+                if (iter.next() == request) {
+                    iter.remove();
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            unlatch(latched);
+        }
+    }
 }
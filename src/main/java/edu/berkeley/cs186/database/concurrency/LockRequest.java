@@ -15,6 +15,8 @@ class LockRequest {
     TransactionContext transaction;
     Lock lock;
     List<Lock> releasedLocks;
+    // When the request was made (System.nanoTime), for wait time statistics
+    final long requestTime = System.nanoTime();
 
     // Lock request for LOCK, that is not releasing anything.
     LockRequest(TransactionContext transaction, Lock lock) {
@@ -0,0 +1,247 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters on the use of a LockManager, kept per resource and per lock type:
+ * lock requests, waits (requests that blocked the transaction) and a
+ * histogram of their durations, promotions and escalations.
+ *
+ * Recording an event only increments a few LongAdders, so the statistics are
+ * always on. At most MAX_TRACKED_RESOURCES resources have counters of their
+ * own, so that long scans over many pages cannot grow them without bound:
+ * when a new resource finds them all taken, the colder half of the tracked
+ * resources (see getHotResources) is dropped, and their counts move to
+ * getUntrackedCounters(). A resource that stays hot is thus kept, while one
+ * that is only touched once is soon forgotten. Events racing with an
+ * eviction may go uncounted, so counters are approximate.
+ */
+public class LockStatistics {
+    // The number of resources that get counters of their own.
+    static final int MAX_TRACKED_RESOURCES = 10000;
+    // The number of buckets of a wait time histogram. Bucket 0 counts waits of
+    // less than 1 microsecond, bucket i > 0 waits of [2^(i-1), 2^i) microseconds,
+    // and the last bucket every longer wait (over about 4 seconds).
+    public static final int NUM_HISTOGRAM_BUCKETS = 24;
+
+    private final Map<ResourceName, Counters> byResource = new ConcurrentHashMap<>();
+    private final Map<LockType, Counters> byLockType = new EnumMap<>(LockType.class);
+    private final Counters untracked = new Counters();
+
+    /**
+     * The counters of one resource or lock type.
+     */
+    public static class Counters {
+        private final LongAdder acquires = new LongAdder();
+        private final LongAdder waits = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final LongAdder promotions = new LongAdder();
+        private final LongAdder escalations = new LongAdder();
+        private final AtomicLongArray waitHistogram = new AtomicLongArray(NUM_HISTOGRAM_BUCKETS);
+
+        private void recordWait(long nanos) {
+            waits.increment();
+            waitNanos.add(nanos);
+            waitHistogram.incrementAndGet(bucket(nanos));
+        }
+
+        /** @return the number of locks requested (by acquire, acquire-and-release, or acquireAll) */
+        public long getAcquires() {
+            return acquires.sum();
+        }
+
+        /** @return the number of lock requests and promotions that blocked the transaction */
+        public long getWaits() {
+            return waits.sum();
+        }
+
+        /** @return the total time transactions spent blocked on these waits, in nanoseconds */
+        public long getWaitNanos() {
+            return waitNanos.sum();
+        }
+
+        /** @return the number of promotions */
+        public long getPromotions() {
+            return promotions.sum();
+        }
+
+        /** @return the number of escalations */
+        public long getEscalations() {
+            return escalations.sum();
+        }
+
+        /**
+         * @return the number of waits in each bucket of the wait time histogram
+         * (see NUM_HISTOGRAM_BUCKETS)
+         */
+        public long[] getWaitHistogram() {
+            long[] histogram = new long[NUM_HISTOGRAM_BUCKETS];
+            for (int i = 0; i < histogram.length; ++i) {
+                histogram[i] = waitHistogram.get(i);
+            }
+            return histogram;
+        }
+
+        // adds the counts of OTHER to these
+        private void add(Counters other) {
+            acquires.add(other.getAcquires());
+            waits.add(other.getWaits());
+            waitNanos.add(other.getWaitNanos());
+            promotions.add(other.getPromotions());
+            escalations.add(other.getEscalations());
+            for (int i = 0; i < NUM_HISTOGRAM_BUCKETS; ++i) {
+                waitHistogram.addAndGet(i, other.waitHistogram.get(i));
+            }
+        }
+
+        private void reset() {
+            acquires.reset();
+            waits.reset();
+            waitNanos.reset();
+            promotions.reset();
+            escalations.reset();
+            for (int i = 0; i < NUM_HISTOGRAM_BUCKETS; ++i) {
+                waitHistogram.set(i, 0);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return String.format("acquires=%d waits=%d waitMillis=%.3f promotions=%d escalations=%d",
+                                 getAcquires(), getWaits(), getWaitNanos() / 1e6, getPromotions(),
+                                 getEscalations());
+        }
+    }
+
+    LockStatistics() {
+        for (LockType lockType : LockType.values()) {
+            byLockType.put(lockType, new Counters());
+        }
+    }
+
+    /**
+     * Returns the histogram bucket of a wait of NANOS nanoseconds.
+     */
+    static int bucket(long nanos) {
+        long micros = nanos / 1000;
+        int bucket = 64 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, NUM_HISTOGRAM_BUCKETS - 1);
+    }
+
+    private Counters resourceCounters(ResourceName name) {
+        Counters counters = byResource.get(name);
+        if (counters != null) {
+            return counters;
+        }
+        if (byResource.size() >= MAX_TRACKED_RESOURCES) {
+            evictColdest();
+        }
+        return byResource.computeIfAbsent(name, n -> new Counters());
+    }
+
+    // Makes room for new resources, by dropping the colder half of the tracked
+    // ones. Their counts are added to the untracked counters.
+    private synchronized void evictColdest() {
+        if (byResource.size() < MAX_TRACKED_RESOURCES) {
+            // another thread made room
+            return;
+        }
+        List<Map.Entry<ResourceName, Counters>> entries = byHotness();
+        for (Map.Entry<ResourceName, Counters> e : entries.subList(MAX_TRACKED_RESOURCES / 2, entries.size())) {
+            byResource.remove(e.getKey());
+            untracked.add(e.getValue());
+        }
+    }
+
+    // The tracked resources, from the hottest down.
+    private List<Map.Entry<ResourceName, Counters>> byHotness() {
+        // the counters may change while sorting, so sort by a copy of what is compared
+        List<Map.Entry<ResourceName, long[]>> keys = new ArrayList<>();
+        for (Map.Entry<ResourceName, Counters> e : byResource.entrySet()) {
+            Counters counters = e.getValue();
+            keys.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), new long[] {
+                         counters.getWaitNanos(), counters.getAcquires()
+                     }));
+        }
+        Comparator<Map.Entry<ResourceName, long[]>> hotness = Comparator.comparingLong(
+                    (Map.Entry<ResourceName, long[]> e) -> e.getValue()[0])
+                .thenComparingLong(e -> e.getValue()[1]);
+        keys.sort(hotness.reversed());
+        List<Map.Entry<ResourceName, Counters>> entries = new ArrayList<>();
+        for (Map.Entry<ResourceName, long[]> e : keys) {
+            Counters counters = byResource.get(e.getKey());
+            if (counters != null) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), counters));
+            }
+        }
+        return entries;
+    }
+
+    void recordAcquire(ResourceName name, LockType lockType) {
+        resourceCounters(name).acquires.increment();
+        byLockType.get(lockType).acquires.increment();
+    }
+
+    void recordWait(ResourceName name, LockType lockType, long nanos) {
+        resourceCounters(name).recordWait(nanos);
+        byLockType.get(lockType).recordWait(nanos);
+    }
+
+    void recordPromotion(ResourceName name, LockType newLockType) {
+        resourceCounters(name).promotions.increment();
+        byLockType.get(newLockType).promotions.increment();
+    }
+
+    void recordEscalation(ResourceName name, LockType newLockType) {
+        resourceCounters(name).escalations.increment();
+        byLockType.get(newLockType).escalations.increment();
+    }
+
+    /**
+     * @return the counters of the resource NAME (all zero if nothing happened on it,
+     * or if it isn't tracked)
+     */
+    public Counters getCounters(ResourceName name) {
+        Counters counters = byResource.get(name);
+        return counters == null ? new Counters() : counters;
+    }
+
+    /**
+     * @return the counters of the locks of type LOCKTYPE (of the new lock type, for
+     * promotions and escalations)
+     */
+    public Counters getCounters(LockType lockType) {
+        return byLockType.get(lockType);
+    }
+
+    /**
+     * @return the counters of the events on resources that are no longer tracked
+     */
+    public Counters getUntrackedCounters() {
+        return untracked;
+    }
+
+    /**
+     * Returns the (at most) N hottest resources with their counters, from the hottest
+     * down: the resources transactions spent the most time waiting for, and among those
+     * with equal wait times (e.g. without contention), the most requested ones.
+     */
+    public List<Map.Entry<ResourceName, Counters>> getHotResources(int n) {
+        List<Map.Entry<ResourceName, Counters>> entries = byHotness();
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    /**
+     * Resets every counter to zero, and stops tracking every resource.
+     */
+    public void reset() {
+        byResource.clear();
+        for (Counters counters : byLockType.values()) {
+            counters.reset();
+        }
+        untracked.reset();
+    }
+}
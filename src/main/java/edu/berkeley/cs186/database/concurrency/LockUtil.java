@@ -17,11 +17,16 @@ public class LockUtil {
      * lockType is guaranteed to be one of: S, X, NL.
      *
      * If the current transaction is null (i.e. there is no current transaction), this method should do nothing.
+     * Neither does it for read-only transactions, which read a snapshot instead of locking.
      */
     public static void ensureSufficientLockHeld(LockContext lockContext, LockType lockType) {
         // TODO(proj4_part2): implement
 
         TransactionContext transaction = TransactionContext.getTransaction(); // current transaction
+        if (transaction != null && transaction.isReadOnly()) {
+            // read-only transactions read a snapshot, and never lock
+            return;
+        }
 
         return;
     }
@@ -0,0 +1,187 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.table.RecordId;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Validation for optimistic transactions, which run without locks and are
+ * checked for conflicts when they commit.
+ *
+ * The records written by each transaction (any transaction) are tracked until
+ * it ends. When the writer commits, they are stamped with the value of a
+ * logical clock, but only while optimistic transactions are running: a
+ * transaction that starts later reads a snapshot that has the writes, and
+ * cannot conflict with them. An optimistic transaction starts at the current
+ * clock value, and passes validation if no record it read or wrote was
+ * stamped since, and none is written by a transaction that is still running
+ * (whose writes it cannot have read). Validation and the write phase that
+ * follows it run one transaction at a time (see commit), so that no
+ * optimistic write can slip in between the two. Regular transactions do not
+ * wait for validation, so the write phase locks the records it writes and
+ * validates them again (see validate) before writing them.
+ *
+ * Records are identified by the full name of their table and their RecordId.
+ * Stamps are dropped once no running optimistic transaction is older than them.
+ */
+public class OptimisticValidator {
+    // the last stamp handed out
+    private final AtomicLong clock = new AtomicLong();
+    // the last stamp of each record whose writer committed while optimistic transactions were running
+    private final Map<Pair<String, RecordId>, Long> stamps = new ConcurrentHashMap<>();
+    // records written by the running transactions, by transaction number
+    private final Map<Long, Set<Pair<String, RecordId>>> writes = new ConcurrentHashMap<>();
+    // held during validation and the write phase
+    private final ReentrantLock commitLock = new ReentrantLock();
+    // start times of the running optimistic transactions, with their counts; guarded by this
+    private final TreeMap<Long, Integer> running = new TreeMap<>();
+    private volatile int numRunning = 0;
+
+    private final LongAdder numCommits = new LongAdder();
+    private final LongAdder numConflicts = new LongAdder();
+
+    /**
+     * Starts an optimistic transaction. Must be called before the transaction
+     * reads anything, and matched by a call to end.
+     *
+     * @return the start time of the transaction
+     */
+    public synchronized long begin() {
+        // counted as running before reading the clock, so that every commit
+        // after this is stamped (see commitWrites)
+        ++numRunning;
+        long start = clock.get();
+        running.merge(start, 1, Integer::sum);
+        return start;
+    }
+
+    /**
+     * Ends an optimistic transaction that started at START, committed or not.
+     */
+    public synchronized void end(long start) {
+        Integer count = running.get(start);
+        if (count == null) {
+            throw new IllegalStateException("no optimistic transaction started at " + start);
+        }
+        if (count == 1) {
+            running.remove(start);
+        } else {
+            running.put(start, count - 1);
+        }
+        --numRunning;
+        if (running.isEmpty()) {
+            stamps.clear();
+        } else {
+            long oldest = running.firstKey();
+            stamps.values().removeIf(stamp -> stamp <= oldest);
+        }
+    }
+
+    /**
+     * Records that record RID of table TABLENAME was written by transaction
+     * TRANSNUM. Must be called after the write, and followed by a call to
+     * commitWrites or abortWrites when the transaction ends.
+     */
+    public void recordWrite(long transNum, String tableName, RecordId rid) {
+        writes.computeIfAbsent(transNum, t -> ConcurrentHashMap.newKeySet()).add(new Pair<>(tableName, rid));
+    }
+
+    /**
+     * Stamps the records written by transaction TRANSNUM, which committed.
+     * Must be called once its writes are visible to new snapshots, so that an
+     * optimistic transaction starting in between either reads the writes or
+     * has them stamped.
+     */
+    public void commitWrites(long transNum) {
+        Set<Pair<String, RecordId>> written = writes.get(transNum);
+        if (written == null) {
+            return;
+        }
+        if (numRunning > 0) {
+            long stamp = clock.incrementAndGet();
+            for (Pair<String, RecordId> record : written) {
+                stamps.put(record, stamp);
+            }
+        }
+        // only forgotten once stamped, so that validation always sees one or the other
+        writes.remove(transNum);
+    }
+
+    /**
+     * Forgets the records written by transaction TRANSNUM, which ended without
+     * committing (and whose writes were rolled back). Does nothing if it has
+     * no writes left, e.g. because it committed.
+     */
+    public void abortWrites(long transNum) {
+        writes.remove(transNum);
+    }
+
+    /**
+     * Validates the optimistic transaction that started at START and accessed
+     * RECORDS, and if it passes, runs its write phase. No other transaction
+     * validates until the write phase returns.
+     *
+     * @throws ValidationException if one of the records was written by a
+     * transaction that committed since the transaction started, or is still
+     * running; writePhase is not run
+     */
+    public void commit(long start, Collection<Pair<String, RecordId>> records, Runnable writePhase) {
+        commitLock.lock();
+        try {
+            validate(start, records, null);
+            writePhase.run();
+            numCommits.increment();
+        } finally {
+            commitLock.unlock();
+        }
+    }
+
+    /**
+     * Checks that none of RECORDS was written by a transaction that committed
+     * since START, or by a running transaction other than WRITER (null if
+     * none). Called by the write phase of an optimistic transaction once it
+     * holds locks on the records it writes, with WRITER the transaction
+     * number of the write phase: a regular transaction may have written the
+     * records since validation.
+     *
+     * @throws ValidationException if one of the records was
+     */
+    public void validate(long start, Collection<Pair<String, RecordId>> records, Long writer) {
+        for (Pair<String, RecordId> record : records) {
+            Long stamp = stamps.get(record);
+            if ((stamp != null && stamp > start) || isBeingWritten(record, writer)) {
+                numConflicts.increment();
+                throw new ValidationException("record " + record.getSecond() + " of " + record.getFirst() +
+                                              " was written by a concurrent transaction");
+            }
+        }
+    }
+
+    // whether a running transaction other than WRITER wrote RECORD
+    private boolean isBeingWritten(Pair<String, RecordId> record, Long writer) {
+        for (Map.Entry<Long, Set<Pair<String, RecordId>>> e : writes.entrySet()) {
+            if (!e.getKey().equals(writer) && e.getValue().contains(record)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return the number of optimistic transactions that passed validation */
+    public long getNumCommits() {
+        return numCommits.sum();
+    }
+
+    /** @return the number of optimistic transactions that failed validation */
+    public long getNumConflicts() {
+        return numConflicts.sum();
+    }
+}
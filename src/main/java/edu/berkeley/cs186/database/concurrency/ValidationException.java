@@ -0,0 +1,13 @@
+package edu.berkeley.cs186.database.concurrency;
+
+/**
+ * Thrown when an optimistic transaction fails validation at commit: a record
+ * it read or wrote was written by another transaction since it started. None
+ * of its writes were applied; the transaction may be retried.
+ */
+@SuppressWarnings("serial")
+public class ValidationException extends RuntimeException {
+    ValidationException(String message) {
+        super(message);
+    }
+}
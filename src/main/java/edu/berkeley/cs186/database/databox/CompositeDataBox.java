@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.databox;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A tuple of primitive values, used as the key of an index on several
+ * columns. Composite values are ordered lexicographically: by their first
+ * component, then by their second, and so on.
+ */
+public class CompositeDataBox extends DataBox {
+    private List<DataBox> values;
+
+    public CompositeDataBox(List<DataBox> values) {
+        this.values = Collections.unmodifiableList(new ArrayList<>(values));
+        // check that the components make up a valid composite type
+        type();
+    }
+
+    /**
+     * Returns the smallest value of the composite type `type` whose first
+     * components are `prefix`, i.e. the value to start a scan from to find
+     * every value that starts with `prefix`.
+     */
+    public static CompositeDataBox lowerBound(Type type, List<DataBox> prefix) {
+        List<Type> components = type.getComponents();
+        if (prefix.size() > components.size()) {
+            throw new DataBoxException("prefix " + prefix + " is longer than " + type);
+        }
+        List<DataBox> values = new ArrayList<>(prefix);
+        for (Type t : components.subList(prefix.size(), components.size())) {
+            values.add(minValue(t));
+        }
+        return new CompositeDataBox(values);
+    }
+
+    private static DataBox minValue(Type type) {
+        switch (type.getTypeId()) {
+        case BOOL: return new BoolDataBox(false);
+        case INT: return new IntDataBox(Integer.MIN_VALUE);
+        case FLOAT: return new FloatDataBox(Float.NEGATIVE_INFINITY);
+        case STRING: return new StringDataBox("", type.getSizeInBytes());
+        case LONG: return new LongDataBox(Long.MIN_VALUE);
+        default: throw new DataBoxException("no minimum value of " + type);
+        }
+    }
+
+    @Override
+    public Type type() {
+        List<Type> types = new ArrayList<>();
+        for (DataBox d : values) {
+            types.add(d.type());
+        }
+        return Type.compositeType(types);
+    }
+
+    public List<DataBox> getValues() {
+        return values;
+    }
+
+    /**
+     * @return whether the first components of this value are equal to `prefix`
+     */
+    public boolean startsWith(List<DataBox> prefix) {
+        return prefix.size() <= values.size() && values.subList(0, prefix.size()).equals(prefix);
+    }
+
+    @Override
+    public byte[] toBytes() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (DataBox d : values) {
+            byte[] b = d.toBytes();
+            bytes.write(b, 0, b.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder("(");
+        for (int i = 0; i < values.size(); ++i) {
+            if (i > 0) {
+                s.append(", ");
+            }
+            s.append(values.get(i));
+        }
+        return s.append(")").toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompositeDataBox)) {
+            return false;
+        }
+        CompositeDataBox c = (CompositeDataBox) o;
+        return this.values.equals(c.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return values.hashCode();
+    }
+
+    @Override
+    public int compareTo(DataBox d) {
+        if (!(d instanceof CompositeDataBox)) {
+            String err = String.format("Invalid comparison between %s and %s.",
+                                       toString(), d.toString());
+            throw new DataBoxException(err);
+        }
+        List<DataBox> other = ((CompositeDataBox) d).values;
+        for (int i = 0; i < Math.min(values.size(), other.size()); ++i) {
+            int c = values.get(i).compareTo(other.get(i));
+            if (c != 0) {
+                return c;
+            }
+        }
+        return Integer.compare(values.size(), other.size());
+    }
+}
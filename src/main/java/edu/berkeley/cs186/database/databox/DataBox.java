@@ -3,6 +3,8 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * A DataBox is an element of one of the primitive types specified in
@@ -11,8 +13,9 @@ import java.nio.charset.Charset;
  *   - booleans with new BoolDataBox(b),
  *   - integers with new IntDataBox(i),
  *   - floats with new FloatDataBox(f),
- *   - strings with new StringDataBox(s, n), and
- *   - longs with new LongDataBox(l).
+ *   - strings with new StringDataBox(s, n),
+ *   - longs with new LongDataBox(l), and
+ *   - tuples of the above with new CompositeDataBox(values).
  *
  * You can unwrap a databox by first pattern matching on its type and then
  * using one of getBool, getInt, getFloat, getString, and getLong:
@@ -57,6 +60,8 @@ public abstract class DataBox implements Comparable<DataBox> {
     //     values (e.g. using ByteBuffer::putInt or ByteBuffer::putFloat).
     //   - The first byte of a serialized m-byte StringDataBox is the 4-byte
     //     number m. Then come the m bytes of the string.
+    //   - A CompositeDataBox is serialized to its serialized components, one
+    //     after the other.
     //
     // Note that when DataBoxes are serialized, they do not serialize their type.
     // That is, serialized DataBoxes are not self-descriptive; you need the type
@@ -85,6 +90,13 @@ public abstract class DataBox implements Comparable<DataBox> {
         case LONG: {
             return new LongDataBox(buf.getLong());
         }
+        case COMPOSITE: {
+            List<DataBox> values = new ArrayList<>();
+            for (Type t : type.getComponents()) {
+                values.add(DataBox.fromBytes(buf, t));
+            }
+            return new CompositeDataBox(values);
+        }
         default: {
             String err = String.format("Unhandled TypeId %s.",
                                        type.getTypeId().toString());
@@ -3,6 +3,9 @@ package edu.berkeley.cs186.database.databox;
 import edu.berkeley.cs186.database.common.Buffer;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 /**
@@ -16,6 +19,10 @@ import java.util.Objects;
  *
  * Note that n-byte strings and m-byte strings are considered different types
  * when n != m.
+ *
+ * There is also a composite type (Type.compositeType(types)) of fixed-length
+ * tuples of primitive values, which is only used for the keys of indices on
+ * several columns. See CompositeDataBox.
  */
 public class Type {
     // The type of this type.
@@ -24,6 +31,9 @@ public class Type {
     // The size (in bytes) of an element of this type.
     private int sizeInBytes;
 
+    // The types of the components of a composite type, and null otherwise.
+    private List<Type> components;
+
     public Type(TypeId typeId, int sizeInBytes) {
         this.typeId = typeId;
         this.sizeInBytes = sizeInBytes;
@@ -60,6 +70,23 @@ public class Type {
         return new Type(TypeId.LONG, Long.BYTES);
     }
 
+    public static Type compositeType(List<Type> components) {
+        if (components.size() < 2) {
+            String msg = "Composite types must have at least two components.";
+            throw new DataBoxException(msg);
+        }
+        int sizeInBytes = 0;
+        for (Type t : components) {
+            if (t.typeId == TypeId.COMPOSITE) {
+                throw new DataBoxException("Composite types may not be nested.");
+            }
+            sizeInBytes += t.sizeInBytes;
+        }
+        Type t = new Type(TypeId.COMPOSITE, sizeInBytes);
+        t.components = Collections.unmodifiableList(new ArrayList<>(components));
+        return t;
+    }
+
     public TypeId getTypeId() {
         return typeId;
     }
@@ -68,6 +95,13 @@ public class Type {
         return sizeInBytes;
     }
 
+    public List<Type> getComponents() {
+        if (components == null) {
+            throw new DataBoxException(this + " is not a composite type");
+        }
+        return components;
+    }
+
     public byte[] toBytes() {
         // A Type is uniquely identified by its typeId `t` and the size (in bytes)
         // of an element of the type `s`. A Type is serialized as two integers. The
@@ -76,9 +110,22 @@ public class Type {
         // For example, the type "42-byte string" would serialized as the bytes [3,
         // 42] because 3 is the ordinal of the STRING TypeId and 42 is the number
         // of bytes in a 42-byte string (duh).
-        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2);
+        //
+        // A composite type is followed by the number of its components, and
+        // then the serialized types of its components.
+        if (components == null) {
+            ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * 2);
+            buf.putInt(typeId.ordinal());
+            buf.putInt(sizeInBytes);
+            return buf.array();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES * (3 + 2 * components.size()));
         buf.putInt(typeId.ordinal());
         buf.putInt(sizeInBytes);
+        buf.putInt(components.size());
+        for (Type t : components) {
+            buf.put(t.toBytes());
+        }
         return buf.array();
     }
 
@@ -100,6 +147,15 @@ public class Type {
         case LONG:
             assert(sizeInBytes == Long.BYTES);
             return Type.longType();
+        case COMPOSITE: {
+            int n = buf.getInt();
+            List<Type> components = new ArrayList<>();
+            for (int i = 0; i < n; ++i) {
+                components.add(Type.fromBytes(buf));
+            }
+            assert(sizeInBytes == Type.compositeType(components).getSizeInBytes());
+            return Type.compositeType(components);
+        }
         default:
             throw new RuntimeException("unreachable");
         }
@@ -107,6 +163,9 @@ public class Type {
 
     @Override
     public String toString() {
+        if (components != null) {
+            return String.format("(%s, %d, %s)", typeId.toString(), sizeInBytes, components);
+        }
         return String.format("(%s, %d)", typeId.toString(), sizeInBytes);
     }
 
@@ -119,11 +178,12 @@ public class Type {
             return false;
         }
         Type t = (Type) o;
-        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes;
+        return typeId.equals(t.typeId) && sizeInBytes == t.sizeInBytes
+               && Objects.equals(components, t.components);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(typeId, sizeInBytes);
+        return Objects.hash(typeId, sizeInBytes, components);
     }
 }
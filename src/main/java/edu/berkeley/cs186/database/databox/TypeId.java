@@ -5,7 +5,8 @@ public enum TypeId {
     INT,
     FLOAT,
     STRING,
-    LONG;
+    LONG,
+    COMPOSITE;
 
     private static final TypeId[] values = TypeId.values();
 
@@ -4,6 +4,11 @@ import java.io.IOException;
 import java.io.FileWriter;
 import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+import java.util.function.IntFunction;
 
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.Pair;
@@ -14,6 +19,7 @@ import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.RecordId;
 
 /**
@@ -36,6 +42,8 @@ import edu.berkeley.cs186.database.table.RecordId;
  *   tree.scanEqual(new IntDataBox(2));        // [(2, 2)]
  *   tree.scanAll();                             // [(0, 0), (1, 1), (2, 2)]
  *   tree.scanGreaterEqual(new IntDataBox(1)); // [(1, 1), (2, 2)]
+ *   tree.scanRange(new IntDataBox(0), new IntDataBox(2)); // [(0, 0), (1, 1)]
+ *   tree.scanAllReverse();                    // [(2, 2), (1, 1), (0, 0)]
  *
  *   // Remove some elements from the tree.
  *   tree.get(new IntDataBox(0)); // Optional.of(RecordId(0, 0))
@@ -108,6 +116,9 @@ public class BPlusTree {
         this.bufferManager = bufferManager;
         this.lockContext = lockContext;
         this.metadata = metadata;
+        // pages of the tree written other than by InnerNode.sync (e.g. by undo or
+        // redo), or freed, must not be read from the inner node cache
+        bufferManager.addPageChangeListener(metadata.getPartNum(), metadata.getInnerNodeCache()::invalidate);
 
         if (this.metadata.getRootPageNum() != DiskSpaceManager.INVALID_PAGE_NUM) {
             this.updateRoot(BPlusNode.fromBytes(this.metadata, bufferManager, lockContext,
@@ -136,10 +147,14 @@ public class BPlusTree {
      */
     public Optional<RecordId> get(DataBox key) {
         typecheck(key);
-        // TODO(proj2): implement
         // TODO(proj4_part3): B+ tree locking
 
-        return Optional.empty();
+        // read before the search, so that the lookup moves right past leaves
+        // that split during it (see LeafNode.getKey)
+        long numLeafSplits = metadata.getLatches().getNumLeafSplits();
+        long leaf = InnerNode.findLeafPageNum(metadata, bufferManager, lockContext,
+                                              metadata.getRootPageNum(), key);
+        return LeafNode.getKey(metadata, bufferManager, lockContext, leaf, key, numLeafSplits);
     }
 
     /**
@@ -189,10 +204,9 @@ public class BPlusTree {
      * memory will receive 0 points.
      */
     public Iterator<RecordId> scanAll() {
-        // TODO(proj2): Return a BPlusTreeIterator.
         // TODO(proj4_part3): B+ tree locking
 
-        return Collections.emptyIterator();
+        return RangeIterator.ascending(metadata, bufferManager, lockContext, null, null, false);
     }
 
     /**
@@ -220,10 +234,90 @@ public class BPlusTree {
      */
     public Iterator<RecordId> scanGreaterEqual(DataBox key) {
         typecheck(key);
-        // TODO(proj2): Return a BPlusTreeIterator.
         // TODO(proj4_part3): B+ tree locking
 
-        return Collections.emptyIterator();
+        return RangeIterator.ascending(metadata, bufferManager, lockContext, key, null, false);
+    }
+
+    /**
+     * Returns an iterator over the RecordIds stored in the B+ tree whose keys
+     * are in [lo, hi), in ascending order of their keys.
+     *
+     *   // Insert keys 1, 2, 3, 4 and 5 into a tree, as above.
+     *   Iterator<RecordId> iter = tree.scanRange(new IntDataBox(2), new IntDataBox(4));
+     *   iter.next(); // RecordId(2, 2)
+     *   iter.next(); // RecordId(3, 3)
+     *   iter.next(); // NoSuchElementException
+     *
+     * Unlike filtering scanGreaterEqual(lo), the scan stops at the first key
+     * that is not less than hi instead of reading the rest of the leaves.
+     * The iterator is lazy; see RangeIterator.
+     */
+    public Iterator<RecordId> scanRange(DataBox lo, DataBox hi) {
+        typecheck(lo);
+        typecheck(hi);
+        return RangeIterator.ascending(metadata, bufferManager, lockContext, lo, hi, false);
+    }
+
+    /**
+     * Returns an iterator over the RecordIds stored in the B+ tree whose keys
+     * are less than `key`, in ascending order of their keys.
+     */
+    public Iterator<RecordId> scanLessThan(DataBox key) {
+        typecheck(key);
+        return RangeIterator.ascending(metadata, bufferManager, lockContext, null, key, false);
+    }
+
+    /**
+     * Returns an iterator over the RecordIds stored in the B+ tree whose keys
+     * are less than or equal to `key`, in ascending order of their keys.
+     */
+    public Iterator<RecordId> scanLessEqual(DataBox key) {
+        typecheck(key);
+        return RangeIterator.ascending(metadata, bufferManager, lockContext, null, key, true);
+    }
+
+    /**
+     * Returns an iterator over all the RecordIds stored in the B+ tree in
+     * descending order of their keys.
+     *
+     *   // Insert keys 1, 2, 3, 4 and 5 into a tree, as above.
+     *   Iterator<RecordId> iter = tree.scanAllReverse();
+     *   iter.next(); // RecordId(5, 5)
+     *   iter.next(); // RecordId(4, 4)
+     *   ...
+     *   iter.next(); // RecordId(1, 1)
+     *   iter.next(); // NoSuchElementException
+     */
+    public Iterator<RecordId> scanAllReverse() {
+        return RangeIterator.descending(metadata, bufferManager, lockContext, null, null, false);
+    }
+
+    /**
+     * Returns an iterator over the RecordIds stored in the B+ tree whose keys
+     * are greater than or equal to `key`, in descending order of their keys.
+     */
+    public Iterator<RecordId> scanGreaterEqualReverse(DataBox key) {
+        typecheck(key);
+        return RangeIterator.descending(metadata, bufferManager, lockContext, key, null, false);
+    }
+
+    /**
+     * Returns an iterator over the RecordIds stored in the B+ tree whose keys
+     * are less than `key`, in descending order of their keys.
+     */
+    public Iterator<RecordId> scanLessThanReverse(DataBox key) {
+        typecheck(key);
+        return RangeIterator.descending(metadata, bufferManager, lockContext, null, key, false);
+    }
+
+    /**
+     * Returns an iterator over the RecordIds stored in the B+ tree whose keys
+     * are less than or equal to `key`, in descending order of their keys.
+     */
+    public Iterator<RecordId> scanLessEqualReverse(DataBox key) {
+        typecheck(key);
+        return RangeIterator.descending(metadata, bufferManager, lockContext, null, key, true);
     }
 
     /**
@@ -275,6 +369,125 @@ public class BPlusTree {
         return;
     }
 
+    /**
+     * Bulk loads `data` into the tree like bulkLoad(data.iterator(), fillFactor),
+     * but builds the tree bottom-up with up to numThreads tasks on `executor`:
+     *
+     *   1. Leaves are cut from consecutive runs of `data`, ceil(2d * fillFactor)
+     *      entries each (the last leaf may hold fewer). Their pages are
+     *      allocated up front, in key order, so every leaf knows its right
+     *      sibling before any leaf is written; the leaves are then written
+     *      concurrently. The first leaf reuses the page of the empty root.
+     *   2. Each level of inner nodes is built over the level below it, again
+     *      concurrently, until a level has a single node, which becomes the
+     *      root. The children of a level are spread evenly over as few nodes of
+     *      at most ceil(2d * fillFactor) + 1 children (and at least 2) as
+     *      possible, so that inner nodes, like leaves, have room left for
+     *      inserts. The key separating two children is the shortest key
+     *      between them (see KeyCompression.shortestSeparator).
+     *
+     * The tree must be empty, and `data` must be sorted by key and free of
+     * duplicates; a BPlusTreeException is raised otherwise. The tasks run as
+     * part of the calling thread's transaction.
+     */
+    public void bulkLoad(List<Pair<DataBox, RecordId>> data, float fillFactor, ExecutorService executor,
+                         int numThreads) {
+        if (!(root instanceof LeafNode) || !((LeafNode) root).getKeys().isEmpty()) {
+            throw new BPlusTreeException("Cannot bulk load into a non-empty B+ tree.");
+        }
+        if (metadata.getOrder() == 0) {
+            throw new BPlusTreeException("Cannot bulk load into a B+ tree of order 0.");
+        }
+        for (int i = 0; i < data.size(); ++i) {
+            typecheck(data.get(i).getFirst());
+            if (i > 0 && data.get(i - 1).getFirst().compareTo(data.get(i).getFirst()) >= 0) {
+                String msg = String.format("Cannot bulk load key %s after key %s; keys must be sorted and distinct.",
+                                           data.get(i).getFirst(), data.get(i - 1).getFirst());
+                throw new BPlusTreeException(msg);
+            }
+        }
+        if (data.isEmpty()) {
+            return;
+        }
+
+        int leafSize = Math.max(1, (int) Math.ceil(2 * metadata.getOrder() * fillFactor));
+        int numLeaves = (data.size() + leafSize - 1) / leafSize;
+        long[] leaves = new long[numLeaves];
+        DataBox[] minKeys = new DataBox[numLeaves];
+        DataBox[] maxKeys = new DataBox[numLeaves];
+        leaves[0] = root.getPage().getPageNum();
+        for (int i = 0; i < numLeaves; ++i) {
+            if (i > 0) {
+                Page page = bufferManager.fetchNewPage(lockContext, metadata.getPartNum(), false);
+                leaves[i] = page.getPageNum();
+                page.unpin();
+            }
+            minKeys[i] = data.get(i * leafSize).getFirst();
+            maxKeys[i] = data.get(Math.min(data.size(), (i + 1) * leafSize) - 1).getFirst();
+        }
+
+        IntFunction<LeafNode> buildLeaf = i -> {
+            List<DataBox> keys = new ArrayList<>();
+            List<RecordId> rids = new ArrayList<>();
+            for (Pair<DataBox, RecordId> entry : data.subList(i * leafSize,
+                    Math.min(data.size(), (i + 1) * leafSize))) {
+                keys.add(entry.getFirst());
+                rids.add(entry.getSecond());
+            }
+            Optional<Long> rightSibling = i + 1 < numLeaves ? Optional.of(leaves[i + 1]) : Optional.empty();
+            Page page = bufferManager.fetchPage(lockContext, leaves[i], false);
+            return new LeafNode(metadata, bufferManager, page, keys, rids, rightSibling, lockContext);
+        };
+        runInParallel(executor, numThreads, numLeaves - 1, i -> buildLeaf.apply(i + 1));
+        BPlusNode newRoot = buildLeaf.apply(0);
+
+        long[] children = leaves;
+        while (children.length > 1) {
+            int fanout = Math.max(2, (int) Math.ceil(2 * metadata.getOrder() * fillFactor) + 1);
+            int numNodes = (children.length + fanout - 1) / fanout;
+            long[] nodes = new long[numNodes];
+            DataBox[] nodeMinKeys = new DataBox[numNodes];
+            DataBox[] nodeMaxKeys = new DataBox[numNodes];
+            long[] level = children;
+            DataBox[] levelMinKeys = minKeys;
+            DataBox[] levelMaxKeys = maxKeys;
+            IntFunction<InnerNode> buildInner = j -> {
+                int from = (int) ((long) level.length * j / numNodes);
+                int to = (int) ((long) level.length * (j + 1) / numNodes);
+                List<DataBox> keys = new ArrayList<>();
+                List<Long> childList = new ArrayList<>();
+                for (int c = from; c < to; ++c) {
+                    if (c > from) {
+                        keys.add(KeyCompression.shortestSeparator(levelMaxKeys[c - 1], levelMinKeys[c]));
+                    }
+                    childList.add(level[c]);
+                }
+                InnerNode node = new InnerNode(metadata, bufferManager, keys, childList, lockContext);
+                nodes[j] = node.getPage().getPageNum();
+                nodeMinKeys[j] = levelMinKeys[from];
+                nodeMaxKeys[j] = levelMaxKeys[to - 1];
+                return node;
+            };
+            if (numNodes == 1) {
+                newRoot = buildInner.apply(0);
+            } else {
+                runInParallel(executor, numThreads, numNodes, buildInner::apply);
+                // updateRoot accounts for the topmost level
+                metadata.incrementHeight();
+            }
+            children = nodes;
+            minKeys = nodeMinKeys;
+            maxKeys = nodeMaxKeys;
+        }
+
+        if (newRoot instanceof LeafNode) {
+            // the root page was rewritten in place, so the metadata is unchanged
+            this.root = newRoot;
+        } else {
+            updateRoot(newRoot);
+        }
+    }
+
     /**
      * Deletes a (key, rid) pair from a B+ tree.
      *
@@ -358,6 +571,9 @@ public class BPlusTree {
     /**
      * Returns the largest number d such that the serialization of a LeafNode
      * with 2d entries and an InnerNode with 2d keys will fit on a single page.
+     * Keys count at their full width, even though nodes may store STRING keys
+     * compressed: a node is split by its number of keys, not its size, and a
+     * block of keys never takes more than its full width (see KeyCompression).
      */
     public static int maxOrder(short pageSize, Type keySchema) {
         int leafOrder = LeafNode.maxOrder(pageSize, keySchema);
@@ -384,6 +600,48 @@ public class BPlusTree {
         }
     }
 
+    /**
+     * Calls task on every i in [0, n), split into up to numThreads contiguous
+     * ranges that run on `executor` as part of the calling thread's transaction.
+     * Returns once every range is done, rethrowing the first failure.
+     */
+    private static void runInParallel(ExecutorService executor, int numThreads, int n, IntConsumer task) {
+        TransactionContext transaction = TransactionContext.getTransaction();
+        int numTasks = Math.min(Math.max(numThreads, 1), n);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < numTasks; ++t) {
+            int from = (int) ((long) n * t / numTasks);
+            int to = (int) ((long) n * (t + 1) / numTasks);
+            futures.add(executor.submit(() -> {
+                if (transaction != null) {
+                    TransactionContext.setTransaction(transaction);
+                }
+                try {
+                    for (int i = from; i < to; ++i) {
+                        task.accept(i);
+                    }
+                } finally {
+                    if (transaction != null) {
+                        TransactionContext.unsetTransaction();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new BPlusTreeException("Interrupted while bulk loading.");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new BPlusTreeException(e.getCause().toString());
+            }
+        }
+    }
+
     private void typecheck(DataBox key) {
         Type t = metadata.getKeySchema();
         if (!key.type().equals(t)) {
@@ -1,5 +1,8 @@
 package edu.berkeley.cs186.database.index;
 
+import java.util.Arrays;
+import java.util.List;
+
 import edu.berkeley.cs186.database.databox.Type;
 
 /** Metadata about a B+ tree. */
@@ -7,7 +10,9 @@ public class BPlusTreeMetadata {
     // Table for which this B+ tree is for
     private final String tableName;
 
-    // Column that this B+ tree uses as a search key
+    // Column that this B+ tree uses as a search key. The key of a B+ tree on
+    // several columns is a CompositeDataBox, and colName is the names of the
+    // columns separated by commas.
     private final String colName;
 
     // B+ trees map keys (of some type) to record ids. This is the type of the
@@ -31,6 +36,12 @@ public class BPlusTreeMetadata {
     // The height of this tree.
     private int height;
 
+    // Decoded inner nodes of this tree, see InnerNodeCache.
+    private final InnerNodeCache innerNodeCache = new InnerNodeCache(InnerNodeCache.DEFAULT_CAPACITY);
+
+    // Latches on the nodes of this tree, see NodeLatches.
+    private final NodeLatches latches = new NodeLatches();
+
     public BPlusTreeMetadata(String tableName, String colName, Type keySchema, int order, int partNum,
                              long rootPageNum, int height) {
         this.tableName = tableName;
@@ -54,6 +65,11 @@ public class BPlusTreeMetadata {
         return colName;
     }
 
+    /** Returns the names of the columns of the key, in order. */
+    public List<String> getColNames() {
+        return Arrays.asList(colName.split(","));
+    }
+
     public String getName() {
         return tableName + "," + colName;
     }
@@ -85,4 +101,12 @@ public class BPlusTreeMetadata {
     void incrementHeight() {
         ++height;
     }
+
+    InnerNodeCache getInnerNodeCache() {
+        return innerNodeCache;
+    }
+
+    NodeLatches getLatches() {
+        return latches;
+    }
 }
@@ -0,0 +1,560 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * A persistent extendible hash index. Like a BPlusTree, a hash index maps keys
+ * to record ids, but it only supports equality lookups:
+ *
+ *   HashIndex index = new HashIndex(bufferManager, metadata, lockContext);
+ *   index.put(new IntDataBox(0), new RecordId(0, (short) 0));
+ *   index.get(new IntDataBox(0));   // Optional.of(RecordId(0, 0))
+ *   index.get(new IntDataBox(1));   // Optional.empty()
+ *   index.remove(new IntDataBox(0));
+ *   index.get(new IntDataBox(0));   // Optional.empty()
+ *
+ * # Storage Format
+ * All pages of the index are allocated on its partition:
+ *
+ *   - The header page holds the global depth g of the index and the page
+ *     numbers of its directory pages.
+ *   - The directory is an array of 2^g bucket page numbers, stored across the
+ *     directory pages. A key whose hash is h belongs in the bucket at directory
+ *     entry h mod 2^g, i.e. the last g bits of h pick the bucket.
+ *   - A bucket page holds the local depth l <= g of the bucket, its number of
+ *     entries, the page number of its overflow page (or -1), and the (key,
+ *     record id) entries themselves. The 2^(g - l) directory entries that agree
+ *     in their last l bits all point to the same bucket.
+ *
+ * When a key is put into a full bucket, the bucket splits on bit l of the hash
+ * into itself and a new bucket, doubling the directory first if l = g. The
+ * directory is cached in memory, so a lookup reads a single bucket page no
+ * matter how many keys the index holds. A bucket only grows a chain of overflow
+ * pages once the directory reaches MAX_GLOBAL_DEPTH, or when all of its keys
+ * have the same hash. Buckets never merge: like BPlusTree.remove, remove only
+ * deletes the entry.
+ *
+ * Like BPlusTree, a hash index does not support duplicate keys; putting a key
+ * that is already in the index raises a HashIndexException.
+ */
+public class HashIndex {
+    // size of the global depth and the number of directory pages on the header page
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    // size of the local depth, number of entries and overflow page number on a bucket page
+    private static final int BUCKET_HEADER_SIZE = 2 * Integer.BYTES + Long.BYTES;
+    private static final int ENTRIES_PER_DIRECTORY_PAGE = BufferManager.EFFECTIVE_PAGE_SIZE / Long.BYTES;
+    private static final int MAX_DIRECTORY_PAGES = (BufferManager.EFFECTIVE_PAGE_SIZE - HEADER_SIZE) / Long.BYTES;
+
+    // The largest global depth whose directory fits on MAX_DIRECTORY_PAGES pages.
+    static final int MAX_GLOBAL_DEPTH =
+        31 - Integer.numberOfLeadingZeros(ENTRIES_PER_DIRECTORY_PAGE * MAX_DIRECTORY_PAGES);
+
+    // Buffer manager
+    private BufferManager bufferManager;
+
+    // Hash index metadata
+    private HashIndexMetadata metadata;
+
+    // Lock context of the hash index
+    private LockContext lockContext;
+
+    // Number of entries that fit on a bucket page
+    private int bucketCapacity;
+
+    // In-memory copy of the directory; directory[i] is the page number of the
+    // bucket for the keys whose hash ends in the bits of i.
+    private long[] directory;
+    private int globalDepth;
+    private List<Long> directoryPages;
+
+    // Readers share the index, while put and remove (which may restructure the
+    // directory) have it to themselves.
+    private final ReadWriteLock rwLock = new ReentrantReadWriteLock();
+
+    /**
+     * Construct a hash index with metadata `metadata`. If the metadata has no
+     * header page, a new empty index is created and its header page is stored
+     * in the metadata; otherwise the index is read from its header page.
+     */
+    public HashIndex(BufferManager bufferManager, HashIndexMetadata metadata, LockContext lockContext) {
+        this.bufferManager = bufferManager;
+        this.metadata = metadata;
+        this.lockContext = lockContext;
+
+        int entrySize = metadata.getKeySchema().getSizeInBytes() + RecordId.getSizeInBytes();
+        this.bucketCapacity = (BufferManager.EFFECTIVE_PAGE_SIZE - BUCKET_HEADER_SIZE) / entrySize;
+        if (bucketCapacity < 1) {
+            String msg = String.format("Keys of type %s do not fit on a hash index page.", metadata.getKeySchema());
+            throw new HashIndexException(msg);
+        }
+
+        if (metadata.getHeaderPageNum() == DiskSpaceManager.INVALID_PAGE_NUM) {
+            Page header = bufferManager.fetchNewPage(lockContext, metadata.getPartNum(), false);
+            metadata.setHeaderPageNum(header.getPageNum());
+            header.unpin();
+
+            this.globalDepth = 0;
+            this.directory = new long[] {allocatePage()};
+            this.directoryPages = new ArrayList<>();
+            writeBucket(directory[0], 0, Collections.emptyList(), DiskSpaceManager.INVALID_PAGE_NUM);
+            writeDirectory();
+        } else {
+            readDirectory();
+        }
+    }
+
+    // Core API ////////////////////////////////////////////////////////////////
+    /** Returns the record id associated with `key`, if any. */
+    public Optional<RecordId> get(DataBox key) {
+        typecheck(key);
+        byte[] keyBytes = key.toBytes();
+        rwLock.readLock().lock();
+        try {
+            long pageNum = directory[bucketIndex(key)];
+            while (pageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+                Page page = bufferManager.fetchPage(lockContext, pageNum, false);
+                try {
+                    Buffer header = readBucketHeader(page);
+                    int numEntries = header.getInt(Integer.BYTES);
+                    for (int i = 0; i < numEntries; ++i) {
+                        Buffer slot = readSlot(page, i);
+                        if (matches(slot, 0, key, keyBytes)) {
+                            slot.position(keyBytes.length);
+                            return Optional.of(RecordId.fromBytes(slot));
+                        }
+                    }
+                    pageNum = header.getLong(2 * Integer.BYTES);
+                } finally {
+                    page.unpin();
+                }
+            }
+            return Optional.empty();
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /** Like get(key), but returns an iterator over the (zero or one) matches. */
+    public Iterator<RecordId> scanEqual(DataBox key) {
+        Optional<RecordId> rid = get(key);
+        return rid.isPresent() ? Collections.singletonList(rid.get()).iterator() : Collections.emptyIterator();
+    }
+
+    /**
+     * Inserts (key, rid) into the index, splitting the bucket of `key` as many
+     * times as needed to make room for it.
+     */
+    public void put(DataBox key, RecordId rid) {
+        typecheck(key);
+        byte[] keyBytes = key.toBytes();
+        rwLock.writeLock().lock();
+        try {
+            while (true) {
+                int index = bucketIndex(key);
+                long lastPageNum = DiskSpaceManager.INVALID_PAGE_NUM;
+                int lastNumEntries = 0;
+                int localDepth = 0;
+                for (long pageNum = directory[index]; pageNum != DiskSpaceManager.INVALID_PAGE_NUM; ) {
+                    Page page = bufferManager.fetchPage(lockContext, pageNum, false);
+                    try {
+                        Buffer header = readBucketHeader(page);
+                        localDepth = header.getInt(0);
+                        lastNumEntries = header.getInt(Integer.BYTES);
+                        for (int i = 0; i < lastNumEntries; ++i) {
+                            if (matches(readSlot(page, i), 0, key, keyBytes)) {
+                                String msg = String.format("Key %s is already in the hash index on %s.", key,
+                                                           metadata.getName());
+                                throw new HashIndexException(msg);
+                            }
+                        }
+                        lastPageNum = pageNum;
+                        pageNum = header.getLong(2 * Integer.BYTES);
+                    } finally {
+                        page.unpin();
+                    }
+                }
+
+                byte[] entry = ByteBuffer.allocate(keyBytes.length + RecordId.getSizeInBytes())
+                               .put(keyBytes).put(rid.toBytes()).array();
+                if (lastNumEntries < bucketCapacity) {
+                    // the last page of the bucket has room: append the entry in place
+                    Page page = bufferManager.fetchPage(lockContext, lastPageNum, false);
+                    try {
+                        Buffer buf = page.getBuffer();
+                        buf.position(entryOffset(lastNumEntries));
+                        buf.put(entry);
+                        buf.putInt(Integer.BYTES, lastNumEntries + 1);
+                    } finally {
+                        page.unpin();
+                    }
+                    return;
+                }
+
+                Bucket bucket = readChain(directory[index]);
+                if (canSplit(bucket, key)) {
+                    split(index, bucket);
+                    continue;
+                }
+                // grow the overflow chain
+                long overflowPageNum = allocatePage();
+                writeBucket(overflowPageNum, localDepth, Collections.singletonList(new Pair<>(key, rid)),
+                            DiskSpaceManager.INVALID_PAGE_NUM);
+                Page page = bufferManager.fetchPage(lockContext, lastPageNum, false);
+                try {
+                    page.getBuffer().putLong(2 * Integer.BYTES, overflowPageNum);
+                } finally {
+                    page.unpin();
+                }
+                return;
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    /** Deletes `key` from the index, if it is there. */
+    public void remove(DataBox key) {
+        typecheck(key);
+        rwLock.writeLock().lock();
+        try {
+            Bucket bucket = readChain(directory[bucketIndex(key)]);
+            int i = bucket.indexOf(key);
+            if (i == -1) {
+                return;
+            }
+            // entries are unordered, so fill the hole with the last entry
+            int last = bucket.entries.size() - 1;
+            bucket.entries.set(i, bucket.entries.get(last));
+            bucket.entries.remove(last);
+            rewrite(bucket);
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
+    // Helpers /////////////////////////////////////////////////////////////////
+    /** Returns the partition number that the index resides on. */
+    public int getPartNum() {
+        return metadata.getPartNum();
+    }
+
+    /** Returns the global depth of the index, i.e. log2 of the size of its directory. */
+    public int getGlobalDepth() {
+        rwLock.readLock().lock();
+        try {
+            return globalDepth;
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the hash of `key`. The hash is computed from the serialized key
+     * (with -0.0 mapped to 0.0, which FloatDataBox considers equal), so it is
+     * the same across runs, and then mixed (with the MurmurHash3 finalizer) since
+     * the directory is indexed by the last bits of the hash.
+     */
+    static int hash(DataBox key) {
+        byte[] bytes = key.toBytes();
+        if (key.type().getTypeId() == TypeId.FLOAT && key.getFloat() == 0.0f) {
+            bytes = new FloatDataBox(0.0f).toBytes();
+        }
+        int h = Arrays.hashCode(bytes);
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private int entrySize() {
+        return metadata.getKeySchema().getSizeInBytes() + RecordId.getSizeInBytes();
+    }
+
+    private int entryOffset(int i) {
+        return BUCKET_HEADER_SIZE + i * entrySize();
+    }
+
+    /**
+     * Returns whether the entry at `offset` of a bucket page has key `key`,
+     * whose serialization is keyBytes. Keys are compared serialized, except
+     * for floats: FloatDataBox.equals considers 0.0 and -0.0 equal and NaN
+     * unequal to everything.
+     */
+    private static boolean matches(Buffer buf, int offset, DataBox key, byte[] keyBytes) {
+        if (key.type().getTypeId() == TypeId.FLOAT) {
+            return key.equals(new FloatDataBox(buf.getFloat(offset)));
+        }
+        for (int i = 0; i < keyBytes.length; ++i) {
+            if (buf.get(offset + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int bucketIndex(DataBox key) {
+        return hash(key) & ((1 << globalDepth) - 1);
+    }
+
+    // A bucket is split while that separates its keys (they don't all have the
+    // same hash) and the directory can still grow to tell the halves apart.
+    private boolean canSplit(Bucket bucket, DataBox key) {
+        if (bucket.localDepth == globalDepth && globalDepth == MAX_GLOBAL_DEPTH) {
+            return false;
+        }
+        int h = hash(key);
+        for (Pair<DataBox, RecordId> entry : bucket.entries) {
+            if (hash(entry.getFirst()) != h) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Splits the bucket at directory entry `index` on bit l = bucket.localDepth
+     * of the hash: entries with the bit unset stay in the bucket's pages, and
+     * the rest move to a new bucket. Both buckets get local depth l + 1.
+     */
+    private void split(int index, Bucket bucket) {
+        int l = bucket.localDepth;
+        if (l == globalDepth) {
+            doubleDirectory();
+        }
+
+        List<Pair<DataBox, RecordId>> stay = new ArrayList<>();
+        List<Pair<DataBox, RecordId>> move = new ArrayList<>();
+        for (Pair<DataBox, RecordId> entry : bucket.entries) {
+            ((hash(entry.getFirst()) >>> l & 1) == 0 ? stay : move).add(entry);
+        }
+        Deque<Long> spare = new ArrayDeque<>(bucket.pageNums.subList(1, bucket.pageNums.size()));
+        long oldPageNum = bucket.pageNums.get(0);
+        long newPageNum = spare.isEmpty() ? allocatePage() : spare.pop();
+        writeChain(oldPageNum, l + 1, stay, spare);
+        writeChain(newPageNum, l + 1, move, spare);
+        freePages(spare);
+
+        // every directory entry that pointed to the bucket and has bit l set
+        // now points to the new bucket
+        Set<Integer> changedPages = new HashSet<>();
+        for (int i = index & ((1 << l) - 1) | (1 << l); i < directory.length; i += 1 << (l + 1)) {
+            assert(directory[i] == oldPageNum);
+            directory[i] = newPageNum;
+            changedPages.add(i / ENTRIES_PER_DIRECTORY_PAGE);
+        }
+        for (int p : changedPages) {
+            writeDirectoryPage(p);
+        }
+    }
+
+    private void doubleDirectory() {
+        long[] doubled = Arrays.copyOf(directory, 2 * directory.length);
+        System.arraycopy(directory, 0, doubled, directory.length, directory.length);
+        directory = doubled;
+        ++globalDepth;
+        writeDirectory();
+    }
+
+    // A bucket read into memory: its local depth, its first page followed by
+    // its overflow pages, and the entries on all of them.
+    private static class Bucket {
+        int localDepth;
+        List<Long> pageNums = new ArrayList<>();
+        List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+
+        int indexOf(DataBox key) {
+            for (int i = 0; i < entries.size(); ++i) {
+                if (entries.get(i).getFirst().equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private Bucket readChain(long pageNum) {
+        Bucket bucket = new Bucket();
+        while (pageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+            bucket.pageNums.add(pageNum);
+            Buffer buf = readPage(pageNum);
+            bucket.localDepth = buf.getInt();
+            int numEntries = buf.getInt();
+            pageNum = buf.getLong();
+            for (int i = 0; i < numEntries; ++i) {
+                DataBox key = DataBox.fromBytes(buf, metadata.getKeySchema());
+                bucket.entries.add(new Pair<>(key, RecordId.fromBytes(buf)));
+            }
+        }
+        return bucket;
+    }
+
+    // Writes the entries of `bucket` back to its pages, freeing the overflow
+    // pages it no longer needs.
+    private void rewrite(Bucket bucket) {
+        Deque<Long> spare = new ArrayDeque<>(bucket.pageNums.subList(1, bucket.pageNums.size()));
+        writeChain(bucket.pageNums.get(0), bucket.localDepth, bucket.entries, spare);
+        freePages(spare);
+    }
+
+    /**
+     * Writes `entries` to the bucket whose first page is pageNum, filling each
+     * page before moving on to the next. Overflow pages are taken from `spare`
+     * before new ones are allocated.
+     */
+    private void writeChain(long pageNum, int localDepth, List<Pair<DataBox, RecordId>> entries,
+                            Deque<Long> spare) {
+        int from = 0;
+        do {
+            int to = Math.min(entries.size(), from + bucketCapacity);
+            long next = DiskSpaceManager.INVALID_PAGE_NUM;
+            if (to < entries.size()) {
+                next = spare.isEmpty() ? allocatePage() : spare.pop();
+            }
+            writeBucket(pageNum, localDepth, entries.subList(from, to), next);
+            pageNum = next;
+            from = to;
+        } while (pageNum != DiskSpaceManager.INVALID_PAGE_NUM);
+    }
+
+    private void writeBucket(long pageNum, int localDepth, List<Pair<DataBox, RecordId>> entries,
+                             long overflowPageNum) {
+        ByteBuffer buf = ByteBuffer.allocate(BufferManager.EFFECTIVE_PAGE_SIZE);
+        buf.putInt(localDepth).putInt(entries.size()).putLong(overflowPageNum);
+        for (Pair<DataBox, RecordId> entry : entries) {
+            buf.put(entry.getFirst().toBytes());
+            buf.put(entry.getSecond().toBytes());
+        }
+        writePage(pageNum, Arrays.copyOf(buf.array(), buf.position()));
+    }
+
+    private void readDirectory() {
+        Buffer header = readPage(metadata.getHeaderPageNum());
+        globalDepth = header.getInt();
+        int numDirectoryPages = header.getInt();
+        directoryPages = new ArrayList<>();
+        for (int i = 0; i < numDirectoryPages; ++i) {
+            directoryPages.add(header.getLong());
+        }
+
+        directory = new long[1 << globalDepth];
+        for (int p = 0; p < directoryPages.size(); ++p) {
+            Buffer buf = readPage(directoryPages.get(p));
+            int from = p * ENTRIES_PER_DIRECTORY_PAGE;
+            for (int i = from; i < Math.min(directory.length, from + ENTRIES_PER_DIRECTORY_PAGE); ++i) {
+                directory[i] = buf.getLong();
+            }
+        }
+    }
+
+    // Writes the whole directory, allocating directory pages as needed, and
+    // then the header page.
+    private void writeDirectory() {
+        int numPages = (directory.length + ENTRIES_PER_DIRECTORY_PAGE - 1) / ENTRIES_PER_DIRECTORY_PAGE;
+        while (directoryPages.size() < numPages) {
+            directoryPages.add(allocatePage());
+        }
+        for (int p = 0; p < numPages; ++p) {
+            writeDirectoryPage(p);
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE + directoryPages.size() * Long.BYTES);
+        buf.putInt(globalDepth).putInt(directoryPages.size());
+        for (long pageNum : directoryPages) {
+            buf.putLong(pageNum);
+        }
+        writePage(metadata.getHeaderPageNum(), buf.array());
+    }
+
+    private void writeDirectoryPage(int p) {
+        int from = p * ENTRIES_PER_DIRECTORY_PAGE;
+        int to = Math.min(directory.length, from + ENTRIES_PER_DIRECTORY_PAGE);
+        ByteBuffer buf = ByteBuffer.allocate((to - from) * Long.BYTES);
+        for (int i = from; i < to; ++i) {
+            buf.putLong(directory[i]);
+        }
+        writePage(directoryPages.get(p), buf.array());
+    }
+
+    private long allocatePage() {
+        Page page = bufferManager.fetchNewPage(lockContext, metadata.getPartNum(), false);
+        page.unpin();
+        return page.getPageNum();
+    }
+
+    // Copies a page out of the buffer manager, so that decoding it does not go
+    // through the page's frame one value at a time.
+    private Buffer readPage(long pageNum) {
+        byte[] bytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        Page page = bufferManager.fetchPage(lockContext, pageNum, false);
+        try {
+            page.getBuffer().get(bytes);
+        } finally {
+            page.unpin();
+        }
+        return edu.berkeley.cs186.database.common.ByteBuffer.wrap(bytes);
+    }
+
+    // Copies the header of bucket page `page` (local depth, number of entries
+    // and overflow page number) out of the page.
+    private Buffer readBucketHeader(Page page) {
+        byte[] bytes = new byte[BUCKET_HEADER_SIZE];
+        Buffer buf = page.getBuffer();
+        buf.get(bytes);
+        return edu.berkeley.cs186.database.common.ByteBuffer.wrap(bytes);
+    }
+
+    // Copies entry i (its key, then its record id) of bucket page `page` out of
+    // the page, so that a lookup only reads the entries it probes.
+    private Buffer readSlot(Page page, int i) {
+        byte[] bytes = new byte[entrySize()];
+        Buffer buf = page.getBuffer();
+        buf.position(entryOffset(i));
+        buf.get(bytes);
+        return edu.berkeley.cs186.database.common.ByteBuffer.wrap(bytes);
+    }
+
+    private void freePages(Collection<Long> pageNums) {
+        for (long pageNum : pageNums) {
+            Page page = bufferManager.fetchPage(lockContext, pageNum, false);
+            try {
+                bufferManager.freePage(page);
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+
+    private void writePage(long pageNum, byte[] bytes) {
+        Page page = bufferManager.fetchPage(lockContext, pageNum, false);
+        try {
+            page.getBuffer().put(bytes);
+        } finally {
+            page.unpin();
+        }
+    }
+
+    private void typecheck(DataBox key) {
+        Type t = metadata.getKeySchema();
+        if (!key.type().equals(t)) {
+            String msg = String.format("DataBox %s is not of type %s", key, t);
+            throw new IllegalArgumentException(msg);
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package edu.berkeley.cs186.database.index;
+
+@SuppressWarnings("serial")
+public class HashIndexException extends RuntimeException {
+    public HashIndexException(String message) {
+        super(message);
+    }
+}
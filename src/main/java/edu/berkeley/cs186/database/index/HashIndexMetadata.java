@@ -0,0 +1,59 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.databox.Type;
+
+/** Metadata about a hash index. */
+public class HashIndexMetadata {
+    // Table for which this index is for
+    private final String tableName;
+
+    // Column that this index uses as a search key
+    private final String colName;
+
+    // The type of the keys of the index.
+    private final Type keySchema;
+
+    // The partition that the index allocates pages from.
+    private final int partNum;
+
+    // The page number of the header page, which holds the global depth of the
+    // index and the page numbers of its directory pages. See HashIndex.
+    private long headerPageNum;
+
+    public HashIndexMetadata(String tableName, String colName, Type keySchema, int partNum,
+                             long headerPageNum) {
+        this.tableName = tableName;
+        this.colName = colName;
+        this.keySchema = keySchema;
+        this.partNum = partNum;
+        this.headerPageNum = headerPageNum;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getColName() {
+        return colName;
+    }
+
+    public String getName() {
+        return tableName + "," + colName;
+    }
+
+    public Type getKeySchema() {
+        return keySchema;
+    }
+
+    public int getPartNum() {
+        return partNum;
+    }
+
+    public long getHeaderPageNum() {
+        return headerPageNum;
+    }
+
+    void setHeaderPageNum(long headerPageNum) {
+        this.headerPageNum = headerPageNum;
+    }
+}
@@ -2,6 +2,7 @@ package edu.berkeley.cs186.database.index;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.function.ToIntFunction;
 
 import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.common.Pair;
@@ -60,6 +61,16 @@ class InnerNode extends BPlusNode {
      */
     private InnerNode(BPlusTreeMetadata metadata, BufferManager bufferManager, Page page,
                       List<DataBox> keys, List<Long> children, LockContext treeContext) {
+        this(metadata, bufferManager, page, keys, children, treeContext, true);
+    }
+
+    /**
+     * Construct an inner node that is persisted to page `page`, skipping the
+     * sync if `keys` and `children` were just read off of `page`.
+     */
+    private InnerNode(BPlusTreeMetadata metadata, BufferManager bufferManager, Page page,
+                      List<DataBox> keys, List<Long> children, LockContext treeContext,
+                      boolean sync) {
         assert(keys.size() <= 2 * metadata.getOrder());
         assert(keys.size() + 1 == children.size());
 
@@ -70,7 +81,9 @@ class InnerNode extends BPlusNode {
         this.keys = new ArrayList<>(keys);
         this.children = new ArrayList<>(children);
 
-        sync();
+        if (sync) {
+            sync();
+        }
         page.unpin();
     }
 
@@ -129,7 +142,9 @@ class InnerNode extends BPlusNode {
     }
 
     private void sync() {
+        NodeLatches latches = metadata.getLatches();
         page.pin();
+        latches.acquireExclusive(page.getPageNum());
         try {
             Buffer b = page.getBuffer();
             byte[] newBytes = toBytes();
@@ -137,8 +152,86 @@ class InnerNode extends BPlusNode {
             b.get(bytes);
             if (!Arrays.equals(bytes, newBytes)) {
                 page.getBuffer().put(toBytes());
+                metadata.getInnerNodeCache().invalidate(page.getPageNum());
+            }
+        } finally {
+            latches.releaseExclusive(page.getPageNum());
+            page.unpin();
+        }
+    }
+
+    /**
+     * Returns the page number of the leaf that `key` belongs in, starting the
+     * search at the node on page `pageNum`. Inner nodes on the way down are
+     * read from the tree's InnerNodeCache, so once the upper levels of the tree
+     * are cached a lookup only has to fetch the leaf page itself.
+     *
+     * The search holds at most one latch at a time (see NodeLatches), so if
+     * nodes split concurrently the returned leaf may be to the left of the
+     * leaf that now holds `key`; LeafNode.getKey moves right to correct this.
+     */
+    static long findLeafPageNum(BPlusTreeMetadata metadata, BufferManager bufferManager,
+                                LockContext treeContext, long pageNum, DataBox key) {
+        while (true) {
+            InnerNodeCache.Entry entry = readEntry(metadata, bufferManager, treeContext, pageNum);
+            if (entry == null) {
+                return pageNum;
+            }
+            pageNum = entry.getChild(key);
+        }
+    }
+
+    /**
+     * Like findLeafPageNum, but visits child childIndex(node) of every inner
+     * node on the way down. Also returns the low fence of the leaf: the
+     * rightmost separator key to the left of the path, which is a lower bound
+     * on the keys of the leaf and an upper bound on the keys of every leaf to
+     * its left. The fence is null for the leftmost leaf.
+     */
+    static Pair<Long, DataBox> findLeafPageNum(BPlusTreeMetadata metadata, BufferManager bufferManager,
+            LockContext treeContext, long pageNum,
+            ToIntFunction<InnerNodeCache.Entry> childIndex) {
+        DataBox fence = null;
+        while (true) {
+            InnerNodeCache.Entry entry = readEntry(metadata, bufferManager, treeContext, pageNum);
+            if (entry == null) {
+                return new Pair<>(pageNum, fence);
+            }
+            int i = childIndex.applyAsInt(entry);
+            if (i > 0) {
+                fence = entry.getKey(i - 1);
+            }
+            pageNum = entry.getChildAt(i);
+        }
+    }
+
+    /**
+     * Returns the decoded inner node on page `pageNum`, from the tree's
+     * InnerNodeCache if possible, or null if the page holds a leaf.
+     */
+    private static InnerNodeCache.Entry readEntry(BPlusTreeMetadata metadata, BufferManager bufferManager,
+            LockContext treeContext, long pageNum) {
+        InnerNodeCache cache = metadata.getInnerNodeCache();
+        InnerNodeCache.Entry entry = cache.get(pageNum);
+        if (entry != null) {
+            return entry;
+        }
+        long version = cache.getVersion();
+        NodeLatches latches = metadata.getLatches();
+        Page page = bufferManager.fetchPage(treeContext, pageNum, false);
+        latches.acquireShared(pageNum);
+        try {
+            Buffer buf = page.getBuffer();
+            if (buf.get() == (byte) 1) {
+                return null;
             }
+            // cached while latched, so a concurrent sync invalidates it
+            // only after we are done; other writes are caught by the version
+            entry = decode(metadata, buf);
+            cache.put(pageNum, entry, version);
+            return entry;
         } finally {
+            latches.releaseShared(pageNum);
             page.unpin();
         }
     }
@@ -312,19 +405,29 @@ class InnerNode extends BPlusNode {
         //
         // represent an inner node with one key (i.e. 1) and two children pointers
         // (i.e. page 3 and page 7).
+        //
+        // STRING keys are written as a single block instead, compressed if that
+        // saves space; see KeyCompression.
 
         // All sizes are in bytes.
+        Type keySchema = metadata.getKeySchema();
+        boolean compressed = KeyCompression.isCompressed(keySchema);
         int isLeafSize = 1;
         int numKeysSize = Integer.BYTES;
-        int keysSize = metadata.getKeySchema().getSizeInBytes() * keys.size();
+        int keysSize = compressed ? KeyCompression.size(keySchema, keys)
+                       : keySchema.getSizeInBytes() * keys.size();
         int childrenSize = Long.BYTES * children.size();
         int size = isLeafSize + numKeysSize + keysSize + childrenSize;
 
         ByteBuffer buf = ByteBuffer.allocate(size);
         buf.put((byte) 0);
         buf.putInt(keys.size());
-        for (DataBox key : keys) {
-            buf.put(key.toBytes());
+        if (compressed) {
+            KeyCompression.put(buf, keySchema, keys);
+        } else {
+            for (DataBox key : keys) {
+                buf.put(key.toBytes());
+            }
         }
         for (Long child : children) {
             buf.putLong(child);
@@ -338,21 +441,46 @@ class InnerNode extends BPlusNode {
     public static InnerNode fromBytes(BPlusTreeMetadata metadata,
                                       BufferManager bufferManager, LockContext treeContext, long pageNum) {
         Page page = bufferManager.fetchPage(treeContext, pageNum, false);
-        Buffer buf = page.getBuffer();
-
-        byte nodeType = buf.get();
-        assert(nodeType == (byte) 0);
+        InnerNodeCache cache = metadata.getInnerNodeCache();
+        InnerNodeCache.Entry entry = cache.get(pageNum);
+        if (entry == null) {
+            long version = cache.getVersion();
+            metadata.getLatches().acquireShared(pageNum);
+            try {
+                Buffer buf = page.getBuffer();
+                byte nodeType = buf.get();
+                assert(nodeType == (byte) 0);
+
+                entry = decode(metadata, buf);
+                cache.put(pageNum, entry, version);
+            } finally {
+                metadata.getLatches().releaseShared(pageNum);
+            }
+        }
+        return new InnerNode(metadata, bufferManager, page, entry.getKeys(), entry.getChildren(),
+                             treeContext, false);
+    }
 
+    /**
+     * Decodes the keys and children of an inner node from `buf`, which must be
+     * positioned just after the node type byte.
+     */
+    private static InnerNodeCache.Entry decode(BPlusTreeMetadata metadata, Buffer buf) {
+        Type keySchema = metadata.getKeySchema();
         List<DataBox> keys = new ArrayList<>();
         List<Long> children = new ArrayList<>();
         int n = buf.getInt();
-        for (int i = 0; i < n; ++i) {
-            keys.add(DataBox.fromBytes(buf, metadata.getKeySchema()));
+        if (KeyCompression.isCompressed(keySchema)) {
+            keys = KeyCompression.get(buf, keySchema, n);
+        } else {
+            for (int i = 0; i < n; ++i) {
+                keys.add(DataBox.fromBytes(buf, keySchema));
+            }
         }
         for (int i = 0; i < n + 1; ++i) {
             children.add(buf.getLong());
         }
-        return new InnerNode(metadata, bufferManager, page, keys, children, treeContext);
+        return new InnerNodeCache.Entry(metadata.getKeySchema(), keys, children);
     }
 
     // Builtins ////////////////////////////////////////////////////////////////
@@ -0,0 +1,253 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.databox.*;
+
+/**
+ * A bounded cache of decoded inner nodes, keyed by page number. Every B+ tree
+ * has its own cache (see BPlusTreeMetadata.getInnerNodeCache).
+ *
+ * Inner nodes are read far more often than they are written: every lookup
+ * passes through every level of the tree, but an inner node only changes when
+ * one of its children splits. Rather than deserializing the same inner nodes on
+ * every traversal, we decode each one once into an Entry and reuse it until
+ * InnerNode.sync writes new bytes to the node's page, which invalidates it.
+ * Pages of a tree can also change underneath its nodes, e.g. when a
+ * transaction's writes are undone, or be freed and reused. So every BPlusTree
+ * also invalidates the entry of any of its pages that the buffer manager
+ * writes or frees (see BufferManager.addPageChangeListener).
+ *
+ * The buffer manager invalidates a page after changing it, without latching
+ * the node, so a reader may decode the old bytes of a page and only insert
+ * them after the invalidation. To keep such stale fills out, the cache counts
+ * its invalidations: a reader takes the count (getVersion) before reading the
+ * page, and put drops the entry if any invalidation happened since.
+ *
+ * Keys of type INT, LONG, and FLOAT are kept in primitive arrays, so that
+ * picking the child to descend into is a binary search that never touches a
+ * DataBox (see Entry.numLessThanEqual). Other key types are kept as DataBoxes.
+ */
+class InnerNodeCache {
+    // The maximum number of inner nodes cached per tree.
+    static final int DEFAULT_CAPACITY = 256;
+
+    private final Map<Long, InnerNodeCache.Entry> entries;
+    // the number of invalidations so far, guarded by this
+    private long version = 0;
+
+    InnerNodeCache(int capacity) {
+        // access order, so that the least recently used node is evicted first
+        this.entries = new LinkedHashMap<Long, InnerNodeCache.Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, InnerNodeCache.Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /** Returns the decoded inner node on page `pageNum`, or null if it is not cached. */
+    synchronized Entry get(long pageNum) {
+        return entries.get(pageNum);
+    }
+
+    /** Returns the version to pass to put, taken before a node's page is read. */
+    synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * Caches `entry`, decoded from page `pageNum` as of `version`, unless a page
+     * was invalidated since, in which case the entry may be stale.
+     */
+    synchronized void put(long pageNum, Entry entry, long version) {
+        if (version == this.version) {
+            entries.put(pageNum, entry);
+        }
+    }
+
+    /** Drops the cached copy of page `pageNum`, if there is one. */
+    synchronized void invalidate(long pageNum) {
+        entries.remove(pageNum);
+        ++version;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * An immutable decoded inner node: n keys and n + 1 child page numbers.
+     */
+    static final class Entry {
+        private final Type keySchema;
+        private final int numKeys;
+
+        // exactly one of these holds the keys, depending on keySchema
+        private final int[] intKeys;
+        private final long[] longKeys;
+        private final float[] floatKeys;
+        private final DataBox[] keys;
+
+        private final long[] children;
+
+        Entry(Type keySchema, List<DataBox> keys, List<Long> children) {
+            assert(keys.size() + 1 == children.size());
+            this.keySchema = keySchema;
+            this.numKeys = keys.size();
+            int[] intKeys = null;
+            long[] longKeys = null;
+            float[] floatKeys = null;
+            DataBox[] boxedKeys = null;
+            switch (keySchema.getTypeId()) {
+            case INT:
+                intKeys = new int[numKeys];
+                for (int i = 0; i < numKeys; ++i) {
+                    intKeys[i] = keys.get(i).getInt();
+                }
+                break;
+            case LONG:
+                longKeys = new long[numKeys];
+                for (int i = 0; i < numKeys; ++i) {
+                    longKeys[i] = keys.get(i).getLong();
+                }
+                break;
+            case FLOAT:
+                floatKeys = new float[numKeys];
+                for (int i = 0; i < numKeys; ++i) {
+                    floatKeys[i] = keys.get(i).getFloat();
+                }
+                break;
+            default:
+                boxedKeys = keys.toArray(new DataBox[0]);
+                break;
+            }
+            this.intKeys = intKeys;
+            this.longKeys = longKeys;
+            this.floatKeys = floatKeys;
+            this.keys = boxedKeys;
+            this.children = new long[children.size()];
+            for (int i = 0; i < this.children.length; ++i) {
+                this.children[i] = children.get(i);
+            }
+        }
+
+        /**
+         * Returns the number of keys less than or equal to `key`, i.e. the index
+         * of the child that `key` belongs in. Equivalent to
+         * InnerNode.numLessThanEqual(key, getKeys()), but runs in O(log n).
+         */
+        int numLessThanEqual(DataBox key) {
+            int lo = 0;
+            int hi = numKeys;
+            switch (keySchema.getTypeId()) {
+            case INT: {
+                int k = key.getInt();
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (intKeys[mid] <= k) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                return lo;
+            }
+            case LONG: {
+                long k = key.getLong();
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (longKeys[mid] <= k) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                return lo;
+            }
+            case FLOAT: {
+                // FloatDataBox.compareTo orders floats with Float.compare
+                float k = key.getFloat();
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (Float.compare(floatKeys[mid], k) <= 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                return lo;
+            }
+            default:
+                while (lo < hi) {
+                    int mid = (lo + hi) >>> 1;
+                    if (keys[mid].compareTo(key) <= 0) {
+                        lo = mid + 1;
+                    } else {
+                        hi = mid;
+                    }
+                }
+                return lo;
+            }
+        }
+
+        /**
+         * Returns the number of keys less than `key`. Equivalent to
+         * InnerNode.numLessThan(key, getKeys()), but runs in O(log n).
+         */
+        int numLessThan(DataBox key) {
+            int lo = 0;
+            int hi = numKeys;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (getKey(mid).compareTo(key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        /** Returns the page number of the child that `key` belongs in. */
+        long getChild(DataBox key) {
+            return children[numLessThanEqual(key)];
+        }
+
+        int numKeys() {
+            return numKeys;
+        }
+
+        DataBox getKey(int i) {
+            switch (keySchema.getTypeId()) {
+            case INT: return new IntDataBox(intKeys[i]);
+            case LONG: return new LongDataBox(longKeys[i]);
+            case FLOAT: return new FloatDataBox(floatKeys[i]);
+            default: return keys[i];
+            }
+        }
+
+        /** Returns the page number of the i-th child. */
+        long getChildAt(int i) {
+            return children[i];
+        }
+
+        /** Returns a fresh, mutable list of the keys of this node. */
+        List<DataBox> getKeys() {
+            List<DataBox> list = new ArrayList<>(numKeys);
+            for (int i = 0; i < numKeys; ++i) {
+                list.add(getKey(i));
+            }
+            return list;
+        }
+
+        /** Returns a fresh, mutable list of the children of this node. */
+        List<Long> getChildren() {
+            List<Long> list = new ArrayList<>(children.length);
+            for (long child : children) {
+                list.add(child);
+            }
+            return list;
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+
+/**
+ * Compression of the STRING keys stored in B+ tree nodes.
+ *
+ * A StringDataBox of type STRING(m) always serializes to m bytes, padded with
+ * null bytes. Storing keys at their full declared width wastes most of a node
+ * when, e.g., an index on a STRING(50) column holds 10-character emails that
+ * all share a domain. Instead, the keys of a node are stored as a block:
+ *
+ *   - the length and bytes of the longest prefix common to every key, followed
+ *   - by the length and bytes of the rest of each key, with its trailing
+ *     padding removed.
+ *
+ * For example, the keys "ann@x.edu", "bob@x.edu" don't share a prefix, but
+ * "cs186", "cs188", "cs189" are stored as "cs18" followed by "6", "8", "9".
+ * Lengths take one byte if m < 256 and two bytes otherwise. Decoding pads
+ * every key back to m bytes, so compression is invisible to callers.
+ *
+ * A compressed block starts with the byte COMPRESSED. Keys are ASCII, so no
+ * key starts with that byte, and when compression would not save space
+ * (e.g. full width keys without a common prefix) the keys are stored as
+ * usual instead, one after another at their full width. So a block of n keys
+ * never takes more than n * m bytes, and nodes hold as many keys as they
+ * would uncompressed (see maxOrder).
+ *
+ * Inner nodes additionally benefit from suffix truncation: when a node splits,
+ * the separator pushed up only needs to tell the two halves apart, and
+ * shortestSeparator picks the shortest such key.
+ */
+final class KeyCompression {
+    private static final Charset ASCII = Charset.forName("ascii");
+    // First byte of a compressed block; not an ASCII character.
+    private static final byte COMPRESSED = (byte) 0x80;
+
+    private KeyCompression() {}
+
+    /**
+     * Returns whether nodes store keys of type `keySchema` as a block (see
+     * put), which is compressed where that saves space.
+     */
+    static boolean isCompressed(Type keySchema) {
+        return keySchema.getTypeId() == TypeId.STRING;
+    }
+
+    /** Returns the number of bytes that `keys` take when stored as a block. */
+    static int size(Type keySchema, List<DataBox> keys) {
+        return Math.min(keySchema.getSizeInBytes() * keys.size(), compressedSize(keySchema, trim(keys)));
+    }
+
+    /** Writes `keys` to `buf` as a block. */
+    static void put(ByteBuffer buf, Type keySchema, List<DataBox> keys) {
+        byte[][] trimmed = trim(keys);
+        if (compressedSize(keySchema, trimmed) >= keySchema.getSizeInBytes() * keys.size()) {
+            for (DataBox key : keys) {
+                buf.put(key.toBytes());
+            }
+            return;
+        }
+        int prefix = commonPrefixLength(trimmed);
+        buf.put(COMPRESSED);
+        putLength(buf, keySchema, prefix);
+        buf.put(trimmed[0], 0, prefix);
+        for (byte[] key : trimmed) {
+            putLength(buf, keySchema, key.length - prefix);
+            buf.put(key, prefix, key.length - prefix);
+        }
+    }
+
+    /**
+     * Reads a block of n keys of type `keySchema` starting at the current
+     * position of `buf`, leaving `buf` positioned just after it.
+     */
+    static List<DataBox> get(Buffer buf, Type keySchema, int n) {
+        List<DataBox> keys = new ArrayList<>(n);
+        if (n == 0 || buf.get(buf.position()) != COMPRESSED) {
+            for (int i = 0; i < n; ++i) {
+                keys.add(DataBox.fromBytes(buf, keySchema));
+            }
+            return keys;
+        }
+        buf.get();
+        int width = keySchema.getSizeInBytes();
+        byte[] prefix = new byte[getLength(buf, keySchema)];
+        buf.get(prefix);
+        String prefixString = new String(prefix, ASCII);
+        for (int i = 0; i < n; ++i) {
+            byte[] suffix = new byte[getLength(buf, keySchema)];
+            buf.get(suffix);
+            keys.add(new StringDataBox(prefixString + new String(suffix, ASCII), width));
+        }
+        return keys;
+    }
+
+    /**
+     * Given the largest key `left` of the left half of a split node and the
+     * smallest key `right` of the right half, returns the shortest key s
+     * (padded to the width of `right`) with left < s <= right. Using s rather
+     * than `right` as the separator is correct since every key in the right
+     * half is at least `right`, and every key in the left half is at most `left`.
+     */
+    static DataBox shortestSeparator(DataBox left, DataBox right) {
+        assert(left.compareTo(right) < 0);
+        if (!isCompressed(right.type())) {
+            return right;
+        }
+        int width = right.type().getSizeInBytes();
+        byte[] bytes = trim(right.toBytes());
+        for (int length = 0; length < bytes.length; ++length) {
+            DataBox separator = new StringDataBox(new String(bytes, 0, length, ASCII), width);
+            if (left.compareTo(separator) < 0) {
+                return separator;
+            }
+        }
+        return right;
+    }
+
+    // the size of the compressed block of the (trimmed) keys
+    private static int compressedSize(Type keySchema, byte[][] trimmed) {
+        int lengthSize = lengthSize(keySchema);
+        int prefix = commonPrefixLength(trimmed);
+        int size = 1 + lengthSize + prefix;
+        for (byte[] key : trimmed) {
+            size += lengthSize + key.length - prefix;
+        }
+        return size;
+    }
+
+    private static int lengthSize(Type keySchema) {
+        return keySchema.getSizeInBytes() < 256 ? 1 : Short.BYTES;
+    }
+
+    private static void putLength(ByteBuffer buf, Type keySchema, int length) {
+        if (lengthSize(keySchema) == 1) {
+            buf.put((byte) length);
+        } else {
+            buf.putShort((short) length);
+        }
+    }
+
+    private static int getLength(Buffer buf, Type keySchema) {
+        if (lengthSize(keySchema) == 1) {
+            return buf.get() & 0xFF;
+        }
+        return buf.getShort() & 0xFFFF;
+    }
+
+    private static byte[][] trim(List<DataBox> keys) {
+        byte[][] trimmed = new byte[keys.size()][];
+        for (int i = 0; i < trimmed.length; ++i) {
+            trimmed[i] = trim(keys.get(i).toBytes());
+        }
+        return trimmed;
+    }
+
+    // Drops the trailing null bytes that pad a string to its declared width.
+    private static byte[] trim(byte[] bytes) {
+        int length = bytes.length;
+        while (length > 0 && bytes[length - 1] == 0) {
+            --length;
+        }
+        return Arrays.copyOf(bytes, length);
+    }
+
+    private static int commonPrefixLength(byte[][] keys) {
+        if (keys.length == 0) {
+            return 0;
+        }
+        int prefix = keys[0].length;
+        for (byte[] key : keys) {
+            prefix = Math.min(prefix, key.length);
+            for (int i = 0; i < prefix; ++i) {
+                if (key[i] != keys[0][i]) {
+                    prefix = i;
+                    break;
+                }
+            }
+        }
+        return prefix;
+    }
+}
@@ -8,6 +8,7 @@ import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.RecordId;
@@ -100,6 +101,10 @@ class LeafNode extends BPlusNode {
     private List<DataBox> keys;
     private List<RecordId> rids;
 
+    // Serialized (key, rid) pairs start after the isLeaf byte, the sibling
+    // pointer, and the number of pairs. See toBytes.
+    private static final int ENTRIES_OFFSET = 1 + Long.BYTES + Integer.BYTES;
+
     // If this leaf is the rightmost leaf, then rightSibling is Optional.empty().
     // Otherwise, rightSibling is Optional.of(n) where n is the page number of
     // this leaf's right sibling.
@@ -121,9 +126,9 @@ class LeafNode extends BPlusNode {
     /**
      * Construct a leaf node that is persisted to page `page`.
      */
-    private LeafNode(BPlusTreeMetadata metadata, BufferManager bufferManager, Page page,
-                     List<DataBox> keys,
-                     List<RecordId> rids, Optional<Long> rightSibling, LockContext treeContext) {
+    LeafNode(BPlusTreeMetadata metadata, BufferManager bufferManager, Page page,
+             List<DataBox> keys,
+             List<RecordId> rids, Optional<Long> rightSibling, LockContext treeContext) {
         assert(keys.size() == rids.size());
 
         this.metadata = metadata;
@@ -205,6 +210,134 @@ class LeafNode extends BPlusNode {
         return rids.subList(index, rids.size()).iterator();
     }
 
+    /**
+     * Returns the record id associated with `key` in the leaf serialized in
+     * `buf` (see toBytes), binary searching the serialized entries instead of
+     * deserializing the leaf.
+     */
+    static Optional<RecordId> getKey(Buffer buf, Type keySchema, DataBox key) {
+        int n = buf.getInt(1 + Long.BYTES);
+        int index;
+        int ridOffset;
+        if (KeyCompression.isCompressed(keySchema)) {
+            // a compressed block doesn't have a fixed stride, so decode it
+            buf.position(ENTRIES_OFFSET);
+            index = KeyCompression.get(buf, keySchema, n).indexOf(key);
+            ridOffset = buf.position() + index * RecordId.getSizeInBytes();
+        } else {
+            int keySize = keySchema.getSizeInBytes();
+            int entrySize = keySize + RecordId.getSizeInBytes();
+            index = SerializedKeys.indexOf(buf, ENTRIES_OFFSET, entrySize, n, keySchema, key);
+            ridOffset = ENTRIES_OFFSET + index * entrySize + keySize;
+        }
+        if (index == -1) {
+            return Optional.empty();
+        }
+        return Optional.of(new RecordId(buf.getLong(ridOffset), buf.getShort(ridOffset + Long.BYTES)));
+    }
+
+    /**
+     * Appends the keys and record ids of the leaf serialized in `buf` to `keys`
+     * and `rids`, and returns the page number of its right sibling (or
+     * INVALID_PAGE_NUM if it has none).
+     */
+    static long readEntries(Buffer buf, Type keySchema, List<DataBox> keys, List<RecordId> rids) {
+        long rightSibling = buf.getLong(1);
+        int n = buf.getInt(1 + Long.BYTES);
+        buf.position(ENTRIES_OFFSET);
+        if (KeyCompression.isCompressed(keySchema)) {
+            keys.addAll(KeyCompression.get(buf, keySchema, n));
+            for (int i = 0; i < n; ++i) {
+                rids.add(RecordId.fromBytes(buf));
+            }
+        } else {
+            for (int i = 0; i < n; ++i) {
+                keys.add(DataBox.fromBytes(buf, keySchema));
+                rids.add(RecordId.fromBytes(buf));
+            }
+        }
+        return rightSibling;
+    }
+
+    /**
+     * Looks up `key` in the leaf on page `pageNum` without deserializing the
+     * leaf. See getKey(Buffer, Type, DataBox).
+     */
+    static Optional<RecordId> getKey(BPlusTreeMetadata metadata, BufferManager bufferManager,
+                                     LockContext treeContext, long pageNum, DataBox key) {
+        return getKey(metadata, bufferManager, treeContext, pageNum, key,
+                      metadata.getLatches().getNumLeafSplits());
+    }
+
+    /**
+     * Looks up `key` in the leaf on page `pageNum`, which a search picked
+     * after NodeLatches.getNumLeafSplits returned `numLeafSplits`.
+     *
+     * If a leaf split since then, `key` may have moved to a leaf further
+     * right. So if `key` isn't on the leaf and leaves split, we move right for
+     * as long as the next non-empty leaf starts at or before `key`, like a
+     * search in a B-link tree.
+     */
+    static Optional<RecordId> getKey(BPlusTreeMetadata metadata, BufferManager bufferManager,
+                                     LockContext treeContext, long pageNum, DataBox key,
+                                     long numLeafSplits) {
+        NodeLatches latches = metadata.getLatches();
+        while (true) {
+            long rightSibling;
+            Page page = bufferManager.fetchPage(treeContext, pageNum, false);
+            latches.acquireShared(pageNum);
+            try {
+                Buffer buf = page.getBuffer();
+                Optional<RecordId> rid = getKey(buf, metadata.getKeySchema(), key);
+                if (rid.isPresent()) {
+                    return rid;
+                }
+                rightSibling = buf.getLong(1);
+            } finally {
+                latches.releaseShared(pageNum);
+                page.unpin();
+            }
+
+            if (latches.getNumLeafSplits() == numLeafSplits) {
+                return Optional.empty();
+            }
+            pageNum = moveRight(metadata, bufferManager, treeContext, rightSibling, key);
+            if (pageNum == DiskSpaceManager.INVALID_PAGE_NUM) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Returns the first non-empty leaf in the sibling chain starting at page
+     * `pageNum` if its smallest key is at most `key`, and INVALID_PAGE_NUM
+     * otherwise.
+     */
+    private static long moveRight(BPlusTreeMetadata metadata, BufferManager bufferManager,
+                                  LockContext treeContext, long pageNum, DataBox key) {
+        NodeLatches latches = metadata.getLatches();
+        while (pageNum != DiskSpaceManager.INVALID_PAGE_NUM) {
+            Page page = bufferManager.fetchPage(treeContext, pageNum, false);
+            latches.acquireShared(pageNum);
+            try {
+                Buffer buf = page.getBuffer();
+                if (buf.getInt(1 + Long.BYTES) > 0) {
+                    buf.position(ENTRIES_OFFSET);
+                    Type keySchema = metadata.getKeySchema();
+                    DataBox firstKey = KeyCompression.isCompressed(keySchema)
+                                       ? KeyCompression.get(buf, keySchema, 1).get(0)
+                                       : DataBox.fromBytes(buf, keySchema);
+                    return firstKey.compareTo(key) <= 0 ? pageNum : DiskSpaceManager.INVALID_PAGE_NUM;
+                }
+                pageNum = buf.getLong(1);
+            } finally {
+                latches.releaseShared(page.getPageNum());
+                page.unpin();
+            }
+        }
+        return DiskSpaceManager.INVALID_PAGE_NUM;
+    }
+
     // Helpers /////////////////////////////////////////////////////////////////
     @Override
     public Page getPage() {
@@ -223,16 +356,23 @@ class LeafNode extends BPlusNode {
 
     /** Serializes this leaf to its page. */
     private void sync() {
+        NodeLatches latches = metadata.getLatches();
         page.pin();
+        latches.acquireExclusive(page.getPageNum());
         try {
             Buffer b = page.getBuffer();
             byte[] newBytes = toBytes();
             byte[] bytes = new byte[newBytes.length];
             b.get(bytes);
             if (!Arrays.equals(bytes, newBytes)) {
+                // a leaf that gets a new right sibling split (see NodeLatches)
+                if (bytes[0] == (byte) 1 && ByteBuffer.wrap(bytes).getLong(1) != rightSibling.orElse(-1L)) {
+                    latches.leafSplit();
+                }
                 page.getBuffer().put(toBytes());
             }
         } finally {
+            latches.releaseExclusive(page.getPageNum());
             page.unpin();
         }
     }
@@ -339,23 +479,36 @@ class LeafNode extends BPlusNode {
         //
         // represent a leaf node with sibling on page 4 and a single (key, rid)
         // pair with key 3 and page id (3, 1).
+        //
+        // If the keys are STRINGs, d. is instead a single block of all the keys,
+        // compressed if that saves space (see KeyCompression), followed by all
+        // the record ids.
 
         // All sizes are in bytes.
+        Type keySchema = metadata.getKeySchema();
+        boolean compressed = KeyCompression.isCompressed(keySchema);
         int isLeafSize = 1;
         int siblingSize = Long.BYTES;
         int lenSize = Integer.BYTES;
-        int keySize = metadata.getKeySchema().getSizeInBytes();
         int ridSize = RecordId.getSizeInBytes();
-        int entriesSize = (keySize + ridSize) * keys.size();
+        int entriesSize = compressed ? KeyCompression.size(keySchema, keys) + ridSize * keys.size()
+                          : (keySchema.getSizeInBytes() + ridSize) * keys.size();
         int size = isLeafSize + siblingSize + lenSize + entriesSize;
 
         ByteBuffer buf = ByteBuffer.allocate(size);
         buf.put((byte) 1);
         buf.putLong(rightSibling.orElse(-1L));
         buf.putInt(keys.size());
-        for (int i = 0; i < keys.size(); ++i) {
-            buf.put(keys.get(i).toBytes());
-            buf.put(rids.get(i).toBytes());
+        if (compressed) {
+            KeyCompression.put(buf, keySchema, keys);
+            for (RecordId rid : rids) {
+                buf.put(rid.toBytes());
+            }
+        } else {
+            for (int i = 0; i < keys.size(); ++i) {
+                buf.put(keys.get(i).toBytes());
+                buf.put(rids.get(i).toBytes());
+            }
         }
         return buf.array();
     }
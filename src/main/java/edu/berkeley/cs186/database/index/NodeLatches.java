@@ -0,0 +1,82 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Short-term latches on the nodes of a B+ tree. Every B+ tree has its own
+ * latches (see BPlusTreeMetadata.getLatches).
+ *
+ * Latches are not locks: they protect the bytes of a single node while it is
+ * read or written, are held for the duration of a node access rather than a
+ * transaction, and are never seen by the lock manager. They let readers use
+ * a tree while its nodes are rewritten:
+ *
+ *   - Readers hold a shared latch on one node at a time. Rather than coupling
+ *     latches on the way down, a reader that ends up at a leaf that no longer
+ *     holds its key (because the leaf split after the reader picked it) moves
+ *     right along the leaf sibling pointers, as in a B-link tree; see
+ *     LeafNode.getKey(BPlusTreeMetadata, BufferManager, LockContext, long, DataBox, long).
+ *     A reader only moves right if some leaf split since it started its
+ *     search, which it tells from the number of leaf splits (see
+ *     getNumLeafSplits) before and after.
+ *   - A node sync latches that one node exclusively while it writes the node,
+ *     so a write is never seen half done. Writers do not latch anything else:
+ *     there is no latch crabbing, so callers that change the structure of the
+ *     tree (put, remove, bulkLoad) must not run concurrently with each other.
+ *
+ * A thread holds at most one latch at a time, and only while the node's page
+ * is pinned, so latches cannot deadlock. That also lets pages share latches:
+ * there is a fixed number of latches per tree, and each page uses the one its
+ * page number hashes to, so the latches of freed pages need no cleanup.
+ */
+class NodeLatches {
+    // Number of latches per tree. Pages sharing a latch only contend with
+    // each other when one of them is written.
+    private static final int NUM_LATCHES = 64;
+
+    private final ReentrantReadWriteLock[] latches = new ReentrantReadWriteLock[NUM_LATCHES];
+
+    // Number of times a leaf was given a new right sibling.
+    private final AtomicLong numLeafSplits = new AtomicLong();
+
+    NodeLatches() {
+        for (int i = 0; i < NUM_LATCHES; ++i) {
+            latches[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private ReentrantReadWriteLock latch(long pageNum) {
+        return latches[Math.floorMod(Long.hashCode(pageNum), NUM_LATCHES)];
+    }
+
+    void acquireShared(long pageNum) {
+        latch(pageNum).readLock().lock();
+    }
+
+    void releaseShared(long pageNum) {
+        latch(pageNum).readLock().unlock();
+    }
+
+    void acquireExclusive(long pageNum) {
+        latch(pageNum).writeLock().lock();
+    }
+
+    void releaseExclusive(long pageNum) {
+        latch(pageNum).writeLock().unlock();
+    }
+
+    /**
+     * Returns the number of leaf splits so far. A leaf split is counted while
+     * the split leaf is still latched exclusively, so a reader that sees a
+     * leaf after it split also sees the split counted.
+     */
+    long getNumLeafSplits() {
+        return numLeafSplits.get();
+    }
+
+    /** Counts a leaf split; called with the split leaf latched exclusively. */
+    void leafSplit() {
+        numLeafSplits.incrementAndGet();
+    }
+}
@@ -0,0 +1,197 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.table.RecordId;
+
+/**
+ * A lazy scan over the record ids of a B+ tree whose keys lie in a range, in
+ * ascending or descending order of their keys (see BPlusTree.scanRange and
+ * BPlusTree.scanLessThanReverse).
+ *
+ * One leaf is buffered at a time. Each leaf is copied out of the buffer
+ * manager under a shared latch (see NodeLatches) and decoded in one go, so no
+ * latch or pin is held between calls to next.
+ *
+ * An ascending scan descends to the leaf of its lower bound once, then
+ * follows right sibling pointers and stops at the first key past its upper
+ * bound. Leaves have no left sibling pointers, so a descending scan instead
+ * descends from the root once per leaf, to the leaf just left of the low fence
+ * of the current one (see InnerNode.findLeafPageNum). The upper levels of the
+ * tree are usually in the InnerNodeCache, so this costs about one page fetch
+ * per leaf, as following a sibling pointer would.
+ */
+class RangeIterator implements Iterator<RecordId> {
+    private final BPlusTreeMetadata metadata;
+    private final BufferManager bufferManager;
+    private final LockContext treeContext;
+
+    // The scan covers the keys k with lo <= k < hi (or k <= hi if
+    // hiInclusive). A null bound is unbounded.
+    private final DataBox lo;
+    private final DataBox hi;
+    private final boolean hiInclusive;
+    private final boolean descending;
+
+    // The record ids of the current leaf that are in range, in scan order
+    private List<RecordId> rids = new ArrayList<>();
+    private int index = 0;
+
+    // Ascending scans: the page of the next leaf to read.
+    // Descending scans: the low fence of the current leaf (null once the
+    // leftmost leaf has been read).
+    private long nextPageNum;
+    private DataBox fence;
+
+    // Set once no further leaf can hold keys in range
+    private boolean done = false;
+
+    private RangeIterator(BPlusTreeMetadata metadata, BufferManager bufferManager, LockContext treeContext,
+                          DataBox lo, DataBox hi, boolean hiInclusive, boolean descending) {
+        this.metadata = metadata;
+        this.bufferManager = bufferManager;
+        this.treeContext = treeContext;
+        this.lo = lo;
+        this.hi = hi;
+        this.hiInclusive = hiInclusive;
+        this.descending = descending;
+
+        Pair<Long, DataBox> leaf;
+        if (descending) {
+            leaf = InnerNode.findLeafPageNum(metadata, bufferManager, treeContext,
+                                             metadata.getRootPageNum(),
+                                             e -> hi == null ? e.numKeys() : e.numLessThanEqual(hi));
+            readDescending(leaf);
+        } else {
+            leaf = InnerNode.findLeafPageNum(metadata, bufferManager, treeContext,
+                                             metadata.getRootPageNum(),
+                                             e -> lo == null ? 0 : e.numLessThanEqual(lo));
+            readAscending(leaf.getFirst());
+        }
+    }
+
+    /** Scans the keys in [lo, hi) (or [lo, hi]) in ascending order. */
+    static RangeIterator ascending(BPlusTreeMetadata metadata, BufferManager bufferManager,
+                                   LockContext treeContext,
+                                   DataBox lo, DataBox hi, boolean hiInclusive) {
+        return new RangeIterator(metadata, bufferManager, treeContext, lo, hi, hiInclusive, false);
+    }
+
+    /** Scans the keys in [lo, hi) (or [lo, hi]) in descending order. */
+    static RangeIterator descending(BPlusTreeMetadata metadata, BufferManager bufferManager,
+                                    LockContext treeContext,
+                                    DataBox lo, DataBox hi, boolean hiInclusive) {
+        return new RangeIterator(metadata, bufferManager, treeContext, lo, hi, hiInclusive, true);
+    }
+
+    private boolean belowHi(DataBox key) {
+        if (hi == null) {
+            return true;
+        }
+        int c = key.compareTo(hi);
+        return hiInclusive ? c <= 0 : c < 0;
+    }
+
+    private boolean atLeastLo(DataBox key) {
+        return lo == null || key.compareTo(lo) >= 0;
+    }
+
+    /**
+     * Buffers the in-range record ids of the leaf on page `pageNum`, the next
+     * leaf of an ascending scan.
+     */
+    private void readAscending(long pageNum) {
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> leafRids = new ArrayList<>();
+        nextPageNum = LeafNode.readEntries(readLeaf(pageNum), metadata.getKeySchema(), keys, leafRids);
+        rids.clear();
+        index = 0;
+        for (int i = 0; i < keys.size(); ++i) {
+            if (!belowHi(keys.get(i))) {
+                done = true;
+                return;
+            }
+            if (atLeastLo(keys.get(i))) {
+                rids.add(leafRids.get(i));
+            }
+        }
+        done = nextPageNum == DiskSpaceManager.INVALID_PAGE_NUM;
+    }
+
+    /**
+     * Buffers the in-range record ids of `leaf` (a page number and the leaf's
+     * low fence), the next leaf of a descending scan.
+     */
+    private void readDescending(Pair<Long, DataBox> leaf) {
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> leafRids = new ArrayList<>();
+        LeafNode.readEntries(readLeaf(leaf.getFirst()), metadata.getKeySchema(), keys, leafRids);
+        fence = leaf.getSecond();
+        rids.clear();
+        index = 0;
+        for (int i = keys.size() - 1; i >= 0; --i) {
+            if (!atLeastLo(keys.get(i))) {
+                done = true;
+                return;
+            }
+            if (belowHi(keys.get(i))) {
+                rids.add(leafRids.get(i));
+            }
+        }
+        // every leaf to the left only holds keys less than the fence
+        done = fence == null || (lo != null && fence.compareTo(lo) <= 0);
+    }
+
+    /**
+     * Copies the leaf on page `pageNum` out of the buffer manager.
+     */
+    private Buffer readLeaf(long pageNum) {
+        byte[] bytes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        NodeLatches latches = metadata.getLatches();
+        Page page = bufferManager.fetchPage(treeContext, pageNum, false);
+        latches.acquireShared(pageNum);
+        try {
+            page.getBuffer().get(bytes);
+        } finally {
+            latches.releaseShared(pageNum);
+            page.unpin();
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (index == rids.size()) {
+            if (done) {
+                return false;
+            }
+            if (descending) {
+                DataBox leafFence = fence;
+                readDescending(InnerNode.findLeafPageNum(metadata, bufferManager, treeContext,
+                               metadata.getRootPageNum(), e -> e.numLessThan(leafFence)));
+            } else {
+                readAscending(nextPageNum);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public RecordId next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return rids.get(index++);
+    }
+}
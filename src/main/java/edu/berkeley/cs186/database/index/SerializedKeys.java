@@ -0,0 +1,123 @@
+package edu.berkeley.cs186.database.index;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+
+/**
+ * Binary search over the keys of a serialized B+ tree leaf, without
+ * deserializing the leaf (see LeafNode.getKey).
+ *
+ * A leaf stores its n keys at a fixed stride from some offset in the page
+ * (see LeafNode.toBytes): key i starts at offset + i * stride. For INT, LONG,
+ * and FLOAT keys we compare the search key against the raw value read at that
+ * position, so a search costs O(log n) absolute reads and never creates a
+ * DataBox. BOOL keys are decoded one probe at a time. STRING keys are stored
+ * as a block that is compressed when that saves space (see KeyCompression),
+ * so they may not have a fixed stride, and must not be searched here.
+ */
+final class SerializedKeys {
+    private SerializedKeys() {}
+
+    /**
+     * Returns the number of the n keys stored in `buf` (starting at `offset`,
+     * `stride` bytes apart, of type `keySchema`) that are strictly less than
+     * `key`. See InnerNode.numLessThan.
+     */
+    static int numLessThan(Buffer buf, int offset, int stride, int n, Type keySchema, DataBox key) {
+        // the first index i with key_i >= key
+        int lo = 0;
+        int hi = n;
+        switch (keySchema.getTypeId()) {
+        case INT: {
+            int k = key.getInt();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (buf.getInt(offset + mid * stride) < k) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+        case LONG: {
+            long k = key.getLong();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (buf.getLong(offset + mid * stride) < k) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+        case FLOAT:
+            return searchFloat(buf, offset, stride, n, key.getFloat());
+        default:
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compare(buf, offset + mid * stride, keySchema, key) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * Returns the index of a key equal to `key` (using DataBox.equals), or -1
+     * if there is no such key.
+     */
+    static int indexOf(Buffer buf, int offset, int stride, int n, Type keySchema, DataBox key) {
+        switch (keySchema.getTypeId()) {
+        case FLOAT: {
+            // FloatDataBox.equals compares with ==, so NaN equals nothing and
+            // 0.0 equals -0.0, even though Float.compare orders -0.0 first.
+            float k = key.getFloat();
+            if (Float.isNaN(k)) {
+                return -1;
+            }
+            int i = searchFloat(buf, offset, stride, n, k == 0 ? -0.0f : k);
+            if (i < n && buf.getFloat(offset + i * stride) == k) {
+                return i;
+            }
+            if (k == 0) {
+                i = searchFloat(buf, offset, stride, n, 0.0f);
+                if (i < n && buf.getFloat(offset + i * stride) == k) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        default: {
+            int i = numLessThan(buf, offset, stride, n, keySchema, key);
+            return i < n && compare(buf, offset + i * stride, keySchema, key) == 0 ? i : -1;
+        }
+        }
+    }
+
+    private static int searchFloat(Buffer buf, int offset, int stride, int n, float k) {
+        // keys are ordered by FloatDataBox.compareTo, i.e. Float.compare
+        int lo = 0;
+        int hi = n;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Float.compare(buf.getFloat(offset + mid * stride), k) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Compares the key serialized at `position` against `key`.
+    private static int compare(Buffer buf, int position, Type keySchema, DataBox key) {
+        buf.position(position);
+        return DataBox.fromBytes(buf, keySchema).compareTo(key);
+    }
+}
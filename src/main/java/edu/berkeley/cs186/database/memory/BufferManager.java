@@ -4,6 +4,7 @@ import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 
 import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
 
 public interface BufferManager extends AutoCloseable {
     // We reserve 36 bytes on each page for bookkeeping for recovery
@@ -94,6 +95,22 @@ public interface BufferManager extends AutoCloseable {
      */
     void iterPageNums(BiConsumer<Long, Boolean> process);
 
+    /**
+     * Registers a listener that is called with the page number of every page of
+     * partition partNum that is written to or freed, e.g. to drop copies of the
+     * page decoded outside of the buffer manager. The listeners of a partition are
+     * dropped when the partition is freed.
+     *
+     * @param partNum partition number
+     * @param listener method to consume page numbers
+     */
+    void addPageChangeListener(int partNum, LongConsumer listener);
+
+    /**
+     * @return the store of old versions of pages, used for snapshot reads
+     */
+    PageVersionStore getVersionStore();
+
     /**
      * Get the number of I/Os since the buffer manager was started, excluding anything used in disk
      * space management, and not counting allocation/free. This is not really useful except as a
@@ -9,8 +9,12 @@ import edu.berkeley.cs186.database.recovery.RecoveryManager;
 
 import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
 
 /**
  * Implementation of a buffer manager, with configurable page replacement policies.
@@ -44,6 +48,12 @@ public class BufferManagerImpl implements BufferManager {
     // Count of number of I/Os
     private long numIOs = 0;
 
+    // Old versions of pages, for snapshot reads
+    private final PageVersionStore versionStore = new PageVersionStore(this::freeDeferredPage);
+
+    // Listeners called when a page is written or freed, by partition number
+    private final ConcurrentMap<Integer, List<LongConsumer>> pageChangeListeners = new ConcurrentHashMap<>();
+
     /**
      * Buffer frame, containing information about the loaded page, wrapped around the
      * underlying byte array. Free frames use the index field to create a (singly) linked
@@ -194,7 +204,14 @@ public class BufferManagerImpl implements BufferManager {
                 if (!this.isValid()) {
                     throw new IllegalStateException("reading from invalid buffer frame");
                 }
-                System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
+                TransactionContext transaction = TransactionContext.getTransaction();
+                if (transaction != null && transaction.isReadOnly() && !logPage) {
+                    // snapshot read: the page may have changed since the snapshot
+                    versionStore.read(pageNum, transaction.getSnapshot(), this.contents, position + dataOffset(),
+                                      buf, num);
+                } else {
+                    System.arraycopy(this.contents, position + dataOffset(), buf, 0, num);
+                }
                 BufferManagerImpl.this.evictionPolicy.hit(this);
             } finally {
                 this.unpin();
@@ -228,9 +245,18 @@ public class BufferManagerImpl implements BufferManager {
                         this.setPageLSN(pageLSN);
                     }
                 }
+                if (transaction != null && !transaction.isReadOnly() && !logPage
+                        && versionStore.keepsVersions(transaction.getTransNum())) {
+                    // keep the overwritten bytes for snapshot reads
+                    versionStore.recordWrite(transaction.getTransNum(), pageNum, offset,
+                                             Arrays.copyOfRange(this.contents, offset, offset + num));
+                }
                 System.arraycopy(buf, 0, this.contents, offset, num);
                 this.dirty = true;
                 BufferManagerImpl.this.evictionPolicy.hit(this);
+                if (!logPage) {
+                    pageChanged(pageNum);
+                }
             } finally {
                 this.unpin();
             }
@@ -451,6 +477,13 @@ public class BufferManagerImpl implements BufferManager {
 
     @Override
     public void freePage(Page page) {
+        TransactionContext transaction = TransactionContext.getTransaction();
+        if (transaction != null && !transaction.isReadOnly() && deferFree(transaction, page)) {
+            // snapshots may still read the page: the free is logged now, as part of the
+            // transaction, but only done once they no longer can
+            recoveryManager.logFreePage(transaction.getTransNum(), page.getPageNum());
+            return;
+        }
         this.managerLock.lock();
         try {
             int frameIndex = this.pageToFrame.get(page.getPageNum());
@@ -464,6 +497,54 @@ public class BufferManagerImpl implements BufferManager {
         } finally {
             this.managerLock.unlock();
         }
+        pageChanged(page.getPageNum());
+    }
+
+    // Defers the free of PAGE by TRANSACTION if snapshots may still read the
+    // page, keeping its contents for them: the page may not have been written
+    // by the transaction (e.g. if it held a single record), but snapshots must
+    // still see it.
+    private boolean deferFree(TransactionContext transaction, Page page) {
+        page.pin();
+        try {
+            Frame frame;
+            this.managerLock.lock();
+            try {
+                frame = this.frames[this.pageToFrame.get(page.getPageNum())];
+            } finally {
+                this.managerLock.unlock();
+            }
+            int offset = frame.dataOffset();
+            return versionStore.deferFree(transaction.getTransNum(), page.getPageNum(), offset,
+                                          () -> Arrays.copyOfRange(frame.contents, offset, frame.contents.length));
+        } finally {
+            page.unpin();
+        }
+    }
+
+    /**
+     * Frees a page whose free was deferred by the version store. The free was
+     * logged by the transaction that freed the page, which has committed by now,
+     * so it is not logged again on behalf of the transaction running on this
+     * thread.
+     */
+    private void freeDeferredPage(long pageNum) {
+        TransactionContext.setTransaction(null);
+        this.managerLock.lock();
+        try {
+            Integer frameIndex = this.pageToFrame.remove(pageNum);
+            if (frameIndex != null) {
+                Frame frame = this.frames[frameIndex];
+                evictionPolicy.cleanup(frame);
+                frame.setFree();
+                this.frames[frameIndex] = new Frame(frame);
+            }
+            diskSpaceManager.freePage(pageNum);
+        } finally {
+            this.managerLock.unlock();
+            TransactionContext.unsetTransaction();
+        }
+        pageChanged(pageNum);
     }
 
     @Override
@@ -472,7 +553,7 @@ public class BufferManagerImpl implements BufferManager {
         try {
             for (int i = 0; i < frames.length; ++i) {
                 Frame frame = frames[i];
-                if (DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
+                if (!frame.isFreed() && DiskSpaceManager.getPartNum(frame.pageNum) == partNum) {
                     this.pageToFrame.remove(frame.getPageNum(), i);
                     evictionPolicy.cleanup(frame);
                     frame.setFree();
@@ -482,6 +563,8 @@ public class BufferManagerImpl implements BufferManager {
             }
 
             diskSpaceManager.freePart(partNum);
+            versionStore.forgetPart(partNum);
+            pageChangeListeners.remove(partNum);
         } finally {
             this.managerLock.unlock();
         }
@@ -539,6 +622,25 @@ public class BufferManagerImpl implements BufferManager {
         }
     }
 
+    @Override
+    public void addPageChangeListener(int partNum, LongConsumer listener) {
+        pageChangeListeners.computeIfAbsent(partNum, p -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    private void pageChanged(long pageNum) {
+        List<LongConsumer> listeners = pageChangeListeners.get(DiskSpaceManager.getPartNum(pageNum));
+        if (listeners != null) {
+            for (LongConsumer listener : listeners) {
+                listener.accept(pageNum);
+            }
+        }
+    }
+
+    @Override
+    public PageVersionStore getVersionStore() {
+        return versionStore;
+    }
+
     @Override
     public long getNumIOs() {
         return numIOs;
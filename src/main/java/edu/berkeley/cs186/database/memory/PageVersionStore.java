@@ -0,0 +1,322 @@
+package edu.berkeley.cs186.database.memory;
+
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Old versions of pages, for snapshot reads.
+ *
+ * Before every write of a transaction to a page, the buffer manager stores
+ * the bytes the write overwrites (a delta) here, and before a transaction
+ * frees a page, the whole page. A delta is pending until its writer commits,
+ * when it is stamped with the commit sequence number (CSN) of the writer: the
+ * page held the delta's bytes up to that commit. If the writer aborts,
+ * rollback restores the page, and its deltas are dropped.
+ *
+ * A snapshot is the CSN of the last commit when it is taken. A transaction
+ * reading at snapshot s must not see the changes of writers that hadn't
+ * committed by then, so it reads the page with the deltas of those writers
+ * undone, newest first. Since only the bytes a writer changed are undone,
+ * writers that interleave on different parts of a page (as they do on header
+ * pages, which are not locked) do not hide each other's committed changes.
+ *
+ * A committed delta is only needed by snapshots older than its CSN, and is
+ * dropped as soon as there are none. Pages freed by a writer stay allocated
+ * (see deferFree) until their last delta is dropped, since older snapshots
+ * may still read them.
+ *
+ * Deltas are only recorded while a snapshot is open, so that writes cost
+ * nothing extra when there are no snapshot readers. The changes of a writer
+ * that wrote while there were none cannot be undone, so a snapshot taken
+ * while such a writer is running waits for it to commit or roll back first.
+ */
+public class PageVersionStore {
+    // validUntil of deltas whose writer hasn't committed yet
+    private static final long PENDING = Long.MAX_VALUE;
+
+    private static class Version {
+        private final long pageNum;
+        // position in the page of the bytes overwritten
+        private final int offset;
+        private final byte[] before;
+        private long validUntil = PENDING;
+        private boolean dropped = false;
+
+        private Version(long pageNum, int offset, byte[] before) {
+            this.pageNum = pageNum;
+            this.offset = offset;
+            this.before = before;
+        }
+    }
+
+    // called with the page number of a deferred free once it can be freed
+    private final LongConsumer freePage;
+
+    // snapshots in use or being taken: deltas are recorded while there are any
+    private final AtomicInteger numOpenSnapshots = new AtomicInteger();
+    // running writers that wrote without recording deltas
+    private final Set<Long> unversionedWriters = ConcurrentHashMap.newKeySet();
+
+    // Guarded by this.
+    private long lastCSN = 0;
+    // deltas of each page, oldest first
+    private final Map<Long, List<Version>> versions = new HashMap<>();
+    // pending deltas, by writer
+    private final Map<Long, List<Version>> pending = new HashMap<>();
+    // committed versions, by CSN
+    private final TreeMap<Long, List<Version>> committed = new TreeMap<>();
+    // snapshots in use, with the number of transactions reading at each
+    private final TreeMap<Long, Integer> snapshots = new TreeMap<>();
+    // freed pages that still have versions, with the transaction that freed them
+    private final Map<Long, Long> deferredFrees = new HashMap<>();
+
+    PageVersionStore(LongConsumer freePage) {
+        this.freePage = freePage;
+    }
+
+    /**
+     * Takes a snapshot of the committed state of every page. Every snapshot
+     * must be released with endSnapshot.
+     *
+     * Waits for the running writers that wrote while no snapshot was open, so
+     * must not be called by a thread with such a writer open.
+     *
+     * @return the snapshot (to pass to read)
+     */
+    public synchronized long beginSnapshot() {
+        // writers that see this record deltas from now on (see keepsVersions)
+        numOpenSnapshots.incrementAndGet();
+        while (!unversionedWriters.isEmpty()) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                numOpenSnapshots.decrementAndGet();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while taking a snapshot");
+            }
+        }
+        snapshots.merge(lastCSN, 1, Integer::sum);
+        return lastCSN;
+    }
+
+    /**
+     * Releases a snapshot, dropping the versions that only it needed.
+     */
+    public void endSnapshot(long snapshot) {
+        List<Long> toFree;
+        synchronized (this) {
+            Integer count = snapshots.get(snapshot);
+            if (count == null) {
+                throw new IllegalStateException("snapshot " + snapshot + " not in use");
+            }
+            if (count == 1) {
+                snapshots.remove(snapshot);
+            } else {
+                snapshots.put(snapshot, count - 1);
+            }
+            toFree = collectGarbage();
+        }
+        numOpenSnapshots.decrementAndGet();
+        toFree.forEach(freePage::accept);
+    }
+
+    /**
+     * Marks the versions written by transaction TRANSNUM as committed.
+     *
+     * @return the commit sequence number of the transaction
+     */
+    public long commit(long transNum) {
+        List<Long> toFree;
+        long csn;
+        synchronized (this) {
+            csn = ++lastCSN;
+            List<Version> written = pending.remove(transNum);
+            if (written != null) {
+                for (Version version : written) {
+                    version.validUntil = csn;
+                }
+                committed.put(csn, written);
+            }
+            writerEnded(transNum);
+            toFree = collectGarbage();
+        }
+        toFree.forEach(freePage::accept);
+        return csn;
+    }
+
+    /**
+     * Drops the versions written by transaction TRANSNUM, which aborted (and
+     * whose changes were rolled back), and cancels the frees it deferred: the
+     * pages it freed are in use again. Does nothing if it has no pending
+     * versions, e.g. because it committed.
+     */
+    public void abort(long transNum) {
+        List<Long> toFree;
+        synchronized (this) {
+            writerEnded(transNum);
+            List<Version> written = pending.remove(transNum);
+            if (written == null) {
+                return;
+            }
+            deferredFrees.values().removeIf(freedBy -> freedBy == transNum);
+            // pages freed by committed writers may still become free here
+            toFree = dropVersions(written);
+        }
+        toFree.forEach(freePage::accept);
+    }
+
+    /**
+     * Called before a write by transaction TRANSNUM. Returns whether the bytes
+     * the write overwrites must be recorded (with recordWrite), i.e. whether
+     * a snapshot is open. If not, snapshots taken before the transaction ends
+     * wait for it.
+     */
+    boolean keepsVersions(long transNum) {
+        if (numOpenSnapshots.get() > 0) {
+            return true;
+        }
+        unversionedWriters.add(transNum);
+        // a snapshot taken since the check above either sees the writer, or
+        // is seen here
+        return numOpenSnapshots.get() > 0;
+    }
+
+    /**
+     * Records BEFORE, the bytes at OFFSET in page PAGENUM that a write by
+     * transaction TRANSNUM is about to overwrite. Must be called before the
+     * write, with the page's frame pinned (which keeps snapshot readers of the
+     * page out until the write is done).
+     */
+    synchronized void recordWrite(long transNum, long pageNum, int offset, byte[] before) {
+        Version version = new Version(pageNum, offset, before);
+        pending.computeIfAbsent(transNum, t -> new ArrayList<>()).add(version);
+        versions.computeIfAbsent(pageNum, p -> new ArrayList<>()).add(version);
+    }
+
+    /**
+     * Copies NUM bytes at OFFSET of page PAGENUM as of SNAPSHOT into BUF,
+     * given the current contents of the page. Must be called with the page's
+     * frame pinned, so that the page cannot change while it is read.
+     */
+    synchronized void read(long pageNum, long snapshot, byte[] contents, int offset, byte[] buf, int num) {
+        System.arraycopy(contents, offset, buf, 0, num);
+        List<Version> pageVersions = versions.get(pageNum);
+        if (pageVersions == null) {
+            return;
+        }
+        for (int i = pageVersions.size() - 1; i >= 0; --i) {
+            Version version = pageVersions.get(i);
+            if (version.validUntil <= snapshot) {
+                continue;
+            }
+            int from = Math.max(offset, version.offset);
+            int to = Math.min(offset + num, version.offset + version.before.length);
+            if (from < to) {
+                System.arraycopy(version.before, from - version.offset, buf, from - offset, to - from);
+            }
+        }
+    }
+
+    /**
+     * Called when transaction TRANSNUM is about to free page PAGENUM. Returns
+     * true if snapshots may still read the page, in which case the page must
+     * not be freed yet: CONTENTS, the bytes from OFFSET to the end of the page,
+     * are recorded as a delta, and the page is passed to the free callback once
+     * its last delta is dropped (or kept, if the transaction aborts).
+     */
+    synchronized boolean deferFree(long transNum, long pageNum, int offset, Supplier<byte[]> contents) {
+        if (!versions.containsKey(pageNum) && !keepsVersions(transNum)) {
+            return false;
+        }
+        recordWrite(transNum, pageNum, offset, contents.get());
+        deferredFrees.put(pageNum, transNum);
+        return true;
+    }
+
+    /**
+     * Forgets the versions of the pages of partition PARTNUM, which was freed.
+     */
+    synchronized void forgetPart(int partNum) {
+        versions.keySet().removeIf(pageNum -> DiskSpaceManager.getPartNum(pageNum) == partNum);
+        deferredFrees.keySet().removeIf(pageNum -> DiskSpaceManager.getPartNum(pageNum) == partNum);
+    }
+
+    /**
+     * @return the number of deltas held
+     */
+    public synchronized int getNumVersions() {
+        int numVersions = 0;
+        for (List<Version> pageVersions : versions.values()) {
+            numVersions += pageVersions.size();
+        }
+        return numVersions;
+    }
+
+    /**
+     * @return the number of snapshots in use
+     */
+    public synchronized int getNumSnapshots() {
+        int numSnapshots = 0;
+        for (int count : snapshots.values()) {
+            numSnapshots += count;
+        }
+        return numSnapshots;
+    }
+
+    // Lets snapshots waiting for transaction TRANSNUM proceed, if it wrote
+    // without recording deltas.
+    private void writerEnded(long transNum) {
+        if (unversionedWriters.remove(transNum)) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Drops the committed deltas no snapshot in use can read: those with a
+     * CSN at most the oldest snapshot (or the last CSN, if there is none).
+     *
+     * @return the deferred frees that can now be done
+     */
+    private List<Long> collectGarbage() {
+        long horizon = snapshots.isEmpty() ? lastCSN : snapshots.firstKey();
+        NavigableMap<Long, List<Version>> unneeded = committed.headMap(horizon, true);
+        List<Version> dropped = new ArrayList<>();
+        unneeded.values().forEach(dropped::addAll);
+        unneeded.clear();
+        return dropVersions(dropped);
+    }
+
+    /**
+     * Removes deltas from their pages.
+     *
+     * @return the freed pages whose last delta was removed
+     */
+    private List<Long> dropVersions(List<Version> dropped) {
+        Set<Long> pageNums = new HashSet<>();
+        for (Version version : dropped) {
+            version.dropped = true;
+            pageNums.add(version.pageNum);
+        }
+        List<Long> toFree = new ArrayList<>();
+        for (long pageNum : pageNums) {
+            List<Version> pageVersions = versions.get(pageNum);
+            if (pageVersions == null) {
+                // the partition of the page was freed
+                continue;
+            }
+            pageVersions.removeIf(version -> version.dropped);
+            if (pageVersions.isEmpty()) {
+                versions.remove(pageNum);
+                if (deferredFrees.remove(pageNum) != null) {
+                    toFree.add(pageNum);
+                }
+            }
+        }
+        return toFree;
+    }
+}
@@ -0,0 +1,285 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.FloatDataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.LongDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+
+/**
+ * Running state of a single aggregate (COUNT, SUM or AVG) used by ProjectOperator.
+ *
+ * Accumulators keep their state in primitive fields and are specialized on the
+ * type of the aggregated column, so adding a row never boxes a value. Rows can
+ * be fed either as decoded Records (when aggregating over the output of another
+ * operator) or as serialized record bytes (when the aggregate is fused into a
+ * sequential scan, see Table#visitRecordBytes).
+ */
+abstract class AggregateAccumulator {
+    // index of the aggregated column in the source schema (unused for COUNT)
+    final int columnIndex;
+
+    // byte offset of the aggregated column within a serialized record
+    final int byteOffset;
+
+    private AggregateAccumulator(int columnIndex, int byteOffset) {
+        this.columnIndex = columnIndex;
+        this.byteOffset = byteOffset;
+    }
+
+    /**
+     * Adds the aggregated column of a decoded record.
+     */
+    abstract void add(Record record);
+
+    /**
+     * Adds the aggregated column of the record serialized at offset in page.
+     */
+    abstract void add(Buffer page, int offset);
+
+    /**
+     * @return the type of the value returned by getAndReset
+     */
+    abstract Type getResultType();
+
+    /**
+     * Returns the current value of the aggregate and resets the accumulator so
+     * that it may be reused for the next group.
+     */
+    abstract DataBox getAndReset();
+
+    /**
+     * @return an accumulator for COUNT(*)
+     */
+    static AggregateAccumulator count() {
+        return new CountAccumulator();
+    }
+
+    /**
+     * @param type type of the column being summed (INT, LONG or FLOAT)
+     * @param columnIndex index of the column in the source schema
+     * @param byteOffset offset of the column within a serialized record
+     * @return an accumulator for SUM over the column
+     */
+    static AggregateAccumulator sum(Type type, int columnIndex, int byteOffset) {
+        switch (type.getTypeId()) {
+        case INT: return new IntSumAccumulator(columnIndex, byteOffset);
+        case LONG: return new LongSumAccumulator(columnIndex, byteOffset);
+        case FLOAT: return new FloatSumAccumulator(columnIndex, byteOffset);
+        default: throw new QueryPlanException("Cannot compute sum over a column of type " + type + ".");
+        }
+    }
+
+    /**
+     * @param type type of the column being averaged (INT, LONG or FLOAT)
+     * @param columnIndex index of the column in the source schema
+     * @param byteOffset offset of the column within a serialized record
+     * @return an accumulator for AVG over the column
+     */
+    static AggregateAccumulator average(Type type, int columnIndex, int byteOffset) {
+        switch (type.getTypeId()) {
+        case INT: return new IntAverageAccumulator(columnIndex, byteOffset);
+        case LONG: return new LongAverageAccumulator(columnIndex, byteOffset);
+        case FLOAT: return new FloatAverageAccumulator(columnIndex, byteOffset);
+        default: throw new QueryPlanException("Cannot compute average over a column of type " + type + ".");
+        }
+    }
+
+    private static class CountAccumulator extends AggregateAccumulator {
+        private int count;
+
+        private CountAccumulator() {
+            super(-1, -1);
+        }
+
+        @Override
+        void add(Record record) {
+            ++count;
+        }
+
+        @Override
+        void add(Buffer page, int offset) {
+            ++count;
+        }
+
+        @Override
+        Type getResultType() {
+            return Type.intType();
+        }
+
+        @Override
+        DataBox getAndReset() {
+            int result = count;
+            count = 0;
+            return new IntDataBox(result);
+        }
+    }
+
+    private static class IntSumAccumulator extends AggregateAccumulator {
+        private long sum;
+
+        private IntSumAccumulator(int columnIndex, int byteOffset) {
+            super(columnIndex, byteOffset);
+        }
+
+        @Override
+        void add(Record record) {
+            sum += record.getValues().get(columnIndex).getInt();
+        }
+
+        @Override
+        void add(Buffer page, int offset) {
+            sum += page.getInt(offset + byteOffset);
+        }
+
+        @Override
+        Type getResultType() {
+            return Type.intType();
+        }
+
+        @Override
+        DataBox getAndReset() {
+            long result = sum;
+            sum = 0;
+            return new IntDataBox((int) result);
+        }
+    }
+
+    private static class LongSumAccumulator extends AggregateAccumulator {
+        private long sum;
+
+        private LongSumAccumulator(int columnIndex, int byteOffset) {
+            super(columnIndex, byteOffset);
+        }
+
+        @Override
+        void add(Record record) {
+            sum += record.getValues().get(columnIndex).getLong();
+        }
+
+        @Override
+        void add(Buffer page, int offset) {
+            sum += page.getLong(offset + byteOffset);
+        }
+
+        @Override
+        Type getResultType() {
+            return Type.longType();
+        }
+
+        @Override
+        DataBox getAndReset() {
+            long result = sum;
+            sum = 0;
+            return new LongDataBox(result);
+        }
+    }
+
+    private static class FloatSumAccumulator extends AggregateAccumulator {
+        private double sum;
+
+        private FloatSumAccumulator(int columnIndex, int byteOffset) {
+            super(columnIndex, byteOffset);
+        }
+
+        @Override
+        void add(Record record) {
+            sum += record.getValues().get(columnIndex).getFloat();
+        }
+
+        @Override
+        void add(Buffer page, int offset) {
+            sum += page.getFloat(offset + byteOffset);
+        }
+
+        @Override
+        Type getResultType() {
+            return Type.floatType();
+        }
+
+        @Override
+        DataBox getAndReset() {
+            double result = sum;
+            sum = 0;
+            return new FloatDataBox((float) result);
+        }
+    }
+
+    private static abstract class AverageAccumulator extends AggregateAccumulator {
+        double sum;
+        int count;
+
+        private AverageAccumulator(int columnIndex, int byteOffset) {
+            super(columnIndex, byteOffset);
+        }
+
+        @Override
+        Type getResultType() {
+            return Type.floatType();
+        }
+
+        @Override
+        DataBox getAndReset() {
+            double result = count == 0 ? 0 : sum / count;
+            sum = 0;
+            count = 0;
+            return new FloatDataBox((float) result);
+        }
+    }
+
+    private static class IntAverageAccumulator extends AverageAccumulator {
+        private IntAverageAccumulator(int columnIndex, int byteOffset) {
+            super(columnIndex, byteOffset);
+        }
+
+        @Override
+        void add(Record record) {
+            sum += record.getValues().get(columnIndex).getInt();
+            ++count;
+        }
+
+        @Override
+        void add(Buffer page, int offset) {
+            sum += page.getInt(offset + byteOffset);
+            ++count;
+        }
+    }
+
+    private static class LongAverageAccumulator extends AverageAccumulator {
+        private LongAverageAccumulator(int columnIndex, int byteOffset) {
+            super(columnIndex, byteOffset);
+        }
+
+        @Override
+        void add(Record record) {
+            sum += record.getValues().get(columnIndex).getLong();
+            ++count;
+        }
+
+        @Override
+        void add(Buffer page, int offset) {
+            sum += page.getLong(offset + byteOffset);
+            ++count;
+        }
+    }
+
+    private static class FloatAverageAccumulator extends AverageAccumulator {
+        private FloatAverageAccumulator(int columnIndex, int byteOffset) {
+            super(columnIndex, byteOffset);
+        }
+
+        @Override
+        void add(Record record) {
+            sum += record.getValues().get(columnIndex).getFloat();
+            ++count;
+        }
+
+        @Override
+        void add(Buffer page, int offset) {
+            sum += page.getFloat(offset + byteOffset);
+            ++count;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.List;
+
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.RecordBytesPredicate;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * Compiles the predicates of SelectOperators into RecordBytesPredicates that are
+ * evaluated directly against serialized records (see Table#filteredIterator).
+ *
+ * INT, LONG and FLOAT columns get a predicate specialized on both the column type
+ * and the comparison, which reads the field with a single absolute get and compares
+ * it against an unboxed constant. Other columns decode only the field being tested.
+ * Either way the result matches what SelectOperator computes on decoded records.
+ */
+final class CompiledPredicate {
+    private CompiledPredicate() {}
+
+    /**
+     * @param schema schema of the records being tested
+     * @param columnIndex index of the column in schema
+     * @param operator the comparison to perform
+     * @param value the value to compare the column against
+     * @return a predicate that holds for records where (column operator value) holds
+     */
+    static RecordBytesPredicate compile(Schema schema, int columnIndex, PredicateOperator operator,
+                                        DataBox value) {
+        List<Type> types = schema.getFieldTypes();
+        Type type = types.get(columnIndex);
+        int byteOffset = 0;
+        for (int i = 0; i < columnIndex; ++i) {
+            byteOffset += types.get(i).getSizeInBytes();
+        }
+
+        if (type.equals(value.type())) {
+            switch (type.getTypeId()) {
+            case INT: return compileInt(byteOffset, operator, value.getInt());
+            case LONG: return compileLong(byteOffset, operator, value.getLong());
+            case FLOAT: return compileFloat(byteOffset, operator, value.getFloat());
+            default: break;
+            }
+        }
+        return compileDecoded(type, byteOffset, operator, value);
+    }
+
+    private static RecordBytesPredicate compileInt(int byteOffset, PredicateOperator operator, int v) {
+        switch (operator) {
+        case EQUALS: return (page, offset) -> page.getInt(offset + byteOffset) == v;
+        case NOT_EQUALS: return (page, offset) -> page.getInt(offset + byteOffset) != v;
+        case LESS_THAN: return (page, offset) -> page.getInt(offset + byteOffset) < v;
+        case LESS_THAN_EQUALS: return (page, offset) -> page.getInt(offset + byteOffset) <= v;
+        case GREATER_THAN: return (page, offset) -> page.getInt(offset + byteOffset) > v;
+        case GREATER_THAN_EQUALS: return (page, offset) -> page.getInt(offset + byteOffset) >= v;
+        default: throw new QueryPlanException("Unsupported predicate operator " + operator + ".");
+        }
+    }
+
+    private static RecordBytesPredicate compileLong(int byteOffset, PredicateOperator operator, long v) {
+        switch (operator) {
+        case EQUALS: return (page, offset) -> page.getLong(offset + byteOffset) == v;
+        case NOT_EQUALS: return (page, offset) -> page.getLong(offset + byteOffset) != v;
+        case LESS_THAN: return (page, offset) -> page.getLong(offset + byteOffset) < v;
+        case LESS_THAN_EQUALS: return (page, offset) -> page.getLong(offset + byteOffset) <= v;
+        case GREATER_THAN: return (page, offset) -> page.getLong(offset + byteOffset) > v;
+        case GREATER_THAN_EQUALS: return (page, offset) -> page.getLong(offset + byteOffset) >= v;
+        default: throw new QueryPlanException("Unsupported predicate operator " + operator + ".");
+        }
+    }
+
+    private static RecordBytesPredicate compileFloat(int byteOffset, PredicateOperator operator, float v) {
+        // FloatDataBox#equals compares with == while FloatDataBox#compareTo uses
+        // Float.compare, so the two groups of operators are compiled differently
+        switch (operator) {
+        case EQUALS: return (page, offset) -> page.getFloat(offset + byteOffset) == v;
+        case NOT_EQUALS: return (page, offset) -> page.getFloat(offset + byteOffset) != v;
+        case LESS_THAN: return (page, offset) -> Float.compare(page.getFloat(offset + byteOffset), v) < 0;
+        case LESS_THAN_EQUALS: return (page, offset) -> Float.compare(page.getFloat(offset + byteOffset), v) <= 0;
+        case GREATER_THAN: return (page, offset) -> Float.compare(page.getFloat(offset + byteOffset), v) > 0;
+        case GREATER_THAN_EQUALS: return (page, offset) -> Float.compare(page.getFloat(offset + byteOffset), v) >= 0;
+        default: throw new QueryPlanException("Unsupported predicate operator " + operator + ".");
+        }
+    }
+
+    private static RecordBytesPredicate compileDecoded(Type type, int byteOffset, PredicateOperator operator,
+                                                       DataBox value) {
+        return (page, offset) -> {
+            page.position(offset + byteOffset);
+            DataBox field = DataBox.fromBytes(page, type);
+            switch (operator) {
+            case EQUALS: return field.equals(value);
+            case NOT_EQUALS: return !field.equals(value);
+            case LESS_THAN: return field.compareTo(value) < 0;
+            case LESS_THAN_EQUALS: return field.compareTo(value) <= 0;
+            case GREATER_THAN: return field.compareTo(value) > 0;
+            case GREATER_THAN_EQUALS: return field.compareTo(value) >= 0;
+            default: return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,214 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Table;
+
+/**
+ * Index nested loop join. The right (inner) source must be a sequential scan
+ * of a table with an index on the join column: instead of scanning the right
+ * table, every left record probes the index with TransactionContext.lookupKey.
+ *
+ * Left records are read in batches of B-2 pages' worth of records, and each
+ * batch is sorted on the join column before probing, so that probes of nearby
+ * keys touch the same index pages one after another, and the index is probed
+ * once per distinct key of the batch rather than once per left record.
+ * Output records are therefore grouped by join value within each batch,
+ * rather than in the order of the left source.
+ */
+class INLJOperator extends JoinOperator {
+    private int numBuffers;
+    private String rightTableName;
+    private String rightIndexColumn;
+
+    INLJOperator(QueryOperator leftSource,
+                 QueryOperator rightSource,
+                 String leftColumnName,
+                 String rightColumnName,
+                 TransactionContext transaction) {
+        super(leftSource, rightSource, leftColumnName, rightColumnName, transaction, JoinType.INLJ);
+
+        if (!canProbe(rightSource, rightColumnName, transaction)) {
+            throw new QueryPlanException("INLJ requires an index on " + rightColumnName);
+        }
+        this.numBuffers = transaction.getWorkMemSize();
+        this.rightTableName = ((SequentialScanOperator) rightSource).getTableName();
+        this.rightIndexColumn = unqualified(rightColumnName);
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    /**
+     * @return whether rightSource is a scan of a table with an index on
+     * rightColumnName, i.e. whether an INLJ with rightSource as the inner
+     * relation is possible
+     */
+    static boolean canProbe(QueryOperator rightSource, String rightColumnName, TransactionContext transaction) {
+        if (!rightSource.isSequentialScan()) {
+            return false;
+        }
+        String tableName = ((SequentialScanOperator) rightSource).getTableName();
+        return transaction.indexExists(tableName, unqualified(rightColumnName));
+    }
+
+    private static String unqualified(String columnName) {
+        return columnName.substring(columnName.lastIndexOf('.') + 1);
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        return new INLJIterator();
+    }
+
+    @Override
+    public int estimateIOCost() {
+        TransactionContext transaction = getTransaction();
+        int numLeftPages = getLeftSource().getStats().getNumPages();
+        int numLeftRecords = getLeftSource().getStats().getNumRecords();
+
+        // a probe reads one page of a hash index, and height + 1 pages of a B+
+        // tree (sorted probes often find them cached, which is not counted
+        // here); then each match costs one IO to fetch from the right table
+        int probeCost;
+        if (transaction.isHashIndex(rightTableName, rightIndexColumn)) {
+            probeCost = 1;
+        } else {
+            probeCost = transaction.getTreeHeight(rightTableName, rightIndexColumn) + 1;
+        }
+        int numMatches = this.getStats().getNumRecords();
+        return numLeftPages + numLeftRecords * probeCost + numMatches;
+    }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class INLJIterator implements Iterator<Record> {
+        // Iterator over the records of the left source
+        private Iterator<Record> leftIterator;
+        // Number of left records probed at a time
+        private int batchSize;
+        // The current batch of left records, sorted on the join column
+        private List<Record> batch;
+        // Index into batch of the first left record whose key has not been probed yet
+        private int batchIndex;
+        // Joined records of the last probed key that have not been returned yet
+        private Deque<Record> output;
+        // Type of the index key, which probe keys are converted to
+        private Type keyType;
+
+        INLJIterator() {
+            this.leftIterator = INLJOperator.this.getLeftSource().iterator();
+            int recordsPerPage = Table.computeNumRecordsPerPage(BufferManager.EFFECTIVE_PAGE_SIZE,
+                                 INLJOperator.this.getLeftSource().getOutputSchema());
+            this.batchSize = Math.max(1, INLJOperator.this.numBuffers - 2) * recordsPerPage;
+            this.batch = new ArrayList<>();
+            this.batchIndex = 0;
+            this.output = new ArrayDeque<>();
+            this.keyType = INLJOperator.this.getRightSource().getOutputSchema().getFieldTypes()
+                           .get(INLJOperator.this.getRightColumnIndex());
+        }
+
+        /**
+         * Reads the next batch of left records and sorts it on the join column.
+         */
+        private void fetchNextBatch() {
+            int leftIndex = INLJOperator.this.getLeftColumnIndex();
+            this.batch.clear();
+            while (this.batch.size() < this.batchSize && this.leftIterator.hasNext()) {
+                this.batch.add(this.leftIterator.next());
+            }
+            this.batch.sort(Comparator.comparing((Record r) -> r.getValues().get(leftIndex)));
+            this.batchIndex = 0;
+        }
+
+        /**
+         * Probes the index with the key of the next left record of the batch,
+         * and joins the matches with every left record of the batch that has
+         * that key.
+         */
+        private void probeNextKey() {
+            int leftIndex = INLJOperator.this.getLeftColumnIndex();
+            DataBox key = this.batch.get(this.batchIndex).getValues().get(leftIndex);
+            int end = this.batchIndex + 1;
+            while (end < this.batch.size() && this.batch.get(end).getValues().get(leftIndex).compareTo(key) == 0) {
+                ++end;
+            }
+
+            DataBox probe = toKeyType(key);
+            if (probe != null) {
+                List<Record> matches = new ArrayList<>();
+                INLJOperator.this.getTransaction().lookupKey(INLJOperator.this.rightTableName,
+                        INLJOperator.this.rightIndexColumn, probe).forEachRemaining(matches::add);
+                for (int i = this.batchIndex; i < end; ++i) {
+                    for (Record rightRecord : matches) {
+                        List<DataBox> values = new ArrayList<>(this.batch.get(i).getValues());
+                        values.addAll(rightRecord.getValues());
+                        this.output.add(new Record(values));
+                    }
+                }
+            }
+            this.batchIndex = end;
+        }
+
+        /**
+         * Strings of a different length than the indexed column are converted
+         * to its type; returns null if the string is too long to ever match.
+         */
+        private DataBox toKeyType(DataBox key) {
+            if (key.type().equals(this.keyType) || key.type().getTypeId() != TypeId.STRING) {
+                return key;
+            }
+            String s = key.getString();
+            if (s.length() > this.keyType.getSizeInBytes()) {
+                return null;
+            }
+            return new StringDataBox(s, this.keyType.getSizeInBytes());
+        }
+
+        /**
+         * Checks if there are more record(s) to yield
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        @Override
+        public boolean hasNext() {
+            while (this.output.isEmpty()) {
+                if (this.batchIndex == this.batch.size()) {
+                    if (!this.leftIterator.hasNext()) {
+                        return false;
+                    }
+                    fetchNextBatch();
+                }
+                probeNextKey();
+            }
+            return true;
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        @Override
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.output.removeFirst();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
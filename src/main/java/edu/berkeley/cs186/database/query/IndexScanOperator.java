@@ -17,6 +17,7 @@ class IndexScanOperator extends QueryOperator {
     private String columnName;
     private PredicateOperator predicate;
     private DataBox value;
+    private boolean descending;
 
     private int columnIndex;
 
@@ -32,7 +33,26 @@ class IndexScanOperator extends QueryOperator {
                       String columnName,
                       PredicateOperator predicate,
                       DataBox value) {
+        this(transaction, tableName, columnName, predicate, value, false);
+    }
+
+    /**
+     * An index scan operator that returns records in ascending or descending
+     * order of the indexed column.
+     *
+     * @param transaction the transaction containing this operator
+     * @param tableName the table to iterate over
+     * @param columnName the name of the column the index is on
+     * @param descending whether to return records in descending order
+     */
+    IndexScanOperator(TransactionContext transaction,
+                      String tableName,
+                      String columnName,
+                      PredicateOperator predicate,
+                      DataBox value,
+                      boolean descending) {
         super(OperatorType.INDEXSCAN);
+        this.descending = descending;
         this.tableName = tableName;
         this.transaction = transaction;
         this.columnName = columnName;
@@ -57,7 +77,8 @@ class IndexScanOperator extends QueryOperator {
                "\ntable: " + this.tableName +
                "\ncolumn: " + this.columnName +
                "\noperator: " + this.predicate +
-               "\nvalue: " + this.value;
+               "\nvalue: " + this.value +
+               (this.descending ? "\norder: descending" : "");
     }
 
     /**
@@ -95,12 +116,17 @@ class IndexScanOperator extends QueryOperator {
      */
     @Override
     public int estimateIOCost() {
-        int height = transaction.getTreeHeight(tableName, columnName);
-        int order = transaction.getTreeOrder(tableName, columnName);
         TableStats tableStats = transaction.getStats(tableName);
 
         int count = tableStats.getHistograms().get(columnIndex).copyWithPredicate(predicate,
                     value).getCount();
+        if (transaction.isHashIndex(tableName, columnName)) {
+            // one bucket page (ignoring overflow pages), then one IO per matching record
+            return 1 + count;
+        }
+
+        int height = transaction.getTreeHeight(tableName, columnName);
+        int order = transaction.getTreeOrder(tableName, columnName);
         // 2 * order entries/leaf node, but leaf nodes are 50-100% full; we use a fill factor of
         // 75% as a rough estimate
         return (int) (height + Math.ceil(count / (1.5 * order)) + count);
@@ -129,35 +155,33 @@ class IndexScanOperator extends QueryOperator {
 
         private IndexScanIterator() {
             this.nextRecord = null;
-            if (IndexScanOperator.this.predicate == PredicateOperator.EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.lookupKey(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-            } else if (IndexScanOperator.this.predicate == PredicateOperator.LESS_THAN ||
-                       IndexScanOperator.this.predicate == PredicateOperator.LESS_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScan(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName);
-            } else if (IndexScanOperator.this.predicate == PredicateOperator.GREATER_THAN) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
-                while (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
-                        this.nextRecord = r;
-                        break;
-                    }
-                }
-            } else if (IndexScanOperator.this.predicate == PredicateOperator.GREATER_THAN_EQUALS) {
-                this.sourceIterator = IndexScanOperator.this.transaction.sortedScanFrom(
-                                          IndexScanOperator.this.tableName,
-                                          IndexScanOperator.this.columnName,
-                                          IndexScanOperator.this.value);
+            TransactionContext transaction = IndexScanOperator.this.transaction;
+            String tableName = IndexScanOperator.this.tableName;
+            String columnName = IndexScanOperator.this.columnName;
+            DataBox value = IndexScanOperator.this.value;
+            boolean descending = IndexScanOperator.this.descending;
+            switch (IndexScanOperator.this.predicate) {
+            case EQUALS:
+                this.sourceIterator = transaction.lookupKey(tableName, columnName, value);
+                break;
+            case LESS_THAN:
+            case LESS_THAN_EQUALS: {
+                // the index scan stops at value, so no records past it are read
+                boolean inclusive = IndexScanOperator.this.predicate == PredicateOperator.LESS_THAN_EQUALS;
+                this.sourceIterator = descending
+                                      ? transaction.reverseSortedScanTo(tableName, columnName, value, inclusive)
+                                      : transaction.sortedScanTo(tableName, columnName, value, inclusive);
+                break;
+            }
+            case GREATER_THAN:
+            case GREATER_THAN_EQUALS:
+                this.sourceIterator = descending
+                                      ? transaction.reverseSortedScanFrom(tableName, columnName, value)
+                                      : transaction.sortedScanFrom(tableName, columnName, value);
+                break;
+            default:
+                throw new QueryPlanException("Cannot scan an index with predicate " +
+                                             IndexScanOperator.this.predicate);
             }
         }
 
@@ -171,31 +195,19 @@ class IndexScanOperator extends QueryOperator {
             if (this.nextRecord != null) {
                 return true;
             }
-            if (IndexScanOperator.this.predicate == PredicateOperator.LESS_THAN) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) >= 0) {
-                        return false;
-                    }
-                    this.nextRecord = r;
-                    return true;
-                }
-                return false;
-            } else if (IndexScanOperator.this.predicate == PredicateOperator.LESS_THAN_EQUALS) {
-                if (this.sourceIterator.hasNext()) {
-                    Record r = this.sourceIterator.next();
-                    if (r.getValues().get(IndexScanOperator.this.columnIndex)
-                            .compareTo(IndexScanOperator.this.value) > 0) {
+            while (this.sourceIterator.hasNext()) {
+                Record r = this.sourceIterator.next();
+                if (IndexScanOperator.this.predicate == PredicateOperator.GREATER_THAN &&
+                        r.getValues().get(IndexScanOperator.this.columnIndex)
+                        .compareTo(IndexScanOperator.this.value) == 0) {
+                    // records equal to value come first in ascending order, and
+                    // last in descending order
+                    if (IndexScanOperator.this.descending) {
                         return false;
                     }
-                    this.nextRecord = r;
-                    return true;
+                    continue;
                 }
-                return false;
-            }
-            if (this.sourceIterator.hasNext()) {
-                this.nextRecord = this.sourceIterator.next();
+                this.nextRecord = r;
                 return true;
             }
             return false;
@@ -19,7 +19,8 @@ abstract class JoinOperator extends QueryOperator {
         SNLJ,
         PNLJ,
         BNLJ,
-        SORTMERGE
+        SORTMERGE,
+        INLJ
     }
 
     JoinType joinType;
@@ -0,0 +1,114 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+class LimitOperator extends QueryOperator {
+    private int limit;
+
+    /**
+     * Creates a new LimitOperator that returns at most limit records of source.
+     *
+     * Operators pull records from their source lazily, so once limit records have
+     * been returned nothing below this operator is asked for more: scans stop reading
+     * pages and joins stop probing their inner relation.
+     *
+     * @param source the source of this operator
+     * @param limit the maximum number of records to return
+     */
+    LimitOperator(QueryOperator source, int limit) {
+        super(OperatorType.LIMIT, source);
+        if (limit < 0) {
+            throw new QueryPlanException("LIMIT must not be negative.");
+        }
+        this.limit = limit;
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    @Override
+    public Schema computeSchema() {
+        return this.getSource().getOutputSchema();
+    }
+
+    @Override
+    public String str() {
+        return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")" +
+               "\nlimit: " + this.limit;
+    }
+
+    @Override
+    public TableStats estimateStats() {
+        return this.getSource().getStats();
+    }
+
+    /**
+     * Assumes the source does work in proportion to the number of records it
+     * produces, so only the fraction of its cost needed for the first limit
+     * records is paid.
+     */
+    @Override
+    public int estimateIOCost() {
+        int sourceCost = this.getSource().getIOCost();
+        int numRecords = this.getSource().getStats().getNumRecords();
+        if (numRecords <= this.limit) {
+            return sourceCost;
+        }
+        return (int) Math.ceil((double) sourceCost * this.limit / numRecords);
+    }
+
+    @Override
+    public Iterator<Record> iterator() { return new LimitIterator(); }
+
+    /**
+     * An implementation of Iterator that provides an iterator interface for this operator.
+     */
+    private class LimitIterator implements Iterator<Record> {
+        private Iterator<Record> sourceIterator;
+        private int numReturned;
+
+        private LimitIterator() {
+            this.sourceIterator = LimitOperator.this.getSource().iterator();
+            this.numReturned = 0;
+        }
+
+        /**
+         * Checks if there are more record(s) to yield. The source iterator is
+         * never consulted again once the limit is hit.
+         *
+         * @return true if this iterator has another record to yield, otherwise false
+         */
+        @Override
+        public boolean hasNext() {
+            if (this.numReturned >= LimitOperator.this.limit) {
+                return false;
+            }
+            return this.sourceIterator.hasNext();
+        }
+
+        /**
+         * Yields the next record of this iterator.
+         *
+         * @return the next Record
+         * @throws NoSuchElementException if there are no more Records to yield
+         */
+        @Override
+        public Record next() {
+            if (this.hasNext()) {
+                ++this.numReturned;
+                return this.sourceIterator.next();
+            }
+            throw new NoSuchElementException();
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
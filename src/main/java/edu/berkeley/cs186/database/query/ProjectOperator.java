@@ -5,13 +5,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 
+import edu.berkeley.cs186.database.common.Buffer;
 import edu.berkeley.cs186.database.databox.DataBox;
-import edu.berkeley.cs186.database.databox.FloatDataBox;
-import edu.berkeley.cs186.database.databox.IntDataBox;
 import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.databox.TypeId;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBytesVisitor;
 import edu.berkeley.cs186.database.table.Schema;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
@@ -22,13 +22,9 @@ class ProjectOperator extends QueryOperator {
     private int averageColumnIndex;
     private int sumColumnIndex;
     private boolean hasAggregate;
-    private int countValue;
-    private double sumValue;
-    private double averageSumValue;
-    private int averageCountValue;
+    private AggregateAccumulator[] aggregates;
     private String sumColumn;
     private String averageColumn;
-    private boolean sumIsFloat;
 
     /**
      * Creates a new ProjectOperator that reads tuples from source and filters out columns. Optionally
@@ -48,10 +44,7 @@ class ProjectOperator extends QueryOperator {
         super(OperatorType.PROJECT);
         this.columns = columns;
         this.indices = new ArrayList<>();
-        this.countValue = 0;
-        this.sumValue = 0;
-        this.averageCountValue = 0;
-        this.averageSumValue = 0;
+        this.aggregates = new AggregateAccumulator[0];
         this.averageColumnIndex = -1;
         this.sumColumnIndex = -1;
         this.sumColumn = sumColumn;
@@ -88,88 +81,84 @@ class ProjectOperator extends QueryOperator {
         if (this.sumColumn != null) {
             this.sumColumn = this.checkSchemaForColumn(sourceSchema, this.sumColumn);
             this.sumColumnIndex = sourceColumnNames.indexOf(this.sumColumn);
-            if (!(sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.INT) &&
-                    !(sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.FLOAT)) {
-                throw new QueryPlanException("Cannot compute sum over a non-integer column: " + this.sumColumn +
+            if (!isNumeric(sourceColumnTypes.get(this.sumColumnIndex))) {
+                throw new QueryPlanException("Cannot compute sum over a non-numeric column: " + this.sumColumn +
                                              ".");
             }
         }
         if (this.averageColumn != null) {
             this.averageColumn = this.checkSchemaForColumn(sourceSchema, this.averageColumn);
             this.averageColumnIndex = sourceColumnNames.indexOf(this.averageColumn);
-            if (!(sourceColumnTypes.get(this.averageColumnIndex).getTypeId() == TypeId.INT) &&
-                    !(sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.FLOAT)) {
-                throw new QueryPlanException("Cannot compute sum over a non-integer column: " + this.averageColumn +
-                                             ".");
+            if (!isNumeric(sourceColumnTypes.get(this.averageColumnIndex))) {
+                throw new QueryPlanException("Cannot compute average over a non-numeric column: " +
+                                             this.averageColumn + ".");
             }
         }
 
         // make sure we add the correct columns to the output schema if we have aggregates in the
         // projection
         if (this.hasAggregate) {
+            List<AggregateAccumulator> aggregates = new ArrayList<>();
             if (this.hasCount) {
+                aggregates.add(AggregateAccumulator.count());
                 this.columns.add("countAgg");
-                columnTypes.add(Type.intType());
             }
             if (this.sumColumn != null) {
+                aggregates.add(AggregateAccumulator.sum(sourceColumnTypes.get(this.sumColumnIndex),
+                               this.sumColumnIndex, byteOffset(sourceColumnTypes, this.sumColumnIndex)));
                 this.columns.add("sumAgg");
-                if (sourceColumnTypes.get(this.sumColumnIndex).getTypeId() == TypeId.INT) {
-                    columnTypes.add(Type.intType());
-                    this.sumIsFloat = false;
-                } else {
-                    columnTypes.add(Type.floatType());
-                    this.sumIsFloat = true;
-                }
             }
             if (this.averageColumn != null) {
+                aggregates.add(AggregateAccumulator.average(sourceColumnTypes.get(this.averageColumnIndex),
+                               this.averageColumnIndex, byteOffset(sourceColumnTypes, this.averageColumnIndex)));
                 this.columns.add("averageAgg");
-                columnTypes.add(Type.floatType());
             }
+            for (AggregateAccumulator aggregate : aggregates) {
+                columnTypes.add(aggregate.getResultType());
+            }
+            this.aggregates = aggregates.toArray(new AggregateAccumulator[0]);
         }
         return new Schema(this.columns, columnTypes);
     }
 
-    @Override
-    public Iterator<Record> iterator() { return new ProjectIterator(); }
-
-    private void addToCount() {
-        this.countValue++;
-    }
-
-    private int getAndResetCount() {
-        int result = this.countValue;
-        this.countValue = 0;
-        return result;
+    private static boolean isNumeric(Type type) {
+        TypeId typeId = type.getTypeId();
+        return typeId == TypeId.INT || typeId == TypeId.LONG || typeId == TypeId.FLOAT;
     }
 
-    private void addToSum(Record record) {
-        if (this.sumIsFloat) {
-            this.sumValue += record.getValues().get(this.sumColumnIndex).getFloat();
-        } else {
-            this.sumValue += record.getValues().get(this.sumColumnIndex).getInt();
+    // offset of the column at index within a record serialized with the given field types
+    private static int byteOffset(List<Type> types, int index) {
+        int offset = 0;
+        for (int i = 0; i < index; ++i) {
+            offset += types.get(i).getSizeInBytes();
         }
+        return offset;
     }
 
-    private double getAndResetSum() {
-        double result = this.sumValue;
-        this.sumValue = 0;
-        return result;
+    /**
+     * Aggregates without a GROUP BY clause directly over a sequential scan are fused
+     * into the scan: records are never decoded, and the aggregated columns are read
+     * straight out of the serialized bytes of each page.
+     */
+    @Override
+    public Iterator<Record> iterator() {
+        if (this.hasAggregate && this.indices.isEmpty()
+                && this.getSource() instanceof SequentialScanOperator) {
+            return new ScanAggregateIterator();
+        }
+        return new ProjectIterator();
     }
 
-    private void addToAverage(Record record) {
-        this.averageCountValue++;
-        this.averageSumValue += record.getValues().get(this.averageColumnIndex).getInt();
+    private void addToAggregates(Record record) {
+        for (AggregateAccumulator aggregate : this.aggregates) {
+            aggregate.add(record);
+        }
     }
 
-    private double getAndResetAverage() {
-        if (this.averageCountValue == 0) {
-            return 0f;
+    private void addAggregatesTo(List<DataBox> values) {
+        for (AggregateAccumulator aggregate : this.aggregates) {
+            values.add(aggregate.getAndReset());
         }
-
-        double result =  this.averageSumValue / this.averageCountValue;
-        this.averageSumValue = 0;
-        this.averageCountValue = 0;
-        return result;
     }
 
     @Override
@@ -236,23 +225,7 @@ class ProjectOperator extends QueryOperator {
                         // if the record is a MarkerRecord, that means we reached the end of a group... we reset
                         // the aggregates and add the appropriate new record to the new Records
                         if (r == this.markerRecord) {
-                            if (ProjectOperator.this.hasCount) {
-                                int count = ProjectOperator.this.getAndResetCount();
-                                this.baseValues.add(new IntDataBox(count));
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                double sum = ProjectOperator.this.getAndResetSum();
-
-                                if (ProjectOperator.this.sumIsFloat) {
-                                    this.baseValues.add(new FloatDataBox((float) sum));
-                                } else {
-                                    this.baseValues.add(new IntDataBox((int) sum));
-                                }
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                double average = (float) ProjectOperator.this.getAndResetAverage();
-                                this.baseValues.add(new FloatDataBox((float) average));
-                            }
+                            ProjectOperator.this.addAggregatesTo(this.baseValues);
                             // record that we just saw a marker record
                             this.prevWasMarker = true;
                             return new Record(this.baseValues);
@@ -266,37 +239,13 @@ class ProjectOperator extends QueryOperator {
                                 }
                                 this.prevWasMarker = false;
                             }
-                            if (ProjectOperator.this.hasCount) {
-                                ProjectOperator.this.addToCount();
-                            }
-                            if (ProjectOperator.this.sumColumnIndex != -1) {
-                                ProjectOperator.this.addToSum(r);
-                            }
-                            if (ProjectOperator.this.averageColumnIndex != -1) {
-                                ProjectOperator.this.addToAverage(r);
-                            }
+                            ProjectOperator.this.addToAggregates(r);
                         }
                     }
 
                     // at the very end, we need to make sure we add all the aggregated records to the result
                     // either because there was no group by or to add the last group we saw
-                    if (ProjectOperator.this.hasCount) {
-                        int count = ProjectOperator.this.getAndResetCount();
-                        this.baseValues.add(new IntDataBox(count));
-                    }
-                    if (ProjectOperator.this.sumColumnIndex != -1) {
-                        double sum = ProjectOperator.this.getAndResetSum();
-
-                        if (ProjectOperator.this.sumIsFloat) {
-                            this.baseValues.add(new FloatDataBox((float) sum));
-                        } else {
-                            this.baseValues.add(new IntDataBox((int) sum));
-                        }
-                    }
-                    if (ProjectOperator.this.averageColumnIndex != -1) {
-                        double average = ProjectOperator.this.getAndResetAverage();
-                        this.baseValues.add(new FloatDataBox((float) average));
-                    }
+                    ProjectOperator.this.addAggregatesTo(this.baseValues);
                     return new Record(this.baseValues);
                 } else {
                     Record r = this.sourceIterator.next();
@@ -323,4 +272,51 @@ class ProjectOperator extends QueryOperator {
             throw new UnsupportedOperationException();
         }
     }
+
+    /**
+     * Iterator for aggregates fused into a sequential scan. The source table is
+     * scanned once through Table#visitRecordBytes, and a single record holding the
+     * aggregates is yielded (or none, if the table is empty).
+     */
+    private class ScanAggregateIterator implements Iterator<Record>, RecordBytesVisitor {
+        private long numRecords;
+        private Record result;
+
+        private ScanAggregateIterator() {
+            ((SequentialScanOperator) ProjectOperator.this.getSource()).visitRecordBytes(this);
+            if (this.numRecords > 0) {
+                List<DataBox> values = new ArrayList<>();
+                ProjectOperator.this.addAggregatesTo(values);
+                this.result = new Record(values);
+            }
+        }
+
+        @Override
+        public void visit(Buffer page, int offset) {
+            for (AggregateAccumulator aggregate : ProjectOperator.this.aggregates) {
+                aggregate.add(page, offset);
+            }
+            ++this.numRecords;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.result != null;
+        }
+
+        @Override
+        public Record next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record r = this.result;
+            this.result = null;
+            return r;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
 }
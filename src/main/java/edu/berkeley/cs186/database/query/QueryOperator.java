@@ -22,6 +22,8 @@ public abstract class QueryOperator implements Iterable<Record> {
         SEQSCAN,
         INDEXSCAN,
         MATERIALIZE,
+        SORT,
+        LIMIT,
     }
 
     private OperatorType type;
@@ -30,6 +30,8 @@ public class QueryPlan {
     private boolean hasCount;
     private String averageColumnName;
     private String sumColumnName;
+    private String orderByColumn;
+    private int limit;
 
     /**
      * Creates a new QueryPlan within transaction. The base table is startTableName.
@@ -72,6 +74,9 @@ public class QueryPlan {
 
         this.groupByColumn = null;
 
+        this.orderByColumn = null;
+        this.limit = -1;
+
         this.finalOperator = null;
 
         this.transaction.setAliasMap(this.aliases);
@@ -148,6 +153,29 @@ public class QueryPlan {
         this.sumColumnName = column;
     }
 
+    /**
+     * Order the results of this query by column, in ascending order.
+     *
+     * @param column the column to order by
+     */
+    public void orderBy(String column) {
+        this.orderByColumn = column;
+    }
+
+    /**
+     * Return at most limit records from this query. Operators below the limit stop
+     * producing records once enough have been returned, and ORDER BY with a limit
+     * only keeps the first limit records in memory.
+     *
+     * @param limit the maximum number of records to return
+     */
+    public void limit(int limit) {
+        if (limit < 0) {
+            throw new QueryPlanException("LIMIT must not be negative.");
+        }
+        this.limit = limit;
+    }
+
     /**
      * Join the leftColumnName column of the existing queryplan against the rightColumnName column
      * of tableName.
@@ -193,12 +221,19 @@ public class QueryPlan {
 
     /**
      * Generates a naive QueryPlan in which all joins are at the bottom of the DAG followed by all select
-     * predicates, an optional group by operator, and a set of projects (in that order).
+     * predicates, an optional group by operator, an optional order by operator, a set of projects,
+     * and an optional limit (in that order).
      *
      * @return an iterator of records that is the result of this query
      */
     public Iterator<Record> executeNaive() {
         this.transaction.setAliasMap(this.aliases);
+        // a read-only transaction only reads its snapshot while it is the transaction of
+        // the thread, so it is while the plan is built, and while the records are read
+        boolean readOnly = this.transaction.isReadOnly();
+        if (readOnly) {
+            TransactionContext.setTransaction(this.transaction);
+        }
         try {
             String indexColumn = this.checkIndexEligible();
 
@@ -211,15 +246,55 @@ public class QueryPlan {
                 this.addJoins();
                 this.addSelects();
                 this.addGroupBy();
+                this.addOrderBy();
                 this.addProjects();
+                this.addLimit();
             }
 
-            return this.finalOperator.execute();
+            Iterator<Record> records = this.finalOperator.execute();
+            return readOnly ? new TransactionBoundIterator(this.transaction, records) : records;
         } finally {
+            if (readOnly) {
+                TransactionContext.unsetTransaction();
+            }
             this.transaction.clearAliasMap();
         }
     }
 
+    /**
+     * An iterator that makes TRANSACTION the transaction of the thread for every call to
+     * the wrapped iterator, which reads records lazily, long after execute returned.
+     */
+    private static class TransactionBoundIterator implements Iterator<Record> {
+        private TransactionContext transaction;
+        private Iterator<Record> records;
+
+        private TransactionBoundIterator(TransactionContext transaction, Iterator<Record> records) {
+            this.transaction = transaction;
+            this.records = records;
+        }
+
+        @Override
+        public boolean hasNext() {
+            TransactionContext.setTransaction(this.transaction);
+            try {
+                return this.records.hasNext();
+            } finally {
+                TransactionContext.unsetTransaction();
+            }
+        }
+
+        @Override
+        public Record next() {
+            TransactionContext.setTransaction(this.transaction);
+            try {
+                return this.records.next();
+            } finally {
+                TransactionContext.unsetTransaction();
+            }
+        }
+    }
+
     /**
      * Generates an optimal QueryPlan based on the System R cost-based query optimizer.
      *
@@ -237,7 +312,8 @@ public class QueryPlan {
         // been joined.
 
         // Get the lowest cost operator from the last pass, add GROUP BY and SELECT
-        // operators, and return an iterator on the final operator
+        // operators (and ORDER BY and LIMIT, see addOrderBy and addLimit), and
+        // return an iterator on the final operator
 
         return this.executeNaive(); // TODO(proj3_part2): Replace this!!! Allows you to test intermediate functionality
     }
@@ -254,8 +330,7 @@ public class QueryPlan {
         for (int i = 0; i < this.selectColumnNames.size(); i++) {
             String column = this.selectColumnNames.get(i);
 
-            if (this.transaction.indexExists(table, column) &&
-                    this.selectOperators.get(i) != PredicateOperator.NOT_EQUALS) {
+            if (indexSupports(table, column, this.selectOperators.get(i))) {
                 selectIndices.add(i);
             }
         }
@@ -263,6 +338,21 @@ public class QueryPlan {
         return selectIndices;
     }
 
+    /**
+     * Whether there is an index on table.column that can answer a predicate
+     * with operator op. B+ trees can answer anything but NOT_EQUALS, and hash
+     * indices can only answer EQUALS.
+     */
+    private boolean indexSupports(String table, String column, PredicateOperator op) {
+        if (!this.transaction.indexExists(table, column)) {
+            return false;
+        }
+        if (this.transaction.isHashIndex(table, column)) {
+            return op == PredicateOperator.EQUALS;
+        }
+        return op != PredicateOperator.NOT_EQUALS;
+    }
+
     /**
      * Gets all columns for which there exists an index for that table
      *
@@ -361,6 +451,9 @@ public class QueryPlan {
         List<QueryOperator> allJoins = new ArrayList<>();
         allJoins.add(new SNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
         allJoins.add(new BNLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        if (INLJOperator.canProbe(rightOp, rightColumn, this.transaction)) {
+            allJoins.add(new INLJOperator(leftOp, rightOp, leftColumn, rightColumn, this.transaction));
+        }
 
         for (QueryOperator join : allJoins) {
             int joinCost = join.estimateIOCost();
@@ -447,10 +540,8 @@ public class QueryPlan {
                 && this.joinTableNames.size() == 0) {
             int index = 0;
             for (String column : selectColumnNames) {
-                if (this.transaction.indexExists(this.startTableName, column)) {
-                    if (this.selectOperators.get(index) != PredicateOperator.NOT_EQUALS) {
-                        return column;
-                    }
+                if (indexSupports(this.startTableName, column, this.selectOperators.get(index))) {
+                    return column;
                 }
 
                 index++;
@@ -474,7 +565,9 @@ public class QueryPlan {
         this.selectDataBoxes.remove(selectIndex);
 
         this.addSelects();
+        this.addOrderBy();
         this.addProjects();
+        this.addLimit();
     }
 
     private void addJoins() {
@@ -525,4 +618,23 @@ public class QueryPlan {
         }
     }
 
+    private void addOrderBy() {
+        if (this.orderByColumn != null) {
+            if (this.groupByColumn != null || this.hasCount || this.sumColumnName != null
+                    || this.averageColumnName != null) {
+                throw new QueryPlanException("Cannot ORDER BY a query with GROUP BY or aggregates.");
+            }
+
+            // with a limit the TopNOperator only keeps the first records, so the limit
+            // added by addLimit on top of it is free
+            this.finalOperator = new TopNOperator(this.finalOperator, this.transaction,
+                                                  this.orderByColumn, this.limit);
+        }
+    }
+
+    private void addLimit() {
+        if (this.limit >= 0) {
+            this.finalOperator = new LimitOperator(this.finalOperator, this.limit);
+        }
+    }
 }
@@ -1,13 +1,17 @@
 package edu.berkeley.cs186.database.query;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.table.MarkerRecord;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBytesPredicate;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 class SelectOperator extends QueryOperator {
@@ -76,8 +80,42 @@ class SelectOperator extends QueryOperator {
         return this.getSource().getIOCost();
     }
 
+    /**
+     * Compiles the predicate of this operator to run against serialized records.
+     * See CompiledPredicate.
+     */
+    RecordBytesPredicate compile() {
+        return CompiledPredicate.compile(this.getOutputSchema(), this.columnIndex, this.operator, this.value);
+    }
+
+    /**
+     * @return false if the zone map of table shows that no record on data page
+     * pageNum satisfies the predicate of this operator
+     */
+    boolean pageMayMatch(Table table, long pageNum) {
+        return table.pageMayMatch(pageNum, this.columnIndex, this.operator, this.value);
+    }
+
+    /**
+     * When this operator sits on top of a chain of SelectOperators over a sequential
+     * scan, the conjunction of all of their predicates is compiled and evaluated by
+     * the scan itself in a single pass, so records that fail any predicate are never
+     * decoded, and pages that the table's zone map rules out are never fetched. The
+     * iterators of the other SelectOperators in the chain are unused.
+     */
     @Override
-    public Iterator<Record> iterator() { return new SelectIterator(); }
+    public Iterator<Record> iterator() {
+        QueryOperator base = this;
+        List<SelectOperator> selects = new ArrayList<>();
+        while (base.isSelect()) {
+            selects.add((SelectOperator) base);
+            base = base.getSource();
+        }
+        if (base instanceof SequentialScanOperator) {
+            return ((SequentialScanOperator) base).filteredIterator(selects);
+        }
+        return new SelectIterator();
+    }
 
     /**
      * An implementation of Iterator that provides an iterator interface for this operator.
@@ -1,11 +1,16 @@
 package edu.berkeley.cs186.database.query;
 
 import java.util.Iterator;
+import java.util.List;
+import java.util.function.LongPredicate;
 
 import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.RecordBytesPredicate;
+import edu.berkeley.cs186.database.table.RecordBytesVisitor;
 import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
 import edu.berkeley.cs186.database.table.stats.TableStats;
 
 class SequentialScanOperator extends QueryOperator {
@@ -52,6 +57,47 @@ class SequentialScanOperator extends QueryOperator {
         return this.transaction.getRecordIterator(tableName);
     }
 
+    /**
+     * Visits the serialized bytes of every record in the table without decoding
+     * them into Records. See Table#visitRecordBytes.
+     *
+     * @param visitor callback run once per record
+     */
+    void visitRecordBytes(RecordBytesVisitor visitor) {
+        this.transaction.getTable(this.tableName).visitRecordBytes(visitor);
+    }
+
+    /**
+     * Returns an iterator over the records of the table satisfying the predicates of
+     * all of selects, which are evaluated before records are decoded. Data pages are
+     * only fetched if the zone map of the table shows that they may hold matching
+     * records. See Table#filteredIterator. Read-only transactions fetch every data
+     * page, since the zone map describes the current records of each page, not
+     * those of their snapshot.
+     *
+     * @param selects SelectOperators whose predicates apply to this scan
+     */
+    Iterator<Record> filteredIterator(List<SelectOperator> selects) {
+        RecordBytesPredicate predicate = null;
+        for (SelectOperator select : selects) {
+            RecordBytesPredicate compiled = select.compile();
+            predicate = predicate == null ? compiled : predicate.and(compiled);
+        }
+        Table table = this.transaction.getTable(this.tableName);
+        LongPredicate pageFilter = pageNum -> {
+            if (this.transaction.isReadOnly()) {
+                return true;
+            }
+            for (SelectOperator select : selects) {
+                if (!select.pageMayMatch(table, pageNum)) {
+                    return false;
+                }
+            }
+            return true;
+        };
+        return table.filteredIterator(predicate, pageFilter);
+    }
+
     @Override
     public Schema computeSchema() {
         try {
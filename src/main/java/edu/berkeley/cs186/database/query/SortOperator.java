@@ -71,9 +71,12 @@ public class SortOperator {
      * size of the buffer, but it is done this way for ease.
      */
     public Run sortRun(Run run) {
-        // TODO(proj3_part1): implement
-
-        return null;
+        List<Record> records = new ArrayList<>();
+        run.iterator().forEachRemaining(records::add);
+        records.sort(this.comparator);
+        Run sortedRun = this.createRun();
+        sortedRun.addRecords(records);
+        return sortedRun;
     }
 
     /**
@@ -85,9 +88,26 @@ public class SortOperator {
      * sorting on currently unmerged from run i.
      */
     public Run mergeSortedRuns(List<Run> runs) {
-        // TODO(proj3_part1): implement
+        List<Iterator<Record>> iterators = new ArrayList<>();
+        PriorityQueue<Pair<Record, Integer>> queue = new PriorityQueue<>(new RecordPairComparator());
+        for (int i = 0; i < runs.size(); ++i) {
+            Iterator<Record> iterator = runs.get(i).iterator();
+            iterators.add(iterator);
+            if (iterator.hasNext()) {
+                queue.add(new Pair<>(iterator.next(), i));
+            }
+        }
 
-        return null;
+        Run mergedRun = this.createRun();
+        while (!queue.isEmpty()) {
+            Pair<Record, Integer> next = queue.poll();
+            mergedRun.addRecord(next.getFirst().getValues());
+            Iterator<Record> iterator = iterators.get(next.getSecond());
+            if (iterator.hasNext()) {
+                queue.add(new Pair<>(iterator.next(), next.getSecond()));
+            }
+        }
+        return mergedRun;
     }
 
     /**
@@ -98,9 +118,13 @@ public class SortOperator {
      * perfect multiple.
      */
     public List<Run> mergePass(List<Run> runs) {
-        // TODO(proj3_part1): implement
-
-        return Collections.emptyList();
+        // with fewer than 3 buffers, still merge pairs of runs so that sort ends
+        int fanIn = Math.max(2, this.numBuffers - 1);
+        List<Run> mergedRuns = new ArrayList<>();
+        for (int i = 0; i < runs.size(); i += fanIn) {
+            mergedRuns.add(this.mergeSortedRuns(runs.subList(i, Math.min(runs.size(), i + fanIn))));
+        }
+        return mergedRuns;
     }
 
     /**
@@ -109,9 +133,23 @@ public class SortOperator {
      * Returns the name of the table that backs the final run.
      */
     public String sort() {
-        // TODO(proj3_part1): implement
+        // pass 0: sort the table numBuffers pages at a time
+        List<Run> runs = new ArrayList<>();
+        Iterator<Page> pages = this.transaction.getPageIterator(this.tableName);
+        while (pages.hasNext()) {
+            BacktrackingIterator<Record> block = this.transaction.getBlockIterator(this.tableName, pages,
+                                                 this.numBuffers);
+            runs.add(this.sortRun(this.createRunFromIterator(block)));
+        }
+        if (runs.isEmpty()) {
+            return this.createRun().tableName();
+        }
 
-        return this.tableName; // TODO(proj3_part1): replace this!
+        // merge numBuffers - 1 runs at a time until one is left
+        while (runs.size() > 1) {
+            runs = this.mergePass(runs);
+        }
+        return runs.get(0).tableName();
     }
 
     public Iterator<Record> iterator() {
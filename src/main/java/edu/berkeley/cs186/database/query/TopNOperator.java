@@ -0,0 +1,117 @@
+package edu.berkeley.cs186.database.query;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.stats.TableStats;
+
+class TopNOperator extends QueryOperator {
+    private TransactionContext transaction;
+    private String columnName;
+    private int columnIndex;
+    private int limit;
+    private Comparator<Record> comparator;
+
+    /**
+     * Creates a new TopNOperator that returns the records of source in ascending
+     * order of columnName.
+     *
+     * When limit is non-negative, only the first limit records are needed: the
+     * operator then keeps the smallest limit records seen so far in a bounded
+     * priority queue, so memory use is O(limit) and the input is only read once.
+     * Without a limit, source is materialized and sorted with SortOperator, an
+     * external merge sort, so memory use does not grow with the input.
+     *
+     * @param source the source of this operator
+     * @param transaction the transaction containing this operator
+     * @param columnName the column to order by
+     * @param limit the maximum number of records to return, or -1 for no limit
+     */
+    TopNOperator(QueryOperator source,
+                 TransactionContext transaction,
+                 String columnName,
+                 int limit) {
+        super(OperatorType.SORT, source);
+        this.transaction = transaction;
+        this.limit = limit;
+
+        this.columnName = this.checkSchemaForColumn(source.getOutputSchema(), columnName);
+        this.columnIndex = this.getOutputSchema().getFieldNames().indexOf(this.columnName);
+        this.comparator = Comparator.comparing((Record r) -> r.getValues().get(this.columnIndex));
+
+        this.stats = this.estimateStats();
+        this.cost = this.estimateIOCost();
+    }
+
+    @Override
+    public Schema computeSchema() {
+        return this.getSource().getOutputSchema();
+    }
+
+    @Override
+    public String str() {
+        return "type: " + this.getType() + " (cost: " + this.getIOCost() + ")" +
+               "\ncolumn: " + this.columnName +
+               (this.limit >= 0 ? "\nlimit: " + this.limit : "");
+    }
+
+    @Override
+    public TableStats estimateStats() {
+        return this.getSource().getStats();
+    }
+
+    @Override
+    public int estimateIOCost() {
+        // the bounded heap is kept in memory, so only the source is read
+        if (this.limit >= 0) {
+            return this.getSource().getIOCost();
+        }
+        // otherwise the source is materialized and externally sorted
+        int numPages = this.getSource().getStats().getNumPages();
+        int numBuffers = Math.max(this.transaction.getWorkMemSize(), 3);
+        int numPasses = 1;
+        if (numPages > 0) {
+            double numRuns = Math.ceil((double) numPages / numBuffers);
+            numPasses += (int) Math.ceil(Math.log(Math.max(numRuns, 1)) / Math.log(numBuffers - 1));
+        }
+        return this.getSource().getIOCost() + 2 * numPages * numPasses;
+    }
+
+    @Override
+    public Iterator<Record> iterator() {
+        if (this.limit < 0) {
+            MaterializeOperator materialized = new MaterializeOperator(this.getSource(), this.transaction);
+            return new SortOperator(this.transaction, materialized.getTableName(), this.comparator).iterator();
+        }
+        if (this.limit == 0) {
+            return Collections.emptyIterator();
+        }
+
+        // max-heap on the sort column: the head is the largest of the records kept so far,
+        // and is evicted whenever a smaller record arrives once the heap is full; it grows
+        // as records arrive, since the limit may be far larger than the input
+        PriorityQueue<Record> heap = new PriorityQueue<>(this.comparator.reversed());
+        for (Record record : this.getSource()) {
+            if (heap.size() < this.limit) {
+                heap.add(record);
+            } else if (this.comparator.compare(record, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(record);
+            }
+        }
+
+        List<Record> records = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            records.add(heap.poll());
+        }
+        Collections.reverse(records);
+        return records.iterator();
+    }
+}
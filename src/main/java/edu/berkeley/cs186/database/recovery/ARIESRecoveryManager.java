@@ -13,6 +13,7 @@ import edu.berkeley.cs186.database.recovery.records.*;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -45,6 +46,20 @@ public class ARIESRecoveryManager implements RecoveryManager {
     // List of lock requests made during recovery. This is only populated when locking is disabled.
     List<String> lockRequests;
 
+    // Number of log pages to keep in a dedicated log tail buffer, or 0 to keep the log in the buffer pool.
+    private int logTailPages = 0;
+
+    // Number of threads to redo records on during restart recovery. With one,
+    // records are redone in LSN order, even across pages.
+    private int numRedoThreads = 1;
+
+    // Held while taking a checkpoint, so that only one runs at a time.
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    // LSN of the begin checkpoint record of the last checkpoint.
+    private volatile long lastCheckpointLSN = 0L;
+    // Takes checkpoints in the background, based on log volume.
+    private final Checkpointer checkpointer = new Checkpointer(this);
+
     public ARIESRecoveryManager(LockContext dbContext, Function<Long, Transaction> newTransaction,
                                 Consumer<Long> updateTransactionCounter, Supplier<Long> getTransactionCounter) {
         this(dbContext, newTransaction, updateTransactionCounter, getTransactionCounter, false);
@@ -83,7 +98,27 @@ public class ARIESRecoveryManager implements RecoveryManager {
     public void setManagers(DiskSpaceManager diskSpaceManager, BufferManager bufferManager) {
         this.diskSpaceManager = diskSpaceManager;
         this.bufferManager = bufferManager;
-        this.logManager = new LogManagerImpl(bufferManager);
+        if (logTailPages > 0) {
+            this.logManager = new DirectLogManager(diskSpaceManager, logTailPages);
+        } else {
+            this.logManager = new LogManagerImpl(bufferManager);
+        }
+    }
+
+    /**
+     * Keeps the tail of the log in a dedicated buffer of logTailPages pages,
+     * written directly to disk, instead of in the buffer pool (see
+     * DirectLogManager). Must be called before setManagers.
+     * @param logTailPages number of unflushed log pages to keep in memory
+     */
+    public void setLogTailPages(int logTailPages) {
+        if (logTailPages < 1) {
+            throw new IllegalArgumentException("need at least one log tail page");
+        }
+        if (this.logManager != null) {
+            throw new IllegalStateException("log manager already created");
+        }
+        this.logTailPages = logTailPages;
     }
 
     // Forward Processing //////////////////////////////////////////////////////
@@ -402,9 +437,27 @@ public class ARIESRecoveryManager implements RecoveryManager {
      *
      * Finally, the master record should be rewritten with the LSN of the
      * begin checkpoint record.
+     *
+     * Checkpoints are fuzzy: transactions keep running and logging while the
+     * tables are read, so the end checkpoint records hold the tables as of
+     * some point after the begin checkpoint record, which analysis corrects
+     * by scanning the log from the begin checkpoint record. No lock other
+     * than checkpointLock (which keeps two checkpoints from interleaving) is
+     * held throughout, and each end checkpoint record is appended as soon as
+     * it is full.
      */
     @Override
     public void checkpoint() {
+        checkpointLock.lock();
+        try {
+            lastCheckpointLSN = writeCheckpoint();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    // writes the records of a checkpoint, and returns the LSN of its begin checkpoint record
+    private long writeCheckpoint() {
         // Create begin checkpoint log record and write to log
         LogRecord beginRecord = new BeginCheckpointLogRecord(getTransactionCounter.get());
         long beginLSN = logManager.appendToLog(beginRecord);
@@ -418,7 +471,8 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
         for (Map.Entry<Long, TransactionTableEntry> entry : transactionTable.entrySet()) {
             long transNum = entry.getKey();
-            for (long pageNum : entry.getValue().touchedPages) {
+            // copied first, so that a transaction touching pages cannot keep the checkpoint going
+            for (long pageNum : new ArrayList<>(entry.getValue().touchedPages)) {
                 boolean fitsAfterAdd;
                 if (!touchedPages.containsKey(transNum)) {
                     fitsAfterAdd = EndCheckpointLogRecord.fitsInOneRecord(
@@ -451,12 +505,46 @@ public class ARIESRecoveryManager implements RecoveryManager {
         // Update master record
         MasterLogRecord masterRecord = new MasterLogRecord(beginLSN);
         logManager.rewriteMasterRecord(masterRecord);
+        return beginLSN;
+    }
+
+    /**
+     * Starts taking checkpoints on a background thread: every periodMillis
+     * milliseconds, a checkpoint is taken if at least logPagesPerCheckpoint
+     * log pages were written since the last one (see Checkpointer). Should
+     * only be called once restart recovery is done.
+     */
+    public void startCheckpointing(long periodMillis, long logPagesPerCheckpoint) {
+        checkpointer.start(periodMillis, logPagesPerCheckpoint);
+    }
+
+    /**
+     * Stops the background checkpointer, if it is running.
+     */
+    public void stopCheckpointing() {
+        checkpointer.stop();
+    }
+
+    /**
+     * Returns the checkpointer of this recovery manager.
+     */
+    public Checkpointer getCheckpointer() {
+        return checkpointer;
+    }
+
+    /**
+     * Returns the number of log pages written since the begin checkpoint
+     * record of the last checkpoint taken by this recovery manager.
+     */
+    long getLogPagesSinceCheckpoint() {
+        return LogManagerImpl.getLSNPage(logManager.getLastLSN()) - LogManagerImpl.getLSNPage(lastCheckpointLSN);
     }
 
     // TODO(proj5): add any helper methods needed
 
     @Override
     public void close() {
+        this.checkpointer.stop();
         this.checkpoint();
         this.logManager.close();
     }
@@ -538,10 +626,49 @@ public class ARIESRecoveryManager implements RecoveryManager {
      * - about a page (Update/Alloc/Free/Undo..Page) in the DPT with LSN >= recLSN,
      *   the page is fetched from disk and the pageLSN is checked, and the record is redone.
      * - about a partition (Alloc/Free/Undo..Part), redo it.
+     *
+     * Records are redone on the redo threads (see setNumRedoThreads) with
+     * newParallelRedo, which keeps the records of each page in LSN order, and
+     * redoes partition records only once all records before them have been
+     * redone.
      */
     void restartRedo() {
-        // TODO(proj5): implement
-        return;
+        if (dirtyPageTable.isEmpty()) {
+            // every page change before the crash reached the disk
+            return;
+        }
+        long LSN = Collections.min(dirtyPageTable.values());
+        try (ParallelRedo redo = newParallelRedo(this::redoIfNeeded)) {
+            Iterator<LogRecord> iter = logManager.scanFrom(LSN);
+            while (iter.hasNext()) {
+                redo.submit(iter.next());
+            }
+            redo.await();
+        }
+    }
+
+    /**
+     * Redoes a redoable record during the redo pass, unless it is about a page
+     * whose changes up to the record are known to be on disk. Called on the
+     * redo threads.
+     */
+    private void redoIfNeeded(LogRecord record) {
+        if (record.getPageNum().isPresent()) {
+            long pageNum = record.getPageNum().get();
+            Long recLSN = dirtyPageTable.get(pageNum);
+            if (recLSN == null || record.getLSN() < recLSN) {
+                return;
+            }
+            Page page = bufferManager.fetchPage(getPageLockContext(pageNum).parentContext(), pageNum, false);
+            try {
+                if (page.getPageLSN() >= record.getLSN()) {
+                    return;
+                }
+            } finally {
+                page.unpin();
+            }
+        }
+        record.redo(diskSpaceManager, bufferManager);
     }
 
     /**
@@ -564,6 +691,27 @@ public class ARIESRecoveryManager implements RecoveryManager {
 
     // Helpers /////////////////////////////////////////////////////////////////
 
+    /**
+     * Sets the number of threads that records are redone on during restart recovery.
+     * @param numRedoThreads number of redo threads (1 to redo records on a single thread)
+     */
+    public void setNumRedoThreads(int numRedoThreads) {
+        if (numRedoThreads < 1) {
+            throw new IllegalArgumentException("need at least one redo thread");
+        }
+        this.numRedoThreads = numRedoThreads;
+    }
+
+    /**
+     * Creates an executor to redo records on the redo threads, partitioned by page.
+     * Records must be submitted in LSN order, and the executor closed once done.
+     * @param redo called (on one of the redo threads) to redo a record
+     * @return executor for the redo pass
+     */
+    ParallelRedo newParallelRedo(Consumer<LogRecord> redo) {
+        return new ParallelRedo(numRedoThreads, redo);
+    }
+
     /**
      * Returns the lock context for a given page number.
      * @param pageNum page number to get lock context for
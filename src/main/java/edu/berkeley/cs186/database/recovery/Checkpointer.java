@@ -0,0 +1,102 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes checkpoints of an ARIESRecoveryManager based on log volume.
+ *
+ * Every run checks how many log pages were written since the begin checkpoint
+ * record of the last checkpoint, and takes a checkpoint if there are at least
+ * logPagesPerCheckpoint of them, which bounds how much of the log restart
+ * recovery has to analyze. Checkpoints are fuzzy (see
+ * ARIESRecoveryManager#checkpoint): they run alongside transactions, and do
+ * not stop them from logging.
+ *
+ * Runs can be triggered by hand with run(), or periodically on a background
+ * thread with start(). The background thread must not run during restart
+ * recovery, when the tables it checkpoints are being rebuilt, so it should
+ * only be started once restart recovery is done.
+ */
+public class Checkpointer {
+    private final ARIESRecoveryManager recoveryManager;
+    // runs the checkpointer periodically, if started
+    private ScheduledExecutorService executor;
+
+    // Guarded by this.
+    private long logPagesPerCheckpoint = 1;
+    private long numCheckpoints = 0;
+
+    Checkpointer(ARIESRecoveryManager recoveryManager) {
+        this.recoveryManager = recoveryManager;
+    }
+
+    /**
+     * Starts checking the log volume every periodMillis milliseconds on a
+     * background (daemon) thread, and taking a checkpoint once
+     * logPagesPerCheckpoint log pages were written since the last one.
+     */
+    public synchronized void start(long periodMillis, long logPagesPerCheckpoint) {
+        if (this.executor != null) {
+            return;
+        }
+        setLogPagesPerCheckpoint(logPagesPerCheckpoint);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.executor.scheduleWithFixedDelay(this::run, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background checkpointer, waiting for a checkpoint in progress to finish.
+     */
+    public void stop() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            executor = this.executor;
+            this.executor = null;
+        }
+        if (executor == null) {
+            return;
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Sets the number of log pages written since the last checkpoint that
+     * triggers the next checkpoint.
+     */
+    public synchronized void setLogPagesPerCheckpoint(long logPagesPerCheckpoint) {
+        if (logPagesPerCheckpoint < 1) {
+            throw new IllegalArgumentException("need at least one log page per checkpoint");
+        }
+        this.logPagesPerCheckpoint = logPagesPerCheckpoint;
+    }
+
+    /**
+     * Takes a checkpoint if enough log pages were written since the last one.
+     *
+     * @return whether a checkpoint was taken
+     */
+    public synchronized boolean run() {
+        if (recoveryManager.getLogPagesSinceCheckpoint() < logPagesPerCheckpoint) {
+            return false;
+        }
+        recoveryManager.checkpoint();
+        ++numCheckpoints;
+        return true;
+    }
+
+    /** @return the number of checkpoints taken by the checkpointer */
+    public synchronized long getNumCheckpoints() {
+        return numCheckpoints;
+    }
+}
@@ -0,0 +1,330 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.PageException;
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+
+import java.util.*;
+
+/**
+ * A LogManager that keeps the tail of the log in its own memory, instead of
+ * in the buffer pool, and writes log pages directly to the disk space manager.
+ *
+ * The log is laid out exactly as by LogManagerImpl (on partition 0, with the
+ * same LSNs), so either can read a log written by the other. Log appends no
+ * longer compete with data pages for buffer frames, and can never cause an
+ * eviction: records are appended to a ring of up to maxTailPages unflushed
+ * pages, which are written in page order (sequentially) when the log is
+ * flushed, or all at once when the ring is full. As with LogManagerImpl, a
+ * flushed page is never appended to again.
+ *
+ * Flushed log pages that are read again (by undo, or restart recovery) are
+ * kept in a small cache of maxTailPages pages, separate from the buffer pool.
+ */
+class DirectLogManager implements LogManager {
+    private static final int LOG_PARTITION = 0;
+
+    private final DiskSpaceManager diskSpaceManager;
+    private final int maxTailPages;
+    // unflushed log pages, in page order; the last one is the log tail, or
+    // null if the log was flushed since the last append
+    private final Deque<LogPage> unflushedLogTail = new ArrayDeque<>();
+    private LogPage logTail;
+    // flushed log pages read recently, by page number, in LRU order
+    private final Map<Long, byte[]> readCache;
+    private long flushedLSN;
+    // read without holding the monitor by getLastLSN
+    private volatile long lastLSN;
+    private long numIOs = 0;
+
+    // A page of the log held in memory.
+    private static class LogPage {
+        private final long pageNum;
+        private final byte[] contents = new byte[DiskSpaceManager.PAGE_SIZE];
+        private int position = 0;
+
+        private LogPage(long pageNum) {
+            this.pageNum = pageNum;
+        }
+    }
+
+    /**
+     * @param diskSpaceManager disk space manager of the log partition
+     * @param maxTailPages number of unflushed log pages kept in memory before
+     * the log is flushed to make room for more
+     */
+    DirectLogManager(DiskSpaceManager diskSpaceManager, int maxTailPages) {
+        if (maxTailPages < 1) {
+            throw new IllegalArgumentException("need at least one log tail page");
+        }
+        this.diskSpaceManager = diskSpaceManager;
+        this.maxTailPages = maxTailPages;
+        this.readCache = new LinkedHashMap<Long, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > DirectLogManager.this.maxTailPages;
+            }
+        };
+
+        this.logTail = new LogPage(diskSpaceManager.allocPage(LOG_PARTITION));
+        this.unflushedLogTail.add(this.logTail);
+
+        this.flushedLSN = LogManagerImpl.maxLSN(this.logTail.pageNum - 1L);
+        this.lastLSN = this.flushedLSN;
+    }
+
+    /**
+     * Writes to the first record in the log.
+     * @param record log record to replace first record with
+     */
+    @Override
+    public synchronized void rewriteMasterRecord(MasterLogRecord record) {
+        long firstPage = DiskSpaceManager.getVirtualPageNum(LOG_PARTITION, 0);
+        byte[] contents = getCachedPage(firstPage);
+        if (contents == null) {
+            contents = readPage(firstPage);
+            readCache.put(firstPage, contents);
+        }
+        ByteBuffer.wrap(contents).put(record.toBytes());
+        writePage(firstPage, contents);
+    }
+
+    /**
+     * Appends a log record to the log.
+     * @param record log record to append to the log
+     * @return LSN of new log record
+     */
+    @Override
+    public synchronized long appendToLog(LogRecord record) {
+        byte[] bytes = record.toBytes();
+        if (logTail == null || bytes.length > DiskSpaceManager.PAGE_SIZE - logTail.position) {
+            if (unflushedLogTail.size() >= maxTailPages) {
+                flushToLSN(LogManagerImpl.maxLSN(unflushedLogTail.getLast().pageNum));
+            }
+            logTail = new LogPage(diskSpaceManager.allocPage(LOG_PARTITION));
+            unflushedLogTail.add(logTail);
+        }
+        int pos = logTail.position;
+        ByteBuffer.wrap(logTail.contents).position(pos).put(bytes);
+        logTail.position += bytes.length;
+        long LSN = LogManagerImpl.makeLSN(logTail.pageNum, pos);
+        record.LSN = LSN;
+        lastLSN = LSN;
+        return LSN;
+    }
+
+    /**
+     * Fetches a specific log record.
+     * @param LSN LSN of record to fetch
+     * @return log record with the specified LSN or null if no record found
+     */
+    @Override
+    public LogRecord fetchLogRecord(long LSN) {
+        int index = LogManagerImpl.getLSNIndex(LSN);
+        if (index >= DiskSpaceManager.PAGE_SIZE) {
+            return null;
+        }
+        Optional<LogRecord> record;
+        synchronized (this) {
+            byte[] contents = getCachedPage(LogManagerImpl.getLSNPage(LSN));
+            record = contents == null ? null : LogRecord.fromBytes(ByteBuffer.wrap(contents).position(index));
+        }
+        if (record == null) {
+            try {
+                byte[] contents = readCachedPage(LogManagerImpl.getLSNPage(LSN));
+                record = LogRecord.fromBytes(ByteBuffer.wrap(contents).position(index));
+            } catch (PageException e) {
+                return null;
+            }
+        }
+        record.ifPresent((LogRecord e) -> e.setLSN(LSN));
+        return record.orElse(null);
+    }
+
+    /**
+     * Flushes the log to at least the specified record,
+     * essentially flushing up to and including the page
+     * that contains the record specified by the LSN.
+     * @param LSN LSN up to which the log should be flushed
+     */
+    @Override
+    public synchronized void flushToLSN(long LSN) {
+        Iterator<LogPage> iter = unflushedLogTail.iterator();
+        long pageNum = LogManagerImpl.getLSNPage(LSN);
+        while (iter.hasNext()) {
+            LogPage page = iter.next();
+            if (DiskSpaceManager.getPageNum(page.pageNum) > pageNum) {
+                break;
+            }
+            writePage(page.pageNum, page.contents);
+            readCache.put(page.pageNum, page.contents);
+            iter.remove();
+        }
+        flushedLSN = Math.max(flushedLSN, LogManagerImpl.maxLSN(pageNum));
+        if (unflushedLogTail.isEmpty()) {
+            logTail = null;
+        }
+    }
+
+    /**
+     * @return flushedLSN
+     */
+    @Override
+    public synchronized long getFlushedLSN() {
+        return flushedLSN;
+    }
+
+    /**
+     * @return LSN of the last record appended to the log
+     */
+    @Override
+    public long getLastLSN() {
+        return lastLSN;
+    }
+
+    /**
+     * @return the number of log pages read from or written to disk so far
+     */
+    synchronized long getNumIOs() {
+        return numIOs;
+    }
+
+    /**
+     * Scan forward in the log from LSN.
+     * @param LSN LSN to start scanning from
+     * @return iterator over log entries from LSN
+     */
+    @Override
+    public Iterator<LogRecord> scanFrom(long LSN) {
+        return new LogIterator(LSN);
+    }
+
+    @Override
+    public void print() {
+        for (LogRecord record : this) {
+            System.out.println(record);
+        }
+    }
+
+    /**
+     * Scan forward in the log from the first record.
+     * @return iterator over all log entries
+     */
+    @Override
+    public Iterator<LogRecord> iterator() {
+        return this.scanFrom(0);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!this.unflushedLogTail.isEmpty()) {
+            this.flushToLSN(LogManagerImpl.maxLSN(unflushedLogTail.getLast().pageNum));
+        }
+    }
+
+    // the contents of a log page if it is in memory (in the tail or the
+    // cache), or null; must be called with the monitor held
+    private byte[] getCachedPage(long pageNum) {
+        for (LogPage page : unflushedLogTail) {
+            if (page.pageNum == pageNum) {
+                return page.contents;
+            }
+        }
+        return readCache.get(pageNum);
+    }
+
+    // a copy of the contents of a log page, read from disk if it is not in
+    // memory; the disk is read without holding the monitor, since flushed
+    // pages do not change (other than the first page, which is only read here
+    // by scans)
+    private byte[] readCachedPage(long pageNum) {
+        synchronized (this) {
+            byte[] contents = getCachedPage(pageNum);
+            if (contents != null) {
+                return contents.clone();
+            }
+        }
+        byte[] contents = readPage(pageNum);
+        synchronized (this) {
+            if (getCachedPage(pageNum) == null) {
+                readCache.put(pageNum, contents);
+            }
+        }
+        return contents.clone();
+    }
+
+    private byte[] readPage(long pageNum) {
+        byte[] contents = new byte[DiskSpaceManager.PAGE_SIZE];
+        diskSpaceManager.readPage(pageNum, contents);
+        synchronized (this) {
+            ++numIOs;
+        }
+        return contents;
+    }
+
+    // must be called with the monitor held
+    private void writePage(long pageNum, byte[] contents) {
+        diskSpaceManager.writePage(pageNum, contents);
+        ++numIOs;
+    }
+
+    // Iterates over the records of the log, a page at a time. Each page is
+    // copied when the iterator reaches it, so appends to the log tail after
+    // that are not seen.
+    private class LogIterator implements Iterator<LogRecord> {
+        private long pageNum;
+        private Buffer page;
+        private LogRecord next;
+
+        private LogIterator(long startLSN) {
+            this.pageNum = LogManagerImpl.getLSNPage(startLSN);
+            loadPage(LogManagerImpl.getLSNIndex(startLSN));
+            advance();
+        }
+
+        // loads page pageNum, starting at INDEX; page is null past the end of the log
+        private void loadPage(int index) {
+            try {
+                page = ByteBuffer.wrap(readCachedPage(
+                           DiskSpaceManager.getVirtualPageNum(LOG_PARTITION, (int) pageNum)))
+                       .position(index);
+            } catch (PageException e) {
+                page = null;
+            }
+        }
+
+        private void advance() {
+            next = null;
+            while (page != null) {
+                if (page.position() < DiskSpaceManager.PAGE_SIZE) {
+                    int index = page.position();
+                    Optional<LogRecord> record = LogRecord.fromBytes(page);
+                    if (record.isPresent()) {
+                        next = record.get();
+                        next.setLSN(LogManagerImpl.makeLSN(pageNum, index));
+                        return;
+                    }
+                }
+                ++pageNum;
+                loadPage(0);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public LogRecord next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            LogRecord record = next;
+            advance();
+            return record;
+        }
+    }
+}
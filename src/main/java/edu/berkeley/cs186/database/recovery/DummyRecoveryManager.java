@@ -4,11 +4,11 @@ import edu.berkeley.cs186.database.Transaction;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.memory.BufferManager;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DummyRecoveryManager implements RecoveryManager {
-    private Map<Long, Transaction> runningTransactions = new HashMap<>();
+    private Map<Long, Transaction> runningTransactions = new ConcurrentHashMap<>();
 
     @Override
     public void initialize() {}
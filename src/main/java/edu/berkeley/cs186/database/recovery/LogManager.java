@@ -38,6 +38,12 @@ public interface LogManager extends Iterable<LogRecord>, AutoCloseable {
      */
     long getFlushedLSN();
 
+    /**
+     * @return LSN of the last record appended to the log, or flushedLSN if no
+     * record was appended since the log was opened
+     */
+    long getLastLSN();
+
     /**
      * Scan forward in the log from LSN.
      * @param LSN LSN to start scanning from
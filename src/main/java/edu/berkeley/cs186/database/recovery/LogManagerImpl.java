@@ -41,6 +41,8 @@ class LogManagerImpl implements LogManager {
     private Buffer logTailBuffer;
     private boolean logTailPinned = false;
     private long flushedLSN;
+    // read without holding the monitor by getLastLSN
+    private volatile long lastLSN;
 
     private static final int LOG_PARTITION = 0;
 
@@ -54,6 +56,7 @@ class LogManagerImpl implements LogManager {
         this.logTail.unpin();
 
         this.flushedLSN = maxLSN(this.logTail.getPageNum() - 1L);
+        this.lastLSN = this.flushedLSN;
     }
 
     /**
@@ -99,6 +102,7 @@ class LogManagerImpl implements LogManager {
             logTailBuffer.put(bytes);
             long LSN = makeLSN(unflushedLogTail.getLast().getPageNum(), pos);
             record.LSN = LSN;
+            lastLSN = LSN;
             return LSN;
         } finally {
             logTail.unpin();
@@ -164,6 +168,14 @@ class LogManagerImpl implements LogManager {
         return flushedLSN;
     }
 
+    /**
+     * @return LSN of the last record appended to the log
+     */
+    @Override
+    public long getLastLSN() {
+        return lastLSN;
+    }
+
     /**
      * Generates LSN from log page number and index
      * @param pageNum page number of log page
@@ -0,0 +1,166 @@
+package edu.berkeley.cs186.database.recovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Redoes log records on several threads, partitioned by page.
+ *
+ * Records are submitted in LSN order; those that cannot be redone (commit,
+ * checkpoint, and other records that change no data) are skipped. Records
+ * about a page (UpdatePage, AllocPage, and the other page records) go to the
+ * worker thread that owns the page, chosen by page number, and each worker
+ * redoes its records in the order they were submitted: records of the same
+ * page are redone in LSN order, and records of different pages run in
+ * parallel. Records about a partition (AllocPart, FreePart, UndoAllocPart,
+ * UndoFreePart) must happen between the records before and after them, so
+ * they wait for every worker to finish its records, and are then redone on
+ * the calling thread.
+ *
+ * Records are handed to workers in batches, so that the cost of passing a
+ * record to another thread does not outweigh the cost of redoing it. Once
+ * redoing a record fails, the remaining records are skipped, and the failure
+ * is thrown by the next call to await.
+ *
+ * The redo function is called with each record, and decides whether (and
+ * how) to redo it, e.g. after checking the DPT and the pageLSN of the page.
+ * It must be safe to call from several threads at once for different pages.
+ */
+class ParallelRedo implements AutoCloseable {
+    // number of records handed to a worker at once
+    static final int BATCH_SIZE = 64;
+
+    private final Consumer<LogRecord> redo;
+    private final ExecutorService[] workers;
+    // records not yet handed to each worker
+    private final List<List<LogRecord>> batches = new ArrayList<>();
+    // the last batch handed to each worker
+    private final Future<?>[] lastTasks;
+    // the first failure to redo a record
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    /**
+     * @param numThreads number of worker threads
+     * @param redo called to redo a record
+     */
+    ParallelRedo(int numThreads, Consumer<LogRecord> redo) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("need at least one redo thread");
+        }
+        this.redo = redo;
+        this.workers = new ExecutorService[numThreads];
+        this.lastTasks = new Future<?>[numThreads];
+        for (int i = 0; i < numThreads; ++i) {
+            batches.add(new ArrayList<>());
+            String name = "redo-" + i;
+            workers[i] = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    /**
+     * Submits the next record (in LSN order) to be redone. Does nothing if the
+     * record is not redoable.
+     *
+     * @throws RuntimeException thrown by the redo function on an earlier record,
+     * if a partition record had to wait for it
+     */
+    void submit(LogRecord record) {
+        if (!record.isRedoable()) {
+            return;
+        }
+        if (record.getPageNum().isPresent()) {
+            int worker = Math.floorMod(Long.hashCode(record.getPageNum().get()), workers.length);
+            List<LogRecord> batch = batches.get(worker);
+            batch.add(record);
+            if (batch.size() >= BATCH_SIZE) {
+                flush(worker);
+            }
+        } else if (record.getPartNum().isPresent()) {
+            await();
+            redo.accept(record);
+        } else {
+            throw new IllegalArgumentException("redoable record about neither a page nor a partition: " + record);
+        }
+    }
+
+    // hands the pending records of a worker to it
+    private void flush(int worker) {
+        List<LogRecord> batch = batches.get(worker);
+        if (batch.isEmpty()) {
+            return;
+        }
+        batches.set(worker, new ArrayList<>());
+        lastTasks[worker] = workers[worker].submit(() -> {
+            for (LogRecord record : batch) {
+                if (failure.get() != null) {
+                    return;
+                }
+                try {
+                    redo.accept(record);
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until every record submitted so far has been redone.
+     *
+     * @throws RuntimeException thrown by the redo function on one of the records
+     */
+    void await() {
+        for (int i = 0; i < workers.length; ++i) {
+            flush(i);
+        }
+        for (int i = 0; i < lastTasks.length; ++i) {
+            if (lastTasks[i] == null) {
+                continue;
+            }
+            try {
+                lastTasks[i].get();
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for redo", e);
+            }
+            lastTasks[i] = null;
+        }
+        Throwable error = failure.get();
+        if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        }
+        if (error instanceof Error) {
+            throw (Error) error;
+        }
+        if (error != null) {
+            throw new IllegalStateException(error);
+        }
+    }
+
+    /**
+     * Stops the worker threads, after the records handed to them have been redone.
+     * Records not yet handed to a worker (see await) are dropped.
+     */
+    @Override
+    public void close() {
+        for (ExecutorService worker : workers) {
+            worker.shutdown();
+        }
+        for (ExecutorService worker : workers) {
+            try {
+                worker.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
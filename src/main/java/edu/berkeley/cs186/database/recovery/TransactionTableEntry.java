@@ -3,6 +3,7 @@ package edu.berkeley.cs186.database.recovery;
 import edu.berkeley.cs186.database.Transaction;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 class TransactionTableEntry {
     // Transaction object for the transaction.
@@ -10,7 +11,8 @@ class TransactionTableEntry {
     // lastLSN of transaction, or 0 if no log entries for the transaction exist.
     long lastLSN = 0;
     // Set of page numbers of all pages this transaction has modified in some way.
-    Set<Long> touchedPages = new HashSet<>();
+    // Concurrent, so that checkpoints can read it while the transaction runs.
+    Set<Long> touchedPages = ConcurrentHashMap.newKeySet();
     // map of transaction's savepoints
     private Map<String, Long> savepoints = new HashMap<>();
 
@@ -10,6 +10,7 @@ import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.recovery.LogRecord;
 import edu.berkeley.cs186.database.recovery.LogType;
 
+import java.io.ByteArrayOutputStream;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
@@ -80,8 +81,26 @@ public class UpdatePageLogRecord extends LogRecord {
         }
     }
 
+    /**
+     * Serializes the record, in the compact format when it is smaller.
+     *
+     * In the plain format, the before and after images follow their lengths.
+     * In the compact format, used when both images have the same length, the
+     * (negative) length field -1 - length takes the place of the two lengths,
+     * and is followed by the after image and by the XOR of the before and
+     * after images, both run-length encoded (see encodeZeroRuns). An update
+     * of a few bytes in a larger range has a delta of mostly zeroes, which
+     * shrinks to a few bytes. The length of an image always fits in a
+     * nonnegative short, so records in the plain format (including all
+     * records written before the compact format existed) are never mistaken
+     * for compact ones.
+     */
     @Override
     public byte[] toBytes() {
+        byte[] compact = toCompactBytes();
+        if (compact != null && compact.length < 31 + before.length + after.length) {
+            return compact;
+        }
         byte[] b = new byte[31 + before.length + after.length];
         ByteBuffer.wrap(b)
         .put((byte) getType().getValue())
@@ -96,17 +115,101 @@ public class UpdatePageLogRecord extends LogRecord {
         return b;
     }
 
+    // the record in the compact format, or null if it has none
+    private byte[] toCompactBytes() {
+        if (before.length != after.length || after.length == 0) {
+            return null;
+        }
+        byte[] delta = new byte[after.length];
+        for (int i = 0; i < delta.length; ++i) {
+            delta[i] = (byte) (before[i] ^ after[i]);
+        }
+        byte[] encodedAfter = encodeZeroRuns(after);
+        byte[] encodedDelta = encodeZeroRuns(delta);
+        byte[] b = new byte[29 + encodedAfter.length + encodedDelta.length];
+        ByteBuffer.wrap(b)
+        .put((byte) getType().getValue())
+        .putLong(transNum)
+        .putLong(pageNum)
+        .putLong(prevLSN)
+        .putShort(offset)
+        .putShort((short) (-1 - after.length))
+        .put(encodedAfter)
+        .put(encodedDelta);
+        return b;
+    }
+
     public static Optional<LogRecord> fromBytes(Buffer buf) {
         long transNum = buf.getLong();
         long pageNum = buf.getLong();
         long prevLSN = buf.getLong();
         short offset = buf.getShort();
-        byte[] before = new byte[buf.getShort()];
+        short length = buf.getShort();
+        if (length < 0) {
+            byte[] after = decodeZeroRuns(buf, -1 - length);
+            byte[] before = decodeZeroRuns(buf, -1 - length);
+            for (int i = 0; i < before.length; ++i) {
+                before[i] ^= after[i];
+            }
+            return Optional.of(new UpdatePageLogRecord(transNum, pageNum, prevLSN, offset, before, after));
+        }
+        byte[] before = new byte[length];
         byte[] after = new byte[buf.getShort()];
         buf.get(before).get(after);
         return Optional.of(new UpdatePageLogRecord(transNum, pageNum, prevLSN, offset, before, after));
     }
 
+    /**
+     * Run-length encodes the zero bytes of BYTES: the encoding is a sequence
+     * of runs, each a short count of zero bytes, followed by a short count of
+     * literal bytes and the literal bytes themselves. Runs of fewer than 4
+     * zero bytes are kept as literals, since a new run costs 4 bytes.
+     */
+    static byte[] encodeZeroRuns(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < bytes.length) {
+            int zeroes = 0;
+            while (i + zeroes < bytes.length && bytes[i + zeroes] == 0) {
+                ++zeroes;
+            }
+            int start = i + zeroes;
+            int end = start;
+            while (end < bytes.length) {
+                int run = 0;
+                while (end + run < bytes.length && bytes[end + run] == 0) {
+                    ++run;
+                }
+                if (run >= 4 || end + run == bytes.length) {
+                    break;
+                }
+                end += run + 1;
+            }
+            out.write(zeroes >> 8);
+            out.write(zeroes);
+            out.write((end - start) >> 8);
+            out.write(end - start);
+            out.write(bytes, start, end - start);
+            i = end;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes LENGTH bytes encoded by encodeZeroRuns from BUF.
+     */
+    static byte[] decodeZeroRuns(Buffer buf, int length) {
+        byte[] bytes = new byte[length];
+        int i = 0;
+        while (i < length) {
+            i += buf.getShort() & 0xFFFF;
+            int literals = buf.getShort() & 0xFFFF;
+            buf.get(bytes, i, literals);
+            i += literals;
+        }
+        return bytes;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) { return true; }
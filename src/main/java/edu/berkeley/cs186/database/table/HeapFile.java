@@ -4,6 +4,10 @@ import edu.berkeley.cs186.database.common.iterator.BacktrackingIterable;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
 import edu.berkeley.cs186.database.memory.Page;
 
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.LongPredicate;
+
 /**
  * Interface for a heap file, which receives requests for pages with
  * a certain amount of space, and returns a page with enough space.
@@ -51,6 +55,43 @@ public interface HeapFile extends BacktrackingIterable<Page> {
     @Override
     BacktrackingIterator<Page> iterator();
 
+    /**
+     * Returns an iterator of the allocated data pages whose page number satisfies
+     * filter, in the same order as iterator(). Implementations that can read page
+     * numbers without fetching data pages should skip rejected pages entirely.
+     * @param filter predicate on data page numbers
+     * @return iterator of the pinned data pages accepted by filter
+     */
+    default Iterator<Page> iterator(LongPredicate filter) {
+        Iterator<Page> iter = iterator();
+        return new Iterator<Page>() {
+            private Page next = null;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && iter.hasNext()) {
+                    Page page = iter.next();
+                    if (filter.test(page.getPageNum())) {
+                        next = page;
+                    } else {
+                        page.unpin();
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public Page next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Page page = next;
+                next = null;
+                return page;
+            }
+        };
+    }
+
     /**
      * Returns estimate of number of data pages.
      * @return estimate of number of data pages
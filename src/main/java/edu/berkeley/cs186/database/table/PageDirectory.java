@@ -14,8 +14,12 @@ import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.BufferManager;
 import edu.berkeley.cs186.database.memory.Page;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Random;
+import java.util.function.LongPredicate;
 
 /**
  * An implementation of a heap file, using a page directory. Assumes data pages are packed (but record
@@ -154,6 +158,47 @@ public class PageDirectory implements HeapFile {
         return new ConcatBacktrackingIterator<>(new HeaderPageIterator());
     }
 
+    /**
+     * Reads the page numbers of the data pages out of the header pages, and only
+     * fetches the data pages accepted by filter.
+     */
+    @Override
+    public Iterator<Page> iterator(LongPredicate filter) {
+        List<Long> pageNums = new ArrayList<>();
+        HeaderPage headerPage = firstHeader;
+        while (headerPage != null) {
+            headerPage.page.pin();
+            try {
+                Buffer b = headerPage.page.getBuffer();
+                if (headerPage.isInitialized(b)) {
+                    b.position(HEADER_HEADER_SIZE);
+                    for (int i = 0; i < HEADER_ENTRY_COUNT; ++i) {
+                        DataPageEntry dpe = DataPageEntry.fromBytes(b);
+                        if (dpe.isValid() && filter.test(dpe.pageNum)) {
+                            pageNums.add(dpe.pageNum);
+                        }
+                    }
+                }
+            } finally {
+                headerPage.page.unpin();
+            }
+            headerPage = headerPage.nextPage;
+        }
+
+        Iterator<Long> iter = pageNums.iterator();
+        return new Iterator<Page>() {
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public Page next() {
+                return getPage(iter.next());
+            }
+        };
+    }
+
     @Override
     public int getNumDataPages() {
         int numDataPages = 0;
@@ -300,6 +345,12 @@ public class PageDirectory implements HeapFile {
             }
         }
 
+        // returns if the header page (read through b) was initialized: a header page
+        // added after the snapshot of a read-only transaction reads as all zeros to it
+        private boolean isInitialized(Buffer b) {
+            return b.get(0) == (byte) 1;
+        }
+
         // add a new header page
         private void addNewHeaderPage() {
             if (this.nextPage != null) {
@@ -413,6 +464,9 @@ public class PageDirectory implements HeapFile {
                 HeaderPage.this.page.pin();
                 try {
                     Buffer b = HeaderPage.this.page.getBuffer();
+                    if (!isInitialized(b)) {
+                        return HEADER_ENTRY_COUNT;
+                    }
                     b.position(HEADER_HEADER_SIZE + DataPageEntry.SIZE * ++currentIndex);
                     for (int i = currentIndex; i < HEADER_ENTRY_COUNT; ++i) {
                         DataPageEntry dpe = DataPageEntry.fromBytes(b);
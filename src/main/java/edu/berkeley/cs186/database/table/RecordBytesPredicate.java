@@ -0,0 +1,22 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+/**
+ * Predicate over a serialized record, used by Table#filteredIterator to decide
+ * whether a record should be decoded at all. Like RecordBytesVisitor, the buffer
+ * holds the contents of a data page, offset is the start of the record within it,
+ * and implementations should only use absolute gets.
+ */
+@FunctionalInterface
+public interface RecordBytesPredicate {
+    boolean test(Buffer page, int offset);
+
+    /**
+     * @return a predicate that holds when both this and other hold; other is
+     * only evaluated if this holds
+     */
+    default RecordBytesPredicate and(RecordBytesPredicate other) {
+        return (page, offset) -> test(page, offset) && other.test(page, offset);
+    }
+}
@@ -0,0 +1,17 @@
+package edu.berkeley.cs186.database.table;
+
+import edu.berkeley.cs186.database.common.Buffer;
+
+/**
+ * Callback used by Table#visitRecordBytes. Receives a buffer holding the contents
+ * of a data page and the offset of a single serialized record within it; the
+ * layout of the record is described by the table's Schema (fields are stored back
+ * to back, each taking Type#getSizeInBytes bytes).
+ *
+ * The buffer is reused for every page of the scan, so implementations should read
+ * what they need with absolute gets and must not hold on to it.
+ */
+@FunctionalInterface
+public interface RecordBytesVisitor {
+    void visit(Buffer page, int offset);
+}
@@ -1,18 +1,27 @@
 package edu.berkeley.cs186.database.table;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
 
 import edu.berkeley.cs186.database.DatabaseException;
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.common.iterator.*;
 import edu.berkeley.cs186.database.common.Bits;
 import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.common.Pair;
 import edu.berkeley.cs186.database.concurrency.LockContext;
 import edu.berkeley.cs186.database.concurrency.LockType;
 import edu.berkeley.cs186.database.concurrency.LockUtil;
+import edu.berkeley.cs186.database.databox.CompositeDataBox;
 import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
 import edu.berkeley.cs186.database.io.PageException;
 import edu.berkeley.cs186.database.memory.Page;
 import edu.berkeley.cs186.database.table.stats.TableStats;
+import edu.berkeley.cs186.database.table.stats.ZoneMap;
 
 /**
  * # Overview
@@ -105,12 +114,23 @@ public class Table implements BacktrackingIterable<Record> {
     // Statistics about the contents of the database.
     private TableStats stats;
 
+    // Per data page ranges of the numeric columns, used to skip pages in scans.
+    private ZoneMap zoneMap;
+
     // The number of records in the table.
     private long numRecords;
 
     // The lock context of the table.
     private LockContext lockContext;
 
+    // The number of pages the page iterators of a table lock with one call to the lock
+    // manager (see BatchLockingPageIterator).
+    static final int PAGE_LOCK_BATCH_SIZE = 32;
+
+    // The default auto-escalation policy (see enableAutoEscalate).
+    public static final double DEFAULT_ESCALATION_THRESHOLD = 0.2;
+    public static final int DEFAULT_ESCALATION_MIN_PAGES = 10;
+
     // Constructors ////////////////////////////////////////////////////////////
     /**
      * Load a table named `name` with schema `schema` from `heapFile`. `lockContext`
@@ -123,6 +143,8 @@ public class Table implements BacktrackingIterable<Record> {
         this.name = name;
         this.heapFile = heapFile;
         this.schema = schema;
+        this.lockContext = lockContext;
+        enableAutoEscalate();
         this.bitmapSizeInBytes = computeBitmapSizeInBytes(heapFile.getEffectivePageSize(), schema);
         this.numRecordsPerPage = computeNumRecordsPerPage(heapFile.getEffectivePageSize(), schema);
         // mark everything that is not used for records as metadata
@@ -130,6 +152,7 @@ public class Table implements BacktrackingIterable<Record> {
                                                * schema.getSizeInBytes()));
 
         this.stats = new TableStats(this.schema, this.numRecordsPerPage);
+        this.zoneMap = new ZoneMap(this.schema);
         this.numRecords = 0;
 
         Iterator<Page> iter = this.heapFile.iterator();
@@ -141,13 +164,13 @@ public class Table implements BacktrackingIterable<Record> {
                 if (Bits.getBit(bitmap, i) == Bits.Bit.ONE) {
                     Record r = getRecord(new RecordId(page.getPageNum(), i));
                     stats.addRecord(r);
+                    zoneMap.addRecord(page.getPageNum(), r);
                     numRecords++;
                 }
             }
             page.unpin();
         }
 
-        this.lockContext = lockContext;
     }
 
     // Accessors ///////////////////////////////////////////////////////////////
@@ -235,6 +258,34 @@ public class Table implements BacktrackingIterable<Record> {
         this.stats.refreshHistograms(buckets, this);
     }
 
+    /**
+     * sampleStatistics rebuilds the histograms of the table like buildStatistics,
+     * but reads at most about maxPages data pages: each data page is picked with
+     * probability maxPages / getNumDataPages(), and the histograms are built from
+     * the records on the picked pages. Tables with at most maxPages data pages
+     * are scanned in full.
+     */
+    public void sampleStatistics(int buckets, int maxPages) {
+        sampleStatistics(buckets, maxPages, new Random());
+    }
+
+    /**
+     * Like sampleStatistics(buckets, maxPages), but picks pages using random.
+     */
+    public void sampleStatistics(int buckets, int maxPages, Random random) {
+        int numDataPages = getNumDataPages();
+        if (numDataPages <= maxPages) {
+            buildStatistics(buckets);
+            return;
+        }
+
+        double probability = (double) maxPages / numDataPages;
+        List<Record> sample = new ArrayList<>();
+        filteredIterator((page, offset) -> true, pageNum -> random.nextDouble() < probability)
+        .forEachRemaining(sample::add);
+        this.stats.refreshHistograms(buckets, sample, numRecords);
+    }
+
     private synchronized void insertRecord(Page page, int entryNum, Record record) {
         int offset = bitmapSizeInBytes + (entryNum * schema.getSizeInBytes());
         page.getBuffer().position(offset).put(record.toBytes(schema));
@@ -274,6 +325,7 @@ public class Table implements BacktrackingIterable<Record> {
 
             // Update the metadata.
             stats.addRecord(record);
+            zoneMap.addRecord(page.getPageNum(), record);
             numRecords++;
 
             return new RecordId(page.getPageNum(), (short) entryNum);
@@ -324,6 +376,7 @@ public class Table implements BacktrackingIterable<Record> {
 
             this.stats.removeRecord(oldRecord);
             this.stats.addRecord(newRecord);
+            this.zoneMap.addRecord(rid.getPageNum(), newRecord);
             return oldRecord;
         } finally {
             page.unpin();
@@ -367,6 +420,7 @@ public class Table implements BacktrackingIterable<Record> {
 
     // Helpers /////////////////////////////////////////////////////////////////
     private Page fetchPage(long pageNum) {
+        autoEscalate();
         try {
             return heapFile.getPage(pageNum);
         } catch (PageException e) {
@@ -435,7 +489,16 @@ public class Table implements BacktrackingIterable<Record> {
      * has at least 10 pages should escalate to a table-level lock before any locks are requested.
      */
     public void enableAutoEscalate() {
-        // TODO(proj4_part3): implement
+        enableAutoEscalate(DEFAULT_ESCALATION_THRESHOLD, DEFAULT_ESCALATION_MIN_PAGES);
+    }
+
+    /**
+     * Enables auto-escalation, escalating the page locks of transactions that hold locks
+     * on at least a `threshold` fraction of the table's pages, when the table has at least
+     * `minPages` pages (see LockContext#enableAutoEscalate).
+     */
+    public void enableAutoEscalate(double threshold, int minPages) {
+        lockContext.enableAutoEscalate(threshold, minPages);
     }
 
     /**
@@ -443,14 +506,21 @@ public class Table implements BacktrackingIterable<Record> {
      * an automatic escalation to a table-level lock.
      */
     public void disableAutoEscalate() {
-        // TODO(proj4_part3): implement
+        lockContext.disableAutoEscalate();
+    }
+
+    /**
+     * Escalates the page locks of the current transaction to a table lock if auto-escalation
+     * is enabled and the transaction holds enough of them. Called before a page of the table
+     * is accessed, and so before any lock on the page is requested.
+     */
+    private void autoEscalate() {
+        lockContext.autoEscalate(TransactionContext.getTransaction());
     }
 
     // Iterators ///////////////////////////////////////////////////////////////
     public BacktrackingIterator<RecordId> ridIterator() {
-        // TODO(proj4_part3): reduce locking overhead for table scans
-
-        BacktrackingIterator<Page> iter = heapFile.iterator();
+        BacktrackingIterator<Page> iter = new BatchLockingPageIterator(heapFile.iterator());
         return new ConcatBacktrackingIterator<>(new PageIterator(iter, false));
     }
 
@@ -481,7 +551,296 @@ public class Table implements BacktrackingIterable<Record> {
     }
 
     public BacktrackingIterator<Page> pageIterator() {
-        return heapFile.iterator();
+        return new BatchLockingPageIterator(heapFile.iterator());
+    }
+
+    /**
+     * Calls visitor once for every record in the table, in the same order as
+     * iterator(), passing the serialized bytes of the record instead of a decoded
+     * Record. Each data page is copied out of the buffer manager once into a
+     * scratch array that is reused for the whole scan, so visiting a record does
+     * not allocate anything. Pages are locked as by iterator() (see
+     * BatchLockingPageIterator).
+     */
+    public void visitRecordBytes(RecordBytesVisitor visitor) {
+        int recordSize = schema.getSizeInBytes();
+        int length = bitmapSizeInBytes + numRecordsPerPage * recordSize;
+        byte[] bytes = new byte[length];
+        Buffer buf = ByteBuffer.wrap(bytes);
+
+        Iterator<Page> iter = new BatchLockingPageIterator(heapFile.iterator());
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            try {
+                page.getBuffer().get(bytes, 0, length);
+            } finally {
+                page.unpin();
+            }
+
+            for (int i = 0; i < numRecordsPerPage; ++i) {
+                if (bitmapSizeInBytes == 0 || Bits.getBit(bytes, i) == Bits.Bit.ONE) {
+                    visitor.visit(buf, bitmapSizeInBytes + i * recordSize);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the value of column `column` paired with the record id of every
+     * record on the data pages accepted by pageFilter, in the same order as
+     * ridIterator(). Only the indexed column is decoded. Several threads may
+     * call this at once with disjoint page filters, which is how an index is
+     * built from a parallel scan of the table. Pages are locked as by
+     * iterator() (see BatchLockingPageIterator).
+     */
+    public List<Pair<DataBox, RecordId>> getColumnEntries(int column, LongPredicate pageFilter) {
+        return getColumnEntries(new int[] {column}, pageFilter);
+    }
+
+    /**
+     * Like getColumnEntries(column, pageFilter), but pairs each record id with
+     * the values of several columns, as a CompositeDataBox, if there is more
+     * than one column. This is the key of an index on those columns.
+     */
+    public List<Pair<DataBox, RecordId>> getColumnEntries(int[] columns, LongPredicate pageFilter) {
+        List<Pair<DataBox, RecordId>> entries = new ArrayList<>();
+        forEachColumnEntry(columns, pageFilter, entries::add);
+        return entries;
+    }
+
+    /**
+     * Like getColumnEntries(columns, pageFilter), but passes each entry to
+     * action as it is decoded instead of collecting them, so that the entries
+     * of a large table need not all be held in memory.
+     */
+    public void forEachColumnEntry(int[] columns, LongPredicate pageFilter,
+                                   Consumer<Pair<DataBox, RecordId>> action) {
+        int recordSize = schema.getSizeInBytes();
+        int[] columnOffsets = new int[schema.getFieldTypes().size()];
+        for (int i = 1; i < columnOffsets.length; ++i) {
+            columnOffsets[i] = columnOffsets[i - 1] + schema.getFieldTypes().get(i - 1).getSizeInBytes();
+        }
+        byte[] bytes = new byte[bitmapSizeInBytes + numRecordsPerPage * recordSize];
+        Buffer buf = ByteBuffer.wrap(bytes);
+
+        Iterator<Page> iter = new BatchLockingPageIterator(heapFile.iterator(pageFilter));
+        while (iter.hasNext()) {
+            Page page = iter.next();
+            try {
+                page.getBuffer().get(bytes, 0, bytes.length);
+            } finally {
+                page.unpin();
+            }
+
+            for (int i = 0; i < numRecordsPerPage; ++i) {
+                if (bitmapSizeInBytes == 0 || Bits.getBit(bytes, i) == Bits.Bit.ONE) {
+                    List<DataBox> values = new ArrayList<>(columns.length);
+                    for (int column : columns) {
+                        buf.position(bitmapSizeInBytes + i * recordSize + columnOffsets[column]);
+                        values.add(DataBox.fromBytes(buf, schema.getFieldTypes().get(column)));
+                    }
+                    DataBox key = columns.length == 1 ? values.get(0) : new CompositeDataBox(values);
+                    action.accept(new Pair<>(key, new RecordId(page.getPageNum(), (short) i)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns an iterator over the records of the table for which predicate
+     * holds, in the same order as iterator(). The predicate runs against the
+     * serialized bytes of each record (see RecordBytesPredicate), and only the
+     * records it accepts are decoded. Pages are copied out of the buffer manager
+     * one at a time as the iterator advances.
+     */
+    public Iterator<Record> filteredIterator(RecordBytesPredicate predicate) {
+        return filteredIterator(predicate, pageNum -> true);
+    }
+
+    /**
+     * Like filteredIterator(predicate), but data pages whose page number is
+     * rejected by pageFilter are skipped without being fetched. pageFilter is
+     * usually built from pageMayMatch.
+     */
+    public Iterator<Record> filteredIterator(RecordBytesPredicate predicate, LongPredicate pageFilter) {
+        return new FilteredRecordIterator(predicate, new BatchLockingPageIterator(heapFile.iterator(pageFilter)));
+    }
+
+    /**
+     * Returns false if the zone map shows that no record on data page pageNum
+     * can satisfy (column operator value). See ZoneMap#mayMatch.
+     */
+    public boolean pageMayMatch(long pageNum, int column, PredicateOperator operator, DataBox value) {
+        return zoneMap.mayMatch(pageNum, column, operator, value);
+    }
+
+    private class FilteredRecordIterator implements Iterator<Record> {
+        private RecordBytesPredicate predicate;
+        private Iterator<Page> pageIter;
+        private int recordSize;
+        private byte[] bytes;
+        private Buffer buf;
+        // index of the next entry of the current page to test
+        private int entryNum;
+        private Record nextRecord;
+
+        private FilteredRecordIterator(RecordBytesPredicate predicate, Iterator<Page> pageIter) {
+            this.predicate = predicate;
+            this.pageIter = pageIter;
+            this.recordSize = schema.getSizeInBytes();
+            this.bytes = new byte[bitmapSizeInBytes + numRecordsPerPage * recordSize];
+            this.buf = ByteBuffer.wrap(bytes);
+            this.entryNum = numRecordsPerPage;
+            this.nextRecord = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (nextRecord == null) {
+                if (entryNum >= numRecordsPerPage) {
+                    if (!pageIter.hasNext()) {
+                        return false;
+                    }
+                    Page page = pageIter.next();
+                    try {
+                        page.getBuffer().get(bytes, 0, bytes.length);
+                    } finally {
+                        page.unpin();
+                    }
+                    entryNum = 0;
+                }
+                for (; entryNum < numRecordsPerPage && nextRecord == null; ++entryNum) {
+                    if (bitmapSizeInBytes != 0 && Bits.getBit(bytes, entryNum) == Bits.Bit.ZERO) {
+                        continue;
+                    }
+                    int offset = bitmapSizeInBytes + entryNum * recordSize;
+                    if (predicate.test(buf, offset)) {
+                        buf.position(offset);
+                        nextRecord = Record.fromBytes(buf, schema);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Record next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Record r = nextRecord;
+            nextRecord = null;
+            return r;
+        }
+    }
+
+    /**
+     * BatchLockingPageIterator is a BacktrackingIterator over the data pages of a
+     * scan that takes the S locks on the pages of the scan in runs of
+     * PAGE_LOCK_BATCH_SIZE, rather than one at a time as each page is read.
+     *
+     * When the scan reaches a page that has not been locked, that page is locked
+     * through LockUtil, which also takes the locks needed on the table and
+     * database (or escalates). If this leaves the transaction with only an intent
+     * lock on the table, so that pages need locks of their own, the next pages of
+     * the scan are read ahead and locked with a single call to
+     * LockContext#acquireChildren. Otherwise (no transaction, or a table lock
+     * that covers the pages) nothing is read ahead.
+     *
+     * Pages read from the source are kept (unpinned) from the marked page on, so
+     * that the scan can be reset without going back to the source.
+     */
+    private class BatchLockingPageIterator implements BacktrackingIterator<Page> {
+        private Iterator<Page> source;
+        // the pages of the scan read from source and still needed: pages.get(i)
+        // is page number first + i of the scan (counting from 0)
+        private List<Page> pages = new ArrayList<>();
+        private int first = 0;
+        // the position in the scan of the next page to return, and of the marked
+        // page (-1 if none)
+        private int next = 0;
+        private int mark = -1;
+
+        private BatchLockingPageIterator(Iterator<Page> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < first + pages.size() || source.hasNext();
+        }
+
+        @Override
+        public Page next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (next == first + pages.size()) {
+                Page page = source.next();
+                page.unpin();
+                pages.add(page);
+                lockAhead(page);
+            }
+            Page page = pages.get(next - first);
+            ++next;
+            // drop the pages that can no longer be returned (the last page returned
+            // is kept for markPrev)
+            int keep = mark == -1 ? next - 1 : Math.min(mark, next - 1);
+            if (keep > first) {
+                pages.subList(0, keep - first).clear();
+                first = keep;
+            }
+            page.pin();
+            return page;
+        }
+
+        /**
+         * Locks `page`, just read from the source, and if the transaction needs page
+         * locks, reads the next pages of the scan and locks them all at once.
+         */
+        private void lockAhead(Page page) {
+            TransactionContext transaction = TransactionContext.getTransaction();
+            if (transaction == null || transaction.isReadOnly()) {
+                return;
+            }
+            autoEscalate();
+            LockUtil.ensureSufficientLockHeld(lockContext.childContext(page.getPageNum()), LockType.S);
+            LockType tableLockType = lockContext.getExplicitLockType(transaction);
+            if (tableLockType != LockType.IS && tableLockType != LockType.IX) {
+                return;
+            }
+            List<Long> pageNums = new ArrayList<>();
+            while (pageNums.size() < PAGE_LOCK_BATCH_SIZE - 1 && source.hasNext()) {
+                Page p = source.next();
+                p.unpin();
+                pages.add(p);
+                pageNums.add(p.getPageNum());
+            }
+            if (!pageNums.isEmpty()) {
+                lockContext.acquireChildren(transaction, pageNums, LockType.S);
+            }
+        }
+
+        @Override
+        public void markPrev() {
+            if (next > 0 && next - 1 >= mark) {
+                mark = next - 1;
+            }
+        }
+
+        @Override
+        public void markNext() {
+            if (hasNext()) {
+                mark = next;
+            }
+        }
+
+        @Override
+        public void reset() {
+            if (mark != -1) {
+                next = mark;
+            }
+        }
     }
 
     /**
@@ -1,7 +1,6 @@
 package edu.berkeley.cs186.database.table.stats;
 
 import java.util.Objects;
-import java.util.HashSet;
 
 /**
  * A histogram bucket. There are two types of buckets:
@@ -16,11 +15,17 @@ public class Bucket<T> {
     // If end is null, then this bucket corresponds to the single value start.
     private T start;
     private T end;
+    // precision of the distinct value sketch of each bucket (2^10 one-byte registers)
+    private static final int SKETCH_PRECISION = 10;
+
     private int count;
     private int distinctCount;
 
-    //todo fix later
-    private HashSet<Float> dictionary;
+    // approximate distinct values added by increment since the last setDistinctCount,
+    // allocated on the first increment since copies made for estimates never need one.
+    // The values it counts may already be counted in distinctCount, so the two are
+    // never added up: the distinct count is the larger of the two.
+    private HyperLogLog sketch;
 
     public Bucket(T start) {
         this(start, null);
@@ -32,7 +37,17 @@ public class Bucket<T> {
         this.count = 0;
 
         this.distinctCount = 0;
-        this.dictionary = new HashSet<>();
+        this.sketch = null;
+    }
+
+    /**
+     * @return a bucket with the same range, count and distinct count as this one
+     */
+    public Bucket<T> copy() {
+        Bucket<T> copy = new Bucket<>(start, end);
+        copy.count = count;
+        copy.distinctCount = getDistinctCount();
+        return copy;
     }
 
     public T getStart() {
@@ -53,21 +68,27 @@ public class Bucket<T> {
 
     public void setDistinctCount(int count) {
         this.distinctCount = count;
-        dictionary = new HashSet<>();
+        this.sketch = null;
     }
 
     public int getDistinctCount() {
-        return this.distinctCount + dictionary.size();
+        return sketch == null ? distinctCount : Math.max(distinctCount, (int) sketch.estimate());
     }
 
     public void increment(float val) {
         count ++;
-        dictionary.add(val);
+        if (sketch == null) {
+            sketch = new HyperLogLog(SKETCH_PRECISION);
+        }
+        sketch.add(HyperLogLog.hash(Float.floatToIntBits(val)));
     }
 
+    /**
+     * Removes one occurrence of val. The distinct count is not lowered, since the
+     * sketch can not tell whether other occurrences of val remain.
+     */
     public void decrement(float val) {
-        count --;
-        dictionary.remove(val);
+        count = Math.max(count - 1, 0);
     }
 
     @Override
@@ -1,6 +1,10 @@
 package edu.berkeley.cs186.database.table.stats;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 
 import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.databox.DataBox;
@@ -49,7 +53,9 @@ import edu.berkeley.cs186.database.databox.TypeId;
  * b.getCount();//returns the number of items added to the bucket
  * b.getDistinctCount();//returns the approximate number of distinct items added to the bucket
  *
- *
+ * A table's histograms are updated by addValue and removeValue as records are
+ * inserted and deleted, while other transactions read them for cost estimates,
+ * so the methods that read or update the buckets synchronize on the histogram.
  */
 public class Histogram {
     private Bucket<Float>[] buckets; //An array of float buckets the basic data structure
@@ -94,6 +100,7 @@ public class Histogram {
         case BOOL:   { return (d.getBool()) ? 1.0f : 0.0f; }
         case INT:    { return (float) d.getInt(); }
         case FLOAT:  { return d.getFloat(); }
+        case LONG:   { return (float) d.getLong(); }
         case STRING: { return (float) (d.getString().hashCode()); }
         }
 
@@ -153,6 +160,86 @@ public class Histogram {
         }
     }
 
+    /**
+     * Builds the histogram from a sample of the table rather than the whole table,
+     * for tables too large to scan whenever statistics are refreshed. Bucket
+     * boundaries come from the sample; counts are scaled up by scale (the number
+     * of records in the table divided by the size of the sample), and distinct
+     * counts are scaled with the GEE estimator: values seen once in the sample are
+     * assumed to stand for sqrt(scale) distinct values each, and values seen more
+     * than once are assumed to have been found already.
+     *
+     * @param sample records sampled from the table
+     * @param attribute index of the column to build the histogram on
+     * @param scale ratio of the number of records in the table to sample.size()
+     */
+    public void buildHistogram(List<Record> sample, int attribute, float scale) {
+        this.minValue = Float.MAX_VALUE;
+        this.maxValue = -Float.MAX_VALUE;
+        for (Record record : sample) {
+            float quantizedValue = quantization(record, attribute);
+            this.minValue = Math.min(this.minValue, quantizedValue);
+            this.maxValue = Math.max(this.maxValue, quantizedValue);
+        }
+        if (sample.isEmpty()) {
+            this.minValue = 0;
+            this.maxValue = 0;
+        }
+        this.width = (this.maxValue - this.minValue) / this.buckets.length;
+
+        List<Map<Float, Integer>> frequencies = new ArrayList<>();
+        for (int i = 0; i < this.buckets.length; i++) {
+            buckets[i] = new Bucket<>(this.minValue + (i) * width, this.minValue + (i + 1) * width);
+            frequencies.add(new HashMap<>());
+        }
+        for (Record record : sample) {
+            float quantizedValue = quantization(record, attribute);
+            frequencies.get(clampedBucketIndex(quantizedValue)).merge(quantizedValue, 1, Integer::sum);
+        }
+
+        double distinctScale = Math.sqrt(Math.max(scale, 1.0f));
+        for (int i = 0; i < this.buckets.length; i++) {
+            int count = 0;
+            int seenOnce = 0;
+            for (int frequency : frequencies.get(i).values()) {
+                count += frequency;
+                if (frequency == 1) {
+                    ++seenOnce;
+                }
+            }
+            int scaledCount = Math.round(count * scale);
+            int distinct = (int) Math.round(distinctScale * seenOnce) + frequencies.get(i).size() - seenOnce;
+            buckets[i].setCount(scaledCount);
+            buckets[i].setDistinctCount(Math.min(distinct, scaledCount));
+        }
+    }
+
+    /**
+     * Adds a value to the histogram as it is inserted into the table. Values outside
+     * of the range the histogram was built over are counted in the first or last
+     * bucket, so the histogram drifts from the data until it is rebuilt.
+     */
+    public synchronized void addValue(DataBox value) {
+        float quantizedValue = quantization(value);
+        buckets[clampedBucketIndex(quantizedValue)].increment(quantizedValue);
+    }
+
+    /**
+     * Removes a value from the histogram as it is deleted from the table.
+     */
+    public synchronized void removeValue(DataBox value) {
+        float quantizedValue = quantization(value);
+        buckets[clampedBucketIndex(quantizedValue)].decrement(quantizedValue);
+    }
+
+    private int clampedBucketIndex(float v) {
+        if (this.width == 0 || Float.isNaN(v)) {
+            return this.buckets.length - 1;
+        }
+        int index = (int) Math.floor((v - this.minValue) / this.width);
+        return Math.max(0, Math.min(index, this.buckets.length - 1));
+    }
+
     private int bucketIndex(float v) {
         if (Math.abs(v - maxValue) < 0.00001) { return buckets.length - 1; }
         return (int) Math.floor((v - minValue) / width);
@@ -160,7 +247,7 @@ public class Histogram {
 
     //Accessor Methods//////////////////////////////////////////////////////////////
     /** Return an estimate of the number of distinct values in the histogram. */
-    public int getNumDistinct() {
+    public synchronized int getNumDistinct() {
         int sum = 0;
         for (Bucket bucket : this.buckets) {
             sum += bucket.getDistinctCount();
@@ -170,7 +257,7 @@ public class Histogram {
     }
 
     /** Return an estimate of the number of the total values in the histogram. */
-    public int getCount() {
+    public synchronized int getCount() {
         int sum = 0;
         for (Bucket bucket : this.buckets) {
             sum += bucket.getCount();
@@ -387,7 +474,7 @@ public class Histogram {
      * The reduction factor for the predicate `>= 25` is 0.5 because roughly half
      * of the values are greater than or equal to 25.
      */
-    public float computeReductionFactor(PredicateOperator predicate, DataBox value) {
+    public synchronized float computeReductionFactor(PredicateOperator predicate, DataBox value) {
         float[] reduction = filter(predicate, value);
 
         float sum = 0.0f;
@@ -418,9 +505,9 @@ public class Histogram {
      *       ------------------------------
      *         0    10   20   30   40   50]
      */
-    public Histogram copyWithPredicate(PredicateOperator predicate, DataBox value) {
+    public synchronized Histogram copyWithPredicate(PredicateOperator predicate, DataBox value) {
         float[] reduction = filter(predicate, value);
-        Bucket<Float>[] newBuckets = this.buckets.clone();
+        Bucket<Float>[] newBuckets = this.copyBuckets();
 
         for (int i = 0; i < this.buckets.length; i++) {
             int newCount = (int) Math.round(reduction[i] * this.buckets[i].getCount());
@@ -434,8 +521,8 @@ public class Histogram {
     }
 
     //uniformly reduces the values across the board with the mean reduction assumes uncorrelated
-    public Histogram copyWithReduction(float reduction) {
-        Bucket<Float>[] newBuckets = this.buckets.clone();
+    public synchronized Histogram copyWithReduction(float reduction) {
+        Bucket<Float>[] newBuckets = this.copyBuckets();
 
         for (int i = 0; i < this.buckets.length; i++) {
             int newCount = (int) Math.round(reduction * this.buckets[i].getCount());
@@ -447,4 +534,14 @@ public class Histogram {
 
         return new Histogram(newBuckets);
     }
+
+    // copies of the buckets, so that the histogram of the table is not modified
+    // when deriving histograms for cost estimates
+    private Bucket<Float>[] copyBuckets() {
+        Bucket<Float>[] newBuckets = this.buckets.clone();
+        for (int i = 0; i < newBuckets.length; i++) {
+            newBuckets[i] = newBuckets[i].copy();
+        }
+        return newBuckets;
+    }
 }
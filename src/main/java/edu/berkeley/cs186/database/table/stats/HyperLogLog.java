@@ -0,0 +1,97 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import java.util.Arrays;
+
+/**
+ * A HyperLogLog sketch estimates the number of distinct values added to it in
+ * a fixed amount of memory, regardless of how many values are added:
+ *
+ *   HyperLogLog sketch = new HyperLogLog(12); // 2^12 one-byte registers
+ *   sketch.add(HyperLogLog.hash(42));
+ *   sketch.estimate(); // roughly 1
+ *
+ * Each value is hashed to 64 bits; the first `precision` bits pick a register,
+ * and the register remembers the longest run of leading zeros seen in the
+ * remaining bits. The standard error of the estimate is about
+ * 1.04 / sqrt(2^precision), and small cardinalities are estimated exactly enough
+ * by linear counting over the empty registers.
+ *
+ * Values can not be removed from a sketch. Deleting rows therefore leaves the
+ * estimate unchanged until the statistics are rebuilt.
+ */
+public class HyperLogLog {
+    private final int precision;
+    private final byte[] registers;
+
+    /**
+     * @param precision number of hash bits used to pick a register, between 4 and 16
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("HyperLogLog precision must be between 4 and 16");
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a value, given as a well mixed 64-bit hash (see hash).
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        long rest = hash << precision;
+        // position of the first one bit in the remaining 64 - precision bits
+        int rank = rest == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(rest) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct values added
+     */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int numZeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                ++numZeros;
+            }
+        }
+        double alpha;
+        switch (m) {
+        case 16: alpha = 0.673; break;
+        case 32: alpha = 0.697; break;
+        case 64: alpha = 0.709; break;
+        default: alpha = 0.7213 / (1 + 1.079 / m); break;
+        }
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && numZeros > 0) {
+            // linear counting is much more accurate for small cardinalities
+            estimate = m * Math.log((double) m / numZeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Forgets every value added so far.
+     */
+    public void clear() {
+        Arrays.fill(registers, (byte) 0);
+    }
+
+    /**
+     * Mixes the bits of x (the finalizer of MurmurHash3), so that values with
+     * similar bit patterns (e.g. consecutive integers) land in unrelated registers.
+     */
+    public static long hash(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        x *= 0xc4ceb9fe1a85ec53L;
+        x ^= x >>> 33;
+        return x;
+    }
+}
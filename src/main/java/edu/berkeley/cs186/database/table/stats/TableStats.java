@@ -43,12 +43,30 @@ import edu.berkeley.cs186.database.table.Table;
  *   stats.getNumRecords(); // Estimated number of records.
  *   stats.getNumPages();   // Estimated number of pages.
  *   stats.getHistograms(); // Histograms on each column.
+ *   stats.getNumDistinct(0); // Estimated number of distinct values of x.
+ *
+ * The record count, the histograms and a HyperLogLog sketch of the distinct
+ * values of each column are all maintained incrementally as records are added
+ * and removed, so they never go stale between refreshes. Incremental updates
+ * can not move bucket boundaries though, so histograms are periodically rebuilt,
+ * either from a full scan (refreshHistograms(buckets, table)) or, for large
+ * tables, from a sample (refreshHistograms(buckets, sample, numRecords)).
  */
 public class TableStats {
+    // precision of the distinct value sketch of each column (2^12 one-byte registers)
+    private static final int SKETCH_PRECISION = 12;
+
     private Schema tableSchema;
     private int numRecordsPerPage;
     private int numRecords;
-    private List<Histogram> histograms;
+    private volatile List<Histogram> histograms;
+
+    // sketch of the distinct values of each column; null for estimated statistics
+    // derived from another TableStats
+    private HyperLogLog[] distinctValues;
+
+    // number of records added or removed since histograms were last rebuilt
+    private int numModifications;
 
     /** Construct a TableStats for an empty table with schema `tableSchema`. */
     public TableStats(Schema tableSchema, int numRecordsPerPage) {
@@ -60,6 +78,11 @@ public class TableStats {
             Histogram h = new Histogram();
             this.histograms.add(h);
         }
+        this.distinctValues = new HyperLogLog[tableSchema.getFieldTypes().size()];
+        for (int i = 0; i < this.distinctValues.length; ++i) {
+            this.distinctValues[i] = new HyperLogLog(SKETCH_PRECISION);
+        }
+        this.numModifications = 0;
     }
 
     private TableStats(Schema tableSchema, int numRecordsPerPage, int numRecords,
@@ -68,11 +91,21 @@ public class TableStats {
         this.numRecordsPerPage = numRecordsPerPage;
         this.numRecords = numRecords;
         this.histograms = histograms;
+        this.distinctValues = null;
+        this.numModifications = 0;
     }
 
     // Modifiers /////////////////////////////////////////////////////////////////
-    public void addRecord(Record record) {
+    public synchronized void addRecord(Record record) {
         numRecords++;
+        numModifications++;
+        List<DataBox> values = record.getValues();
+        for (int i = 0; i < values.size(); ++i) {
+            histograms.get(i).addValue(values.get(i));
+            if (distinctValues != null) {
+                distinctValues[i].add(HyperLogLog.hash(values.get(i).hashCode()));
+            }
+        }
     }
 
     public void refreshHistograms(int buckets, Table tab) {
@@ -87,12 +120,57 @@ public class TableStats {
             count++;
         }
 
-        this.histograms = newHistograms;
-        this.numRecords = Math.round(((float)totalRecords) / count);
+        HyperLogLog[] newDistinctValues = new HyperLogLog[tableSchema.getFieldTypes().size()];
+        for (int i = 0; i < newDistinctValues.length; ++i) {
+            newDistinctValues[i] = new HyperLogLog(SKETCH_PRECISION);
+        }
+        for (Record record : tab) {
+            List<DataBox> values = record.getValues();
+            for (int i = 0; i < newDistinctValues.length; ++i) {
+                newDistinctValues[i].add(HyperLogLog.hash(values.get(i).hashCode()));
+            }
+        }
+
+        synchronized (this) {
+            this.histograms = newHistograms;
+            this.distinctValues = newDistinctValues;
+            this.numRecords = Math.round(((float)totalRecords) / count);
+            this.numModifications = 0;
+        }
     }
 
-    public void removeRecord(Record record) {
+    /**
+     * Rebuilds the histograms from a sample of the table (see
+     * Histogram#buildHistogram(List, int, float)) without scanning it. The record
+     * count and distinct value sketches are exact enough already, since they are
+     * maintained on every insert and delete, and are kept as they are.
+     *
+     * @param buckets number of buckets in each histogram
+     * @param sample records sampled from the table
+     * @param tableRecords number of records in the table
+     */
+    public void refreshHistograms(int buckets, List<Record> sample, long tableRecords) {
+        float scale = sample.isEmpty() ? 1.0f : (float) tableRecords / sample.size();
+        List<Histogram> newHistograms = new ArrayList<>();
+        for (int i = 0; i < tableSchema.getFieldTypes().size(); ++i) {
+            Histogram h = new Histogram(buckets);
+            h.buildHistogram(sample, i, scale);
+            newHistograms.add(h);
+        }
+
+        synchronized (this) {
+            this.histograms = newHistograms;
+            this.numModifications = 0;
+        }
+    }
+
+    public synchronized void removeRecord(Record record) {
         numRecords = Math.max(numRecords - 1, 0);
+        numModifications++;
+        List<DataBox> values = record.getValues();
+        for (int i = 0; i < values.size(); ++i) {
+            histograms.get(i).removeValue(values.get(i));
+        }
     }
 
     // Accessors /////////////////////////////////////////////////////////////////
@@ -120,6 +198,26 @@ public class TableStats {
         return histograms;
     }
 
+    /**
+     * Returns the estimated number of distinct values in column i, from the
+     * column's HyperLogLog sketch when one is maintained and from its histogram
+     * otherwise.
+     */
+    public synchronized int getNumDistinct(int i) {
+        if (distinctValues == null) {
+            return histograms.get(i).getNumDistinct();
+        }
+        return (int) Math.min(distinctValues[i].estimate(), numRecords);
+    }
+
+    /**
+     * Returns the number of records added or removed since the histograms were
+     * last rebuilt, which indicates how far they may have drifted from the data.
+     */
+    public synchronized int getNumModifications() {
+        return numModifications;
+    }
+
     // Copiers ///////////////////////////////////////////////////////////////////
     /**
      * Estimates the table statistics for the table that would be produced after
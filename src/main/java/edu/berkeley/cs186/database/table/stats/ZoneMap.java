@@ -0,0 +1,141 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.databox.TypeId;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+
+/**
+ * A zone map keeps the minimum and maximum value of every INT, LONG and FLOAT
+ * column on each data page of a table. A scan evaluating a predicate such as
+ * x > 10 can then skip any page whose maximum x is at most 10 without ever
+ * fetching it.
+ *
+ *   ZoneMap zoneMap = new ZoneMap(schema);
+ *   zoneMap.addRecord(pageNum, record);   // widen the page's ranges
+ *   zoneMap.mayMatch(pageNum, 1, PredicateOperator.GREATER_THAN, new IntDataBox(10));
+ *
+ * Ranges only ever widen: overwriting or deleting the record holding the
+ * minimum does not shrink the range, and neither does emptying the page, which
+ * keeps maintenance O(1) per modification. Rollback and undo restore the bytes
+ * of pages without going through the table, so never touch the zone map
+ * either; the values they bring back were added to it before they were
+ * overwritten or deleted, so they are still covered. A range therefore holds
+ * every value its page held since the table was loaded, and may be much wider
+ * than the values the page holds now: it is only good for ruling pages out,
+ * and nothing may rely on it being tight. Like TableStats, the zone map lives
+ * in memory and is rebuilt when the table is loaded.
+ */
+public class ZoneMap {
+    // indices of the columns being tracked
+    private int[] columns;
+
+    // position of each column of the schema in columns, or -1 if not tracked
+    private int[] columnPositions;
+
+    // whether the tracked column is a FLOAT column
+    private boolean[] isFloat;
+
+    // page number -> {min, max} for each tracked column
+    private Map<Long, DataBox[][]> zones;
+
+    public ZoneMap(Schema schema) {
+        List<Type> types = schema.getFieldTypes();
+        List<Integer> tracked = new ArrayList<>();
+        this.columnPositions = new int[types.size()];
+        for (int i = 0; i < types.size(); ++i) {
+            TypeId typeId = types.get(i).getTypeId();
+            if (typeId == TypeId.INT || typeId == TypeId.LONG || typeId == TypeId.FLOAT) {
+                this.columnPositions[i] = tracked.size();
+                tracked.add(i);
+            } else {
+                this.columnPositions[i] = -1;
+            }
+        }
+        this.columns = new int[tracked.size()];
+        this.isFloat = new boolean[tracked.size()];
+        for (int i = 0; i < this.columns.length; ++i) {
+            this.columns[i] = tracked.get(i);
+            this.isFloat[i] = types.get(this.columns[i]).getTypeId() == TypeId.FLOAT;
+        }
+        this.zones = new HashMap<>();
+    }
+
+    /**
+     * Widens the ranges of page pageNum to include the values of record.
+     */
+    public synchronized void addRecord(long pageNum, Record record) {
+        if (this.columns.length == 0) {
+            return;
+        }
+        List<DataBox> values = record.getValues();
+        DataBox[][] zone = this.zones.get(pageNum);
+        if (zone == null) {
+            zone = new DataBox[this.columns.length][];
+            for (int i = 0; i < this.columns.length; ++i) {
+                DataBox value = values.get(this.columns[i]);
+                zone[i] = new DataBox[] {value, value};
+            }
+            this.zones.put(pageNum, zone);
+            return;
+        }
+        for (int i = 0; i < this.columns.length; ++i) {
+            DataBox value = values.get(this.columns[i]);
+            if (value.compareTo(zone[i][0]) < 0) {
+                zone[i][0] = value;
+            }
+            if (value.compareTo(zone[i][1]) > 0) {
+                zone[i][1] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns false only if no record on page pageNum can satisfy
+     * (column operator value); pages and columns without a zone always return true.
+     *
+     * @param pageNum the data page to check
+     * @param column index of the column in the table's schema
+     * @param operator the comparison being evaluated
+     * @param value the value the column is compared against
+     */
+    public synchronized boolean mayMatch(long pageNum, int column, PredicateOperator operator, DataBox value) {
+        int position = this.columnPositions[column];
+        if (position < 0) {
+            return true;
+        }
+        DataBox[][] zone = this.zones.get(pageNum);
+        if (zone == null || !zone[position][0].type().equals(value.type())) {
+            return true;
+        }
+        DataBox min = zone[position][0];
+        DataBox max = zone[position][1];
+        switch (operator) {
+        case EQUALS:
+            // FloatDataBox#equals treats 0.0 and -0.0 as equal but compareTo does not
+            if (this.isFloat[position] && (value.getFloat() == 0 || Float.isNaN(value.getFloat()))) {
+                return true;
+            }
+            return min.compareTo(value) <= 0 && max.compareTo(value) >= 0;
+        case NOT_EQUALS:
+            return this.isFloat[position] || !(min.equals(value) && max.equals(value));
+        case LESS_THAN:
+            return min.compareTo(value) < 0;
+        case LESS_THAN_EQUALS:
+            return min.compareTo(value) <= 0;
+        case GREATER_THAN:
+            return max.compareTo(value) > 0;
+        case GREATER_THAN_EQUALS:
+            return max.compareTo(value) >= 0;
+        default:
+            return true;
+        }
+    }
+}
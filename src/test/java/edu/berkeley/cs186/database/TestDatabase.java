@@ -2,7 +2,9 @@ package edu.berkeley.cs186.database;
 
 import edu.berkeley.cs186.database.categories.*;
 import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockManager;
 import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
 import edu.berkeley.cs186.database.query.QueryPlan;
 import edu.berkeley.cs186.database.table.*;
 
@@ -16,9 +18,11 @@ import org.junit.rules.TemporaryFolder;
 import static org.junit.Assert.*;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 
 @Category({Proj99Tests.class, SystemTests.class})
 public class TestDatabase {
@@ -410,4 +414,178 @@ public class TestDatabase {
             assertFalse(iter.hasNext());
         }
     }
+
+    @Test
+    public void testBulkLoadIndex() {
+        try (Transaction t1 = db.beginTransaction()) {
+            Schema s = new Schema(
+                Arrays.asList("id", "name"),
+                Arrays.asList(Type.intType(), Type.stringType(10))
+            );
+            t1.createTable(s, "table1");
+            // insert ids out of order, so the scan returns them unsorted
+            for (int i = 0; i < 2000; ++i) {
+                t1.insert("table1", Arrays.asList(
+                              new IntDataBox((i * 7919) % 2000),
+                              new StringDataBox("name" + i, 10)
+                          ));
+            }
+            t1.createIndex("table1", "id", true);
+
+            assertTrue(t1.getTransactionContext().indexExists("table1", "id"));
+            // 2000 keys do not fit in a single leaf
+            assertEquals(1, t1.getTransactionContext().getTreeHeight("table1", "id"));
+        }
+    }
+
+    @Test
+    public void testHashIndex() {
+        Schema s = new Schema(
+            Arrays.asList("id", "name"),
+            Arrays.asList(Type.intType(), Type.stringType(10))
+        );
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1");
+            for (int i = 0; i < 500; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new StringDataBox("name" + i, 10)));
+            }
+            t1.createHashIndex("table1", "id");
+            // records added after the index is created are indexed as well
+            for (int i = 500; i < 1000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new StringDataBox("name" + i, 10)));
+            }
+
+            TransactionContext transaction = t1.getTransactionContext();
+            assertTrue(transaction.indexExists("table1", "id"));
+            assertTrue(transaction.isHashIndex("table1", "id"));
+            Iterator<Record> iter = transaction.lookupKey("table1", "id", new IntDataBox(750));
+            assertEquals(new StringDataBox("name750", 10), iter.next().getValues().get(1));
+            assertFalse(iter.hasNext());
+            assertFalse(transaction.contains("table1", "id", new IntDataBox(1000)));
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            // hash indices are stored without changing the schema of information_schema.indices
+            assertEquals(8, t2.getSchema("information_schema.indices").getFieldNames().size());
+            TransactionContext transaction = t2.getTransactionContext();
+            assertTrue(transaction.isHashIndex("table1", "id"));
+            for (int i = 0; i < 1000; i += 37) {
+                assertTrue(transaction.contains("table1", "id", new IntDataBox(i)));
+            }
+        }
+    }
+
+    @Test
+    public void testCompositeIndex() {
+        Schema s = new Schema(
+            Arrays.asList("sid", "cid", "grade"),
+            Arrays.asList(Type.intType(), Type.intType(), Type.stringType(2))
+        );
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "enrollments");
+            for (int i = 0; i < 1000; ++i) {
+                t1.insert("enrollments", Arrays.asList(new IntDataBox(i / 5), new IntDataBox(i % 5),
+                                                       new StringDataBox("A", 2)));
+            }
+            t1.createIndex("enrollments", Arrays.asList("sid", "cid"), true);
+            // records added after the index is created have composite keys too
+            t1.insert("enrollments", Arrays.asList(new IntDataBox(200), new IntDataBox(0),
+                                                   new StringDataBox("B", 2)));
+
+            TransactionContext transaction = t1.getTransactionContext();
+            assertTrue(transaction.indexExists("enrollments", "sid,cid"));
+            // the index also serves its prefixes, but not other columns
+            assertTrue(transaction.indexExists("enrollments", "sid"));
+            assertFalse(transaction.indexExists("enrollments", "cid"));
+            assertEquals(1, transaction.getTreeHeight("enrollments", "sid"));
+        }
+
+        db.close();
+        db = new Database(this.filename, 32);
+
+        try (Transaction t2 = db.beginTransaction()) {
+            TransactionContext transaction = t2.getTransactionContext();
+            assertTrue(transaction.indexExists("enrollments", "sid"));
+            assertEquals(1, transaction.getTreeHeight("enrollments", "sid,cid"));
+            t2.dropIndex("enrollments", "sid,cid");
+            assertFalse(transaction.indexExists("enrollments", "sid"));
+            t2.insert("enrollments", Arrays.asList(new IntDataBox(201), new IntDataBox(0),
+                                                   new StringDataBox("B", 2)));
+        }
+    }
+
+    @Test
+    public void testIndexRangeScans() {
+        Schema s = new Schema(
+            Arrays.asList("id", "name"),
+            Arrays.asList(Type.intType(), Type.stringType(10))
+        );
+        try (Transaction t1 = db.beginTransaction()) {
+            t1.createTable(s, "table1");
+            for (int i = 0; i < 1000; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox((i * 7919) % 1000),
+                                                  new StringDataBox("name" + i, 10)));
+            }
+            t1.createIndex("table1", "id", true);
+
+            TransactionContext transaction = t1.getTransactionContext();
+            assertEquals(ids(0, 100), idsOf(transaction.sortedScanTo("table1", "id", new IntDataBox(100), false)));
+            assertEquals(ids(0, 101), idsOf(transaction.sortedScanTo("table1", "id", new IntDataBox(100), true)));
+            List<Integer> reversed = ids(0, 501);
+            Collections.reverse(reversed);
+            assertEquals(reversed, idsOf(transaction.reverseSortedScanTo("table1", "id", new IntDataBox(500), true)));
+            reversed = ids(900, 1000);
+            Collections.reverse(reversed);
+            assertEquals(reversed, idsOf(transaction.reverseSortedScanFrom("table1", "id", new IntDataBox(900))));
+        }
+    }
+
+    @Test
+    public void testLogTailPages() throws Exception {
+        // a database with a log tail buffer keeps its data when it is reopened
+        String dir = tempFolder.newFolder("logTail").getAbsolutePath();
+        Schema s = new Schema(
+            Arrays.asList("id", "name"),
+            Arrays.asList(Type.intType(), Type.stringType(10))
+        );
+        Database logTailDb = new Database(dir, 32, new DummyLockManager(), new ClockEvictionPolicy(), true, 4);
+        logTailDb.waitSetupFinished();
+        try (Transaction t1 = logTailDb.beginTransaction()) {
+            t1.createTable(s, "table1");
+            for (int i = 0; i < 500; ++i) {
+                t1.insert("table1", Arrays.asList(new IntDataBox(i), new StringDataBox("name" + i, 10)));
+            }
+        }
+        logTailDb.close();
+
+        logTailDb = new Database(dir, 32, new DummyLockManager(), new ClockEvictionPolicy(), true, 4);
+        logTailDb.waitSetupFinished();
+        try (Transaction t2 = logTailDb.beginTransaction()) {
+            assertEquals(ids(0, 500), idsOf(t2.getTransactionContext().getRecordIterator("table1")));
+        }
+        logTailDb.close();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLogTailPagesNeedRecovery() throws Exception {
+        new Database(tempFolder.newFolder("logTail").getAbsolutePath(), 32, new DummyLockManager(),
+                     new ClockEvictionPolicy(), false, 4);
+    }
+
+    private static List<Integer> ids(int from, int to) {
+        List<Integer> ids = new ArrayList<>();
+        for (int i = from; i < to; ++i) {
+            ids.add(i);
+        }
+        return ids;
+    }
+
+    private static List<Integer> idsOf(Iterator<Record> records) {
+        List<Integer> ids = new ArrayList<>();
+        records.forEachRemaining(r -> ids.add(r.getValues().get(0).getInt()));
+        return ids;
+    }
 }
@@ -0,0 +1,232 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.OptimisticValidator;
+import edu.berkeley.cs186.database.concurrency.ValidationException;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestOptimisticTransactions {
+    private static final String TestDir = "testOptimisticTransactions";
+    private static final String TABLE = "counters";
+    private Database db;
+    private List<RecordId> rids;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder(TestDir);
+        this.db = new Database(testDir.getAbsolutePath(), 128);
+        this.db.setWorkMem(4);
+        try (Transaction t = db.beginTransaction()) {
+            t.dropAllTables();
+            t.createTable(new Schema(Collections.singletonList("count"),
+                                     Collections.singletonList(Type.intType())), TABLE);
+        }
+        rids = createCounters(10);
+    }
+
+    @After
+    public void afterEach() {
+        try (Transaction t = db.beginTransaction()) {
+            t.dropAllTables();
+        }
+        db.close();
+    }
+
+    private List<RecordId> createCounters(int n) {
+        List<RecordId> rids = new ArrayList<>();
+        try (Transaction t = db.beginTransaction()) {
+            for (int i = 0; i < n; ++i) {
+                rids.add(t.getTransactionContext().addRecord(TABLE, Collections.singletonList(new IntDataBox(0))));
+            }
+        }
+        return rids;
+    }
+
+    private static int count(OptimisticTransaction t, RecordId rid) {
+        return t.getRecord(TABLE, rid).getValues().get(0).getInt();
+    }
+
+    private static void increment(OptimisticTransaction t, RecordId rid) {
+        t.updateRecord(TABLE, rid, Collections.singletonList(new IntDataBox(count(t, rid) + 1)));
+    }
+
+    // increments the counter as a regular transaction
+    private void increment(RecordId rid) {
+        try (Transaction t = db.beginTransaction()) {
+            TransactionContext.setTransaction(t.getTransactionContext());
+            try {
+                int count = t.getTransactionContext().getRecord(TABLE, rid).getValues().get(0).getInt();
+                t.getTransactionContext().updateRecord(TABLE, Collections.singletonList(new IntDataBox(count + 1)),
+                                                       rid);
+            } finally {
+                TransactionContext.unsetTransaction();
+            }
+        }
+    }
+
+    private int count(RecordId rid) {
+        try (Transaction t = db.beginReadOnlyTransaction()) {
+            TransactionContext.setTransaction(t.getTransactionContext());
+            try {
+                return t.getTransactionContext().getRecord(TABLE, rid).getValues().get(0).getInt();
+            } finally {
+                TransactionContext.unsetTransaction();
+            }
+        }
+    }
+
+    @Test
+    public void testCommit() {
+        db.runOptimistic(t -> {
+            increment(t, rids.get(0));
+            increment(t, rids.get(0));
+            t.deleteRecord(TABLE, rids.get(1));
+            t.insert(TABLE, Collections.singletonList(new IntDataBox(7)));
+        });
+        assertEquals(2, count(rids.get(0)));
+        assertEquals(10, db.getTable(TABLE).getNumRecords());
+        assertEquals(1, db.getOptimisticValidator().getNumCommits());
+    }
+
+    @Test
+    public void testConflictRetries() {
+        AtomicInteger attempts = new AtomicInteger();
+        db.runOptimistic(t -> {
+            increment(t, rids.get(0));
+            if (attempts.incrementAndGet() == 1) {
+                // a concurrent transaction increments the same counter
+                increment(rids.get(0));
+            }
+        });
+        assertEquals(2, attempts.get());
+        assertEquals(2, count(rids.get(0)));
+        assertEquals(1, db.getOptimisticValidator().getNumConflicts());
+    }
+
+    @Test
+    public void testNoConflictOnOtherRecords() {
+        AtomicInteger attempts = new AtomicInteger();
+        db.runOptimistic(t -> {
+            attempts.incrementAndGet();
+            increment(t, rids.get(0));
+            increment(rids.get(1));
+        });
+        assertEquals(1, attempts.get());
+        assertEquals(1, count(rids.get(0)));
+    }
+
+    @Test
+    public void testBlindWriteConflicts() {
+        try {
+            db.runOptimistic(t -> {
+                t.updateRecord(TABLE, rids.get(0), Collections.singletonList(new IntDataBox(100)));
+                increment(rids.get(0));
+                return null;
+            }, 1);
+            fail();
+        } catch (ValidationException e) {
+            // none of the writes of the transaction were applied
+            assertEquals(1, count(rids.get(0)));
+        }
+    }
+
+    // sets the counter to COUNT in T, without committing
+    private static void set(Transaction t, RecordId rid, int count) {
+        TransactionContext.setTransaction(t.getTransactionContext());
+        try {
+            t.getTransactionContext().updateRecord(TABLE, Collections.singletonList(new IntDataBox(count)), rid);
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
+    @Test
+    public void testWriterCommittingAfterStartConflicts() {
+        // a regular transaction writes the counter before the optimistic transaction
+        // starts, and commits after the counter was read: the read missed the write
+        AtomicInteger attempts = new AtomicInteger();
+        // with a snapshot open, the writer's changes are versioned, so the optimistic
+        // transaction need not wait for the writer to start
+        try (Transaction snapshot = db.beginReadOnlyTransaction();
+                Transaction writer = db.beginTransaction()) {
+            set(writer, rids.get(0), 5);
+            db.runOptimistic(t -> {
+                increment(t, rids.get(0));
+                if (attempts.incrementAndGet() == 1) {
+                    writer.commit();
+                }
+            });
+        }
+        assertEquals(2, attempts.get());
+        assertEquals(6, count(rids.get(0)));
+    }
+
+    @Test
+    public void testRunningWriterConflicts() {
+        try (Transaction snapshot = db.beginReadOnlyTransaction();
+                Transaction writer = db.beginTransaction()) {
+            set(writer, rids.get(0), 5);
+            try {
+                db.runOptimistic(t -> {
+                    increment(t, rids.get(0));
+                    return null;
+                }, 1);
+                fail();
+            } catch (ValidationException e) {
+                /* do nothing */
+            }
+        }
+        assertEquals(5, count(rids.get(0)));
+    }
+
+    @Test
+    public void testRevalidationIgnoresWritePhase() {
+        OptimisticValidator validator = db.getOptimisticValidator();
+        List<Pair<String, RecordId>> records = Collections.singletonList(
+                new Pair<>(db.getTable(TABLE).getName(), rids.get(0)));
+        long start = validator.begin();
+        try (Transaction writer = db.beginTransaction()) {
+            set(writer, rids.get(0), 5);
+            // the write phase's own writes are no conflict, but those of others are
+            validator.validate(start, records, writer.getTransNum());
+            try {
+                validator.validate(start, records, null);
+                fail();
+            } catch (ValidationException e) {
+                /* do nothing */
+            }
+        } finally {
+            validator.end(start);
+        }
+    }
+
+    @Test
+    public void testStampsDropped() {
+        // writes are only stamped while optimistic transactions run
+        increment(rids.get(0));
+        db.runOptimistic(t -> {
+            increment(t, rids.get(0));
+        });
+        assertEquals(2, count(rids.get(0)));
+        assertEquals(0, db.getOptimisticValidator().getNumConflicts());
+    }
+}
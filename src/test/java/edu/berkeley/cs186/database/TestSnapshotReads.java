@@ -0,0 +1,221 @@
+package edu.berkeley.cs186.database;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.memory.PageVersionStore;
+import edu.berkeley.cs186.database.query.QueryPlan;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestSnapshotReads {
+    private static final String TestDir = "testSnapshotReads";
+    private static final String TABLE = "snapshotTable";
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder(TestDir);
+        this.db = new Database(testDir.getAbsolutePath(), 128);
+        this.db.setWorkMem(4);
+        try (Transaction t = db.beginTransaction()) {
+            t.dropAllTables();
+            t.createTable(new Schema(Arrays.asList("id", "pad"),
+                                     Arrays.asList(Type.intType(), Type.stringType(1000))), TABLE);
+        }
+    }
+
+    @After
+    public void afterEach() {
+        try (Transaction t = db.beginTransaction()) {
+            t.dropAllTables();
+        }
+        db.close();
+    }
+
+    private void insert(Transaction t, int from, int to) {
+        for (int i = from; i < to; ++i) {
+            t.insert(TABLE, Arrays.asList(new IntDataBox(i), new StringDataBox("x", 1000)));
+        }
+    }
+
+    // sum of the ids of the table, as read by t
+    private long sum(Transaction t) {
+        TransactionContext.setTransaction(t.getTransactionContext());
+        try {
+            long sum = 0;
+            Iterator<Record> records = t.getTransactionContext().getRecordIterator(TABLE);
+            while (records.hasNext()) {
+                sum += records.next().getValues().get(0).getInt();
+            }
+            return sum;
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
+    @Test
+    public void testUncommittedWritesInvisible() {
+        try (Transaction t = db.beginTransaction()) {
+            insert(t, 0, 10);
+        }
+        Transaction writer;
+        Transaction reader;
+        // the writer's changes are only recorded while a snapshot is open
+        try (Transaction older = db.beginReadOnlyTransaction()) {
+            writer = db.beginTransaction();
+            insert(writer, 10, 15);
+            reader = db.beginReadOnlyTransaction();
+        }
+        assertEquals(45, sum(reader));
+        assertEquals(105, sum(writer));
+        // still invisible once committed, since the reader started first
+        writer.commit();
+        assertEquals(45, sum(reader));
+        reader.commit();
+
+        try (Transaction t = db.beginReadOnlyTransaction()) {
+            assertEquals(105, sum(t));
+        }
+    }
+
+    @Test
+    public void testReaderWaitsForUnversionedWriter() throws Exception {
+        Transaction writer = db.beginTransaction();
+        insert(writer, 0, 5);
+        // written with no snapshot open
+        assertEquals(0, db.getBufferManager().getVersionStore().getNumVersions());
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> read = executor.submit(() -> {
+                try (Transaction reader = db.beginReadOnlyTransaction()) {
+                    return sum(reader);
+                }
+            });
+            Thread.sleep(100);
+            assertFalse(read.isDone());
+            writer.commit();
+            assertEquals(10L, (long) read.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testUpdatesAndDeletes() {
+        try (Transaction t = db.beginTransaction()) {
+            insert(t, 0, 20);
+        }
+        Transaction reader = db.beginReadOnlyTransaction();
+        try (Transaction t = db.beginTransaction()) {
+            t.update(TABLE, "id", v -> new IntDataBox(v.getInt() * 2));
+        }
+        assertEquals(190, sum(reader));
+        // deleting every record frees the data pages, which the reader still reads
+        try (Transaction t = db.beginTransaction()) {
+            t.delete(TABLE, "id", PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(0));
+        }
+        assertEquals(190, sum(reader));
+        reader.commit();
+
+        try (Transaction t = db.beginReadOnlyTransaction()) {
+            assertEquals(0, sum(t));
+        }
+    }
+
+    // ids of the table, as returned by a query of t, read lazily without setting
+    // the thread's transaction
+    private List<Integer> queryIds(Transaction t) {
+        return queryIds(t, t.query(TABLE));
+    }
+
+    private List<Integer> queryIds(Transaction t, QueryPlan query) {
+        List<Integer> ids = new ArrayList<>();
+        Iterator<Record> records = query.execute();
+        while (records.hasNext()) {
+            ids.add(records.next().getValues().get(0).getInt());
+        }
+        return ids;
+    }
+
+    @Test
+    public void testDeleteInsertCommitInvisible() {
+        try (Transaction t = db.beginTransaction()) {
+            insert(t, 0, 6);
+        }
+        try (Transaction reader = db.beginReadOnlyTransaction()) {
+            try (Transaction t = db.beginTransaction()) {
+                t.delete(TABLE, "id", PredicateOperator.LESS_THAN, new IntDataBox(3));
+                insert(t, 100, 101);
+            }
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5), queryIds(reader));
+            assertEquals(15, sum(reader));
+            // the reader finds the deleted ids whatever the zone map now says of their pages
+            QueryPlan query = reader.query(TABLE);
+            query.select("id", PredicateOperator.LESS_THAN, new IntDataBox(3));
+            assertEquals(Arrays.asList(0, 1, 2), queryIds(reader, query));
+        }
+
+        try (Transaction t = db.beginReadOnlyTransaction()) {
+            assertEquals(Arrays.asList(100, 3, 4, 5), queryIds(t));
+        }
+    }
+
+    @Test
+    public void testNewPagesInvisible() {
+        // enough records for new data pages and header pages
+        Transaction reader = db.beginReadOnlyTransaction();
+        try (Transaction t = db.beginTransaction()) {
+            insert(t, 0, 2000);
+        }
+        assertEquals(0, sum(reader));
+        reader.commit();
+    }
+
+    @Test
+    public void testVersionsCollected() {
+        PageVersionStore versions = db.getBufferManager().getVersionStore();
+        try (Transaction t = db.beginTransaction()) {
+            insert(t, 0, 10);
+        }
+        Transaction reader = db.beginReadOnlyTransaction();
+        try (Transaction t = db.beginTransaction()) {
+            insert(t, 10, 20);
+        }
+        // the reader still needs the old versions of the written pages
+        assertEquals(1, versions.getNumSnapshots());
+        assertTrue(versions.getNumVersions() > 0);
+        reader.commit();
+        assertEquals(0, versions.getNumSnapshots());
+        assertEquals(0, versions.getNumVersions());
+    }
+
+    @Test(expected = DatabaseException.class)
+    public void testReadOnlyRejectsWrites() {
+        try (Transaction t = db.beginReadOnlyTransaction()) {
+            insert(t, 0, 1);
+        }
+    }
+}
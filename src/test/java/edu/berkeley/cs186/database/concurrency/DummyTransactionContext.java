@@ -58,6 +58,11 @@ public class DummyTransactionContext extends AbstractTransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public boolean isHashIndex(String tableName, String columnName) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public Iterator<Record> sortedScan(String tableName, String columnName) {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
@@ -69,6 +74,24 @@ public class DummyTransactionContext extends AbstractTransactionContext {
         throw new UnsupportedOperationException("dummy transaction cannot do this");
     }
 
+    @Override
+    public Iterator<Record> sortedScanTo(String tableName, String columnName, DataBox endValue,
+                                         boolean inclusive) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public Iterator<Record> reverseSortedScanTo(String tableName, String columnName, DataBox endValue,
+            boolean inclusive) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
+    @Override
+    public Iterator<Record> reverseSortedScanFrom(String tableName, String columnName,
+            DataBox startValue) {
+        throw new UnsupportedOperationException("dummy transaction cannot do this");
+    }
+
     @Override
     public Iterator<Record> lookupKey(String tableName, String columnName,
                                       DataBox key) {
@@ -68,6 +68,34 @@ public class LoggingLockManager extends LockManager {
         }
     }
 
+    @Override
+    public List<ResourceName> acquireAll(TransactionContext transaction, List<ResourceName> names,
+                                         LockType type) {
+        StringBuilder estr = new StringBuilder("acquire-all ");
+        estr.append(transaction.getTransNum()).append(" [");
+        boolean first = true;
+        for (ResourceName n : names) {
+            if (!first) {
+                estr.append(", ");
+            }
+            estr.append(n);
+            first = false;
+        }
+        estr.append("] ").append(type);
+        emit(estr.toString());
+
+        Boolean[] oldOverride = new Boolean[1];
+        loggingOverride.compute(Thread.currentThread().getId(), (id, old) -> {
+            oldOverride[0] = old;
+            return !suppressInternal;
+        });
+        try {
+            return super.acquireAll(transaction, names, type);
+        } finally {
+            loggingOverride.compute(Thread.currentThread().getId(), (id, old) -> oldOverride[0]);
+        }
+    }
+
     @Override
     public void release(TransactionContext transaction, ResourceName name) {
         emit("release " + transaction.getTransNum() + " " + name);
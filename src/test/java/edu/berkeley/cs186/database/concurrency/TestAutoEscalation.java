@@ -0,0 +1,117 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestAutoEscalation {
+    // A table context that records escalations, and lets the test set the number
+    // of page locks held, since acquire and escalate are up to LockContext.
+    private static class TableContext extends LockContext {
+        List<Long> escalated = new ArrayList<>();
+
+        TableContext(LockManager lockman) {
+            super(lockman, lockman.databaseContext(), new Pair<>("table", 1L));
+        }
+
+        void holdPageLocks(TransactionContext transaction, int n) {
+            numChildLocks.put(transaction.getTransNum(), n);
+        }
+
+        @Override
+        public void escalate(TransactionContext transaction) {
+            escalated.add(transaction.getTransNum());
+            numChildLocks.remove(transaction.getTransNum());
+        }
+    }
+
+    private TableContext table;
+    private TransactionContext t0;
+    private TransactionContext t1;
+
+    @Before
+    public void setUp() {
+        LoggingLockManager lockman = new LoggingLockManager();
+        table = new TableContext(lockman);
+        table.capacity(20);
+        t0 = new DummyTransactionContext(lockman, 0);
+        t1 = new DummyTransactionContext(lockman, 1);
+    }
+
+    @Test
+    public void testDisabledByDefault() {
+        table.holdPageLocks(t0, 20);
+        assertFalse(table.shouldEscalate(t0));
+        assertFalse(table.autoEscalate(t0));
+        assertTrue(table.escalated.isEmpty());
+    }
+
+    @Test
+    public void testThreshold() {
+        table.enableAutoEscalate(0.2, 10);
+        // a saturation of exactly the threshold escalates
+        table.holdPageLocks(t0, 3);
+        table.holdPageLocks(t1, 4);
+        assertFalse(table.autoEscalate(t0));
+        assertFalse(table.autoEscalate(null));
+        assertTrue(table.autoEscalate(t1));
+        assertEquals(1, (long) table.escalated.get(0));
+        // escalated locks are gone, so there is nothing left to escalate
+        assertFalse(table.autoEscalate(t1));
+
+        table.holdPageLocks(t0, 4);
+        table.disableAutoEscalate();
+        assertFalse(table.autoEscalate(t0));
+        assertEquals(1, table.escalated.size());
+    }
+
+    @Test
+    public void testMinCapacity() {
+        table.enableAutoEscalate(0.2, 10);
+        table.capacity(9);
+        table.holdPageLocks(t0, 9);
+        assertFalse(table.autoEscalate(t0));
+        table.capacity(10);
+        assertTrue(table.autoEscalate(t0));
+    }
+
+    @Test
+    public void testZeroThreshold() {
+        // escalates as soon as any page is locked, but not before
+        table.enableAutoEscalate(0, 0);
+        assertFalse(table.autoEscalate(t0));
+        table.holdPageLocks(t0, 1);
+        assertTrue(table.autoEscalate(t0));
+    }
+
+    @Test
+    public void testNothingEscalated() {
+        // an escalation that leaves the transaction's locks as they were is not reported
+        LockContext table = new LockContext(new LoggingLockManager(), null, new Pair<>("table", 1L)) {
+            {
+                numChildLocks.put(0L, 5);
+            }
+
+            @Override
+            public void escalate(TransactionContext transaction) { }
+        };
+        table.capacity(10);
+        table.enableAutoEscalate(0.2, 0);
+        assertTrue(table.shouldEscalate(t0));
+        assertFalse(table.autoEscalate(t0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidThreshold() {
+        table.enableAutoEscalate(1.5, 10);
+    }
+}
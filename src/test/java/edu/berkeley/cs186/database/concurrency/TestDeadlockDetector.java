@@ -0,0 +1,198 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestDeadlockDetector {
+    // A lock manager whose waits-for graph is set by the test, since granting
+    // and queueing requests is up to LockManager.acquire.
+    private static class GraphLockManager extends LoggingLockManager {
+        Map<LockRequest, Set<Long>> graph = new IdentityHashMap<>();
+        // if set, the graph returned by waitsFor, as seen before graph changed
+        Map<LockRequest, Set<Long>> stale = null;
+
+        @Override
+        Map<LockRequest, Set<Long>> waitsFor() {
+            return new IdentityHashMap<>(stale == null ? graph : stale);
+        }
+
+        @Override
+        boolean isWaitingFor(LockRequest request, long transNum) {
+            return graph.containsKey(request) && graph.get(request).contains(transNum);
+        }
+
+        @Override
+        boolean cancelRequest(LockRequest request) {
+            return graph.remove(request) != null;
+        }
+    }
+
+    private GraphLockManager lockman;
+    private TransactionContext[] transactions;
+    private ResourceName[] tables;
+
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis(2000));
+
+    @Before
+    public void setUp() {
+        lockman = new GraphLockManager();
+        transactions = new TransactionContext[8];
+        tables = new ResourceName[8];
+        ResourceName db = new ResourceName(new Pair<>("database", 0L));
+        for (int i = 0; i < transactions.length; ++i) {
+            transactions[i] = new DummyTransactionContext(lockman, i);
+            tables[i] = new ResourceName(db, new Pair<>("table" + i, (long) i));
+        }
+    }
+
+    // transaction `waiter` waits for an X lock on table `table`, held by `holders`
+    private LockRequest wait(int waiter, int table, long... holders) {
+        LockRequest request = new LockRequest(transactions[waiter],
+                                              new Lock(tables[table], LockType.X, waiter));
+        Set<Long> blockers = new HashSet<>();
+        for (long h : holders) {
+            blockers.add(h);
+        }
+        lockman.graph.put(request, blockers);
+        return request;
+    }
+
+    @Test
+    public void testNoDeadlock() {
+        DeadlockDetector detector = lockman.getDeadlockDetector();
+        assertEquals(Collections.emptyList(), detector.run());
+
+        // 0 -> 1 -> 2 and 3 -> 2 is a chain, not a cycle
+        wait(0, 1, 1);
+        wait(1, 2, 2);
+        wait(3, 2, 2);
+        assertEquals(Collections.emptyList(), detector.run());
+        assertEquals(0, detector.getNumDeadlocks());
+        assertEquals(3, detector.getNumWaiting());
+        assertEquals(3, lockman.graph.size());
+    }
+
+    @Test
+    public void testYoungestIsAborted() {
+        // 1 -> 4 -> 2 -> 1
+        wait(1, 4, 4);
+        wait(4, 2, 2);
+        wait(2, 1, 1);
+        // 0 waits on the cycle but isn't part of it
+        wait(0, 1, 1);
+        DeadlockDetector detector = lockman.getDeadlockDetector();
+        assertEquals(Collections.singletonList(4L), detector.run());
+        assertEquals(1, detector.getNumDeadlocks());
+        assertEquals(1, detector.getNumWaits());
+        assertEquals(3, detector.getNumWaiting());
+        for (LockRequest request : lockman.graph.keySet()) {
+            assertNotEquals(4L, request.transaction.getTransNum());
+        }
+    }
+
+    @Test
+    public void testSeveralCycles() {
+        // 0 <-> 5 and 1 -> 6 -> 7 -> 1 share no transaction; 2 <-> 3 shares
+        // transaction 3 with 3 <-> 7, whose victim (7) also breaks the 1-6-7 cycle
+        wait(0, 5, 5);
+        wait(5, 0, 0);
+        wait(1, 6, 6);
+        wait(6, 7, 7);
+        wait(7, 1, 1, 3);
+        wait(2, 3, 3);
+        wait(3, 2, 2, 7);
+        List<Long> victims = lockman.getDeadlockDetector().run();
+        Collections.sort(victims);
+        assertEquals(Arrays.asList(3L, 5L, 7L), victims);
+        assertEquals(3, lockman.getDeadlockDetector().getNumDeadlocks());
+        assertEquals(Collections.emptyList(), lockman.getDeadlockDetector().run());
+    }
+
+    @Test
+    public void testStaleCycleIgnored() {
+        // 0 <-> 1, but 1 was granted its lock after its edge was seen
+        wait(0, 1, 1);
+        LockRequest granted = wait(1, 0, 0);
+        lockman.stale = new IdentityHashMap<>(lockman.graph);
+        lockman.graph.remove(granted);
+        DeadlockDetector detector = lockman.getDeadlockDetector();
+        assertEquals(Collections.emptyList(), detector.run());
+        assertEquals(0, detector.getNumDeadlocks());
+        assertEquals(1, lockman.graph.size());
+    }
+
+    @Test
+    public void testVictimThrows() throws Exception {
+        // transaction 1 blocks as it would in LockManager.acquire
+        AtomicReference<Throwable> thrown = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            TransactionContext t = transactions[1];
+            t.prepareBlock();
+            try {
+                t.block();
+            } catch (Throwable e) {
+                thrown.set(e);
+            }
+        });
+        thread.start();
+        while (!transactions[1].getBlocked()) {
+            Thread.yield();
+        }
+        wait(0, 1, 1);
+        wait(1, 0, 0);
+        assertEquals(Collections.singletonList(1L), lockman.getDeadlockDetector().run());
+        thread.join();
+        assertTrue(thrown.get() instanceof DeadlockException);
+        assertFalse(transactions[1].getBlocked());
+    }
+
+    @Test
+    public void testWaitStatistics() throws Exception {
+        DeadlockDetector detector = lockman.getDeadlockDetector();
+        LockRequest request = wait(0, 1, 1);
+        Thread.sleep(20);
+        detector.run();
+        assertEquals(0, detector.getNumWaits());
+        assertTrue(detector.getLongestCurrentWaitMillis() >= 20);
+
+        // the request was granted
+        lockman.graph.remove(request);
+        detector.run();
+        assertEquals(1, detector.getNumWaits());
+        assertEquals(0, detector.getNumWaiting());
+        assertEquals(0, detector.getLongestCurrentWaitMillis(), 0);
+        assertTrue(detector.getMaxWaitMillis() >= 20);
+        assertEquals(detector.getMaxWaitMillis(), detector.getAverageWaitMillis(), 1e-9);
+    }
+
+    @Test
+    public void testBackgroundDetection() throws Exception {
+        wait(2, 3, 3);
+        wait(3, 2, 2);
+        lockman.startDeadlockDetection(5);
+        try {
+            while (lockman.getDeadlockDetector().getNumDeadlocks() == 0) {
+                Thread.sleep(5);
+            }
+        } finally {
+            lockman.stopDeadlockDetection();
+        }
+        assertEquals(1, lockman.getDeadlockDetector().getNumDeadlocks());
+        assertEquals(1, lockman.graph.size());
+    }
+}
@@ -0,0 +1,162 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestLockStatistics {
+    private LoggingLockManager lockman;
+    private ResourceName dbResource;
+    private ResourceName[] tables;
+
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis(2000));
+
+    @Before
+    public void setUp() {
+        lockman = new LoggingLockManager();
+        dbResource = new ResourceName(new Pair<>("database", 0L));
+        tables = new ResourceName[4];
+        for (int i = 0; i < tables.length; ++i) {
+            tables[i] = new ResourceName(dbResource, new Pair<>("table" + i, (long) i));
+        }
+    }
+
+    // a transaction that reports being blocked for `nanos` more every time it's asked
+    private TransactionContext slowTransaction(long transNum, long nanos) {
+        return new DummyTransactionContext(lockman, transNum) {
+            private long blocked = 0;
+
+            @Override
+            public long getBlockedNanos() {
+                blocked += nanos;
+                return blocked;
+            }
+        };
+    }
+
+    @Test
+    public void testBuckets() {
+        assertEquals(0, LockStatistics.bucket(0));
+        assertEquals(0, LockStatistics.bucket(999));
+        assertEquals(1, LockStatistics.bucket(1000));
+        assertEquals(1, LockStatistics.bucket(1999));
+        assertEquals(2, LockStatistics.bucket(2000));
+        assertEquals(11, LockStatistics.bucket(1000000 + 500000));
+        assertEquals(LockStatistics.NUM_HISTOGRAM_BUCKETS - 1, LockStatistics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testCounters() {
+        TransactionContext t1 = new DummyTransactionContext(lockman, 1);
+        lockman.acquire(t1, dbResource, LockType.IX);
+        lockman.acquire(t1, tables[0], LockType.S);
+        lockman.promote(t1, tables[0], LockType.X);
+        lockman.acquireAndRelease(t1, tables[1], LockType.S, new ArrayList<>());
+
+        LockStatistics statistics = lockman.getStatistics();
+        assertEquals(1, statistics.getCounters(dbResource).getAcquires());
+        assertEquals(1, statistics.getCounters(tables[0]).getAcquires());
+        assertEquals(1, statistics.getCounters(tables[0]).getPromotions());
+        assertEquals(2, statistics.getCounters(LockType.S).getAcquires());
+        assertEquals(1, statistics.getCounters(LockType.X).getPromotions());
+        assertEquals(0, statistics.getCounters(LockType.X).getAcquires());
+        assertEquals(0, statistics.getCounters(tables[2]).getAcquires());
+        assertEquals(0, statistics.getCounters(LockType.S).getWaits());
+
+        statistics.reset();
+        assertEquals(0, statistics.getCounters(tables[0]).getAcquires());
+        assertEquals(0, statistics.getCounters(LockType.S).getAcquires());
+    }
+
+    @Test
+    public void testWaits() {
+        lockman.acquire(slowTransaction(1, 3000000), tables[0], LockType.X);
+        lockman.promote(slowTransaction(2, 5000), tables[0], LockType.X);
+        lockman.acquire(slowTransaction(3, 3000000), tables[1], LockType.S);
+
+        LockStatistics statistics = lockman.getStatistics();
+        LockStatistics.Counters counters = statistics.getCounters(tables[0]);
+        assertEquals(2, counters.getWaits());
+        assertEquals(3005000, counters.getWaitNanos());
+        long[] histogram = counters.getWaitHistogram();
+        assertEquals(1, histogram[LockStatistics.bucket(3000000)]);
+        assertEquals(1, histogram[LockStatistics.bucket(5000)]);
+        assertEquals(2, statistics.getCounters(LockType.X).getWaits());
+        assertEquals(1, statistics.getCounters(LockType.S).getWaits());
+
+        // the resource with the longest waits first
+        List<Map.Entry<ResourceName, LockStatistics.Counters>> hot = statistics.getHotResources(1);
+        assertEquals(1, hot.size());
+        assertEquals(tables[0], hot.get(0).getKey());
+    }
+
+    @Test
+    public void testEviction() {
+        LockStatistics statistics = new LockStatistics();
+        ResourceName hot = tables[0];
+        for (int i = 0; i < 10; ++i) {
+            statistics.recordAcquire(hot, LockType.S);
+        }
+        // a long scan touches more pages than are tracked, once each
+        for (long i = 0; i < LockStatistics.MAX_TRACKED_RESOURCES; ++i) {
+            statistics.recordAcquire(new ResourceName(tables[1], new Pair<>("page", i)), LockType.S);
+        }
+        assertTrue(statistics.getHotResources(Integer.MAX_VALUE).size() <= LockStatistics.MAX_TRACKED_RESOURCES);
+        assertEquals(10, statistics.getCounters(hot).getAcquires());
+        // the pages evicted are still counted
+        long acquires = statistics.getUntrackedCounters().getAcquires();
+        for (Map.Entry<ResourceName, LockStatistics.Counters> e : statistics.getHotResources(Integer.MAX_VALUE)) {
+            acquires += e.getValue().getAcquires();
+        }
+        assertEquals(10 + LockStatistics.MAX_TRACKED_RESOURCES, acquires);
+    }
+
+    @Test
+    public void testBlockedNanos() throws Exception {
+        TransactionContext t1 = new DummyTransactionContext(lockman, 1);
+        assertEquals(0, t1.getBlockedNanos());
+        Thread thread = new Thread(() -> {
+            t1.prepareBlock();
+            t1.block();
+        });
+        thread.start();
+        while (!t1.getBlocked()) {
+            Thread.yield();
+        }
+        Thread.sleep(20);
+        t1.unblock();
+        thread.join();
+        assertTrue(t1.getBlockedNanos() >= 20000000);
+    }
+
+    @Test
+    public void testSnapshot() {
+        TransactionContext t1 = new DummyTransactionContext(lockman, 1);
+        TransactionContext t2 = new DummyTransactionContext(lockman, 2);
+        lockman.acquireAll(t1, Arrays.asList(tables[2], tables[0]), LockType.S);
+        lockman.acquireAll(t2, Collections.singletonList(tables[3]), LockType.X);
+
+        List<LockManager.ResourceState> states = lockman.snapshot();
+        assertEquals(3, states.size());
+        assertEquals(tables[0], states.get(0).getName());
+        assertEquals(Collections.singletonList(new Lock(tables[0], LockType.S, 1L)), states.get(0).getLocks());
+        assertTrue(states.get(0).getWaiting().isEmpty());
+        assertEquals(tables[2], states.get(1).getName());
+        assertEquals(Collections.singletonList(new Lock(tables[3], LockType.X, 2L)), states.get(2).getLocks());
+
+        assertEquals(1, lockman.getStatistics().getCounters(tables[3]).getAcquires());
+    }
+}
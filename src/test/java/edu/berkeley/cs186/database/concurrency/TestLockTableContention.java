@@ -0,0 +1,133 @@
+package edu.berkeley.cs186.database.concurrency;
+
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.DisableOnDebug;
+import org.junit.rules.TestRule;
+import org.junit.rules.Timeout;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestLockTableContention {
+    private static final int NUM_THREADS = 4;
+
+    private LoggingLockManager lockman;
+    private ResourceName dbResource;
+    private ResourceName[] tables;
+
+    @Rule
+    public TestRule globalTimeout = new DisableOnDebug(Timeout.millis(2000));
+
+    @Before
+    public void setUp() {
+        lockman = new LoggingLockManager();
+        dbResource = new ResourceName(new Pair<>("database", 0L));
+        tables = new ResourceName[64];
+        for (int i = 0; i < tables.length; ++i) {
+            tables[i] = new ResourceName(dbResource, new Pair<>("table" + i, (long) i));
+        }
+    }
+
+    // runs task(transaction, thread number) on numThreads threads at once
+    private void runConcurrently(int numThreads, Task task) throws Exception {
+        ExecutorService threads = Executors.newFixedThreadPool(numThreads);
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (int t = 0; t < numThreads; ++t) {
+                int thread = t;
+                TransactionContext transaction = new DummyTransactionContext(lockman, t);
+                tasks.add(() -> {
+                    task.run(transaction, thread);
+                    return null;
+                });
+            }
+            for (Future<Void> future : threads.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            threads.shutdown();
+        }
+    }
+
+    private interface Task {
+        void run(TransactionContext transaction, int thread) throws Exception;
+    }
+
+    @Test
+    public void testContextsAreShared() throws Exception {
+        LockManager manager = new LockManager();
+        Set<LockContext> contexts = Collections.newSetFromMap(new ConcurrentHashMap<>());
+        runConcurrently(NUM_THREADS, (transaction, thread) -> {
+            for (int i = 0; i < 1000; ++i) {
+                contexts.add(manager.context("table" + (i % 8 + 1), i % 8 + 1));
+                contexts.add(manager.databaseContext());
+            }
+        });
+        // one context per table and one for the database, no matter which
+        // thread created them
+        assertEquals(9, contexts.size());
+    }
+
+    @Test
+    public void testOverlappingLatchesDoNotDeadlock() throws Exception {
+        // acquire-and-release latches the partitions of several resources at
+        // once; threads doing so for overlapping sets in different orders
+        // must not deadlock
+        runConcurrently(NUM_THREADS, (transaction, thread) -> {
+            Random random = new Random(thread);
+            for (int i = 0; i < 20000; ++i) {
+                List<ResourceName> release = new ArrayList<>();
+                for (int j = 0; j < 3; ++j) {
+                    release.add(tables[random.nextInt(tables.length)]);
+                }
+                lockman.acquireAndRelease(transaction, tables[random.nextInt(tables.length)], LockType.X,
+                                          release);
+                lockman.getLockType(transaction, release.get(0));
+            }
+        });
+        assertTrue(lockman.getLocks(tables[0]).isEmpty());
+    }
+
+    @Test
+    public void testAcquireAll() {
+        TransactionContext transaction = new DummyTransactionContext(lockman, 1);
+        List<ResourceName> first = Arrays.asList(tables).subList(0, 10);
+        assertEquals(first, lockman.acquireAll(transaction, first, LockType.S));
+        assertEquals(10, lockman.getLocks(transaction).size());
+        assertEquals(Collections.singletonList(new Lock(tables[3], LockType.S, 1L)), lockman.getLocks(tables[3]));
+
+        // locks already held are skipped
+        List<ResourceName> second = Arrays.asList(tables).subList(5, 15);
+        assertEquals(second.subList(5, 10), lockman.acquireAll(transaction, second, LockType.S));
+        assertEquals(15, lockman.getLocks(transaction).size());
+    }
+
+    @Test
+    public void testAcquireAllLeavesSharedResourcesToAcquire() {
+        // resources another transaction holds a lock on are not granted directly,
+        // but go through acquire, which decides whether the locks are compatible
+        TransactionContext t1 = new DummyTransactionContext(lockman, 1);
+        TransactionContext t2 = new DummyTransactionContext(lockman, 2);
+        lockman.acquireAll(t1, Arrays.asList(tables).subList(0, 2), LockType.S);
+
+        lockman.suppressInternals(false);
+        lockman.startLog();
+        lockman.acquireAll(t2, Arrays.asList(tables).subList(0, 3), LockType.S);
+        assertEquals(Arrays.asList(
+                         "acquire-all 2 [" + tables[0] + ", " + tables[1] + ", " + tables[2] + "] S",
+                         "acquire 2 " + tables[0] + " S",
+                         "acquire 2 " + tables[1] + " S"
+                     ), lockman.log);
+        assertEquals(Collections.singletonList(new Lock(tables[0], LockType.S, 1L)), lockman.getLocks(tables[0]));
+        assertEquals(Collections.singletonList(new Lock(tables[2], LockType.S, 2L)), lockman.getLocks(tables[2]));
+    }
+}
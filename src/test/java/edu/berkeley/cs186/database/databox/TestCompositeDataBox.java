@@ -0,0 +1,58 @@
+package edu.berkeley.cs186.database.databox;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.common.ByteBuffer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestCompositeDataBox {
+    private static CompositeDataBox key(int i, String s) {
+        return new CompositeDataBox(Arrays.asList(new IntDataBox(i), new StringDataBox(s, 5)));
+    }
+
+    @Test
+    public void testType() {
+        Type t = key(1, "a").type();
+        assertEquals(TypeId.COMPOSITE, t.getTypeId());
+        assertEquals(9, t.getSizeInBytes());
+        assertEquals(Arrays.asList(Type.intType(), Type.stringType(5)), t.getComponents());
+        assertEquals(t, Type.fromBytes(ByteBuffer.wrap(t.toBytes())));
+        assertNotEquals(t, Type.compositeType(Arrays.asList(Type.intType(), Type.stringType(6))));
+    }
+
+    @Test(expected = DataBoxException.class)
+    public void testSingleComponent() {
+        Type.compositeType(Collections.singletonList(Type.intType()));
+    }
+
+    @Test
+    public void testToAndFromBytes() {
+        CompositeDataBox d = key(-7, "abc");
+        assertEquals(d, DataBox.fromBytes(ByteBuffer.wrap(d.toBytes()), d.type()));
+    }
+
+    @Test
+    public void testCompareTo() {
+        assertTrue(key(1, "b").compareTo(key(2, "a")) < 0);
+        assertTrue(key(2, "a").compareTo(key(2, "b")) < 0);
+        assertEquals(0, key(2, "b").compareTo(key(2, "b")));
+        assertEquals(key(2, "b"), key(2, "b"));
+        assertNotEquals(key(2, "b"), key(2, "c"));
+    }
+
+    @Test
+    public void testLowerBound() {
+        Type t = key(0, "a").type();
+        CompositeDataBox bound = CompositeDataBox.lowerBound(t, Collections.singletonList(new IntDataBox(2)));
+        assertTrue(bound.startsWith(Collections.singletonList(new IntDataBox(2))));
+        assertTrue(key(1, "zzzzz").compareTo(bound) < 0);
+        assertTrue(bound.compareTo(key(2, "")) <= 0);
+        assertTrue(bound.compareTo(key(2, "a")) < 0);
+    }
+}
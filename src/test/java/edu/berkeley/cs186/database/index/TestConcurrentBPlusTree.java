@@ -0,0 +1,184 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestConcurrentBPlusTree {
+    private static final int NUM_LEAVES = 50;
+    private static final int KEYS_PER_LEAF = 100;
+
+    private BufferManager bufferManager;
+    private BPlusTreeMetadata metadata;
+    private LockContext treeContext;
+    // the leaves of the last tree built by tree(), left to right
+    private List<Long> leaves;
+
+    @Before
+    public void beforeEach() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        this.bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        this.treeContext = new DummyLockContext();
+        this.metadata = new BPlusTreeMetadata("test", "col", Type.intType(), NUM_LEAVES, 0,
+                                              DiskSpaceManager.INVALID_PAGE_NUM, -1);
+    }
+
+    @After
+    public void afterEach() {
+        this.bufferManager.close();
+    }
+
+    // Builds a leaf holding keys [from, to) with record id (k, k) for key k.
+    private long leaf(int from, int to, long rightSibling) {
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int k = from; k < to; ++k) {
+            keys.add(new IntDataBox(k));
+            rids.add(new RecordId(k, (short) k));
+        }
+        Optional<Long> sibling = rightSibling == DiskSpaceManager.INVALID_PAGE_NUM
+                                 ? Optional.empty() : Optional.of(rightSibling);
+        return new LeafNode(metadata, bufferManager, keys, rids, sibling, treeContext).getPage().getPageNum();
+    }
+
+    // Builds a two level tree over keys 0, 2, 4, ... and returns its root.
+    private long tree() {
+        leaves = new ArrayList<>();
+        long sibling = DiskSpaceManager.INVALID_PAGE_NUM;
+        for (int l = NUM_LEAVES - 1; l >= 0; --l) {
+            Optional<Long> rightSibling = sibling == DiskSpaceManager.INVALID_PAGE_NUM
+                                          ? Optional.empty() : Optional.of(sibling);
+            List<DataBox> keys = new ArrayList<>();
+            List<RecordId> rids = new ArrayList<>();
+            leafEntries(l, (short) 0, keys, rids);
+            sibling = new LeafNode(metadata, bufferManager, keys, rids, rightSibling, treeContext)
+                      .getPage().getPageNum();
+            leaves.add(0, sibling);
+        }
+        List<DataBox> separators = new ArrayList<>();
+        for (int l = 1; l < NUM_LEAVES; ++l) {
+            separators.add(new IntDataBox(2 * l * KEYS_PER_LEAF));
+        }
+        return new InnerNode(metadata, bufferManager, separators, leaves, treeContext).getPage().getPageNum();
+    }
+
+    // The entries of leaf l of tree(): key k maps to record id (k, slot).
+    private static void leafEntries(int l, short slot, List<DataBox> keys, List<RecordId> rids) {
+        for (int i = 0; i < KEYS_PER_LEAF; ++i) {
+            int k = 2 * (l * KEYS_PER_LEAF + i);
+            keys.add(new IntDataBox(k));
+            rids.add(new RecordId(k, slot));
+        }
+    }
+
+    // Rewrites leaf l of tree() in place with record ids (k, slot), latching it
+    // exclusively, as an update of the record ids of the leaf would.
+    private void rewriteLeaf(int l, short slot) {
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        leafEntries(l, slot, keys, rids);
+        Optional<Long> rightSibling = l + 1 < NUM_LEAVES ? Optional.of(leaves.get(l + 1)) : Optional.empty();
+        new LeafNode(metadata, bufferManager, bufferManager.fetchPage(treeContext, leaves.get(l), false),
+                     keys, rids, rightSibling, treeContext);
+    }
+
+    private Optional<RecordId> lookup(long root, int k) {
+        DataBox key = new IntDataBox(k);
+        long numLeafSplits = metadata.getLatches().getNumLeafSplits();
+        long leaf = InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, key);
+        return LeafNode.getKey(metadata, bufferManager, treeContext, leaf, key, numLeafSplits);
+    }
+
+    @Test
+    public void testMoveRight() {
+        // leaf0 holds keys [0, 20) and is followed by leaf2 (empty) -> leaf3
+        long leaf3 = leaf(30, 40, DiskSpaceManager.INVALID_PAGE_NUM);
+        long leaf2 = leaf(0, 0, leaf3);
+        long leaf0 = leaf(0, 20, leaf2);
+        long numLeafSplits = metadata.getLatches().getNumLeafSplits();
+
+        // a search picks leaf0, then leaf0 splits into leaf0 -> leaf1
+        long leaf1 = leaf(10, 20, leaf2);
+        List<DataBox> keys = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int k = 0; k < 10; ++k) {
+            keys.add(new IntDataBox(k));
+            rids.add(new RecordId(k, (short) k));
+        }
+        new LeafNode(metadata, bufferManager, bufferManager.fetchPage(treeContext, leaf0, false), keys, rids,
+                     Optional.of(leaf1), treeContext);
+        assertEquals(numLeafSplits + 1, metadata.getLatches().getNumLeafSplits());
+
+        for (int k = 0; k < 45; ++k) {
+            Optional<RecordId> expected = (k < 20 || k >= 30) && k < 40
+                                          ? Optional.of(new RecordId(k, (short) k)) : Optional.empty();
+            assertEquals(expected, LeafNode.getKey(metadata, bufferManager, treeContext, leaf0,
+                                                   new IntDataBox(k), numLeafSplits));
+        }
+        // searches never move left
+        assertEquals(Optional.empty(), LeafNode.getKey(metadata, bufferManager, treeContext, leaf1,
+                                                       new IntDataBox(5), numLeafSplits));
+        // nor right, if no leaf split since the search started
+        assertEquals(Optional.empty(), LeafNode.getKey(metadata, bufferManager, treeContext, leaf0,
+                                                       new IntDataBox(15)));
+    }
+
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        long root = tree();
+        int numKeys = 2 * NUM_LEAVES * KEYS_PER_LEAF;
+        AtomicBoolean done = new AtomicBoolean(false);
+        ExecutorService threads = Executors.newFixedThreadPool(5);
+        try {
+            // keep invalidating and re-reading the root while the other threads search
+            Future<?> writer = threads.submit(() -> {
+                while (!done.get()) {
+                    metadata.getInnerNodeCache().invalidate(root);
+                    InnerNode.fromBytes(metadata, bufferManager, treeContext, root);
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                int seed = t;
+                readers.add(threads.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 2000; ++i) {
+                        int k = random.nextInt(numKeys + 10) - 5;
+                        Optional<RecordId> expected = k >= 0 && k < numKeys && k % 2 == 0
+                                                      ? Optional.of(new RecordId(k, (short) 0)) : Optional.empty();
+                        assertEquals(expected, lookup(root, k));
+                    }
+                }));
+            }
+            for (Future<?> reader : readers) {
+                reader.get();
+            }
+            done.set(true);
+            writer.get();
+        } finally {
+            done.set(true);
+            threads.shutdown();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestHashIndex {
+    private BufferManager bufferManager;
+    private LockContext indexContext;
+
+    @Before
+    public void beforeEach() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        this.bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 64,
+                new ClockEvictionPolicy());
+        this.indexContext = new DummyLockContext();
+    }
+
+    @After
+    public void afterEach() {
+        this.bufferManager.close();
+    }
+
+    private HashIndexMetadata metadata(Type keySchema) {
+        return new HashIndexMetadata("test", "col", keySchema, 0, DiskSpaceManager.INVALID_PAGE_NUM);
+    }
+
+    @Test
+    public void testPutGetRemove() {
+        HashIndex index = new HashIndex(bufferManager, metadata(Type.intType()), indexContext);
+        int n = 5000;
+        for (int i = 0; i < n; ++i) {
+            index.put(new IntDataBox(3 * i), new RecordId(i, (short) (i % 100)));
+        }
+        // 5000 keys need many buckets
+        assertTrue(index.getGlobalDepth() >= 4);
+        for (int i = 0; i < 3 * n; ++i) {
+            Optional<RecordId> expected = i % 3 == 0 ? Optional.of(new RecordId(i / 3, (short) (i / 3 % 100)))
+                                          : Optional.empty();
+            assertEquals(expected, index.get(new IntDataBox(i)));
+        }
+
+        for (int i = 0; i < n; i += 2) {
+            index.remove(new IntDataBox(3 * i));
+        }
+        index.remove(new IntDataBox(1));
+        for (int i = 0; i < n; ++i) {
+            assertEquals(i % 2 == 1, index.get(new IntDataBox(3 * i)).isPresent());
+        }
+        assertFalse(index.scanEqual(new IntDataBox(0)).hasNext());
+        assertEquals(new RecordId(1, (short) 1), index.scanEqual(new IntDataBox(3)).next());
+    }
+
+    @Test
+    public void testReload() {
+        HashIndexMetadata metadata = metadata(Type.stringType(12));
+        HashIndex index = new HashIndex(bufferManager, metadata, indexContext);
+        for (int i = 0; i < 5000; ++i) {
+            index.put(new StringDataBox("student" + i, 12), new RecordId(i, (short) 0));
+        }
+        long headerPageNum = metadata.getHeaderPageNum();
+        assertNotEquals(DiskSpaceManager.INVALID_PAGE_NUM, headerPageNum);
+
+        HashIndexMetadata fromDisk = new HashIndexMetadata("test", "col", Type.stringType(12), 0, headerPageNum);
+        HashIndex reloaded = new HashIndex(bufferManager, fromDisk, indexContext);
+        assertEquals(index.getGlobalDepth(), reloaded.getGlobalDepth());
+        for (int i = 0; i < 5000; ++i) {
+            assertEquals(Optional.of(new RecordId(i, (short) 0)),
+                         reloaded.get(new StringDataBox("student" + i, 12)));
+        }
+        assertEquals(Optional.empty(), reloaded.get(new StringDataBox("student5000", 12)));
+    }
+
+    @Test
+    public void testDuplicateKey() {
+        HashIndex index = new HashIndex(bufferManager, metadata(Type.intType()), indexContext);
+        index.put(new IntDataBox(1), new RecordId(1, (short) 1));
+        try {
+            index.put(new IntDataBox(1), new RecordId(2, (short) 2));
+            fail();
+        } catch (HashIndexException e) {
+            /* do nothing */
+        }
+        assertEquals(Optional.of(new RecordId(1, (short) 1)), index.get(new IntDataBox(1)));
+    }
+
+    @Test
+    public void testFloatKeys() {
+        // FloatDataBox.equals treats 0.0 and -0.0 as equal, so they must hash alike
+        HashIndex index = new HashIndex(bufferManager, metadata(Type.floatType()), indexContext);
+        index.put(new FloatDataBox(-0.0f), new RecordId(1, (short) 1));
+        assertEquals(Optional.of(new RecordId(1, (short) 1)), index.get(new FloatDataBox(0.0f)));
+        index.put(new FloatDataBox(Float.NaN), new RecordId(2, (short) 2));
+        assertEquals(Optional.empty(), index.get(new FloatDataBox(Float.NaN)));
+    }
+}
@@ -0,0 +1,201 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestInnerNodeCache {
+    private BufferManager bufferManager;
+    private BPlusTreeMetadata metadata;
+    private LockContext treeContext;
+
+    @Before
+    public void beforeEach() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        this.bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        this.treeContext = new DummyLockContext();
+        this.metadata = new BPlusTreeMetadata("test", "col", Type.intType(), 2,
+                                              0, DiskSpaceManager.INVALID_PAGE_NUM, -1);
+    }
+
+    @After
+    public void afterEach() {
+        this.bufferManager.close();
+    }
+
+    private long leaf(int... keys) {
+        List<DataBox> boxes = new ArrayList<>();
+        List<RecordId> rids = new ArrayList<>();
+        for (int key : keys) {
+            boxes.add(new IntDataBox(key));
+            rids.add(new RecordId(key, (short) key));
+        }
+        return new LeafNode(metadata, bufferManager, boxes, rids, Optional.empty(), treeContext)
+               .getPage().getPageNum();
+    }
+
+    private static List<DataBox> ints(int... values) {
+        List<DataBox> boxes = new ArrayList<>();
+        for (int value : values) {
+            boxes.add(new IntDataBox(value));
+        }
+        return boxes;
+    }
+
+    @Test
+    public void testNumLessThanEqual() {
+        List<Type> types = Arrays.asList(Type.intType(), Type.longType(), Type.floatType(), Type.stringType(2));
+        for (Type type : types) {
+            List<DataBox> keys = new ArrayList<>();
+            for (int i = 0; i < 20; i += 2) {
+                switch (type.getTypeId()) {
+                case INT: keys.add(new IntDataBox(i)); break;
+                case LONG: keys.add(new LongDataBox(i)); break;
+                case FLOAT: keys.add(new FloatDataBox(i)); break;
+                default: keys.add(new StringDataBox(String.format("%02d", i), 2)); break;
+                }
+            }
+            List<Long> children = new ArrayList<>();
+            for (int i = 0; i <= keys.size(); ++i) {
+                children.add((long) i);
+            }
+            InnerNodeCache.Entry entry = new InnerNodeCache.Entry(type, keys, children);
+            assertEquals(keys, entry.getKeys());
+            assertEquals(children, entry.getChildren());
+            for (int i = -1; i < 22; ++i) {
+                DataBox key;
+                switch (type.getTypeId()) {
+                case INT: key = new IntDataBox(i); break;
+                case LONG: key = new LongDataBox(i); break;
+                case FLOAT: key = new FloatDataBox(i); break;
+                default: key = new StringDataBox(i < 0 ? "" : String.format("%02d", i), 2); break;
+                }
+                assertEquals(type + " " + i, InnerNode.numLessThanEqual(key, keys), entry.numLessThanEqual(key));
+            }
+        }
+    }
+
+    @Test
+    public void testFindLeafPageNum() {
+        long leaf0 = leaf(1, 2);
+        long leaf1 = leaf(10, 11);
+        long leaf2 = leaf(20, 21);
+        InnerNode inner = new InnerNode(metadata, bufferManager, ints(10, 20),
+                                        Arrays.asList(leaf0, leaf1, leaf2), treeContext);
+        long root = inner.getPage().getPageNum();
+
+        assertEquals(0, metadata.getInnerNodeCache().size());
+        assertEquals(leaf0, InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, new IntDataBox(9)));
+        assertEquals(1, metadata.getInnerNodeCache().size());
+        assertEquals(leaf1, InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, new IntDataBox(10)));
+        assertEquals(leaf2, InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, new IntDataBox(99)));
+        assertEquals(leaf1, InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, leaf1, new IntDataBox(0)));
+
+        // Loading the inner node from its page goes through the same cache.
+        InnerNode loaded = InnerNode.fromBytes(metadata, bufferManager, treeContext, root);
+        assertEquals(inner, loaded);
+        assertEquals(1, metadata.getInnerNodeCache().size());
+    }
+
+    @Test
+    public void testInvalidate() {
+        long leaf0 = leaf(1);
+        long leaf1 = leaf(10);
+        InnerNode inner = new InnerNode(metadata, bufferManager, ints(10),
+                                        Arrays.asList(leaf0, leaf1), treeContext);
+        long root = inner.getPage().getPageNum();
+        InnerNodeCache cache = metadata.getInnerNodeCache();
+
+        // Writing a brand new node does not cache it; reading it does.
+        assertNull(cache.get(root));
+        InnerNode.fromBytes(metadata, bufferManager, treeContext, root);
+        assertNotNull(cache.get(root));
+
+        cache.invalidate(root);
+        assertNull(cache.get(root));
+        assertEquals(leaf1, InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, new IntDataBox(10)));
+        assertEquals(Arrays.asList(leaf0, leaf1), cache.get(root).getChildren());
+    }
+
+    @Test
+    public void testInvalidatedByBufferManager() {
+        // the tree registers its cache with the buffer manager
+        new BPlusTree(bufferManager, metadata, treeContext);
+        long leaf0 = leaf(1, 2);
+        long leaf1 = leaf(10, 11);
+        long root = new InnerNode(metadata, bufferManager, ints(10), Arrays.asList(leaf0, leaf1), treeContext)
+                    .getPage().getPageNum();
+        InnerNodeCache cache = metadata.getInnerNodeCache();
+        assertEquals(leaf0, InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, new IntDataBox(5)));
+        assertNotNull(cache.get(root));
+
+        // overwrite the page without InnerNode.sync, as undo would
+        byte[] bytes = new InnerNode(metadata, bufferManager, ints(0), Arrays.asList(leaf0, leaf1), treeContext)
+                       .toBytes();
+        Page page = bufferManager.fetchPage(treeContext, root, false);
+        try {
+            page.getBuffer().put(bytes);
+        } finally {
+            page.unpin();
+        }
+        assertNull(cache.get(root));
+        assertEquals(leaf1, InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, new IntDataBox(5)));
+
+        // freeing the page drops it too
+        assertNotNull(cache.get(root));
+        page = bufferManager.fetchPage(treeContext, root, false);
+        try {
+            bufferManager.freePage(page);
+        } finally {
+            page.unpin();
+        }
+        assertNull(cache.get(root));
+    }
+
+    @Test
+    public void testEviction() {
+        InnerNodeCache cache = new InnerNodeCache(2);
+        InnerNodeCache.Entry entry = new InnerNodeCache.Entry(Type.intType(), ints(1), Arrays.asList(0L, 1L));
+        cache.put(1, entry, cache.getVersion());
+        cache.put(2, entry, cache.getVersion());
+        cache.get(1);
+        cache.put(3, entry, cache.getVersion());
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    @Test
+    public void testStaleFill() {
+        InnerNodeCache cache = new InnerNodeCache(2);
+        InnerNodeCache.Entry entry = new InnerNodeCache.Entry(Type.intType(), ints(1), Arrays.asList(0L, 1L));
+
+        // the page changes between the read of its bytes and the fill
+        long version = cache.getVersion();
+        cache.invalidate(1);
+        cache.put(1, entry, version);
+        assertNull(cache.get(1));
+
+        cache.put(1, entry, cache.getVersion());
+        assertNotNull(cache.get(1));
+    }
+}
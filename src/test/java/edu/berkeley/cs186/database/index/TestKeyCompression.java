@@ -0,0 +1,145 @@
+package edu.berkeley.cs186.database.index;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestKeyCompression {
+    private static final Type EMAIL = Type.stringType(50);
+
+    private static List<DataBox> strings(Type type, String... values) {
+        List<DataBox> keys = new ArrayList<>();
+        for (String value : values) {
+            keys.add(new StringDataBox(value, type.getSizeInBytes()));
+        }
+        return keys;
+    }
+
+    private static List<DataBox> roundTrip(Type type, List<DataBox> keys) {
+        ByteBuffer bytes = ByteBuffer.allocate(KeyCompression.size(type, keys));
+        KeyCompression.put(bytes, type, keys);
+        assertFalse(bytes.hasRemaining());
+        Buffer buf = edu.berkeley.cs186.database.common.ByteBuffer.wrap(bytes.array());
+        List<DataBox> decoded = KeyCompression.get(buf, type, keys.size());
+        assertEquals(bytes.array().length, buf.position());
+        return decoded;
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<DataBox> keys = strings(EMAIL, "alice@berkeley.edu", "alicia@berkeley.edu", "alison@berkeley.edu");
+        assertEquals(keys, roundTrip(EMAIL, keys));
+        // "ali" is stored once, and none of the padding is stored.
+        assertEquals(1 + 1 + 3 + 3 * 1 + (15 + 16 + 16), KeyCompression.size(EMAIL, keys));
+        // full width keys are stored as they are
+        Type narrow = Type.stringType(2);
+        List<DataBox> full = strings(narrow, "ab", "cd", "ef");
+        assertEquals(6, KeyCompression.size(narrow, full));
+        assertEquals(full, roundTrip(narrow, full));
+
+        List<DataBox> none = strings(EMAIL);
+        assertEquals(none, roundTrip(EMAIL, none));
+        List<DataBox> padded = strings(EMAIL, "", "a", "ab", "ab");
+        assertEquals(padded, roundTrip(EMAIL, padded));
+
+        Type wide = Type.stringType(300);
+        List<DataBox> wideKeys = strings(wide, "x", new String(new char[300]).replace('\0', 'y'));
+        assertEquals(wideKeys, roundTrip(wide, wideKeys));
+    }
+
+    @Test
+    public void testShortestSeparator() {
+        Type type = Type.stringType(10);
+        List<DataBox> keys = strings(type, "apple", "banana", "bandana", "bandanas");
+        assertEquals(new StringDataBox("b", 10), KeyCompression.shortestSeparator(keys.get(0), keys.get(1)));
+        assertEquals(new StringDataBox("band", 10), KeyCompression.shortestSeparator(keys.get(1), keys.get(2)));
+        assertEquals(keys.get(3), KeyCompression.shortestSeparator(keys.get(2), keys.get(3)));
+        for (int i = 0; i + 1 < keys.size(); ++i) {
+            DataBox separator = KeyCompression.shortestSeparator(keys.get(i), keys.get(i + 1));
+            assertTrue(keys.get(i).compareTo(separator) < 0);
+            assertTrue(separator.compareTo(keys.get(i + 1)) <= 0);
+        }
+        assertEquals(new IntDataBox(5), KeyCompression.shortestSeparator(new IntDataBox(1), new IntDataBox(5)));
+    }
+
+    @Test
+    public void testNodesAtMaxOrder() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        BufferManager bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        LockContext treeContext = new DummyLockContext();
+        try {
+            for (Type type : Arrays.asList(Type.stringType(2), EMAIL, Type.stringType(300))) {
+                // the same order as if the keys were not compressed
+                int order = BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, type);
+                assertEquals(Math.min(LeafNode.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, type),
+                                      InnerNode.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, type)),
+                             order);
+                assertEquals((BufferManager.EFFECTIVE_PAGE_SIZE - 13) / (type.getSizeInBytes() + 10) / 2,
+                             LeafNode.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, type));
+                BPlusTreeMetadata metadata = new BPlusTreeMetadata("test", "col", type, order, 0,
+                        DiskSpaceManager.INVALID_PAGE_NUM, -1);
+
+                // (nearly) worst case: full width keys without a common prefix
+                List<DataBox> keys = new ArrayList<>();
+                List<RecordId> rids = new ArrayList<>();
+                List<Long> children = new ArrayList<>();
+                for (int i = 0; i < 2 * order; ++i) {
+                    char[] chars = new char[type.getSizeInBytes()];
+                    Arrays.fill(chars, '~');
+                    chars[0] = (char) ('!' + i / 90);
+                    chars[1] = (char) ('!' + i % 90);
+                    keys.add(new StringDataBox(new String(chars), type.getSizeInBytes()));
+                    rids.add(new RecordId(i, (short) i));
+                    children.add((long) i);
+                }
+                children.add(-1L);
+
+                InnerNode inner = new InnerNode(metadata, bufferManager, keys, children, treeContext);
+                assertTrue(inner.toBytes().length <= BufferManager.EFFECTIVE_PAGE_SIZE);
+                assertEquals(inner, InnerNode.fromBytes(metadata, bufferManager, treeContext,
+                                                        inner.getPage().getPageNum()));
+
+                LeafNode leaf = new LeafNode(metadata, bufferManager, keys, rids, Optional.empty(), treeContext);
+                assertTrue(leaf.toBytes().length <= BufferManager.EFFECTIVE_PAGE_SIZE);
+                long pageNum = leaf.getPage().getPageNum();
+                for (int i = 0; i < keys.size(); ++i) {
+                    assertEquals(Optional.of(rids.get(i)),
+                                 LeafNode.getKey(metadata, bufferManager, treeContext, pageNum, keys.get(i)));
+                }
+            }
+        } finally {
+            bufferManager.close();
+        }
+    }
+
+    @Test
+    public void testSharedPrefixShrinksNodes() {
+        int order = BPlusTree.maxOrder(BufferManager.EFFECTIVE_PAGE_SIZE, EMAIL);
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 2 * order; ++i) {
+            keys.add(new StringDataBox(String.format("student%04d@berkeley.edu", i), 50));
+        }
+        // 2d uncompressed keys fill a page, while the compressed keys take less than half of one
+        assertTrue(2 * order * EMAIL.getSizeInBytes() > BufferManager.EFFECTIVE_PAGE_SIZE / 2);
+        assertTrue(KeyCompression.size(EMAIL, keys) < BufferManager.EFFECTIVE_PAGE_SIZE / 2);
+    }
+}
@@ -0,0 +1,175 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestParallelBulkLoad {
+    private BufferManager bufferManager;
+    private LockContext treeContext;
+    private ExecutorService executor;
+
+    @Before
+    public void beforeEach() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        this.bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        this.treeContext = new DummyLockContext();
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void afterEach() {
+        this.executor.shutdown();
+        this.bufferManager.close();
+    }
+
+    private BPlusTreeMetadata metadata(Type keySchema, int order) {
+        return new BPlusTreeMetadata("test", "col", keySchema, order, 0, DiskSpaceManager.INVALID_PAGE_NUM, -1);
+    }
+
+    private List<Pair<DataBox, RecordId>> data(int n, boolean strings) {
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            DataBox key = strings ? new StringDataBox(String.format("key%05d", 2 * i), 20) : new IntDataBox(2 * i);
+            data.add(new Pair<>(key, new RecordId(i, (short) (i % 100))));
+        }
+        return data;
+    }
+
+    // Looks up `key` starting at `leaf`, moving right along the leaves as a
+    // search does after a leaf split.
+    private Optional<RecordId> lookupMovingRight(BPlusTreeMetadata metadata, long leaf, DataBox key) {
+        long numLeafSplits = metadata.getLatches().getNumLeafSplits() - 1;
+        return LeafNode.getKey(metadata, bufferManager, treeContext, leaf, key, numLeafSplits);
+    }
+
+    @Test
+    public void testBulkLoad() {
+        for (boolean strings : new boolean[] {false, true}) {
+            BPlusTreeMetadata metadata = metadata(strings ? Type.stringType(20) : Type.intType(), 2);
+            BPlusTree tree = new BPlusTree(bufferManager, metadata, treeContext);
+            List<Pair<DataBox, RecordId>> data = data(1000, strings);
+            tree.bulkLoad(data, 0.75f, executor, 4);
+
+            // 334 leaves of 3 entries, then 84, 21, 6, 2 and 1 inner node(s) of
+            // at most 4 children
+            assertEquals(5, metadata.getHeight());
+            for (Pair<DataBox, RecordId> entry : data) {
+                assertEquals(Optional.of(entry.getSecond()), tree.get(entry.getFirst()));
+            }
+            for (int i = -1; i < 2000; i += 2) {
+                DataBox key = strings ? new StringDataBox(String.format("key%05d", i), 20) : new IntDataBox(i);
+                assertEquals(Optional.empty(), tree.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleLeaf() {
+        BPlusTreeMetadata metadata = metadata(Type.intType(), 5);
+        BPlusTree tree = new BPlusTree(bufferManager, metadata, treeContext);
+        long rootPageNum = metadata.getRootPageNum();
+        List<Pair<DataBox, RecordId>> data = data(8, false);
+        tree.bulkLoad(data, 0.75f, executor, 4);
+
+        // the entries fit in the root
+        assertEquals(0, metadata.getHeight());
+        assertEquals(rootPageNum, metadata.getRootPageNum());
+        for (Pair<DataBox, RecordId> entry : data) {
+            assertEquals(Optional.of(entry.getSecond()), tree.get(entry.getFirst()));
+        }
+    }
+
+    @Test
+    public void testLeavesAreLinked() {
+        BPlusTreeMetadata metadata = metadata(Type.intType(), 3);
+        BPlusTree tree = new BPlusTree(bufferManager, metadata, treeContext);
+        List<Pair<DataBox, RecordId>> data = data(500, false);
+        tree.bulkLoad(data, 1.0f, executor, 4);
+
+        // starting from the leftmost leaf, moving right finds every key
+        long leftmost = InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, metadata.getRootPageNum(),
+                                                  new IntDataBox(Integer.MIN_VALUE));
+        for (Pair<DataBox, RecordId> entry : data) {
+            assertEquals(Optional.of(entry.getSecond()),
+                         lookupMovingRight(metadata, leftmost, entry.getFirst()));
+        }
+    }
+
+    @Test
+    public void testCompositeKeys() {
+        Type keySchema = Type.compositeType(Arrays.asList(Type.intType(), Type.stringType(8)));
+        BPlusTreeMetadata metadata = metadata(keySchema, 3);
+        BPlusTree tree = new BPlusTree(bufferManager, metadata, treeContext);
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            for (int j = 0; j < 5; ++j) {
+                DataBox key = new CompositeDataBox(Arrays.asList(new IntDataBox(i), new StringDataBox("c" + j, 8)));
+                data.add(new Pair<>(key, new RecordId(i, (short) j)));
+            }
+        }
+        tree.bulkLoad(data, 0.75f, executor, 4);
+
+        for (Pair<DataBox, RecordId> entry : data) {
+            assertEquals(Optional.of(entry.getSecond()), tree.get(entry.getFirst()));
+        }
+        DataBox missing = new CompositeDataBox(Arrays.asList(new IntDataBox(50), new StringDataBox("c9", 8)));
+        assertEquals(Optional.empty(), tree.get(missing));
+
+        // the smallest key with a prefix is in the leaf of its lower bound, or to its right
+        DataBox bound = CompositeDataBox.lowerBound(keySchema, Collections.singletonList(new IntDataBox(50)));
+        long leaf = InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, metadata.getRootPageNum(), bound);
+        assertEquals(Optional.of(new RecordId(50, (short) 0)),
+                     lookupMovingRight(metadata, leaf, data.get(250).getFirst()));
+    }
+
+    @Test
+    public void testBadData() {
+        BPlusTreeMetadata metadata = metadata(Type.intType(), 2);
+        BPlusTree tree = new BPlusTree(bufferManager, metadata, treeContext);
+        List<Pair<DataBox, RecordId>> unsorted = new ArrayList<>(data(10, false));
+        Collections.swap(unsorted, 3, 4);
+        try {
+            tree.bulkLoad(unsorted, 0.75f, executor, 4);
+            fail();
+        } catch (BPlusTreeException e) {
+            /* do nothing */
+        }
+        List<Pair<DataBox, RecordId>> duplicates = new ArrayList<>(data(10, false));
+        duplicates.add(duplicates.get(9));
+        try {
+            tree.bulkLoad(duplicates, 0.75f, executor, 4);
+            fail();
+        } catch (BPlusTreeException e) {
+            /* do nothing */
+        }
+
+        tree.bulkLoad(data(10, false), 0.75f, executor, 4);
+        try {
+            tree.bulkLoad(data(10, false), 0.75f, executor, 4);
+            fail();
+        } catch (BPlusTreeException e) {
+            /* do nothing */
+        }
+    }
+}
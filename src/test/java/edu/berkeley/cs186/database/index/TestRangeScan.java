@@ -0,0 +1,152 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestRangeScan {
+    private BufferManager bufferManager;
+    private LockContext treeContext;
+    private ExecutorService executor;
+
+    @Before
+    public void beforeEach() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        this.bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        this.treeContext = new DummyLockContext();
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void afterEach() {
+        this.executor.shutdown();
+        this.bufferManager.close();
+    }
+
+    private static DataBox key(int i, boolean strings) {
+        return strings ? new StringDataBox(String.format("key%05d", i), 20) : new IntDataBox(i);
+    }
+
+    // a tree of order 2 with the even keys 0, 2, ..., 2n - 2; key 2i maps to record id (i, 0)
+    private BPlusTree tree(int n, boolean strings) {
+        Type keySchema = strings ? Type.stringType(20) : Type.intType();
+        BPlusTreeMetadata metadata = new BPlusTreeMetadata("test", "col", keySchema, 2, 0,
+                DiskSpaceManager.INVALID_PAGE_NUM, -1);
+        BPlusTree tree = new BPlusTree(bufferManager, metadata, treeContext);
+        List<Pair<DataBox, RecordId>> data = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            data.add(new Pair<>(key(2 * i, strings), new RecordId(i, (short) 0)));
+        }
+        tree.bulkLoad(data, 0.75f, executor, 4);
+        return tree;
+    }
+
+    // the record ids of the keys in [lo, hi), in ascending or descending order
+    private static List<RecordId> expected(int n, int lo, int hi, boolean descending) {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            if (2 * i >= lo && 2 * i < hi) {
+                rids.add(new RecordId(i, (short) 0));
+            }
+        }
+        if (descending) {
+            Collections.reverse(rids);
+        }
+        return rids;
+    }
+
+    private static List<RecordId> toList(Iterator<RecordId> iter) {
+        List<RecordId> rids = new ArrayList<>();
+        iter.forEachRemaining(rids::add);
+        return rids;
+    }
+
+    @Test
+    public void testScanRange() {
+        for (boolean strings : new boolean[] {false, true}) {
+            int n = 500;
+            BPlusTree tree = tree(n, strings);
+            int[][] ranges = {{0, 0}, {0, 1}, {-5, 7}, {3, 4}, {4, 5}, {10, 60}, {11, 61}, {990, 2000}, {998, 999}};
+            for (int[] range : ranges) {
+                DataBox lo = key(range[0], strings);
+                DataBox hi = key(range[1], strings);
+                assertEquals(expected(n, range[0], range[1], false), toList(tree.scanRange(lo, hi)));
+            }
+            assertEquals(expected(n, 0, 100, false), toList(tree.scanLessThan(key(100, strings))));
+            assertEquals(expected(n, 0, 101, false), toList(tree.scanLessEqual(key(100, strings))));
+            assertEquals(expected(n, 0, 101, false), toList(tree.scanLessThan(key(101, strings))));
+            assertEquals(expected(n, 0, 2 * n, false), toList(tree.scanLessEqual(key(2 * n, strings))));
+            assertTrue(toList(tree.scanLessThan(key(0, strings))).isEmpty());
+        }
+    }
+
+    @Test
+    public void testScanGreaterEqual() {
+        for (boolean strings : new boolean[] {false, true}) {
+            int n = 500;
+            BPlusTree tree = tree(n, strings);
+            assertEquals(expected(n, 0, 2 * n, false), toList(tree.scanAll()));
+            for (int lo : new int[] {-1, 0, 1, 2, 57, 58, 500, 997, 998, 999, 2000}) {
+                assertEquals(expected(n, lo, 2 * n, false), toList(tree.scanGreaterEqual(key(lo, strings))));
+            }
+        }
+    }
+
+    @Test
+    public void testScanReverse() {
+        for (boolean strings : new boolean[] {false, true}) {
+            int n = 500;
+            BPlusTree tree = tree(n, strings);
+            assertEquals(expected(n, 0, 2 * n, true), toList(tree.scanAllReverse()));
+            for (int hi : new int[] {0, 1, 2, 3, 57, 58, 500, 997, 998, 999, 2000}) {
+                assertEquals(expected(n, 0, hi, true), toList(tree.scanLessThanReverse(key(hi, strings))));
+                assertEquals(expected(n, 0, hi + 1, true), toList(tree.scanLessEqualReverse(key(hi, strings))));
+                assertEquals(expected(n, hi, 2 * n, true), toList(tree.scanGreaterEqualReverse(key(hi, strings))));
+            }
+        }
+    }
+
+    @Test
+    public void testSingleLeaf() {
+        BPlusTree tree = tree(3, false);
+        assertEquals(expected(3, 0, 6, true), toList(tree.scanAllReverse()));
+        assertEquals(expected(3, 1, 4, false), toList(tree.scanRange(new IntDataBox(1), new IntDataBox(4))));
+        assertEquals(expected(3, 0, 3, true), toList(tree.scanLessEqualReverse(new IntDataBox(2))));
+    }
+
+    @Test
+    public void testEmptyTree() {
+        BPlusTreeMetadata metadata = new BPlusTreeMetadata("test", "col", Type.intType(), 2, 0,
+                DiskSpaceManager.INVALID_PAGE_NUM, -1);
+        BPlusTree tree = new BPlusTree(bufferManager, metadata, treeContext);
+        assertFalse(tree.scanAllReverse().hasNext());
+        assertFalse(tree.scanRange(new IntDataBox(0), new IntDataBox(10)).hasNext());
+        assertFalse(tree.scanLessEqual(new IntDataBox(0)).hasNext());
+        try {
+            tree.scanAllReverse().next();
+            fail();
+        } catch (NoSuchElementException e) {
+            /* do nothing */
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package edu.berkeley.cs186.database.index;
+
+import java.util.*;
+
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.Buffer;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.memory.Page;
+import edu.berkeley.cs186.database.recovery.DummyRecoveryManager;
+import edu.berkeley.cs186.database.table.RecordId;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestSerializedKeys {
+    private BufferManager bufferManager;
+    private LockContext treeContext;
+
+    @Before
+    public void beforeEach() {
+        DiskSpaceManager diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+        this.bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 1024,
+                new ClockEvictionPolicy());
+        this.treeContext = new DummyLockContext();
+    }
+
+    @After
+    public void afterEach() {
+        this.bufferManager.close();
+    }
+
+    private BPlusTreeMetadata metadata(Type keySchema) {
+        return new BPlusTreeMetadata("test", "col", keySchema, 20, 0, DiskSpaceManager.INVALID_PAGE_NUM, -1);
+    }
+
+    // the keys 0, 3, 6, ..., 27 of the given type
+    private static List<DataBox> keys(Type type) {
+        List<DataBox> keys = new ArrayList<>();
+        for (int i = 0; i < 30; i += 3) {
+            keys.add(box(type, i));
+        }
+        return keys;
+    }
+
+    private static DataBox box(Type type, int i) {
+        switch (type.getTypeId()) {
+        case INT: return new IntDataBox(i);
+        case LONG: return new LongDataBox(i * 1000000000L);
+        case FLOAT: return new FloatDataBox(i / 2.0f);
+        default: return new StringDataBox(String.format("%03d", i), 3);
+        }
+    }
+
+    private static List<Type> types() {
+        return Arrays.asList(Type.intType(), Type.longType(), Type.floatType(), Type.stringType(3));
+    }
+
+    @Test
+    public void testLeafNode() {
+        for (Type type : types()) {
+            BPlusTreeMetadata metadata = metadata(type);
+            List<DataBox> keys = keys(type);
+            List<RecordId> rids = new ArrayList<>();
+            for (int i = 0; i < keys.size(); ++i) {
+                rids.add(new RecordId(1000L * i, (short) i));
+            }
+            LeafNode leaf = new LeafNode(metadata, bufferManager, keys, rids, Optional.of(42L), treeContext);
+            long pageNum = leaf.getPage().getPageNum();
+            Page page = bufferManager.fetchPage(treeContext, pageNum, false);
+            try {
+                Buffer buf = page.getBuffer();
+                for (int i = -1; i < 32; ++i) {
+                    DataBox key = box(type, i);
+                    int index = keys.indexOf(key);
+                    Optional<RecordId> expected = index == -1 ? Optional.empty() : Optional.of(rids.get(index));
+                    assertEquals(type + " " + i, expected, LeafNode.getKey(buf, type, key));
+                    assertEquals(type + " " + i, expected,
+                                 LeafNode.getKey(metadata, bufferManager, treeContext, pageNum, key));
+                }
+            } finally {
+                page.unpin();
+            }
+        }
+    }
+
+    @Test
+    public void testFloatEquality() {
+        // FloatDataBox.equals treats 0.0 and -0.0 as equal and NaN as unequal to everything
+        Type type = Type.floatType();
+        BPlusTreeMetadata metadata = metadata(type);
+        List<DataBox> keys = Arrays.asList(new FloatDataBox(-1.0f), new FloatDataBox(-0.0f),
+                                           new FloatDataBox(Float.NaN));
+        List<RecordId> rids = Arrays.asList(new RecordId(1, (short) 1), new RecordId(2, (short) 2),
+                                            new RecordId(3, (short) 3));
+        LeafNode leaf = new LeafNode(metadata, bufferManager, keys, rids, Optional.empty(), treeContext);
+        long pageNum = leaf.getPage().getPageNum();
+        for (DataBox key : Arrays.asList(new FloatDataBox(0.0f), new FloatDataBox(-0.0f),
+                                         new FloatDataBox(Float.NaN), new FloatDataBox(-1.0f))) {
+            int index = keys.indexOf(key);
+            Optional<RecordId> expected = index == -1 ? Optional.empty() : Optional.of(rids.get(index));
+            assertEquals(key.toString(), expected, LeafNode.getKey(metadata, bufferManager, treeContext, pageNum, key));
+        }
+    }
+
+    @Test
+    public void testPointLookup() {
+        BPlusTreeMetadata metadata = metadata(Type.intType());
+        List<Long> leaves = new ArrayList<>();
+        List<DataBox> separators = new ArrayList<>();
+        for (int l = 0; l < 4; ++l) {
+            List<DataBox> keys = new ArrayList<>();
+            List<RecordId> rids = new ArrayList<>();
+            for (int i = 10 * l; i < 10 * l + 10; ++i) {
+                keys.add(new IntDataBox(i));
+                rids.add(new RecordId(i, (short) i));
+            }
+            if (l > 0) {
+                separators.add(new IntDataBox(10 * l));
+            }
+            leaves.add(new LeafNode(metadata, bufferManager, keys, rids, Optional.empty(), treeContext)
+                       .getPage().getPageNum());
+        }
+        long root = new InnerNode(metadata, bufferManager, separators, leaves, treeContext).getPage().getPageNum();
+
+        for (int i = -5; i < 45; ++i) {
+            IntDataBox key = new IntDataBox(i);
+            long leaf = InnerNode.findLeafPageNum(metadata, bufferManager, treeContext, root, key);
+            Optional<RecordId> expected = i >= 0 && i < 40 ? Optional.of(new RecordId(i, (short) i)) : Optional.empty();
+            assertEquals(expected, LeafNode.getKey(metadata, bufferManager, treeContext, leaf, key));
+        }
+    }
+}
@@ -3,7 +3,8 @@ package edu.berkeley.cs186.database.io;
 import java.util.*;
 
 /**
- * "Disk" space manager that really just keeps things in memory. Not thread safe.
+ * "Disk" space manager that really just keeps things in memory. Thread safe,
+ * like DiskSpaceManagerImpl, so that it can back parallel index builds in tests.
  */
 public class MemoryDiskSpaceManager implements DiskSpaceManager {
     private Map<Integer, Set<Integer>> partitions = new HashMap<>();
@@ -15,14 +16,14 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     public void close() {}
 
     @Override
-    public int allocPart() {
+    public synchronized int allocPart() {
         partitions.put(nextPartitionNum, new HashSet<>());
         nextPageNum.put(nextPartitionNum, 0);
         return nextPartitionNum++;
     }
 
     @Override
-    public int allocPart(int partNum) {
+    public synchronized int allocPart(int partNum) {
         if (partitions.containsKey(partNum)) {
             throw new IllegalStateException("partition " + partNum + " already allocated");
         }
@@ -33,7 +34,7 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     }
 
     @Override
-    public void freePart(int partNum) {
+    public synchronized void freePart(int partNum) {
         if (!partitions.containsKey(partNum)) {
             throw new NoSuchElementException("partition " + partNum + " not allocated");
         }
@@ -44,7 +45,7 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     }
 
     @Override
-    public long allocPage(int partNum) {
+    public synchronized long allocPage(int partNum) {
         if (!partitions.containsKey(partNum)) {
             throw new IllegalArgumentException("partition " + partNum + " not allocated");
         }
@@ -57,7 +58,7 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     }
 
     @Override
-    public long allocPage(long page) {
+    public synchronized long allocPage(long page) {
         int partNum = DiskSpaceManager.getPartNum(page);
         int ppageNum = DiskSpaceManager.getPageNum(page);
         if (!partitions.containsKey(partNum)) {
@@ -73,7 +74,7 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     }
 
     @Override
-    public void freePage(long page) {
+    public synchronized void freePage(long page) {
         if (!pages.containsKey(page)) {
             throw new NoSuchElementException("page " + page + " not allocated");
         }
@@ -84,7 +85,7 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     }
 
     @Override
-    public void readPage(long page, byte[] buf) {
+    public synchronized void readPage(long page, byte[] buf) {
         if (buf.length != DiskSpaceManager.PAGE_SIZE) {
             throw new IllegalArgumentException("bad buffer size");
         }
@@ -95,7 +96,7 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     }
 
     @Override
-    public void writePage(long page, byte[] buf) {
+    public synchronized void writePage(long page, byte[] buf) {
         if (buf.length != DiskSpaceManager.PAGE_SIZE) {
             throw new IllegalArgumentException("bad buffer size");
         }
@@ -106,7 +107,7 @@ public class MemoryDiskSpaceManager implements DiskSpaceManager {
     }
 
     @Override
-    public boolean pageAllocated(long page) {
+    public synchronized boolean pageAllocated(long page) {
         return pages.containsKey(page);
     }
 }
@@ -1,8 +1,11 @@
 package edu.berkeley.cs186.database.memory;
 
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.categories.Proj99Tests;
 import edu.berkeley.cs186.database.categories.SystemTests;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyTransactionContext;
+import edu.berkeley.cs186.database.concurrency.LoggingLockManager;
 import edu.berkeley.cs186.database.io.DiskSpaceManager;
 import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
 import edu.berkeley.cs186.database.io.PageException;
@@ -275,6 +278,65 @@ public class TestBufferManager {
         assertTrue(frame6.isValid());
     }
 
+    // frees PAGE as transaction TRANSNUM
+    private void freePage(long transNum, Page page) {
+        TransactionContext.setTransaction(new DummyTransactionContext(new LoggingLockManager(), transNum));
+        try {
+            bufferManager.freePage(page);
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+    }
+
+    @Test
+    public void testFreeWithoutSnapshots() {
+        int partNum = diskSpaceManager.allocPart();
+        Page page = bufferManager.fetchNewPage(new DummyLockContext(), partNum, false);
+        page.unpin();
+
+        TransactionContext.setTransaction(new DummyTransactionContext(new LoggingLockManager(), 1L));
+        try {
+            page.getBuffer().putInt(7);
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+        freePage(1L, page);
+        // nothing is kept for snapshots when there are none
+        assertEquals(0, bufferManager.getVersionStore().getNumVersions());
+        try {
+            diskSpaceManager.readPage(page.getPageNum(), new byte[DiskSpaceManager.PAGE_SIZE]);
+            fail();
+        } catch (PageException e) { /* do nothing */ }
+        bufferManager.getVersionStore().commit(1L);
+    }
+
+    @Test
+    public void testFreeDeferredForSnapshot() {
+        PageVersionStore versionStore = bufferManager.getVersionStore();
+        int partNum = diskSpaceManager.allocPart();
+        Page committedFree = bufferManager.fetchNewPage(new DummyLockContext(), partNum, false);
+        Page abortedFree = bufferManager.fetchNewPage(new DummyLockContext(), partNum, false);
+        committedFree.unpin();
+        abortedFree.unpin();
+
+        long snapshot = versionStore.beginSnapshot();
+        freePage(1L, committedFree);
+        freePage(2L, abortedFree);
+        versionStore.commit(1L);
+        versionStore.abort(2L);
+
+        // the snapshot may still read the committed free
+        diskSpaceManager.readPage(committedFree.getPageNum(), new byte[DiskSpaceManager.PAGE_SIZE]);
+        versionStore.endSnapshot(snapshot);
+        try {
+            diskSpaceManager.readPage(committedFree.getPageNum(), new byte[DiskSpaceManager.PAGE_SIZE]);
+            fail();
+        } catch (PageException e) { /* do nothing */ }
+        // the aborted free is never done
+        diskSpaceManager.readPage(abortedFree.getPageNum(), new byte[DiskSpaceManager.PAGE_SIZE]);
+        assertEquals(0, versionStore.getNumVersions());
+    }
+
     @Test
     public void testFreePart() {
         int partNum1 = diskSpaceManager.allocPart();
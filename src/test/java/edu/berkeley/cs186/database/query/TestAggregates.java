@@ -0,0 +1,128 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestAggregates {
+    private static final String TABLENAME = "T";
+
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("aggregateTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(5);
+        this.db.waitSetupFinished();
+
+        try(Transaction t = this.db.beginTransaction()) {
+            Schema schema = new Schema(
+                Arrays.asList("x", "y", "z"),
+                Arrays.asList(Type.intType(), Type.floatType(), Type.longType())
+            );
+            t.createTable(schema, TABLENAME);
+        }
+        this.db.waitAllTransactions();
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    private void insertRows(int numRows) {
+        try(Transaction t = this.db.beginTransaction()) {
+            for (int i = 0; i < numRows; ++i) {
+                t.insert(TABLENAME, Arrays.asList(new IntDataBox(i % 10), new FloatDataBox(i * 0.5f),
+                                                  new LongDataBox(i * 1000000000L)));
+            }
+        }
+    }
+
+    private List<Record> run(QueryPlan query) {
+        List<Record> records = new ArrayList<>();
+        query.execute().forEachRemaining(records::add);
+        return records;
+    }
+
+    @Test
+    public void testFusedAggregates() {
+        insertRows(2000);
+        try(Transaction t = this.db.beginTransaction()) {
+            QueryPlan query = t.query(TABLENAME);
+            query.count();
+            query.sum("x");
+            query.average("y");
+            List<Record> records = run(query);
+
+            assertTrue(query.getFinalOperator().getSource().isSequentialScan());
+            assertEquals(1, records.size());
+            List<DataBox> values = records.get(0).getValues();
+            assertEquals(new IntDataBox(2000), values.get(0));
+            assertEquals(new IntDataBox(9000), values.get(1));
+            assertEquals(499.75f, values.get(2).getFloat(), 1e-3);
+        }
+    }
+
+    @Test
+    public void testLongAggregates() {
+        insertRows(100);
+        try(Transaction t = this.db.beginTransaction()) {
+            QueryPlan query = t.query(TABLENAME);
+            query.sum("z");
+            query.average("z");
+            List<Record> records = run(query);
+
+            assertEquals(1, records.size());
+            List<DataBox> values = records.get(0).getValues();
+            assertEquals(new LongDataBox(4950000000000L), values.get(0));
+            assertEquals(4.95e10f, values.get(1).getFloat(), 1e4);
+        }
+    }
+
+    @Test
+    public void testFusedAggregatesEmptyTable() {
+        try(Transaction t = this.db.beginTransaction()) {
+            QueryPlan query = t.query(TABLENAME);
+            query.count();
+            assertTrue(run(query).isEmpty());
+        }
+    }
+
+    @Test
+    public void testGroupedAggregates() {
+        insertRows(1000);
+        try(Transaction t = this.db.beginTransaction()) {
+            QueryPlan query = t.query(TABLENAME);
+            query.groupBy("x");
+            query.project(Collections.singletonList("x"));
+            query.count();
+            query.sum("x");
+            List<Record> records = run(query);
+
+            assertEquals(10, records.size());
+            for (Record record : records) {
+                List<DataBox> values = record.getValues();
+                assertEquals(new IntDataBox(100), values.get(1));
+                assertEquals(new IntDataBox(values.get(0).getInt() * 100), values.get(2));
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestCompiledPredicate {
+    private static final String TABLENAME = "T";
+
+    private Database db;
+    private List<Record> records;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("compiledPredicateTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(5);
+        this.db.waitSetupFinished();
+
+        Schema schema = new Schema(
+            Arrays.asList("b", "i", "s", "f", "l"),
+            Arrays.asList(Type.boolType(), Type.intType(), Type.stringType(4), Type.floatType(), Type.longType())
+        );
+        this.records = new ArrayList<>();
+        Random random = new Random(186);
+        try(Transaction t = this.db.beginTransaction()) {
+            t.createTable(schema, TABLENAME);
+            for (int i = 0; i < 1000; ++i) {
+                List<DataBox> values = Arrays.asList(
+                    new BoolDataBox(random.nextBoolean()),
+                    new IntDataBox(random.nextInt(20) - 10),
+                    new StringDataBox("s" + random.nextInt(10), 4),
+                    new FloatDataBox(random.nextInt(9) - 4.0f),
+                    new LongDataBox(random.nextInt(20) * 1000000000L)
+                );
+                t.insert(TABLENAME, values);
+                this.records.add(new Record(values));
+            }
+        }
+        this.db.waitAllTransactions();
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    // evaluates the selects on decoded records, without pushing them into the scan
+    private List<Record> expected(TransactionContext transaction, List<String> columns,
+                                  List<PredicateOperator> operators, List<DataBox> values) {
+        QueryOperator op = new TestSourceOperator(this.records, transaction.getFullyQualifiedSchema(TABLENAME));
+        for (int i = 0; i < columns.size(); ++i) {
+            op = new SelectOperator(op, columns.get(i), operators.get(i), values.get(i));
+        }
+        List<Record> result = new ArrayList<>();
+        op.iterator().forEachRemaining(result::add);
+        return result;
+    }
+
+    private List<Record> pushedDown(TransactionContext transaction, List<String> columns,
+                                    List<PredicateOperator> operators, List<DataBox> values) {
+        QueryOperator op = new SequentialScanOperator(transaction, TABLENAME);
+        for (int i = 0; i < columns.size(); ++i) {
+            op = new SelectOperator(op, columns.get(i), operators.get(i), values.get(i));
+        }
+        List<Record> result = new ArrayList<>();
+        op.iterator().forEachRemaining(result::add);
+        return result;
+    }
+
+    @Test
+    public void testEveryTypeAndOperator() {
+        List<String> columns = Arrays.asList("b", "i", "s", "f", "l");
+        List<DataBox> values = Arrays.asList(new BoolDataBox(true), new IntDataBox(3), new StringDataBox("s5", 4),
+                                             new FloatDataBox(-1.0f), new LongDataBox(7000000000L));
+        try(Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            for (int i = 0; i < columns.size(); ++i) {
+                for (PredicateOperator operator : PredicateOperator.values()) {
+                    List<String> c = Collections.singletonList(columns.get(i));
+                    List<PredicateOperator> o = Collections.singletonList(operator);
+                    List<DataBox> v = Collections.singletonList(values.get(i));
+                    assertEquals(columns.get(i) + " " + operator, expected(transaction, c, o, v),
+                                 pushedDown(transaction, c, o, v));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConjunction() {
+        List<String> columns = Arrays.asList("i", "f", "b", "s");
+        List<PredicateOperator> operators = Arrays.asList(PredicateOperator.GREATER_THAN_EQUALS,
+                PredicateOperator.LESS_THAN, PredicateOperator.EQUALS, PredicateOperator.NOT_EQUALS);
+        List<DataBox> values = Arrays.asList(new IntDataBox(-2), new FloatDataBox(2.0f), new BoolDataBox(false),
+                                             new StringDataBox("s1", 4));
+        try(Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            List<Record> expected = expected(transaction, columns, operators, values);
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, pushedDown(transaction, columns, operators, values));
+        }
+    }
+
+    @Test
+    public void testQueryPlan() {
+        try(Transaction t = this.db.beginTransaction()) {
+            QueryPlan query = t.query(TABLENAME);
+            query.select("i", PredicateOperator.LESS_THAN, new IntDataBox(0));
+            query.select("l", PredicateOperator.GREATER_THAN, new LongDataBox(5000000000L));
+            int count = 0;
+            for (Iterator<Record> iter = query.execute(); iter.hasNext(); ++count) {
+                Record record = iter.next();
+                assertTrue(record.getValues().get(1).getInt() < 0);
+                assertTrue(record.getValues().get(4).getLong() > 5000000000L);
+            }
+
+            int expected = 0;
+            for (Record record : this.records) {
+                if (record.getValues().get(1).getInt() < 0 && record.getValues().get(4).getLong() > 5000000000L) {
+                    ++expected;
+                }
+            }
+            assertEquals(expected, count);
+        }
+    }
+}
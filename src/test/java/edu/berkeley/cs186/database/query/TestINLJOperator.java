@@ -0,0 +1,153 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.TransactionContext;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.DataBox;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.StringDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestINLJOperator {
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("inljTest");
+        this.db = new Database(testDir.getAbsolutePath(), 64);
+        this.db.setWorkMem(3);
+        this.db.waitSetupFinished();
+
+        try (Transaction t = this.db.beginTransaction()) {
+            t.createTable(new Schema(Arrays.asList("oid", "cid"), Arrays.asList(Type.intType(), Type.intType())),
+                          "orders");
+            t.createTable(new Schema(Arrays.asList("cid", "name"),
+                                     Arrays.asList(Type.intType(), Type.stringType(10))), "customers");
+            // customers 0..59 place orders; there are only customers 0..54
+            for (int i = 0; i < 1200; ++i) {
+                t.insert("orders", Arrays.asList(new IntDataBox(i), new IntDataBox((i * 7) % 60)));
+            }
+            for (int i = 0; i < 55; ++i) {
+                t.insert("customers", Arrays.asList(new IntDataBox(i), new StringDataBox("c" + i, 10)));
+            }
+            t.createHashIndex("customers", "cid");
+        }
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    @Test
+    public void testJoin() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator orders = new SequentialScanOperator(transaction, "orders");
+            QueryOperator customers = new SequentialScanOperator(transaction, "customers");
+            assertTrue(INLJOperator.canProbe(customers, "customers.cid", transaction));
+            JoinOperator join = new INLJOperator(orders, customers, "orders.cid", "customers.cid", transaction);
+
+            // the batch size is 1 page of orders, so this takes several batches
+            Set<Integer> seen = new HashSet<>();
+            Iterator<Record> iter = join.iterator();
+            while (iter.hasNext()) {
+                List<DataBox> values = iter.next().getValues();
+                int oid = values.get(0).getInt();
+                int cid = values.get(1).getInt();
+                assertEquals((oid * 7) % 60, cid);
+                assertEquals(new IntDataBox(cid), values.get(2));
+                assertEquals(new StringDataBox("c" + cid, 10), values.get(3));
+                assertTrue(seen.add(oid));
+            }
+            // 1200 orders, of which the 100 placed by customers 55..59 have no match
+            assertEquals(1100, seen.size());
+        }
+    }
+
+    @Test
+    public void testRequiresIndex() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator orders = new SequentialScanOperator(transaction, "orders");
+            QueryOperator customers = new SequentialScanOperator(transaction, "customers");
+            assertFalse(INLJOperator.canProbe(orders, "orders.cid", transaction));
+            try {
+                new INLJOperator(customers, orders, "customers.cid", "orders.cid", transaction);
+                fail();
+            } catch (QueryPlanException e) {
+                /* do nothing */
+            }
+        }
+    }
+
+    @Test
+    public void testCompositeIndexPrefix() {
+        // a B+ tree on orders (cid, oid) serves lookups on orders.cid
+        try (Transaction t = this.db.beginTransaction()) {
+            t.createIndex("orders", Arrays.asList("cid", "oid"), true);
+        }
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator customers = new SequentialScanOperator(transaction, "customers");
+            QueryOperator orders = new SequentialScanOperator(transaction, "orders");
+            assertTrue(INLJOperator.canProbe(orders, "orders.cid", transaction));
+            JoinOperator join = new INLJOperator(customers, orders, "customers.cid", "orders.cid", transaction);
+
+            // every order of customers 0..54, each once
+            Set<Integer> seen = new HashSet<>();
+            Iterator<Record> iter = join.iterator();
+            while (iter.hasNext()) {
+                List<DataBox> values = iter.next().getValues();
+                int cid = values.get(0).getInt();
+                int oid = values.get(2).getInt();
+                assertEquals(new IntDataBox(cid), values.get(3));
+                assertEquals((oid * 7) % 60, cid);
+                assertTrue(seen.add(oid));
+            }
+            assertEquals(1100, seen.size());
+
+            // the orders of customer 3 come out of an index scan in oid order
+            QueryOperator scan = new IndexScanOperator(transaction, "orders", "cid",
+                    PredicateOperator.EQUALS, new IntDataBox(3));
+            List<Integer> oids = new ArrayList<>();
+            scan.iterator().forEachRemaining(r -> oids.add(r.getValues().get(0).getInt()));
+            assertEquals(20, oids.size());
+            for (int i = 0; i < oids.size(); ++i) {
+                assertEquals(3, (oids.get(i) * 7) % 60);
+                assertTrue(i == 0 || oids.get(i - 1) < oids.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testCost() {
+        try (Transaction t = this.db.beginTransaction()) {
+            TransactionContext transaction = t.getTransactionContext();
+            QueryOperator orders = new SequentialScanOperator(transaction, "orders");
+            QueryOperator customers = new SequentialScanOperator(transaction, "customers");
+            JoinOperator inlj = new INLJOperator(orders, customers, "orders.cid", "customers.cid", transaction);
+
+            // a scan of orders, a hash index probe per order, and an IO per match
+            int numMatches = inlj.getStats().getNumRecords();
+            assertEquals(orders.getStats().getNumPages() + 1200 + numMatches, inlj.estimateIOCost());
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package edu.berkeley.cs186.database.query;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.databox.IntDataBox;
+import edu.berkeley.cs186.database.databox.Type;
+import edu.berkeley.cs186.database.table.Record;
+import edu.berkeley.cs186.database.table.Schema;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestTopNOperator {
+    private Database db;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() throws Exception {
+        File testDir = tempFolder.newFolder("topNTest");
+        this.db = new Database(testDir.getAbsolutePath(), 32);
+        this.db.setWorkMem(5);
+        this.db.waitSetupFinished();
+    }
+
+    @After
+    public void afterEach() {
+        this.db.waitAllTransactions();
+        this.db.close();
+    }
+
+    private static List<Integer> shuffled(int n) {
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            values.add(i);
+        }
+        Collections.shuffle(values, new Random(186));
+        return values;
+    }
+
+    private static List<Integer> firstColumn(Iterator<Record> records) {
+        List<Integer> values = new ArrayList<>();
+        records.forEachRemaining(r -> values.add(r.getValues().get(0).getInt()));
+        return values;
+    }
+
+    @Test
+    public void testTopN() {
+        QueryOperator source = TestUtils.createTestSourceOperatorWithInts(shuffled(1000));
+        TopNOperator topN = new TopNOperator(source, null, "int", 10);
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), firstColumn(topN.iterator()));
+    }
+
+    @Test
+    public void testTopNFewerRecordsThanLimit() {
+        QueryOperator source = TestUtils.createTestSourceOperatorWithInts(Arrays.asList(3, 1, 2));
+        assertEquals(Arrays.asList(1, 2, 3), firstColumn(new TopNOperator(source, null, "int", 10).iterator()));
+        assertTrue(firstColumn(new TopNOperator(source, null, "int", 0).iterator()).isEmpty());
+    }
+
+    @Test
+    public void testSortWithoutLimit() {
+        QueryOperator source = TestUtils.createTestSourceOperatorWithInts(shuffled(1000));
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            expected.add(i);
+        }
+        // without a limit, the records are sorted externally, in temporary tables
+        try (Transaction transaction = this.db.beginTransaction()) {
+            TopNOperator sort = new TopNOperator(source, transaction.getTransactionContext(), "int", -1);
+            assertEquals(expected, firstColumn(sort.iterator()));
+        }
+        // the limit may be far larger than the input
+        assertEquals(expected, firstColumn(new TopNOperator(source, null, "int", Integer.MAX_VALUE).iterator()));
+    }
+
+    @Test
+    public void testLimitStopsPullingFromSource() {
+        int[] numPulled = new int[1];
+        TestSourceOperator source = TestUtils.createTestSourceOperatorWithInts(shuffled(1000));
+        QueryOperator counting = new SelectOperator(source, "int",
+                PredicateOperator.GREATER_THAN_EQUALS, new IntDataBox(0)) {
+            @Override
+            public Iterator<Record> iterator() {
+                Iterator<Record> iter = super.iterator();
+                return new Iterator<Record>() {
+                    @Override
+                    public boolean hasNext() {
+                        return iter.hasNext();
+                    }
+
+                    @Override
+                    public Record next() {
+                        ++numPulled[0];
+                        return iter.next();
+                    }
+                };
+            }
+        };
+
+        LimitOperator limit = new LimitOperator(counting, 5);
+        assertEquals(5, firstColumn(limit.iterator()).size());
+        assertEquals(5, numPulled[0]);
+    }
+
+    @Test
+    public void testOrderByLimitQuery() {
+        try(Transaction t = this.db.beginTransaction()) {
+            Schema schema = new Schema(Collections.singletonList("x"),
+                                       Collections.singletonList(Type.intType()));
+            t.createTable(schema, "T");
+            for (int x : shuffled(500)) {
+                t.insert("T", Collections.singletonList(new IntDataBox(x)));
+            }
+
+            QueryPlan query = t.query("T");
+            query.orderBy("x");
+            query.limit(3);
+            assertEquals(Arrays.asList(0, 1, 2), firstColumn(query.execute()));
+            assertEquals(QueryOperator.OperatorType.LIMIT, query.getFinalOperator().getType());
+            assertEquals(QueryOperator.OperatorType.SORT, query.getFinalOperator().getSource().getType());
+
+            query = t.query("T");
+            query.orderBy("x");
+            assertEquals(shuffled(500).stream().sorted().collect(Collectors.toList()),
+                         firstColumn(query.execute()));
+
+            query = t.query("T");
+            query.limit(7);
+            assertEquals(7, firstColumn(query.execute()).size());
+        }
+    }
+
+    @Test
+    public void testLimitJoin() {
+        try(Transaction t = this.db.beginTransaction()) {
+            Schema schema = new Schema(Collections.singletonList("x"),
+                                       Collections.singletonList(Type.intType()));
+            t.createTable(schema, "A");
+            t.createTable(schema, "B");
+            for (int i = 0; i < 100; ++i) {
+                t.insert("A", Collections.singletonList(new IntDataBox(i % 10)));
+                t.insert("B", Collections.singletonList(new IntDataBox(i % 10)));
+            }
+
+            QueryPlan query = t.query("A");
+            query.join("B", "A.x", "B.x");
+            query.limit(4);
+            List<Record> records = new ArrayList<>();
+            query.execute().forEachRemaining(records::add);
+            assertEquals(4, records.size());
+            for (Record record : records) {
+                assertEquals(record.getValues().get(0), record.getValues().get(1));
+            }
+        }
+    }
+}
@@ -78,6 +78,12 @@ class DummyTransaction extends AbstractTransaction {
     @Override
     public void createIndex(String tableName, String columnName, boolean bulkLoad) {}
 
+    @Override
+    public void createIndex(String tableName, List<String> columnNames, boolean bulkLoad) {}
+
+    @Override
+    public void createHashIndex(String tableName, String columnName) {}
+
     @Override
     public void dropIndex(String tableName, String columnName) {}
 
@@ -207,6 +213,11 @@ class DummyTransaction extends AbstractTransaction {
             return false;
         }
 
+        @Override
+        public boolean isHashIndex(String tableName, String columnName) {
+            return false;
+        }
+
         @Override
         public void updateIndexMetadata(BPlusTreeMetadata metadata) {}
 
@@ -220,6 +231,23 @@ class DummyTransaction extends AbstractTransaction {
             return null;
         }
 
+        @Override
+        public Iterator<Record> sortedScanTo(String tableName, String columnName, DataBox endValue,
+                                             boolean inclusive) {
+            return null;
+        }
+
+        @Override
+        public Iterator<Record> reverseSortedScanTo(String tableName, String columnName, DataBox endValue,
+                boolean inclusive) {
+            return null;
+        }
+
+        @Override
+        public Iterator<Record> reverseSortedScanFrom(String tableName, String columnName, DataBox startValue) {
+            return null;
+        }
+
         @Override
         public Iterator<Record> lookupKey(String tableName, String columnName, DataBox key) {
             return null;
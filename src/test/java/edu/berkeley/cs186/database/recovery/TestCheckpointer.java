@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.DiskSpaceManagerImpl;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.LRUEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestCheckpointer {
+    private ARIESRecoveryManager recoveryManager;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void setup() throws Exception {
+        String dir = tempFolder.newFolder("test-dir").getAbsolutePath();
+        recoveryManager = new ARIESRecoveryManagerNoLocking(
+            new DummyLockContext(new Pair<>("database", 0L)), DummyTransaction::create);
+        DiskSpaceManager diskSpaceManager = new DiskSpaceManagerImpl(dir, recoveryManager);
+        BufferManager bufferManager = new BufferManagerImpl(diskSpaceManager, recoveryManager, 32,
+                new LRUEvictionPolicy());
+        diskSpaceManager.allocPart(0);
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        DummyTransaction.cleanupTransactions();
+    }
+
+    @After
+    public void cleanup() {
+        recoveryManager.close();
+    }
+
+    // appends a record taking about a quarter of a log page
+    private long appendRecord() {
+        Random random = new Random();
+        byte[] before = new byte[DiskSpaceManager.PAGE_SIZE / 8];
+        byte[] after = new byte[DiskSpaceManager.PAGE_SIZE / 8];
+        random.nextBytes(before);
+        random.nextBytes(after);
+        return recoveryManager.logManager.appendToLog(
+                   new UpdatePageLogRecord(1L, 10000000001L, 0L, (short) 0, before, after));
+    }
+
+    private long masterCheckpointLSN() {
+        return ((MasterLogRecord) recoveryManager.logManager.fetchLogRecord(0L)).lastCheckpointLSN;
+    }
+
+    @Test
+    public void testCheckpointByLogVolume() {
+        Checkpointer checkpointer = recoveryManager.getCheckpointer();
+        checkpointer.setLogPagesPerCheckpoint(2);
+        assertFalse(checkpointer.run());
+
+        long LSN = appendRecord();
+        while (LogManagerImpl.getLSNPage(LSN) - LogManagerImpl.getLSNPage(masterCheckpointLSN()) < 2) {
+            assertFalse(checkpointer.run());
+            LSN = appendRecord();
+        }
+        assertTrue(checkpointer.run());
+        assertTrue(masterCheckpointLSN() > LSN);
+        assertEquals(1, checkpointer.getNumCheckpoints());
+        assertFalse(checkpointer.run());
+    }
+
+    @Test
+    public void testBackgroundCheckpoints() throws Exception {
+        recoveryManager.startCheckpointing(5, 1);
+        long before = masterCheckpointLSN();
+        for (int i = 0; i < 8; ++i) {
+            appendRecord();
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (recoveryManager.getCheckpointer().getNumCheckpoints() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        recoveryManager.stopCheckpointing();
+        assertTrue(recoveryManager.getCheckpointer().getNumCheckpoints() > 0);
+        assertTrue(masterCheckpointLSN() > before);
+    }
+
+    @Test
+    public void testCheckpointDuringUpdates() throws Exception {
+        // a transaction keeps logging and touching pages while checkpoints are taken
+        recoveryManager.startTransaction(DummyTransaction.create(1L));
+        TransactionTableEntry entry = recoveryManager.transactionTable.get(1L);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (long page = 0; !done.get(); ++page) {
+                    entry.touchedPages.add(10000000000L + page % 500);
+                    appendRecord();
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        writer.start();
+        for (int i = 0; i < 20; ++i) {
+            recoveryManager.checkpoint();
+        }
+        done.set(true);
+        writer.join();
+        assertNull(failure.get());
+    }
+}
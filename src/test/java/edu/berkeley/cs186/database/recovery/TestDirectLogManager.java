@@ -0,0 +1,190 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.io.DiskSpaceManager;
+import edu.berkeley.cs186.database.io.MemoryDiskSpaceManager;
+import edu.berkeley.cs186.database.memory.BufferManager;
+import edu.berkeley.cs186.database.memory.BufferManagerImpl;
+import edu.berkeley.cs186.database.memory.ClockEvictionPolicy;
+import edu.berkeley.cs186.database.recovery.records.MasterLogRecord;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestDirectLogManager {
+    // records of 9 bytes, as in TestLogManager
+    private static final int RECORDS_PER_PAGE = DiskSpaceManager.PAGE_SIZE / 9;
+
+    private DiskSpaceManager diskSpaceManager;
+
+    @Before
+    public void setup() {
+        diskSpaceManager = new MemoryDiskSpaceManager();
+        diskSpaceManager.allocPart(0);
+    }
+
+    @Test
+    public void testAppendFetchScan() {
+        DirectLogManager logManager = new DirectLogManager(diskSpaceManager, 4);
+        LogRecord expected = new MasterLogRecord(1234);
+        assertEquals(0L, logManager.appendToLog(expected));
+        assertEquals(expected, logManager.fetchLogRecord(0));
+        assertEquals(expected, logManager.scanFrom(0).next());
+        assertEquals(expected, logManager.iterator().next());
+        assertNull(logManager.fetchLogRecord(10000L));
+        // nothing was written yet
+        assertEquals(0, logManager.getNumIOs());
+        logManager.close();
+    }
+
+    @Test
+    public void testMultiPageScan() {
+        // the log tail holds fewer pages than the log, so it is flushed along the way
+        DirectLogManager logManager = new DirectLogManager(diskSpaceManager, 2);
+        for (int i = 0; i < 10000; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        assertTrue(logManager.getFlushedLSN() >= 69999L);
+
+        Iterator<LogRecord> iter = logManager.scanFrom(90000);
+        for (int i = 9 * RECORDS_PER_PAGE; i < 10000; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+
+        for (int i = 0; i < 10000; i += 97) {
+            long LSN = LogManagerImpl.makeLSN(i / RECORDS_PER_PAGE, (i % RECORDS_PER_PAGE) * 9);
+            assertEquals(new MasterLogRecord(i), logManager.fetchLogRecord(LSN));
+        }
+        logManager.close();
+    }
+
+    @Test
+    public void testRewriteMasterRecord() {
+        DirectLogManager logManager = new DirectLogManager(diskSpaceManager, 2);
+        for (int i = 0; i < 1000; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.rewriteMasterRecord(new MasterLogRecord(77));
+        logManager.rewriteMasterRecord(new MasterLogRecord(999));
+        logManager.rewriteMasterRecord(new MasterLogRecord(-1));
+
+        Iterator<LogRecord> iter = logManager.iterator();
+        assertEquals(new MasterLogRecord(-1), iter.next());
+        for (int i = 1; i < 1000; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+        logManager.close();
+    }
+
+    @Test
+    public void testPartialFlush() {
+        DirectLogManager logManager = new DirectLogManager(diskSpaceManager, 16);
+        for (int i = 0; i < RECORDS_PER_PAGE * 7; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        long prevIO = logManager.getNumIOs();
+        logManager.flushToLSN(20001);
+        assertEquals(3, logManager.getNumIOs() - prevIO);
+        assertEquals(29999L, logManager.getFlushedLSN());
+
+        prevIO = logManager.getNumIOs();
+        logManager.flushToLSN(50001);
+        assertEquals(3, logManager.getNumIOs() - prevIO);
+
+        prevIO = logManager.getNumIOs();
+        logManager.flushToLSN(50055);
+        assertEquals(0, logManager.getNumIOs() - prevIO);
+
+        // a flushed page is not appended to again
+        long LSN = logManager.appendToLog(new MasterLogRecord(-1));
+        assertEquals(70000L, LSN);
+        logManager.flushToLSN(LSN);
+        assertEquals(80000L, logManager.appendToLog(new MasterLogRecord(-2)));
+        logManager.close();
+    }
+
+    @Test
+    public void testReopen() {
+        DirectLogManager logManager = new DirectLogManager(diskSpaceManager, 2);
+        for (int i = 0; i < 1000; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.close();
+
+        // records 0-999 are on pages 0-2, so the reopened log starts on page 3
+        logManager = new DirectLogManager(diskSpaceManager, 2);
+        assertEquals(29999L, logManager.getFlushedLSN());
+        assertEquals(30000L, logManager.appendToLog(new MasterLogRecord(1000)));
+        Iterator<LogRecord> iter = logManager.iterator();
+        for (int i = 0; i <= 1000; ++i) {
+            assertEquals(new MasterLogRecord(i), iter.next());
+        }
+        assertFalse(iter.hasNext());
+        logManager.close();
+    }
+
+    @Test
+    public void testSameLayoutAsBufferedLog() {
+        // a log written by DirectLogManager reads the same through LogManagerImpl
+        DirectLogManager logManager = new DirectLogManager(diskSpaceManager, 2);
+        for (int i = 0; i < 1000; ++i) {
+            logManager.appendToLog(new MasterLogRecord(i));
+        }
+        logManager.close();
+
+        BufferManager bufferManager = new BufferManagerImpl(diskSpaceManager, new DummyRecoveryManager(), 16,
+                new ClockEvictionPolicy());
+        LogManager bufferedLogManager = new LogManagerImpl(bufferManager);
+        Iterator<LogRecord> iter = bufferedLogManager.iterator();
+        for (int i = 0; i < 1000; ++i) {
+            LogRecord record = iter.next();
+            assertEquals(new MasterLogRecord(i), record);
+            assertEquals(LogManagerImpl.makeLSN(i / RECORDS_PER_PAGE, (i % RECORDS_PER_PAGE) * 9),
+                         record.getLSN());
+        }
+        assertFalse(iter.hasNext());
+        bufferedLogManager.close();
+        bufferManager.close();
+    }
+
+    @Test
+    public void testRecoveryManagerLogTail() {
+        ARIESRecoveryManager recoveryManager = new ARIESRecoveryManagerNoLocking(
+            new DummyLockContext(new Pair<>("database", 0L)), DummyTransaction::create);
+        BufferManager bufferManager = new BufferManagerImpl(diskSpaceManager, recoveryManager, 16,
+                new ClockEvictionPolicy());
+        recoveryManager.setLogTailPages(4);
+        recoveryManager.setManagers(diskSpaceManager, bufferManager);
+        recoveryManager.initialize();
+        assertTrue(recoveryManager.logManager instanceof DirectLogManager);
+
+        // appends do not go through the buffer pool
+        long prevIO = bufferManager.getNumIOs();
+        for (int i = 0; i < 10; ++i) {
+            recoveryManager.checkpoint();
+        }
+        assertEquals(prevIO, bufferManager.getNumIOs());
+        long lastCheckpointLSN =
+            ((MasterLogRecord) recoveryManager.logManager.fetchLogRecord(0L)).lastCheckpointLSN;
+        assertEquals(LogType.BEGIN_CHECKPOINT,
+                     recoveryManager.logManager.fetchLogRecord(lastCheckpointLSN).getType());
+        recoveryManager.close();
+
+        try {
+            recoveryManager.setLogTailPages(4);
+            fail();
+        } catch (IllegalStateException e) {
+            /* do nothing */
+        }
+        DummyTransaction.cleanupTransactions();
+    }
+}
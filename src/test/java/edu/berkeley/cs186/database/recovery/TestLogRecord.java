@@ -13,8 +13,10 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 @Category(SystemTests.class)
 public class TestLogRecord {
@@ -92,6 +94,51 @@ public class TestLogRecord {
                                                null));
     }
 
+    @Test
+    public void testUpdatePageCompactSerialize() {
+        // one int of a 100 byte range changes
+        byte[] before = new byte[100];
+        new Random(0).nextBytes(before);
+        byte[] after = before.clone();
+        ByteBuffer.wrap(after).putInt(40, 12345);
+        LogRecord record = new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 1234, before, after);
+        checkSerialize(record);
+        assertTrue(record.toBytes().length < 31 + 150);
+
+        // zero runs, at either end and in the middle
+        byte[] zeroes = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        byte[] sparse = new byte[BufferManager.EFFECTIVE_PAGE_SIZE];
+        sparse[0] = 1;
+        sparse[3] = 2;
+        sparse[2000] = 3;
+        sparse[sparse.length - 2] = 4;
+        checkSerialize(new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 0, zeroes, sparse));
+        checkSerialize(new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 0, sparse, zeroes));
+        checkSerialize(new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 0, zeroes, zeroes));
+        assertTrue(new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 0, zeroes,
+                                           sparse).toBytes().length < 100);
+
+        // incompressible images are written in the plain format
+        byte[] random = new byte[100];
+        new Random(1).nextBytes(random);
+        record = new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 0, before, random);
+        checkSerialize(record);
+        assertEquals(31 + 200, record.toBytes().length);
+    }
+
+    @Test
+    public void testUpdatePagePlainDeserialize() {
+        // records in the plain format (as written before the compact format) still load
+        byte[] before = new byte[100];
+        byte[] after = new byte[100];
+        after[50] = 1;
+        byte[] b = new byte[31 + 200];
+        ByteBuffer.wrap(b).put((byte) LogType.UPDATE_PAGE.getValue()).putLong(-98765L).putLong(-43210L)
+        .putLong(-12345L).putShort((short) 1234).putShort((short) 100).putShort((short) 100).put(before).put(after);
+        assertEquals(new UpdatePageLogRecord(-98765L, -43210L, -12345L, (short) 1234, before, after),
+                     LogRecord.fromBytes(ByteBuffer.wrap(b)).orElse(null));
+    }
+
     @Test
     public void testUndoUpdatePageSerialize() {
         byte[] pageString = new String(new char[BufferManager.EFFECTIVE_PAGE_SIZE]).replace('\0',
@@ -0,0 +1,125 @@
+package edu.berkeley.cs186.database.recovery;
+
+import edu.berkeley.cs186.database.categories.Proj99Tests;
+import edu.berkeley.cs186.database.recovery.records.AllocPageLogRecord;
+import edu.berkeley.cs186.database.recovery.records.AllocPartLogRecord;
+import edu.berkeley.cs186.database.recovery.records.CommitTransactionLogRecord;
+import edu.berkeley.cs186.database.recovery.records.UpdatePageLogRecord;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestParallelRedo {
+    private long nextLSN = 1;
+
+    private LogRecord update(long pageNum) {
+        LogRecord record = new UpdatePageLogRecord(1L, pageNum, 0L, (short) 0, new byte[] {0}, new byte[] {1});
+        record.setLSN(nextLSN++);
+        return record;
+    }
+
+    private LogRecord allocPart(int partNum) {
+        LogRecord record = new AllocPartLogRecord(1L, partNum, 0L);
+        record.setLSN(nextLSN++);
+        return record;
+    }
+
+    @Test
+    public void testPageOrder() {
+        // LSNs redone for each page, in order
+        Map<Long, List<Long>> redone = new ConcurrentHashMap<>();
+        try (ParallelRedo redo = new ParallelRedo(4, r ->
+                redone.computeIfAbsent(r.getPageNum().get(), p -> Collections.synchronizedList(new ArrayList<>()))
+                .add(r.getLSN()))) {
+            Random random = new Random(0);
+            for (int i = 0; i < 10000; ++i) {
+                redo.submit(update(random.nextInt(50)));
+            }
+            redo.await();
+        }
+        int total = 0;
+        for (List<Long> lsns : redone.values()) {
+            List<Long> sorted = new ArrayList<>(lsns);
+            Collections.sort(sorted);
+            assertEquals(sorted, lsns);
+            total += lsns.size();
+        }
+        assertEquals(10000, total);
+    }
+
+    @Test
+    public void testPartitionBarrier() {
+        // each partition record sees every record before it, and none after it
+        List<Long> redone = Collections.synchronizedList(new ArrayList<>());
+        try (ParallelRedo redo = new ParallelRedo(4, r -> {
+                if (r.getPageNum().isPresent()) {
+                    redone.add(r.getLSN());
+                } else {
+                    assertEquals(r.getLSN() - 1, redone.size());
+                    redone.add(r.getLSN());
+                }
+            })) {
+            for (int part = 0; part < 10; ++part) {
+                redo.submit(allocPart(part));
+                for (int i = 0; i < 99; ++i) {
+                    redo.submit(update(i));
+                }
+            }
+            redo.await();
+        }
+        assertEquals(1000, redone.size());
+    }
+
+    @Test
+    public void testNonRedoableRecordsSkipped() {
+        List<Long> redone = Collections.synchronizedList(new ArrayList<>());
+        try (ParallelRedo redo = new ParallelRedo(2, r -> redone.add(r.getLSN()))) {
+            redo.submit(update(1));
+            LogRecord commit = new CommitTransactionLogRecord(1L, 1L);
+            commit.setLSN(nextLSN++);
+            redo.submit(commit);
+            redo.submit(update(1));
+            redo.await();
+        }
+        assertEquals(Arrays.asList(1L, 3L), redone);
+    }
+
+    @Test
+    public void testRedoFailure() {
+        ParallelRedo redo = new ParallelRedo(2, r -> {
+            if (r.getLSN() == 3) {
+                throw new IllegalStateException("redo failed");
+            }
+        });
+        try {
+            for (int i = 0; i < 5; ++i) {
+                redo.submit(update(i));
+            }
+            redo.await();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("redo failed", e.getMessage());
+        } finally {
+            redo.close();
+        }
+    }
+
+    @Test
+    public void testSingleThread() {
+        List<Long> redone = new ArrayList<>();
+        try (ParallelRedo redo = new ParallelRedo(1, r -> redone.add(r.getLSN()))) {
+            redo.submit(update(1));
+            LogRecord alloc = new AllocPageLogRecord(1L, 2L, 0L);
+            alloc.setLSN(nextLSN++);
+            redo.submit(alloc);
+            redo.submit(allocPart(1));
+            redo.await();
+        }
+        assertEquals(Arrays.asList(1L, 2L, 3L), redone);
+    }
+}
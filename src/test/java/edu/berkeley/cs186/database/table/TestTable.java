@@ -9,7 +9,12 @@ import java.util.Iterator;
 import java.util.List;
 
 import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.TransactionContext;
 import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.concurrency.DummyTransactionContext;
+import edu.berkeley.cs186.database.concurrency.LockContext;
+import edu.berkeley.cs186.database.concurrency.LockType;
+import edu.berkeley.cs186.database.concurrency.LoggingLockManager;
 import edu.berkeley.cs186.database.memory.Page;
 import org.junit.After;
 import org.junit.Before;
@@ -20,7 +25,10 @@ import org.junit.rules.TemporaryFolder;
 
 import edu.berkeley.cs186.database.DatabaseException;
 import edu.berkeley.cs186.database.TestUtils;
+import edu.berkeley.cs186.database.common.Pair;
+import edu.berkeley.cs186.database.common.PredicateOperator;
 import edu.berkeley.cs186.database.common.iterator.BacktrackingIterator;
+import edu.berkeley.cs186.database.databox.DataBox;
 import edu.berkeley.cs186.database.databox.IntDataBox;
 
 @Category({Proj99Tests.class, SystemTests.class})
@@ -209,7 +217,7 @@ public class TestTable {
      * i increments by incr.
      */
     private void checkSequentialRecords(int start, int end, int incr,
-                                        BacktrackingIterator<Record> iter) {
+                                        Iterator<Record> iter) {
         for (int i = start; i < end; i += incr) {
             assertTrue(iter.hasNext());
             assertEquals(createRecordWithAllTypes(i), iter.next());
@@ -446,4 +454,171 @@ public class TestTable {
         checkSequentialRecords(1, numRecords, 2, iter);
         assertFalse(iter.hasNext());
     }
+
+    /**
+     * Zone maps over three pages of increasing ints only let through the pages whose
+     * range may satisfy the predicate, and only ever widen.
+     */
+    @Test
+    public void testZoneMapPageSkipping() {
+        int perPage = table.getNumRecordsPerPage();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < perPage * 3; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i).getValues()));
+        }
+        long[] pageNums = new long[3];
+        for (int p = 0; p < 3; ++p) {
+            pageNums[p] = rids.get(p * perPage).getPageNum();
+        }
+
+        IntDataBox value = new IntDataBox(perPage * 2);
+        assertFalse(table.pageMayMatch(pageNums[0], 1, PredicateOperator.GREATER_THAN_EQUALS, value));
+        assertFalse(table.pageMayMatch(pageNums[1], 1, PredicateOperator.GREATER_THAN_EQUALS, value));
+        assertTrue(table.pageMayMatch(pageNums[2], 1, PredicateOperator.GREATER_THAN_EQUALS, value));
+        assertTrue(table.pageMayMatch(pageNums[2], 1, PredicateOperator.EQUALS, value));
+        assertFalse(table.pageMayMatch(pageNums[2], 1, PredicateOperator.LESS_THAN, value));
+        // columns without a zone are never skipped
+        assertTrue(table.pageMayMatch(pageNums[0], 2, PredicateOperator.EQUALS, value));
+
+        // the filtered iterator only returns records from the pages let through
+        List<Long> visited = new ArrayList<>();
+        Iterator<Record> iter = table.filteredIterator((page, offset) -> true, pageNum -> {
+            boolean match = table.pageMayMatch(pageNum, 1, PredicateOperator.GREATER_THAN_EQUALS, value);
+            if (match) {
+                visited.add(pageNum);
+            }
+            return match;
+        });
+        checkSequentialRecords(perPage * 2, perPage * 3, 1, iter);
+        assertFalse(iter.hasNext());
+        assertEquals(1, visited.size());
+
+        // updates widen the range of the page they land on
+        table.updateRecord(createRecordWithAllTypes(perPage * 10).getValues(), rids.get(0));
+        assertTrue(table.pageMayMatch(pageNums[0], 1, PredicateOperator.GREATER_THAN_EQUALS, value));
+
+        // emptying a page keeps its range, so that the records a rollback brings
+        // back are still found after new records land on the page
+        for (int i = perPage; i < perPage * 2; ++i) {
+            table.deleteRecord(rids.get(i));
+        }
+        assertFalse(table.pageMayMatch(pageNums[1], 1, PredicateOperator.GREATER_THAN_EQUALS, value));
+        RecordId rid = table.addRecord(createRecordWithAllTypes(perPage * 5).getValues());
+        assertEquals(pageNums[1], rid.getPageNum());
+        assertTrue(table.pageMayMatch(pageNums[1], 1, PredicateOperator.EQUALS, new IntDataBox(perPage)));
+    }
+
+    /**
+     * getColumnEntries pairs the values of one column with their record ids,
+     * skipping deleted records and the pages rejected by the page filter.
+     */
+    @Test
+    public void testGetColumnEntries() {
+        int perPage = table.getNumRecordsPerPage();
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < perPage * 3; ++i) {
+            rids.add(table.addRecord(createRecordWithAllTypes(i).getValues()));
+        }
+        table.deleteRecord(rids.get(1));
+        long skipped = rids.get(perPage).getPageNum();
+
+        List<Pair<DataBox, RecordId>> entries = table.getColumnEntries(1, pageNum -> pageNum != skipped);
+        List<Pair<DataBox, RecordId>> expected = new ArrayList<>();
+        for (int i = 0; i < perPage * 3; ++i) {
+            if (i != 1 && rids.get(i).getPageNum() != skipped) {
+                expected.add(new Pair<>(new IntDataBox(i), rids.get(i)));
+            }
+        }
+        assertEquals(expected, entries);
+    }
+
+    // a table with one record per page, whose lock context records the batches of
+    // page locks acquired, and reports an IS lock on the table
+    private Table pageLockingTable(int numPages, List<List<Long>> batches) {
+        LockContext lockContext = new DummyLockContext() {
+            @Override
+            public int acquireChildren(TransactionContext transaction, List<Long> names, LockType lockType) {
+                assertEquals(LockType.S, lockType);
+                batches.add(new ArrayList<>(names));
+                return names.size();
+            }
+
+            @Override
+            public LockType getExplicitLockType(TransactionContext transaction) {
+                return LockType.IS;
+            }
+        };
+        Table t = new Table(TABLENAME, schema, heapFile, lockContext);
+        t.setFullPageRecords();
+        for (int i = 0; i < numPages; ++i) {
+            t.addRecord(createRecordWithAllTypes(i).getValues());
+        }
+        return t;
+    }
+
+    /**
+     * Scans lock the pages after the first of every PAGE_LOCK_BATCH_SIZE pages
+     * with one call, and don't lock anything without a transaction.
+     */
+    @Test
+    public void testScanLocksPagesInBatches() {
+        List<List<Long>> batches = new ArrayList<>();
+        int numPages = 2 * Table.PAGE_LOCK_BATCH_SIZE + 6;
+        Table t = pageLockingTable(numPages, batches);
+
+        checkSequentialRecords(0, numPages, 1, t.iterator());
+        assertTrue(batches.isEmpty());
+
+        TransactionContext.setTransaction(new DummyTransactionContext(new LoggingLockManager(), 1));
+        try {
+            Iterator<Record> iter = t.iterator();
+            checkSequentialRecords(0, numPages, 1, iter);
+            assertFalse(iter.hasNext());
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+        assertEquals(3, batches.size());
+        assertEquals(Table.PAGE_LOCK_BATCH_SIZE - 1, batches.get(0).size());
+        assertEquals(Table.PAGE_LOCK_BATCH_SIZE - 1, batches.get(1).size());
+        assertEquals(5, batches.get(2).size());
+
+        // every page but the first of each batch was locked in a batch
+        List<Long> pageNums = new ArrayList<>();
+        t.pageIterator().forEachRemaining(page -> {
+            pageNums.add(page.getPageNum());
+            page.unpin();
+        });
+        assertEquals(pageNums.subList(1, Table.PAGE_LOCK_BATCH_SIZE), batches.get(0));
+        assertEquals(pageNums.subList(numPages - 5, numPages), batches.get(2));
+    }
+
+    /**
+     * The page iterator of a table backtracks across batches of locked pages.
+     */
+    @Test
+    public void testPageIteratorMarkReset() {
+        List<List<Long>> batches = new ArrayList<>();
+        int numPages = 3 * Table.PAGE_LOCK_BATCH_SIZE;
+        Table t = pageLockingTable(numPages, batches);
+
+        TransactionContext.setTransaction(new DummyTransactionContext(new LoggingLockManager(), 1));
+        try {
+            BacktrackingIterator<Record> iter = t.iterator();
+            checkSequentialRecords(0, 10, 1, iter);
+            iter.markPrev();
+            checkSequentialRecords(10, numPages, 1, iter);
+            assertFalse(iter.hasNext());
+            iter.reset();
+            checkSequentialRecords(9, 50, 1, iter);
+            iter.markNext();
+            checkSequentialRecords(50, 60, 1, iter);
+            iter.reset();
+            checkSequentialRecords(50, numPages, 1, iter);
+            assertFalse(iter.hasNext());
+        } finally {
+            TransactionContext.unsetTransaction();
+        }
+        // pages read again after a reset are not locked again
+        assertEquals(3, batches.size());
+    }
 }
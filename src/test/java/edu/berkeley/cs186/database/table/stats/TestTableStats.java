@@ -0,0 +1,169 @@
+package edu.berkeley.cs186.database.table.stats;
+
+import edu.berkeley.cs186.database.Database;
+import edu.berkeley.cs186.database.Transaction;
+import edu.berkeley.cs186.database.categories.*;
+import edu.berkeley.cs186.database.common.PredicateOperator;
+import edu.berkeley.cs186.database.concurrency.DummyLockContext;
+import edu.berkeley.cs186.database.databox.*;
+import edu.berkeley.cs186.database.table.MemoryHeapFile;
+import edu.berkeley.cs186.database.table.RecordId;
+import edu.berkeley.cs186.database.table.Schema;
+import edu.berkeley.cs186.database.table.Table;
+import org.junit.*;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+@Category({Proj99Tests.class})
+public class TestTableStats {
+    private MemoryHeapFile heapFile;
+    private Table table;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    @Before
+    public void beforeEach() {
+        Schema schema = new Schema(Arrays.asList("x", "y"), Arrays.asList(Type.intType(), Type.longType()));
+        this.heapFile = new MemoryHeapFile();
+        this.table = new Table("t", schema, heapFile, new DummyLockContext());
+    }
+
+    @After
+    public void cleanup() {
+        this.heapFile.close();
+    }
+
+    private RecordId insert(int x) {
+        return table.addRecord(Arrays.asList(new IntDataBox(x), new LongDataBox(x % 100)));
+    }
+
+    @Test
+    public void testHyperLogLog() {
+        HyperLogLog sketch = new HyperLogLog(12);
+        assertEquals(0, sketch.estimate());
+        for (int i = 0; i < 100000; ++i) {
+            // every value added twice
+            sketch.add(HyperLogLog.hash(i % 50000));
+        }
+        assertEquals(50000, sketch.estimate(), 50000 * 0.05);
+
+        sketch.clear();
+        for (int i = 0; i < 20; ++i) {
+            sketch.add(HyperLogLog.hash(i));
+        }
+        assertEquals(20, sketch.estimate());
+    }
+
+    @Test
+    public void testBucketDistinctCount() {
+        Bucket<Float> bucket = new Bucket<>(0.0f, 100.0f);
+        // as if a sampled rebuild estimated 100 distinct values
+        bucket.setDistinctCount(100);
+        for (int i = 0; i < 100; ++i) {
+            bucket.increment(i);
+        }
+        // the re-added values are not counted twice
+        assertEquals(100, bucket.getDistinctCount(), 100 * 0.05);
+        for (int i = 100; i < 300; ++i) {
+            bucket.increment(i);
+        }
+        assertEquals(300, bucket.getDistinctCount(), 300 * 0.05);
+    }
+
+    @Test
+    public void testIncrementalStats() {
+        List<RecordId> rids = new ArrayList<>();
+        for (int i = 0; i < 1000; ++i) {
+            rids.add(insert(i));
+        }
+        TableStats stats = table.getStats();
+
+        // no buildStatistics call: everything was maintained on insert
+        assertEquals(1000, stats.getNumRecords());
+        assertEquals(1000, stats.getHistograms().get(0).getCount());
+        assertEquals(1000, stats.getNumDistinct(0), 1000 * 0.05);
+        assertEquals(100, stats.getNumDistinct(1), 100 * 0.05);
+        assertEquals(1000, stats.getNumModifications());
+
+        table.buildStatistics(10);
+        assertEquals(0, stats.getNumModifications());
+        assertEquals(100, stats.getHistograms().get(0).get(0).getCount());
+
+        for (int i = 0; i < 100; ++i) {
+            table.deleteRecord(rids.get(i));
+        }
+        for (int i = 0; i < 50; ++i) {
+            insert(950 + i % 50);
+        }
+        assertEquals(950, stats.getNumRecords());
+        assertEquals(950, stats.getHistograms().get(0).getCount());
+        assertEquals(0, stats.getHistograms().get(0).get(0).getCount());
+        assertEquals(150, stats.getHistograms().get(0).get(9).getCount());
+        assertEquals(150, stats.getNumModifications());
+    }
+
+    @Test
+    public void testEstimatesDoNotModifyTableStats() {
+        for (int i = 0; i < 1000; ++i) {
+            insert(i);
+        }
+        table.buildStatistics(10);
+        TableStats stats = table.getStats();
+        stats.copyWithPredicate(0, PredicateOperator.LESS_THAN, new IntDataBox(100));
+        assertEquals(1000, stats.getHistograms().get(0).getCount());
+    }
+
+    @Test
+    public void testSampleStatistics() {
+        int numRecords = table.getNumRecordsPerPage() * 40;
+        for (int i = 0; i < numRecords; ++i) {
+            insert(i);
+        }
+        table.sampleStatistics(10, 20, new Random(186));
+
+        TableStats stats = table.getStats();
+        assertEquals(0, stats.getNumModifications());
+        assertEquals(numRecords, stats.getNumRecords());
+        Histogram h = stats.getHistograms().get(0);
+        // sampled whole pages of sequential values, so the histogram is roughly uniform
+        assertEquals(numRecords, h.getCount(), numRecords * 0.3);
+        float reduction = h.computeReductionFactor(PredicateOperator.LESS_THAN, new IntDataBox(numRecords / 2));
+        assertEquals(0.5, reduction, 0.2);
+        // low cardinality column: repeated values are not scaled up
+        assertTrue(stats.getHistograms().get(1).getNumDistinct() <= 150);
+    }
+
+    @Test
+    public void testBackgroundAnalyze() throws Exception {
+        File testDir = tempFolder.newFolder("analyzeTest");
+        Database db = new Database(testDir.getAbsolutePath(), 32);
+        try {
+            db.waitSetupFinished();
+            try(Transaction t = db.beginTransaction()) {
+                t.createTable(new Schema(Collections.singletonList("x"), Collections.singletonList(Type.intType())),
+                              "T");
+                for (int i = 0; i < 500; ++i) {
+                    t.insert("T", Collections.singletonList(new IntDataBox(i)));
+                }
+            }
+            db.waitAllTransactions();
+
+            db.startBackgroundAnalyze(10);
+            TableStats stats = db.getTable("T").getStats();
+            long deadline = System.currentTimeMillis() + 5000;
+            while (stats.getNumModifications() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, stats.getNumModifications());
+            assertEquals(50, stats.getHistograms().get(0).get(0).getCount());
+        } finally {
+            db.close();
+        }
+    }
+}